@@ -14,6 +14,7 @@ import LTLparser.LTLNode;
 import LTLparser.LTLParserProvider;
 import automata.safa.BooleanExpressionFactory;
 import automata.safa.SAFA;
+import automata.safa.SAFA.DecisionEngine;
 import automata.safa.booleanexpression.BDDExpression;
 import automata.safa.booleanexpression.BDDExpressionFactory;
 import automata.safa.booleanexpression.PositiveBooleanExpression;
@@ -31,6 +32,7 @@ public class RunLTLExp {
 	static String emptinessOutputFile = "results/emptiness";
 	static String equivalenceOutputFile = "results/selfEquivalence";
 	static String ranEquivalenceOutputFile = "results/ranEquivalence";
+	static String enginesOutputFile = "results/engines";
 	static String containedString = "counter";
 	static String notContainedString = "random";
 	static boolean skipRev = true;
@@ -43,6 +45,7 @@ public class RunLTLExp {
 		RunLTLEmptiness();
 		//RunLTLSelfEquiv();
 		//RunLTLEquivChangeState();
+		//RunLTLEngines();
 
 		skipRev = true;
 		useBDDs = true;
@@ -389,4 +392,91 @@ public class RunLTLExp {
 		}
 	}
 
+	/**
+	 * Times every decision engine on the emptiness of each formula and on the
+	 * inclusion of each formula in itself
+	 */
+	public static void RunLTLEngines() {
+		try {
+			FileWriter fw = new FileWriter(enginesOutputFile + ".csv");
+			fw.append("formula, size");
+			for (DecisionEngine engine : DecisionEngine.values())
+				fw.append(", empty" + engine + ", included" + engine);
+			fw.append(", result\n");
+			Files.walk(Paths.get("../automatark/LTL/")).forEach(filePath -> {
+				if (Files.isRegularFile(filePath) && filePath.toString().contains(containedString)
+						&& !filePath.toString().contains(notContainedString)
+						&& (filePath.toString().endsWith(".ltl")
+								|| filePath.toString().endsWith(".form"))
+						) {
+					try {
+						List<LTLNode> nodes = LTLParserProvider.parse(new FileReader(filePath.toFile()));
+
+						System.out.println(filePath);
+
+						int counter = 0;
+						for (LTLNode ltl : nodes) {
+							fw.append(filePath.getFileName().toString());
+							System.out.println(counter);
+							if (counter > 0)
+								fw.append(counter + "");
+							fw.append(", ");
+
+							if (counter >= fromCounter) {
+								Timers.setTimeout(Long.MAX_VALUE);
+								Pair<BDDSolver, LTLFormula<BDD, BDD>> pair = LTLConverter.getLTLBDD(ltl);
+								BDDSolver bdds = pair.first;
+								LTLFormula<BDD, BDD> tot = pair.second.pushNegations(bdds);
+								SAFA<BDD, BDD> safa = tot.getSAFA(bdds);
+
+								fw.append(pair.second.getSize() + "");
+
+								Boolean result = null;
+								for (DecisionEngine engine : DecisionEngine.values()) {
+									long startTime = System.currentTimeMillis();
+									try {
+										boolean empty = SAFA.isEmpty(safa, bdds, engine, timeout).getFirst();
+										if (result != null && result != empty)
+											throw new IllegalArgumentException("bug");
+										result = empty;
+										fw.append(", " + (System.currentTimeMillis() - startTime));
+										System.out.print((System.currentTimeMillis() - startTime) + ", ");
+									} catch (TimeoutException | NullPointerException toe) {
+										fw.append(", " + timeout);
+										System.out.print(timeout + ", ");
+									}
+
+									startTime = System.currentTimeMillis();
+									try {
+										if (!SAFA.isIncluded(safa, safa, bdds, engine, timeout).getFirst())
+											throw new IllegalArgumentException("bug");
+										fw.append(", " + (System.currentTimeMillis() - startTime));
+										System.out.print((System.currentTimeMillis() - startTime) + ", ");
+									} catch (TimeoutException | NullPointerException toe) {
+										fw.append(", " + timeout);
+										System.out.print(timeout + ", ");
+									}
+								}
+
+								fw.append(", " + (result != null ? result + "" : "TO"));
+								System.out.print(result != null ? result : "TO");
+
+								fw.append("\n");
+								System.out.println();
+							}
+							counter++;
+						}
+					} catch (Exception e1) {
+						// TODO Auto-generated catch block
+						e1.printStackTrace();
+					}
+				}
+			});
+			fw.close();
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,292 @@
+package automata.safa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+import utilities.Pair;
+
+/**
+ * Language inclusion between two SAFAs by forward exploration of antichains.
+ * A node is a pair (c, D) where c is a cube of the left automaton, a set of
+ * states that must all accept the rest of the input, and D is the
+ * configuration of the right automaton as an antichain of cubes. A word
+ * accepted from c and rejected from D is a counterexample. Successors are
+ * computed one minterm at a time over the guards of the states of the node,
+ * and a node is pruned as soon as an explored node (c', D') has c' a subset
+ * of c and D' accepting fewer words than D, since any counterexample from
+ * (c, D) is one from (c', D'). The antichain of the nodes that are not
+ * subsumed by a later one is indexed by left cube, and the left cubes by
+ * their states, so that only the cubes that can be subsets or supersets of
+ * a new one are compared with it.
+ * @param <P> set of predicates over the domain S
+ * @param <S> domain of the automaton alphabet
+ */
+class AntichainInclusion<P, S> {
+
+	private final CompiledSAFA<P, S> left;
+	private final CompiledSAFA<P, S> right;
+	private final BooleanAlgebra<P, S> ba;
+
+	// node i is (leftCubes[i], rightConfs[i]), reached from parents[i] reading symbols[i]
+	private final List<long[]> leftCubes = new ArrayList<long[]>();
+	private final List<List<long[]>> rightConfs = new ArrayList<List<long[]>>();
+	private final List<Integer> parents = new ArrayList<Integer>();
+	private final List<S> symbols = new ArrayList<S>();
+	// the nodes of the antichain by left cube
+	private final Map<Cube, List<Integer>> antichain = new HashMap<Cube, List<Integer>>();
+	// the left cubes of the antichain by their lowest state, -1 for the empty cube
+	private final Map<Integer, Set<Cube>> cubesByLowest = new HashMap<Integer, Set<Cube>>();
+	// the left cubes of the antichain by each of their states
+	private final Map<Integer, Set<Cube>> cubesByState = new HashMap<Integer, Set<Cube>>();
+
+	// a left cube as a map key
+	private static class Cube {
+		final long[] bits;
+		final int hash;
+
+		Cube(long[] bits) {
+			this.bits = bits;
+			this.hash = Arrays.hashCode(bits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Cube && Arrays.equals(bits, ((Cube) other).bits);
+		}
+	}
+
+	private AntichainInclusion(SAFA<P, S> laut, SAFA<P, S> raut, BooleanAlgebra<P, S> ba) {
+		this.left = new CompiledSAFA<P, S>(laut, ba);
+		this.right = new CompiledSAFA<P, S>(raut, ba);
+		this.ba = ba;
+	}
+
+	/**
+	 * Checks whether the language of <code>laut</code> is contained in the
+	 * one of <code>raut</code>
+	 * @return (true, null) if it is, (false, w) for a shortest word w accepted
+	 *         by <code>laut</code> and not by <code>raut</code> otherwise
+	 * @throws TimeoutException
+	 */
+	static <P, S> Pair<Boolean, List<S>> isIncluded(SAFA<P, S> laut, SAFA<P, S> raut, BooleanAlgebra<P, S> ba,
+			long timeout) throws TimeoutException {
+		return new AntichainInclusion<P, S>(laut, raut, ba).explore(System.currentTimeMillis(), timeout);
+	}
+
+	private Pair<Boolean, List<S>> explore(long startTime, long timeout) throws TimeoutException {
+		LinkedList<Integer> toVisit = new LinkedList<Integer>();
+
+		List<long[]> rightInitial = new ArrayList<long[]>();
+		Collections.addAll(rightInitial, right.initial);
+		for (long[] cube : left.initial)
+			if (discover(cube, rightInitial, -1, null, toVisit))
+				return new Pair<Boolean, List<S>>(false, getWitness(leftCubes.size() - 1));
+
+		while (!toVisit.isEmpty()) {
+			if (System.currentTimeMillis() - startTime > timeout)
+				throw new TimeoutException();
+
+			int node = toVisit.removeFirst();
+			long[] cube = leftCubes.get(node);
+			List<long[]> conf = rightConfs.get(node);
+
+			// split the alphabet on the guards of the states of the node
+			ArrayList<P> predicates = new ArrayList<P>();
+			Map<P, Integer> predicateId = new HashMap<P, Integer>();
+			addGuards(left, cube, predicates, predicateId);
+			for (long[] rightCube : conf)
+				addGuards(right, rightCube, predicates, predicateId);
+
+			long remaining = timeout - (System.currentTimeMillis() - startTime);
+			Collection<Pair<P, ArrayList<Integer>>> minterms = ba.GetMinterms(predicates, remaining);
+			for (Pair<P, ArrayList<Integer>> minterm : minterms) {
+				List<long[]> leftSucc = post(left, cube, minterm.second, predicateId);
+				if (leftSucc.isEmpty())
+					continue;
+
+				List<long[]> rightSucc = new ArrayList<long[]>();
+				for (long[] rightCube : conf)
+					for (long[] c : post(right, rightCube, minterm.second, predicateId))
+						CompiledSAFA.addMinimal(rightSucc, c);
+
+				S symbol = ba.generateWitness(minterm.first);
+				for (long[] c : leftSucc)
+					if (discover(c, rightSucc, node, symbol, toVisit))
+						return new Pair<Boolean, List<S>>(false, getWitness(leftCubes.size() - 1));
+			}
+		}
+		return new Pair<Boolean, List<S>>(true, null);
+	}
+
+	/**
+	 * Adds the node (cube, conf) unless a node of the antichain subsumes it,
+	 * and drops the nodes it subsumes from the antichain
+	 * @return true iff the new node accepts the empty word as a counterexample
+	 */
+	private boolean discover(long[] cube, List<long[]> conf, int parent, S symbol, LinkedList<Integer> toVisit) {
+		// a subset of cube is empty or has its lowest state in cube
+		if (subsumed(cubesByLowest.get(-1), cube, conf))
+			return false;
+		for (int w = 0; w < cube.length; w++)
+			for (long bits = cube[w]; bits != 0; bits &= bits - 1)
+				if (subsumed(cubesByLowest.get(w * 64 + Long.numberOfTrailingZeros(bits)), cube, conf))
+					return false;
+
+		// a superset of cube contains its lowest state; the subsumed nodes
+		// are still explored, so that witnesses stay shortest
+		int lowest = lowestState(cube);
+		Collection<Cube> supersets = lowest < 0 ? antichain.keySet() : cubesByState.get(lowest);
+		if (supersets != null)
+			for (Cube key : new ArrayList<Cube>(supersets)) {
+				if (!CompiledSAFA.isSubset(cube, key.bits))
+					continue;
+				List<Integer> nodes = antichain.get(key);
+				for (Iterator<Integer> it = nodes.iterator(); it.hasNext();)
+					if (covers(rightConfs.get(it.next()), conf))
+						it.remove();
+				if (nodes.isEmpty())
+					removeCube(key);
+			}
+
+		int node = leftCubes.size();
+		leftCubes.add(cube);
+		rightConfs.add(conf);
+		parents.add(parent);
+		symbols.add(symbol);
+		toVisit.add(node);
+
+		Cube key = new Cube(cube);
+		List<Integer> nodes = antichain.get(key);
+		if (nodes == null) {
+			nodes = new ArrayList<Integer>();
+			antichain.put(key, nodes);
+			addCube(key);
+		}
+		nodes.add(node);
+
+		if (!CompiledSAFA.isSubset(cube, left.finalCube))
+			return false;
+		for (long[] rightCube : conf)
+			if (CompiledSAFA.isSubset(rightCube, right.finalCube))
+				return false;
+		return true;
+	}
+
+	// true iff a node of the antichain with one of the given left cubes,
+	// all candidates to be subsets of cube, subsumes (cube, conf)
+	private boolean subsumed(Set<Cube> candidates, long[] cube, List<long[]> conf) {
+		if (candidates == null)
+			return false;
+		for (Cube key : candidates)
+			if (CompiledSAFA.isSubset(key.bits, cube))
+				for (int i : antichain.get(key))
+					if (covers(conf, rightConfs.get(i)))
+						return true;
+		return false;
+	}
+
+	private void addCube(Cube key) {
+		index(cubesByLowest, lowestState(key.bits), key);
+		for (int w = 0; w < key.bits.length; w++)
+			for (long bits = key.bits[w]; bits != 0; bits &= bits - 1)
+				index(cubesByState, w * 64 + Long.numberOfTrailingZeros(bits), key);
+	}
+
+	private void removeCube(Cube key) {
+		antichain.remove(key);
+		cubesByLowest.get(lowestState(key.bits)).remove(key);
+		for (int w = 0; w < key.bits.length; w++)
+			for (long bits = key.bits[w]; bits != 0; bits &= bits - 1)
+				cubesByState.get(w * 64 + Long.numberOfTrailingZeros(bits)).remove(key);
+	}
+
+	private static void index(Map<Integer, Set<Cube>> index, int state, Cube key) {
+		Set<Cube> keys = index.get(state);
+		if (keys == null) {
+			keys = new LinkedHashSet<Cube>();
+			index.put(state, keys);
+		}
+		keys.add(key);
+	}
+
+	// the lowest state of cube, -1 if it is empty
+	private static int lowestState(long[] cube) {
+		for (int w = 0; w < cube.length; w++)
+			if (cube[w] != 0)
+				return w * 64 + Long.numberOfTrailingZeros(cube[w]);
+		return -1;
+	}
+
+	// true iff every cube of sub contains a cube of sup, so sub accepts fewer words
+	private static boolean covers(List<long[]> sup, List<long[]> sub) {
+		for (long[] c : sub) {
+			boolean covered = false;
+			for (long[] d : sup)
+				if (CompiledSAFA.isSubset(d, c)) {
+					covered = true;
+					break;
+				}
+			if (!covered)
+				return false;
+		}
+		return true;
+	}
+
+	private List<S> getWitness(int node) {
+		LinkedList<S> witness = new LinkedList<S>();
+		for (; parents.get(node) >= 0; node = parents.get(node))
+			witness.addFirst(symbols.get(node));
+		return witness;
+	}
+
+	private static <P, S> void addGuards(CompiledSAFA<P, S> aut, long[] cube, ArrayList<P> predicates,
+			Map<P, Integer> predicateId) {
+		for (int w = 0; w < aut.words; w++)
+			for (long bits = cube[w]; bits != 0; bits &= bits - 1)
+				for (int g : aut.moveGuards[w * 64 + Long.numberOfTrailingZeros(bits)]) {
+					P guard = aut.guards.get(g);
+					if (!predicateId.containsKey(guard)) {
+						predicateId.put(guard, predicates.size());
+						predicates.add(guard);
+					}
+				}
+	}
+
+	// the successors of cube on the symbols of the minterm, in DNF
+	private static <P, S> List<long[]> post(CompiledSAFA<P, S> aut, long[] cube, ArrayList<Integer> minterm,
+			Map<P, Integer> predicateId) {
+		List<long[]> result = new ArrayList<long[]>();
+		result.add(new long[aut.words]);
+		for (int w = 0; w < aut.words && !result.isEmpty(); w++)
+			for (long bits = cube[w]; bits != 0 && !result.isEmpty(); bits &= bits - 1) {
+				int state = w * 64 + Long.numberOfTrailingZeros(bits);
+				int[] guards = aut.moveGuards[state];
+
+				// moves out of the same state are disjunctive
+				List<long[]> succ = new ArrayList<long[]>();
+				for (int i = 0; i < guards.length; i++)
+					if (minterm.get(predicateId.get(aut.guards.get(guards[i]))) == 1)
+						for (long[] c : aut.moveTargets[state][i])
+							CompiledSAFA.addMinimal(succ, c);
+				result = CompiledSAFA.conjoin(result, succ.toArray(new long[0][]));
+			}
+		return result;
+	}
+}
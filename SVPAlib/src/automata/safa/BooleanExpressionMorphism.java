@@ -4,6 +4,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
+import automata.safa.booleanexpression.PositiveBooleanExpression;
+
 public class BooleanExpressionMorphism<R> implements LatticeMorphism<BooleanExpression, R> {
 	BooleanExpressionFactory<R> boolexpr;
 	Function<Integer, R> sigma;
@@ -39,6 +41,9 @@ public class BooleanExpressionMorphism<R> implements LatticeMorphism<BooleanExpr
 	public R apply(BooleanExpression phi) {
 		if (cache.containsKey(phi)) {
 			return cache.get(phi);
+		} else if (phi instanceof PositiveBooleanExpression) {
+			// fills the cache with the subexpressions, iteratively for stored ones
+			return ((PositiveBooleanExpression) phi).apply(this, cache);
 		} else {
 			R result = phi.apply(this);
 			cache.put(phi, result);
@@ -0,0 +1,215 @@
+package automata.safa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.safa.booleanexpression.PositiveBooleanExpression;
+import theory.BooleanAlgebra;
+
+/**
+ * Bitset representation of a SAFA for running it forward over an input read
+ * one symbol at a time. States are numbered from 0 and a set of states is a
+ * <code>long[]</code> cube, one bit per state. The initial formula and the
+ * target of every move are compiled once to disjunctive normal form, an
+ * antichain of cubes, so a step only takes unions of cubes and never builds
+ * a {@link PositiveBooleanExpression}. The compiled automaton is immutable
+ * and can be shared by any number of {@link CompiledSAFARun}.
+ * @param <P> set of predicates over the domain S
+ * @param <S> domain of the automaton alphabet
+ */
+public class CompiledSAFA<P, S> {
+
+	final BooleanAlgebra<P, S> ba;
+
+	final int stateCount;
+	// number of longs in a cube
+	final int words;
+	// original id of every state
+	final int[] stateOf;
+	// cube of the final states
+	final long[] finalCube;
+	// the initial formula in DNF
+	final long[][] initial;
+
+	// distinct guards of the moves
+	final List<P> guards;
+	// [state][i]: guard of the i-th move out of state
+	final int[][] moveGuards;
+	// [state][i]: target of the i-th move out of state, in DNF
+	final long[][][][] moveTargets;
+
+	/**
+	 * Compiles <code>aut</code>
+	 */
+	public CompiledSAFA(SAFA<P, S> aut, BooleanAlgebra<P, S> ba) {
+		this.ba = ba;
+
+		// number states
+		Map<Integer, Integer> stateId = new HashMap<Integer, Integer>();
+		for (Integer state : aut.getStates())
+			stateId.put(state, stateId.size());
+		for (Integer state : aut.getInitialState().getStates())
+			if (!stateId.containsKey(state))
+				stateId.put(state, stateId.size());
+		for (SAFAInputMove<P, S> t : aut.getInputMoves())
+			for (Integer state : t.toStates)
+				if (!stateId.containsKey(state))
+					stateId.put(state, stateId.size());
+		stateCount = stateId.size();
+		words = Math.max(1, (stateCount + 63) / 64);
+
+		stateOf = new int[stateCount];
+		for (Map.Entry<Integer, Integer> entry : stateId.entrySet())
+			stateOf[entry.getValue()] = entry.getKey();
+
+		finalCube = new long[words];
+		for (Integer state : aut.getFinalStates())
+			if (stateId.containsKey(state))
+				set(finalCube, stateId.get(state));
+
+		DNFFactory dnf = new DNFFactory(stateId, words);
+		BooleanExpressionMorphism<long[][]> toDNF = new BooleanExpressionMorphism<long[][]>(
+				(state) -> dnf.MkState(state), dnf);
+		initial = toDNF.apply(aut.getInitialState());
+
+		guards = new ArrayList<P>();
+		Map<P, Integer> guardId = new HashMap<P, Integer>();
+		moveGuards = new int[stateCount][];
+		moveTargets = new long[stateCount][][][];
+		for (int s = 0; s < stateCount; s++) {
+			Collection<SAFAInputMove<P, S>> moves = aut.getInputMovesFrom(stateOf[s]);
+			moveGuards[s] = new int[moves.size()];
+			moveTargets[s] = new long[moves.size()][][];
+			int i = 0;
+			for (SAFAInputMove<P, S> t : moves) {
+				Integer g = guardId.get(t.guard);
+				if (g == null) {
+					g = guards.size();
+					guardId.put(t.guard, g);
+					guards.add(t.guard);
+				}
+				moveGuards[s][i] = g;
+				moveTargets[s][i] = toDNF.apply(t.to);
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * @return a new run of this automaton from its initial configuration
+	 */
+	public CompiledSAFARun<P, S> newRun() {
+		return new CompiledSAFARun<P, S>(this);
+	}
+
+	/**
+	 * @return true iff this automaton accepts <code>input</code>
+	 * @throws TimeoutException
+	 */
+	public boolean accepts(List<S> input) throws TimeoutException {
+		CompiledSAFARun<P, S> run = newRun();
+		return run.feed(input) && run.isAccepting();
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	static void set(long[] cube, int state) {
+		cube[state >>> 6] |= 1L << state;
+	}
+
+	// true iff every state of sub is in sup
+	static boolean isSubset(long[] sub, long[] sup) {
+		for (int w = 0; w < sub.length; w++)
+			if ((sub[w] & ~sup[w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Adds <code>cube</code> to the antichain <code>dnf</code> unless a cube of
+	 * <code>dnf</code> is a subset of it, and drops the cubes it is a subset of
+	 */
+	static void addMinimal(List<long[]> dnf, long[] cube) {
+		for (long[] other : dnf)
+			if (isSubset(other, cube))
+				return;
+		int kept = 0;
+		for (int i = 0; i < dnf.size(); i++)
+			if (!isSubset(cube, dnf.get(i)))
+				dnf.set(kept++, dnf.get(i));
+		dnf.subList(kept, dnf.size()).clear();
+		dnf.add(cube);
+	}
+
+	/**
+	 * @return the antichain of the unions of a cube of <code>left</code> and a
+	 *         cube of <code>right</code>
+	 */
+	static List<long[]> conjoin(List<long[]> left, long[][] right) {
+		List<long[]> result = new ArrayList<long[]>();
+		for (long[] l : left)
+			for (long[] r : right) {
+				long[] cube = l.clone();
+				for (int w = 0; w < cube.length; w++)
+					cube[w] |= r[w];
+				addMinimal(result, cube);
+			}
+		return result;
+	}
+
+	// Positive Boolean formulas as antichains of cubes over the states numbered by stateId
+	private static class DNFFactory extends BooleanExpressionFactory<long[][]> {
+		private final Map<Integer, Integer> stateId;
+		private final int words;
+		private final long[][] trueDNF;
+
+		DNFFactory(Map<Integer, Integer> stateId, int words) {
+			this.stateId = stateId;
+			this.words = words;
+			trueDNF = new long[][] { new long[words] };
+		}
+
+		@Override
+		public long[][] MkAnd(long[][] left, long[][] right) {
+			return conjoin(Arrays.asList(left), right).toArray(new long[0][]);
+		}
+
+		@Override
+		public long[][] MkOr(long[][] left, long[][] right) {
+			List<long[]> result = new ArrayList<long[]>();
+			for (long[] cube : left)
+				addMinimal(result, cube);
+			for (long[] cube : right)
+				addMinimal(result, cube);
+			return result.toArray(new long[0][]);
+		}
+
+		@Override
+		public long[][] True() {
+			return trueDNF;
+		}
+
+		@Override
+		public long[][] False() {
+			return new long[0][];
+		}
+
+		@Override
+		public long[][] MkState(int state) {
+			long[] cube = new long[words];
+			set(cube, stateId.get(state));
+			return new long[][] { cube };
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package automata.safa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Run of a {@link CompiledSAFA} over an input read one symbol at a time. The
+ * current configuration is a positive Boolean formula over the states kept as
+ * an antichain of cubes: the input read so far is accepted iff some cube only
+ * contains final states, and the run is dead once no cube is left. Every
+ * guard is evaluated at most once per symbol, and so is the successor formula
+ * of every state.
+ * @param <P> set of predicates over the domain S
+ * @param <S> domain of the automaton alphabet
+ */
+public class CompiledSAFARun<P, S> {
+
+	private final CompiledSAFA<P, S> aut;
+
+	private List<long[]> conf;
+
+	// number of the symbol being read, tags the per-symbol caches below
+	private int epoch;
+	// value of every guard on the current symbol, valid if guardEpoch matches
+	private final boolean[] guardValue;
+	private final int[] guardEpoch;
+	// successor formula of every state on the current symbol, valid if succEpoch matches
+	private final long[][][] succ;
+	private final int[] succEpoch;
+
+	CompiledSAFARun(CompiledSAFA<P, S> aut) {
+		this.aut = aut;
+		guardValue = new boolean[aut.guards.size()];
+		guardEpoch = new int[aut.guards.size()];
+		succ = new long[aut.stateCount][][];
+		succEpoch = new int[aut.stateCount];
+		reset();
+	}
+
+	/**
+	 * Moves the run back to the initial configuration
+	 */
+	public void reset() {
+		conf = new ArrayList<long[]>(Arrays.asList(aut.initial));
+	}
+
+	/**
+	 * Reads the symbol <code>input</code>
+	 * @return false iff the run is dead
+	 * @throws TimeoutException
+	 */
+	public boolean feed(S input) throws TimeoutException {
+		if (conf.isEmpty())
+			return false;
+		epoch++;
+
+		List<long[]> next = new ArrayList<long[]>();
+		for (long[] cube : conf) {
+			// the conjunction of the successors of the states of cube
+			List<long[]> cubeSucc = new ArrayList<long[]>();
+			cubeSucc.add(new long[aut.words]);
+			for (int w = 0; w < aut.words && !cubeSucc.isEmpty(); w++)
+				for (long bits = cube[w]; bits != 0 && !cubeSucc.isEmpty(); bits &= bits - 1)
+					cubeSucc = CompiledSAFA.conjoin(cubeSucc, getSuccessor(w * 64 + Long.numberOfTrailingZeros(bits), input));
+
+			for (long[] c : cubeSucc)
+				CompiledSAFA.addMinimal(next, c);
+		}
+		conf = next;
+		return !conf.isEmpty();
+	}
+
+	/**
+	 * Reads the symbols of <code>input</code> in order, stopping as soon as
+	 * the run is dead
+	 * @return false iff the run is dead
+	 * @throws TimeoutException
+	 */
+	public boolean feed(Iterable<S> input) throws TimeoutException {
+		for (S el : input)
+			if (!feed(el))
+				return false;
+		return !conf.isEmpty();
+	}
+
+	// the disjunction of the targets of the moves out of state enabled by input
+	private long[][] getSuccessor(int state, S input) throws TimeoutException {
+		if (succEpoch[state] == epoch)
+			return succ[state];
+
+		int[] guards = aut.moveGuards[state];
+		long[][] result = null;
+		List<long[]> union = null;
+		for (int i = 0; i < guards.length; i++) {
+			int g = guards[i];
+			if (guardEpoch[g] != epoch) {
+				guardValue[g] = aut.ba.HasModel(aut.guards.get(g), input);
+				guardEpoch[g] = epoch;
+			}
+			if (!guardValue[g])
+				continue;
+
+			long[][] target = aut.moveTargets[state][i];
+			if (result == null)
+				result = target;
+			else {
+				if (union == null) {
+					union = new ArrayList<long[]>();
+					for (long[] c : result)
+						CompiledSAFA.addMinimal(union, c);
+				}
+				for (long[] c : target)
+					CompiledSAFA.addMinimal(union, c);
+			}
+		}
+		if (union != null)
+			result = union.toArray(new long[0][]);
+		else if (result == null)
+			result = new long[0][];
+
+		succ[state] = result;
+		succEpoch[state] = epoch;
+		return result;
+	}
+
+	/**
+	 * @return true iff the configuration is unsatisfiable
+	 */
+	public boolean isDead() {
+		return conf.isEmpty();
+	}
+
+	/**
+	 * @return true iff the input read so far is accepted
+	 */
+	public boolean isAccepting() {
+		for (long[] cube : conf)
+			if (CompiledSAFA.isSubset(cube, aut.finalCube))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the current configuration as a disjunction of sets of states
+	 *         that must all accept the rest of the input
+	 */
+	public List<Set<Integer>> getConfiguration() {
+		List<Set<Integer>> result = new ArrayList<Set<Integer>>();
+		for (long[] cube : conf) {
+			Set<Integer> states = new HashSet<Integer>();
+			for (int w = 0; w < aut.words; w++)
+				for (long bits = cube[w]; bits != 0; bits &= bits - 1)
+					states.add(aut.stateOf[w * 64 + Long.numberOfTrailingZeros(bits)]);
+			result.add(states);
+		}
+		return Collections.unmodifiableList(result);
+	}
+}
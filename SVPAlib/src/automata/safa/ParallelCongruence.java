@@ -0,0 +1,236 @@
+package automata.safa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.safa.booleanexpression.PositiveBooleanExpression;
+import theory.BooleanAlgebra;
+import utilities.Pair;
+import utilities.Timers;
+
+/**
+ * Bisimulation up to congruence with the solver work spread over a pool.
+ * Every pair added to the worklist is handed to a worker right away, which
+ * splits the alphabet by generating models and records, for every model, the
+ * moves it enables. Workers borrow their algebra from a set of instances so
+ * that no algebra is used by two threads at once. The pairs are then taken
+ * off the worklist in the same order as
+ * {@link SAFA#checkEquivalenceOfTwoConfigurations} takes them, and the
+ * successor expressions, the relation membership and the insertions are
+ * computed on the calling thread only. The relation and the witness are the
+ * same as in the sequential check provided that all the algebras generate the
+ * same models.
+ * @param <P> set of predicates over the domain S
+ * @param <S> domain of the automaton alphabet
+ * @param <E> boolean expressions the relation is built on
+ */
+class ParallelCongruence<P, S, E extends BooleanExpression> {
+
+	// the moves out of every state of a pair enabled by model
+	private static class Step<P, S> {
+		final S model;
+		final Map<Integer, List<SAFAInputMove<P, S>>> enabled;
+
+		Step(S model, Map<Integer, List<SAFAInputMove<P, S>>> enabled) {
+			this.model = model;
+			this.enabled = enabled;
+		}
+	}
+
+	private final SAFA<P, S> aut;
+	private final BooleanExpressionFactory<E> boolexpr;
+	private final BooleanExpressionMorphism<E> coerce;
+	private final ForkJoinPool pool;
+	private final BlockingQueue<BooleanAlgebra<P, S>> idleAlgebras;
+	private final long startTime;
+	private final long timeout;
+
+	// steps of the pairs of the worklist, being computed by the workers
+	private final Map<Pair<Pair<E, E>, List<S>>, Future<List<Step<P, S>>>> pending = new IdentityHashMap<>();
+
+	private ParallelCongruence(SAFA<P, S> aut, BooleanExpressionFactory<E> boolexpr, ForkJoinPool pool,
+			Collection<? extends BooleanAlgebra<P, S>> algebras, long timeout) {
+		this.aut = aut;
+		this.boolexpr = boolexpr;
+		this.coerce = new BooleanExpressionMorphism<>((x) -> boolexpr.MkState(x), boolexpr);
+		this.pool = pool;
+		this.idleAlgebras = new LinkedBlockingQueue<BooleanAlgebra<P, S>>(algebras);
+		this.startTime = System.currentTimeMillis();
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Checks whether the configurations c1 and c2 of aut are equivalent
+	 * computing the successors of the pairs on <code>pool</code>, each worker
+	 * using one of <code>algebras</code>
+	 * @throws TimeoutException
+	 */
+	static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>> checkEquivalenceOfTwoConfigurations(
+			SAFA<P, S> aut, PositiveBooleanExpression c1, PositiveBooleanExpression c2,
+			BooleanExpressionFactory<E> boolexpr, long timeout, ForkJoinPool pool,
+			Collection<? extends BooleanAlgebra<P, S>> algebras) throws TimeoutException {
+		if (algebras.isEmpty())
+			throw new IllegalArgumentException("At least one algebra is needed");
+
+		Timers.setForCongruence();
+		Timers.startFull();
+		Timers.setTimeout(timeout);
+
+		ParallelCongruence<P, S, E> check = new ParallelCongruence<>(aut, boolexpr, pool, algebras, timeout);
+		try {
+			return check.run(c1, c2);
+		} finally {
+			for (Future<List<Step<P, S>>> f : check.pending.values())
+				f.cancel(true);
+			Timers.stopFull();
+		}
+	}
+
+	private Pair<Boolean, List<S>> run(PositiveBooleanExpression c1, PositiveBooleanExpression c2)
+			throws TimeoutException {
+		SAFARelation similar = new SATRelation();
+
+		PriorityQueue<Pair<Pair<E, E>, List<S>>> worklist = new PriorityQueue<>(
+				new SAFA.RelationComparator<>());
+
+		E leftInitial = coerce.apply(c1);
+		E rightInitial = coerce.apply(c2);
+
+		similar.add(leftInitial, rightInitial);
+		enqueue(worklist, new Pair<>(new Pair<>(leftInitial, rightInitial), new LinkedList<>()));
+		while (!worklist.isEmpty()) {
+			Timers.assertFullTO(timeout);
+			Timers.oneMoreState();
+
+			Pair<Pair<E, E>, List<S>> next = worklist.remove();
+
+			E left = next.getFirst().getFirst();
+			E right = next.getFirst().getSecond();
+			List<S> witness = next.getSecond();
+
+			for (Step<P, S> step : await(pending.remove(next))) {
+				Timers.assertFullTO(timeout);
+
+				Map<Integer, E> move = new HashMap<>();
+				for (Map.Entry<Integer, List<SAFAInputMove<P, S>>> entry : step.enabled.entrySet()) {
+					E succ = boolexpr.False();
+					for (SAFAInputMove<P, S> tr : entry.getValue())
+						succ = boolexpr.MkOr(succ, coerce.apply(tr.to));
+					move.put(entry.getKey(), succ);
+				}
+
+				Timers.startSubsumption();
+				E leftSucc = boolexpr.substitute((lit) -> move.get(lit)).apply(left);
+				E rightSucc = boolexpr.substitute((lit) -> move.get(lit)).apply(right);
+				List<S> succWitness = new LinkedList<>();
+				succWitness.addAll(witness);
+				succWitness.add(step.model);
+
+				boolean checkIfDiff = leftSucc.hasModel(aut.getFinalStates()) != rightSucc.hasModel(aut.getFinalStates());
+				Timers.stopSubsumption();
+
+				if (checkIfDiff) {
+					// leftSucc is accepting and rightSucc is rejecting or
+					// vice versa
+					return new Pair<>(false, succWitness);
+				} else {
+					Timers.startSubsumption();
+					if (!similar.isMember(leftSucc, rightSucc)) {
+						if (!similar.add(leftSucc, rightSucc)) {
+							Timers.stopSubsumption();
+							return new Pair<>(false, succWitness);
+						}
+						enqueue(worklist, new Pair<>(new Pair<>(leftSucc, rightSucc), succWitness));
+					} else {
+						Timers.oneMoreSub();
+					}
+					Timers.stopSubsumption();
+				}
+			}
+		}
+		return new Pair<>(true, null);
+	}
+
+	// adds pair to the worklist and starts computing its steps
+	private void enqueue(PriorityQueue<Pair<Pair<E, E>, List<S>>> worklist, Pair<Pair<E, E>, List<S>> pair) {
+		// the moves are read here as the SAFA is not safe to query concurrently
+		Set<Integer> states = new HashSet<>();
+		states.addAll(pair.getFirst().getFirst().getStates());
+		states.addAll(pair.getFirst().getSecond().getStates());
+		// in the order of the states, like the implicants of the sequential check
+		Map<Integer, Collection<SAFAInputMove<P, S>>> movesFrom = new LinkedHashMap<>();
+		for (Integer s : states)
+			movesFrom.put(s, new ArrayList<>(aut.getInputMovesFrom(s)));
+
+		worklist.add(pair);
+		pending.put(pair, pool.submit(() -> getSteps(movesFrom)));
+	}
+
+	// splits the alphabet into the models enabling the same moves out of the states of a pair
+	private List<Step<P, S>> getSteps(Map<Integer, Collection<SAFAInputMove<P, S>>> movesFrom)
+			throws TimeoutException, InterruptedException {
+		BooleanAlgebra<P, S> ba = idleAlgebras.take();
+		try {
+			List<Step<P, S>> steps = new ArrayList<>();
+			P guard = ba.True();
+			do {
+				if (System.currentTimeMillis() - startTime > timeout)
+					throw new TimeoutException();
+
+				S model = ba.generateWitness(guard);
+
+				P implicant = ba.True();
+				Map<Integer, List<SAFAInputMove<P, S>>> enabled = new HashMap<>();
+				for (Map.Entry<Integer, Collection<SAFAInputMove<P, S>>> entry : movesFrom.entrySet()) {
+					List<SAFAInputMove<P, S>> stateEnabled = new ArrayList<>();
+					for (SAFAInputMove<P, S> tr : entry.getValue()) {
+						if (ba.HasModel(tr.guard, model)) {
+							stateEnabled.add(tr);
+							implicant = ba.MkAnd(implicant, tr.guard);
+						} else {
+							implicant = ba.MkAnd(implicant, ba.MkNot(tr.guard));
+						}
+					}
+					enabled.put(entry.getKey(), stateEnabled);
+				}
+				steps.add(new Step<>(model, enabled));
+
+				guard = ba.MkAnd(guard, ba.MkNot(implicant));
+			} while (ba.IsSatisfiable(guard));
+			return steps;
+		} finally {
+			idleAlgebras.add(ba);
+		}
+	}
+
+	private List<Step<P, S>> await(Future<List<Step<P, S>>> steps) throws TimeoutException {
+		try {
+			return steps.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TimeoutException("Interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException)
+				throw (TimeoutException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
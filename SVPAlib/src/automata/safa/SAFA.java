@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.tuple.Triple;
@@ -402,6 +403,52 @@ public class SAFA<P, S> {
 		return isEquivalent(aut, getEmptySAFA(ba), ba, boolexpr, timeout).getFirst();
 	}
 
+	/**
+	 * Procedures deciding emptiness and inclusion: bisimulation up to
+	 * congruence, HopcroftKarp on the SFA accepting the reverse language, or
+	 * forward exploration of antichains of configurations. Reverse does not
+	 * produce counterexamples.
+	 */
+	public enum DecisionEngine {
+		Congruence, Reverse, Antichain
+	}
+
+	/**
+	 * Checks whether the SAFA aut is empty using <code>engine</code>
+	 *
+	 * @return (true, null) if it is empty, (false, w) for a word w accepted by
+	 *         <code>aut</code> otherwise
+	 * @throws TimeoutException
+	 */
+	public static <P, S> Pair<Boolean, List<S>> isEmpty(SAFA<P, S> aut, BooleanAlgebra<P, S> ba,
+			DecisionEngine engine, long timeout) throws TimeoutException {
+		return isIncluded(aut, getEmptySAFA(ba), ba, engine, timeout);
+	}
+
+	/**
+	 * Checks whether the language of laut is contained in the one of raut using
+	 * <code>engine</code>
+	 *
+	 * @return (true, null) if it is, (false, w) for a word w accepted by
+	 *         <code>laut</code> and not by <code>raut</code> otherwise
+	 * @throws TimeoutException
+	 */
+	public static <P, S> Pair<Boolean, List<S>> isIncluded(SAFA<P, S> laut, SAFA<P, S> raut,
+			BooleanAlgebra<P, S> ba, DecisionEngine engine, long timeout) throws TimeoutException {
+		switch (engine) {
+		case Congruence:
+			// laut is contained in raut iff their union is equivalent to raut
+			return isEquivalent(laut.unionWith(raut, ba), raut, ba, getBooleanExpressionFactory(), timeout);
+
+		case Reverse:
+			return new Pair<>(areReverseEquivalent(laut.unionWith(raut, ba), raut, ba, timeout), null);
+
+		case Antichain:
+			return AntichainInclusion.isIncluded(laut, raut, ba, timeout);
+		}
+		throw new IllegalArgumentException("Unknown engine " + engine);
+	}
+
 	/**
 	 * Checks whether laut and raut are equivalent using bisimulation up to
 	 * congruence.
@@ -538,6 +585,39 @@ public class SAFA<P, S> {
 		return checkEquivalenceOfTwoConfigurations(triple.getLeft(), triple.getMiddle(), triple.getRight(), ba, boolexpr, timeout);
 	}
 
+	/**
+	 * Checks whether the configurations c1 and c2 of aut are equivalent using
+	 * bisimulation up to congruence, generating the successors of the pairs
+	 * on <code>pool</code>. Each worker uses one of <code>algebras</code> at a
+	 * time, so the algebras need not be thread safe, but they must all accept
+	 * the predicates of aut. The result and the witness are the ones of
+	 * {@link #checkEquivalenceOfTwoConfigurations(SAFA, PositiveBooleanExpression, PositiveBooleanExpression, BooleanAlgebra, BooleanExpressionFactory, long)}
+	 * when the algebras generate the same models.
+	 */
+	public static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>>
+			checkEquivalenceOfTwoConfigurations(
+					SAFA<P, S> aut,
+					PositiveBooleanExpression c1,
+					PositiveBooleanExpression c2,
+					BooleanExpressionFactory<E> boolexpr, long timeout,
+					ForkJoinPool pool, Collection<? extends BooleanAlgebra<P, S>> algebras)
+					throws TimeoutException {
+		return ParallelCongruence.checkEquivalenceOfTwoConfigurations(aut, c1, c2, boolexpr, timeout, pool, algebras);
+	}
+
+	/**
+	 * Checks whether laut and raut are equivalent using bisimulation up to
+	 * congruence, generating the successors of the pairs on
+	 * <code>pool</code> with one of <code>algebras</code> per worker.
+	 */
+	public static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>> isEquivalent(SAFA<P, S> laut,
+			SAFA<P, S> raut, BooleanAlgebra<P, S> ba, BooleanExpressionFactory<E> boolexpr, long timeout,
+			ForkJoinPool pool, Collection<? extends BooleanAlgebra<P, S>> algebras) throws TimeoutException {
+		Triple<SAFA<P, S>, PositiveBooleanExpression,PositiveBooleanExpression> triple = binaryOp(laut, raut, ba, BoolOp.Union);
+		return checkEquivalenceOfTwoConfigurations(triple.getLeft(), triple.getMiddle(), triple.getRight(), boolexpr,
+				timeout, pool, algebras);
+	}
+
 	static class RelationComparator<E extends BooleanExpression, A> implements Comparator<Pair<Pair<E, E>, List<A>>> {
 		@Override
 		public int compare(Pair<Pair<E, E>, List<A>> x, Pair<Pair<E, E>, List<A>> y) {
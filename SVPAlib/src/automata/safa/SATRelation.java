@@ -1,15 +1,24 @@
 package automata.safa;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
 import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
 import org.sat4j.specs.TimeoutException;
 
+import utilities.Pair;
+
 public class SATRelation extends SAFARelation {
 	private class SATFactory extends BooleanExpressionFactory<Integer> {
 		private ISolver solver;
@@ -18,11 +27,18 @@ public class SATRelation extends SAFARelation {
 		// Hash consing
 		private HashMap<List<Integer>, Integer> andCache;
 		private HashMap<List<Integer>, Integer> orCache;
+		// name -> (true for And, false for Or; literals)
+		private HashMap<Integer, Pair<Boolean, List<Integer>>> definitions;
 
 		public SATFactory(ISolver s) {
 			solver = s;
 			andCache = new HashMap<>();
 			orCache = new HashMap<>();
+			definitions = new HashMap<>();
+			addTrueClause();
+		}
+
+		private void addTrueClause() {
 			VecInt trueClause = new VecInt();
 			trueClause.push(1);
 			unsafeAddClause(trueClause);
@@ -40,10 +56,8 @@ public class SATRelation extends SAFARelation {
 				solver.addClause(clause);
 				//System.out.println("Add clause: " + clause.toString());
 			} catch (ContradictionException ex) {
-				// should never happen
-				ex.printStackTrace();
-				System.err.println("Contradiction when adding clause: " + clause.toString());
-				System.exit(-1);
+				// should never happen: definitions are always satisfiable
+				throw new IllegalStateException("Contradiction when adding clause: " + clause.toString(), ex);
 			}
 		}
 
@@ -57,25 +71,31 @@ public class SATRelation extends SAFARelation {
 			} else {
 				int cubeName = fresh();
 				//System.out.println(cubeName + " = And " + cube.toString());
-				VecInt cubeImpliesCubeName = new VecInt();
-			
-				cubeImpliesCubeName.push(cubeName);
-				for (Integer literal : cube) {
-					// cubeName => literal
-					VecInt cubeNameImpliesLit = new VecInt();
-					cubeNameImpliesLit.push(-cubeName);
-					cubeNameImpliesLit.push(literal);
-					unsafeAddClause(cubeNameImpliesLit);
-
-					cubeImpliesCubeName.push(-literal);
-				}
-				// cube => cubeName
-				unsafeAddClause(cubeImpliesCubeName);
+				addAndDefinition(cubeName, cube);
 				andCache.put(cube, cubeName);
+				definitions.put(cubeName, new Pair<>(true, cube));
 				return cubeName;
 			}
 		}
 
+		// name <=> And cube
+		private void addAndDefinition(int cubeName, List<Integer> cube) {
+			VecInt cubeImpliesCubeName = new VecInt();
+
+			cubeImpliesCubeName.push(cubeName);
+			for (Integer literal : cube) {
+				// cubeName => literal
+				VecInt cubeNameImpliesLit = new VecInt();
+				cubeNameImpliesLit.push(-cubeName);
+				cubeNameImpliesLit.push(literal);
+				unsafeAddClause(cubeNameImpliesLit);
+
+				cubeImpliesCubeName.push(-literal);
+			}
+			// cube => cubeName
+			unsafeAddClause(cubeImpliesCubeName);
+		}
+
 		public Integer MkAnd(Integer left, Integer right) {
 			List<Integer> conjuncts = new LinkedList<>();
 			conjuncts.add(left);
@@ -93,24 +113,30 @@ public class SATRelation extends SAFARelation {
 			} else {
 				int clauseName = fresh();
 				//System.out.println(clauseName + " = Or " + clause.toString());
-				// clauseName => clause
-				VecInt clauseNameImpliesClause = new VecInt();
-				clauseNameImpliesClause.push(-clauseName);
-				for (Integer literal : clause) {
-					// literal => cubeName
-					VecInt litImpliesClauseName = new VecInt();
-
-					clauseNameImpliesClause.push(literal);
-					litImpliesClauseName.push(clauseName);
-					litImpliesClauseName.push(-literal);
-					unsafeAddClause(litImpliesClauseName);
-				}
-				unsafeAddClause(clauseNameImpliesClause);
+				addOrDefinition(clauseName, clause);
 				orCache.put(clause, clauseName);
+				definitions.put(clauseName, new Pair<>(false, clause));
 				return clauseName;
 			}
 		}
 
+		// name <=> Or clause
+		private void addOrDefinition(int clauseName, List<Integer> clause) {
+			// clauseName => clause
+			VecInt clauseNameImpliesClause = new VecInt();
+			clauseNameImpliesClause.push(-clauseName);
+			for (Integer literal : clause) {
+				// literal => cubeName
+				VecInt litImpliesClauseName = new VecInt();
+
+				clauseNameImpliesClause.push(literal);
+				litImpliesClauseName.push(clauseName);
+				litImpliesClauseName.push(-literal);
+				unsafeAddClause(litImpliesClauseName);
+			}
+			unsafeAddClause(clauseNameImpliesClause);
+		}
+
 		public Integer MkOr(Integer left, Integer right) {
 			List<Integer> disjuncts = new LinkedList<>();
 			disjuncts.add(left);
@@ -133,40 +159,173 @@ public class SATRelation extends SAFARelation {
 		public ISolver getSolver() {
 			return solver;
 		}
+
+		/**
+		 * Drops the definitions not reachable from <code>live</code> and
+		 * rebuilds the solver with the remaining ones, which keep their names
+		 * @return the set of names that survived
+		 */
+		public Set<Integer> compact(Collection<Integer> live) {
+			Set<Integer> reached = new HashSet<>();
+			LinkedList<Integer> toVisit = new LinkedList<>();
+			for (Integer p : live) {
+				toVisit.add(Math.abs(p));
+			}
+			while (!toVisit.isEmpty()) {
+				Integer name = toVisit.removeFirst();
+				if (!reached.add(name)) {
+					continue;
+				}
+				Pair<Boolean, List<Integer>> def = definitions.get(name);
+				if (def != null) {
+					for (Integer literal : def.getSecond()) {
+						toVisit.add(Math.abs(literal));
+					}
+				}
+			}
+
+			Iterator<Map.Entry<Integer, Pair<Boolean, List<Integer>>>> it = definitions.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Integer, Pair<Boolean, List<Integer>>> entry = it.next();
+				if (!reached.contains(entry.getKey())) {
+					if (entry.getValue().getFirst()) {
+						andCache.remove(entry.getValue().getSecond());
+					} else {
+						orCache.remove(entry.getValue().getSecond());
+					}
+					it.remove();
+				}
+			}
+
+			// names are never reused, so the survivors keep their identity
+			solver.reset();
+			addTrueClause();
+			for (Map.Entry<Integer, Pair<Boolean, List<Integer>>> entry : definitions.entrySet()) {
+				solver.registerLiteral(entry.getKey());
+				if (entry.getValue().getFirst()) {
+					addAndDefinition(entry.getKey(), entry.getValue().getSecond());
+				} else {
+					addOrDefinition(entry.getKey(), entry.getValue().getSecond());
+				}
+			}
+			return reached;
+		}
+
+		public int getDefinitionCount() {
+			return definitions.size();
+		}
 	}
 
+	// definitions are compacted once they outnumber this many
+	private static final int COMPACTION_THRESHOLD = 4096;
+
 	SATFactory factory;
 	BooleanExpressionMorphism<Integer> coerce;
+	// the pairs added to the relation, which are all the solver must remember
+	private List<Pair<Integer, Integer>> pairs;
+	private int nextCompaction;
+	private int compactions;
 
 	public SATRelation(ISolver s) {
 		factory = new SATFactory(s);
 		coerce = new BooleanExpressionMorphism<>((state) -> 2 * state + 2, factory);
+		pairs = new ArrayList<>();
+		nextCompaction = COMPACTION_THRESHOLD;
 	}
 
 	public SATRelation() {
 		this(SolverFactory.newDefault());
 	}
 	
-	private int mkIff(BooleanExpression p, BooleanExpression q) throws TimeoutException {
-		int pname = coerce.apply(p);
-		int qname = coerce.apply(q);
-		
-		return factory.MkOr(factory.MkAnd(pname, qname), factory.MkAnd(-pname, -qname));
+	/**
+	 * Keeps only the definitions needed by the pairs of the relation, along
+	 * with the names of the expressions built from them
+	 */
+	public void compact() {
+		List<Integer> live = new ArrayList<>();
+		for (Pair<Integer, Integer> pair : pairs) {
+			live.add(pair.getFirst());
+			live.add(pair.getSecond());
+		}
+		Set<Integer> reached = factory.compact(live);
+		// odd names above 1 are definitions, the others are constants and states
+		coerce.cache.values().removeIf((name) -> name > 1 && name % 2 == 1 && !reached.contains(name));
+		for (Pair<Integer, Integer> pair : pairs) {
+			addPair(pair.getFirst(), pair.getSecond());
+		}
+		compactions++;
 	}
-	
+
+	// compacts once the definitions have doubled since the last compaction
+	private void compactIfNeeded() {
+		if (factory.getDefinitionCount() > nextCompaction) {
+			compact();
+			nextCompaction = Math.max(COMPACTION_THRESHOLD, 2 * factory.getDefinitionCount());
+		}
+	}
+
+	/**
+	 * @return the number of And/Or definitions held by the solver
+	 */
+	public int getDefinitionCount() {
+		return factory.getDefinitionCount();
+	}
+
+	/**
+	 * @return the number of times the solver has been compacted
+	 */
+	public int getCompactions() {
+		return compactions;
+	}
+
 	public boolean isMember(BooleanExpression p, BooleanExpression q) throws TimeoutException {
-		VecInt mem = new VecInt();
-		mem.push(-mkIff(p, q));
-		return !factory.getSolver().isSatisfiable(mem, false);
+		compactIfNeeded();
+		int pname = coerce.apply(p);
+		int qname = coerce.apply(q);
+
+		// (p,q) is entailed iff neither p & !q nor !p & q is satisfiable.
+		// Using assumptions avoids defining p <=> q for every query.
+		VecInt pNotQ = new VecInt();
+		pNotQ.push(pname);
+		pNotQ.push(-qname);
+		if (factory.getSolver().isSatisfiable(pNotQ, false)) {
+			return false;
+		}
+		VecInt qNotP = new VecInt();
+		qNotP.push(-pname);
+		qNotP.push(qname);
+		return !factory.getSolver().isSatisfiable(qNotP, false);
 	}
 	
 	public boolean add(BooleanExpression p, BooleanExpression q) throws TimeoutException {
-		VecInt pair = new VecInt();
-		pair.push(mkIff(p, q));
+		compactIfNeeded();
+		int pname = coerce.apply(p);
+		int qname = coerce.apply(q);
+		if (!addPair(pname, qname)) {
+			return false;
+		}
+		pairs.add(new Pair<>(pname, qname));
+		return true;
+	}
+
+	private boolean addPair(int pname, int qname) {
+		// p <=> q as the two clauses p => q and q => p
+		VecInt pImpliesQ = new VecInt();
+		pImpliesQ.push(-pname);
+		pImpliesQ.push(qname);
+		VecInt qImpliesP = new VecInt();
+		qImpliesP.push(-qname);
+		qImpliesP.push(pname);
+		IConstr added = null;
 		try {
-			factory.solver.addClause(pair);
+			added = factory.solver.addClause(pImpliesQ);
+			factory.solver.addClause(qImpliesP);
 			return true;
 		} catch (ContradictionException e) {
+			// the solver must not keep half of a pair that was not added
+			if (added != null) {
+				factory.solver.removeConstr(added);
+			}
 			return false;
 		}
 	}
@@ -18,11 +18,15 @@ public class PositiveAnd extends PositiveBooleanExpression {
 
 	@Override
 	public boolean hasModel(Collection<Integer> elements) {
+		if (store != null)
+			return store.hasModel(slot, elements);
 		return left.hasModel(elements) && right.hasModel(elements);
 	}
 
 	@Override
 	public Set<Integer> getStates() {
+		if (store != null)
+			return store.getStates(slot);
 		Set<Integer> states = left.getStates();
 		states.addAll(right.getStates());
 		return states;
@@ -41,11 +45,15 @@ public class PositiveAnd extends PositiveBooleanExpression {
 
 	@Override
 	public <R> R apply(LatticeMorphism<BooleanExpression, R> f) {
+		if (store != null)
+			return store.apply(this, f, null);
 		return f.MkAnd(f.apply(left), f.apply(right));
 	}
 
 	@Override
 	public int getSize() {
+		if (store != null)
+			return store.getSize(slot);
 		return 1+left.getSize()+right.getSize();
 	}
 
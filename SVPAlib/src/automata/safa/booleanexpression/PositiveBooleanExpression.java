@@ -1,14 +1,32 @@
 package automata.safa.booleanexpression;
 
 import java.util.Collection;
+import java.util.Map;
 
 import automata.safa.BooleanExpression;
+import automata.safa.LatticeMorphism;
 
 public abstract class PositiveBooleanExpression extends BooleanExpression {
 
+	// the store holding the node of this expression and its slot, if any
+	PositiveExpressionStore store;
+	int slot;
 
 	@Override
 	public abstract boolean hasModel(Collection<Integer> elements);
 
+	/**
+	 * Applies <code>f</code> reusing and filling <code>cache</code> with the
+	 * results of the subexpressions, without recursion if the expression
+	 * belongs to a store
+	 */
+	public <R> R apply(LatticeMorphism<BooleanExpression, R> f, Map<BooleanExpression, R> cache) {
+		if (store != null)
+			return store.apply(this, f, cache);
+		R result = apply(f);
+		cache.put(this, result);
+		return result;
+	}
+
 	// TODO equals clone...
 }
@@ -1,18 +1,21 @@
 package automata.safa.booleanexpression;
 
 import automata.safa.BooleanExpressionFactory;
-import utilities.Memo;
-import utilities.Pair;
 
 public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<PositiveBooleanExpression> {
-	private Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression> mkAnd;
-	private Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression> mkOr;
-	private Memo<Integer,PositiveBooleanExpression> mkState;
+	// hash-conses the expressions and forgets the unreachable ones
+	private PositiveExpressionStore store;
 
 	public PositiveBooleanExpressionFactory() {
-		mkAnd = new Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression>((x) -> new PositiveAnd(x.getFirst(), x.getSecond()));
-		mkOr = new Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression>((x) -> new PositiveOr(x.getFirst(), x.getSecond()));
-		mkState = new Memo<Integer,PositiveBooleanExpression>((state) -> new PositiveId(state));
+		store = new PositiveExpressionStore();
+	}
+
+	/**
+	 * @return the store of the expressions built by this factory, e.g. for
+	 *         its node counts
+	 */
+	public PositiveExpressionStore getStore() {
+		return store;
 	}
 	
 	@Override
@@ -24,7 +27,7 @@ public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<P
 		} else if (psi instanceof PositiveTrue) {
 			return phi;
 		} else {
-			return mkAnd.apply(new Pair<>(phi, psi));
+			return store.mkAnd(phi, psi);
 		}
 	}
 	
@@ -37,13 +40,13 @@ public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<P
 		} else if (psi instanceof PositiveFalse) {
 			return phi;
 		} else {
-			return mkOr.apply(new Pair<>(phi, psi));
+			return store.mkOr(phi, psi);
 		}
 	}
 
 	@Override
 	public PositiveBooleanExpression MkState(int state) {
-		return mkState.apply(state);
+		return store.mkState(state);
 	}
 
 	@Override
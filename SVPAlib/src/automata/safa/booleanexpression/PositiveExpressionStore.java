@@ -0,0 +1,383 @@
+package automata.safa.booleanexpression;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import automata.safa.BooleanExpression;
+import automata.safa.LatticeMorphism;
+
+/**
+ * Hash-consing store of the state, conjunction and disjunction nodes of
+ * positive Boolean expressions. A node is a slot of primitive arrays holding
+ * its operator and the slots of its children, or its state, and is found
+ * through an open-addressing unique table. The store only keeps weak
+ * references to the expression objects: once an expression is unreachable
+ * its slot is freed and reused, so the store does not grow with every
+ * expression ever built. The evaluations run iteratively over the slots.
+ * Like the rest of the factory, a store is not thread safe.
+ */
+public class PositiveExpressionStore {
+
+	private static final byte ID = 0, AND = 1, OR = 2;
+
+	// unique table markers
+	private static final int EMPTY = -1, DELETED = -2;
+
+	// the node of every slot: operator, children slots or state and left = 0
+	private byte[] op;
+	private int[] left;
+	private int[] right;
+	// number of nodes of the expression as a tree, saturated at Integer.MAX_VALUE
+	private int[] size;
+	private NodeRef[] refs;
+
+	// free slots, the ones not in use above top are implicitly free
+	private int[] freeSlots;
+	private int freeCount;
+	private int top;
+
+	// open-addressing table of slots, its length is a power of 2
+	private int[] table;
+	private int tableUsed;
+
+	private final ReferenceQueue<PositiveBooleanExpression> collected = new ReferenceQueue<>();
+
+	private int liveNodes;
+	private long createdNodes;
+	private long reclaimedNodes;
+
+	private static class NodeRef extends WeakReference<PositiveBooleanExpression> {
+		final int slot;
+
+		NodeRef(PositiveBooleanExpression node, int slot, ReferenceQueue<PositiveBooleanExpression> queue) {
+			super(node, queue);
+			this.slot = slot;
+		}
+	}
+
+	public PositiveExpressionStore() {
+		int capacity = 1024;
+		op = new byte[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+		size = new int[capacity];
+		refs = new NodeRef[capacity];
+		freeSlots = new int[capacity];
+		table = new int[2 * capacity];
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * @return the state expression for <code>state</code>
+	 */
+	public PositiveBooleanExpression mkState(int state) {
+		return mk(ID, state, 0, null, null);
+	}
+
+	/**
+	 * @return the conjunction of <code>phi</code> and <code>psi</code>, which
+	 *         are neither true nor false
+	 */
+	public PositiveBooleanExpression mkAnd(PositiveBooleanExpression phi, PositiveBooleanExpression psi) {
+		if (phi.store != this || psi.store != this)
+			return new PositiveAnd(phi, psi);
+		return mk(AND, phi.slot, psi.slot, phi, psi);
+	}
+
+	/**
+	 * @return the disjunction of <code>phi</code> and <code>psi</code>, which
+	 *         are neither true nor false
+	 */
+	public PositiveBooleanExpression mkOr(PositiveBooleanExpression phi, PositiveBooleanExpression psi) {
+		if (phi.store != this || psi.store != this)
+			return new PositiveOr(phi, psi);
+		return mk(OR, phi.slot, psi.slot, phi, psi);
+	}
+
+	private PositiveBooleanExpression mk(byte o, int l, int r, PositiveBooleanExpression phi,
+			PositiveBooleanExpression psi) {
+		expunge();
+
+		int mask = table.length - 1;
+		int free = -1;
+		for (int i = hash(o, l, r) & mask;; i = (i + 1) & mask) {
+			int s = table[i];
+			if (s == EMPTY) {
+				if (free < 0)
+					free = i;
+				break;
+			}
+			if (s == DELETED) {
+				if (free < 0)
+					free = i;
+			} else if (op[s] == o && left[s] == l && right[s] == r) {
+				PositiveBooleanExpression node = refs[s].get();
+				if (node != null)
+					return node;
+				// collected but not expunged yet, give the slot a new node; its
+				// children may be new nodes in reused slots too
+				size[s] = o == ID ? 1 : saturatedSum(size[l], size[r]);
+				node = newNode(o, l, phi, psi);
+				bind(node, s);
+				return node;
+			}
+		}
+
+		int s = allocate();
+		op[s] = o;
+		left[s] = l;
+		right[s] = r;
+		size[s] = o == ID ? 1 : saturatedSum(size[l], size[r]);
+		PositiveBooleanExpression node = newNode(o, l, phi, psi);
+		bind(node, s);
+
+		if (table[free] == EMPTY)
+			tableUsed++;
+		table[free] = s;
+		liveNodes++;
+		createdNodes++;
+		if (2 * tableUsed > table.length)
+			rehash(liveNodes > table.length / 4 ? 2 * table.length : table.length);
+		return node;
+	}
+
+	private static PositiveBooleanExpression newNode(byte o, int state, PositiveBooleanExpression phi,
+			PositiveBooleanExpression psi) {
+		switch (o) {
+		case ID:
+			return new PositiveId(state);
+		case AND:
+			return new PositiveAnd(phi, psi);
+		default:
+			return new PositiveOr(phi, psi);
+		}
+	}
+
+	private void bind(PositiveBooleanExpression node, int s) {
+		node.store = this;
+		node.slot = s;
+		refs[s] = new NodeRef(node, s, collected);
+	}
+
+	private static int saturatedSum(int a, int b) {
+		long sum = 1L + a + b;
+		return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+	}
+
+	private static int hash(byte o, int l, int r) {
+		int h = o;
+		h = 31 * h + l;
+		h = 31 * h + r;
+		return h ^ (h >>> 16);
+	}
+
+	private int allocate() {
+		if (freeCount > 0)
+			return freeSlots[--freeCount];
+		if (top == op.length) {
+			int capacity = 2 * op.length;
+			op = Arrays.copyOf(op, capacity);
+			left = Arrays.copyOf(left, capacity);
+			right = Arrays.copyOf(right, capacity);
+			size = Arrays.copyOf(size, capacity);
+			refs = Arrays.copyOf(refs, capacity);
+			freeSlots = Arrays.copyOf(freeSlots, capacity);
+		}
+		return top++;
+	}
+
+	// frees the slots of the collected expressions
+	private void expunge() {
+		boolean removed = false;
+		for (NodeRef ref; (ref = (NodeRef) collected.poll()) != null;) {
+			int s = ref.slot;
+			// the slot may have been given a new node since
+			if (refs[s] != ref)
+				continue;
+
+			int mask = table.length - 1;
+			for (int i = hash(op[s], left[s], right[s]) & mask;; i = (i + 1) & mask)
+				if (table[i] == s) {
+					table[i] = DELETED;
+					break;
+				}
+			refs[s] = null;
+			freeSlots[freeCount++] = s;
+			liveNodes--;
+			reclaimedNodes++;
+			removed = true;
+		}
+		// drop the tombstones once they fill a quarter of the table
+		if (removed && 4 * (tableUsed - liveNodes) > table.length)
+			rehash(table.length);
+	}
+
+	private void rehash(int length) {
+		table = new int[length];
+		Arrays.fill(table, EMPTY);
+		int mask = length - 1;
+		for (int s = 0; s < top; s++)
+			if (refs[s] != null) {
+				int i = hash(op[s], left[s], right[s]) & mask;
+				while (table[i] != EMPTY)
+					i = (i + 1) & mask;
+				table[i] = s;
+			}
+		tableUsed = liveNodes;
+	}
+
+	// ------------------------------------------------------
+	// Evaluations
+	// ------------------------------------------------------
+
+	boolean hasModel(int root, Collection<Integer> elements) {
+		// every frame is a slot and the number of children evaluated so far
+		int[] slots = new int[16];
+		int[] phases = new int[16];
+		int depth = 0;
+		slots[0] = root;
+		boolean value = false;
+
+		while (depth >= 0) {
+			int s = slots[depth];
+			if (op[s] == ID) {
+				value = elements.contains(left[s]);
+				depth--;
+				continue;
+			}
+
+			int phase = phases[depth];
+			// the value of the left child decides when it is false in a conjunction or true in a disjunction
+			if (phase == 2 || (phase == 1 && value == (op[s] == OR))) {
+				depth--;
+				continue;
+			}
+
+			phases[depth]++;
+			if (++depth == slots.length) {
+				slots = Arrays.copyOf(slots, 2 * depth);
+				phases = Arrays.copyOf(phases, 2 * depth);
+			}
+			slots[depth] = phase == 0 ? left[s] : right[s];
+			phases[depth] = 0;
+		}
+		return value;
+	}
+
+	Set<Integer> getStates(int root) {
+		Set<Integer> states = new HashSet<>();
+		Set<Integer> visited = new HashSet<>();
+		int[] stack = new int[16];
+		int depth = 0;
+		stack[0] = root;
+		while (depth >= 0) {
+			int s = stack[depth--];
+			if (op[s] == ID) {
+				states.add(left[s]);
+			} else if (visited.add(s)) {
+				if (depth + 3 > stack.length)
+					stack = Arrays.copyOf(stack, 2 * stack.length);
+				stack[++depth] = right[s];
+				stack[++depth] = left[s];
+			}
+		}
+		return states;
+	}
+
+	int getSize(int root) {
+		return size[root];
+	}
+
+	/**
+	 * Applies <code>f</code> to the expression of <code>root</code> bottom
+	 * up, looking up and storing the results of the subexpressions in
+	 * <code>cache</code>
+	 */
+	<R> R apply(PositiveBooleanExpression root, LatticeMorphism<BooleanExpression, R> f,
+			Map<BooleanExpression, R> cache) {
+		Map<Integer, R> results = new HashMap<>();
+		// the stack holds the nodes themselves: f may build expressions of
+		// this store, which must not reuse the slots of the ones being visited
+		PositiveBooleanExpression[] stack = new PositiveBooleanExpression[16];
+		int depth = 0;
+		stack[0] = root;
+		while (depth >= 0) {
+			PositiveBooleanExpression node = stack[depth];
+			int s = node.slot;
+			if (results.containsKey(s)) {
+				depth--;
+				continue;
+			}
+
+			if (cache != null && cache.containsKey(node)) {
+				results.put(s, cache.get(node));
+				depth--;
+				continue;
+			}
+
+			R result;
+			if (op[s] == ID) {
+				result = f.apply(left[s]);
+			} else {
+				boolean hasLeft = results.containsKey(left[s]);
+				boolean hasRight = results.containsKey(right[s]);
+				if (!hasLeft || !hasRight) {
+					if (depth + 3 > stack.length)
+						stack = Arrays.copyOf(stack, 2 * stack.length);
+					if (!hasRight)
+						stack[++depth] = refs[right[s]].get();
+					if (!hasLeft)
+						stack[++depth] = refs[left[s]].get();
+					continue;
+				}
+				result = op[s] == AND ? f.MkAnd(results.get(left[s]), results.get(right[s]))
+						: f.MkOr(results.get(left[s]), results.get(right[s]));
+			}
+			results.put(s, result);
+			if (cache != null)
+				cache.put(node, result);
+			stack[depth--] = null;
+		}
+		return results.get(root.slot);
+	}
+
+	// ------------------------------------------------------
+	// Metrics
+	// ------------------------------------------------------
+
+	/**
+	 * @return the number of nodes whose expression may still be reachable
+	 */
+	public int getLiveNodeCount() {
+		expunge();
+		return liveNodes;
+	}
+
+	/**
+	 * @return the number of nodes created since the store was built
+	 */
+	public long getCreatedNodeCount() {
+		return createdNodes;
+	}
+
+	/**
+	 * @return the number of nodes freed since the store was built
+	 */
+	public long getReclaimedNodeCount() {
+		expunge();
+		return reclaimedNodes;
+	}
+
+	/**
+	 * @return the number of slots allocated
+	 */
+	public int getCapacity() {
+		return op.length;
+	}
+}
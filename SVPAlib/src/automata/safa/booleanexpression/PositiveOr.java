@@ -20,11 +20,15 @@ public class PositiveOr extends PositiveBooleanExpression {
 
 	@Override
 	public boolean hasModel(Collection<Integer> elements) {
+		if (store != null)
+			return store.hasModel(slot, elements);
 		return left.hasModel(elements) || right.hasModel(elements);
 	}
 
 	@Override
 	public Set<Integer> getStates() {
+		if (store != null)
+			return store.getStates(slot);
 		Set<Integer> states = left.getStates();
 		states.addAll(right.getStates());
 		return states;
@@ -39,6 +43,8 @@ public class PositiveOr extends PositiveBooleanExpression {
 
 	@Override
 	public <R> R apply(LatticeMorphism<BooleanExpression, R> f) {
+		if (store != null)
+			return store.apply(this, f, null);
 		return f.MkOr(f.apply(left), f.apply(right));
 	}
 
@@ -48,6 +54,8 @@ public class PositiveOr extends PositiveBooleanExpression {
 	
 	@Override
 	public int getSize() {
+		if (store != null)
+			return store.getSize(slot);
 		return 1+left.getSize()+right.getSize();
 	}
 }
@@ -8,12 +8,18 @@ package automata.sra;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.sat4j.specs.TimeoutException;
 
 
 import theory.BooleanAlgebra;
+import theory.UncheckedTimeoutException;
 import utilities.*;
 
 /**
@@ -50,8 +56,20 @@ public class SRA<P, S> {
     private Integer maxStateId;
 	private Integer transitionCount;
 
+	// Bumped by every change to the automaton, invalidates the cached data below
+	private int modCount;
+	// Analysis contexts by the other automaton they cover, which SRA compares
+	// by identity; an entry goes away with its automaton
+	private WeakHashMap<SRA<P, S>, AnalysisContext<P, S>> analysisContexts;
+	// Single-valued and total single-valued equivalents for formsAlgebra
+	private SRA<P, S> singleValuedForm;
+	private SRA<P, S> totalSingleValuedForm;
+	private SingleValuedView<P, S> singleValuedView;
+	private BooleanAlgebra<P, S> formsAlgebra;
+
 	public void setIsDet(boolean b) {
 		isDeterministic = b;
+		invalidateCaches();
 	}
 
 	/**
@@ -120,10 +138,10 @@ public class SRA<P, S> {
 	}
 
     /**
-     * @return the register list used by the automaton
+     * @return a copy of the register list used by the automaton
      */
     public LinkedList<S> getRegisters() {
-        return registers;
+        return new LinkedList<S>(registers);
     }
 
 	// ------------------------------------------------------
@@ -283,6 +301,16 @@ public class SRA<P, S> {
 		return aut;
 	}
 
+	// Drops the analysis contexts and single-valued forms built so far, and
+	// invalidates the contexts of other automata covering this one
+	private void invalidateCaches() {
+		modCount++;
+		analysisContexts = null;
+		singleValuedForm = null;
+		totalSingleValuedForm = null;
+		singleValuedView = null;
+	}
+
 	/**
 	 * Adds a transition to the SRA.
 	 *
@@ -292,6 +320,7 @@ public class SRA<P, S> {
 		if (skipSatCheck || transition.isSatisfiable(ba)) {
 
 			transitionCount++;
+			invalidateCaches();
 
 			if (transition.from > maxStateId)
 				maxStateId = transition.from;
@@ -395,8 +424,8 @@ public class SRA<P, S> {
 	 * @throws TimeoutException 
 	 */
 	public boolean accepts(List<S> input, BooleanAlgebra<P, S> ba) throws TimeoutException {
-		Collection<Configuration> currConf = new LinkedList<>();
-		currConf.add(new Configuration(initialState, new LinkedList<>(registers)));
+		Collection<SRAConfiguration<S>> currConf = new LinkedList<>();
+		currConf.add(SRAConfiguration.of(initialState, registers));
 
 		for (S el : input) {
 			currConf = getNextConfigurations(currConf, el, ba);
@@ -458,10 +487,10 @@ public class SRA<P, S> {
 	}
 
 	/**
-	 * Returns the set of states
+	 * Returns a read-only view of the set of states
 	 */
 	public Collection<Integer> getStates() {
-        return states;
+        return Collections.unmodifiableCollection(states);
     }
 
 	/**
@@ -472,10 +501,10 @@ public class SRA<P, S> {
     }
 
 	/**
-	 * Returns the set of final states
+	 * Returns a read-only view of the set of final states
 	 */
 	public Collection<Integer> getFinalStates() {
-        return finalStates;
+        return Collections.unmodifiableCollection(finalStates);
     }
 
     /**
@@ -487,39 +516,11 @@ public class SRA<P, S> {
 		return nonFin;
 	}
 
-	private class Configuration {
-		private Integer state;
-		private LinkedList<S> regValues;
-
-		public Configuration(Integer state, LinkedList<S> regValues) {
-			this.state = state;
-			this.regValues = regValues;
-		}
-
-		public String toString() {
-			return "(" + state + "," + regValues + ")";
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (this == o) return true;
-			if (o == null || getClass() != o.getClass()) return false;
-			Configuration that = (Configuration) o;
-			return Objects.equals(state, that.state) &&
-					Objects.equals(regValues, that.regValues);
-		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hash(state, regValues);
-		}
-	}
-
 	/**
 	 * @return true if the set <code>conf</code> contains an initial state
 	 */
-	public boolean isInitialConfiguration(Collection<Configuration> conf) {
-		for (Configuration c: conf)
+	public boolean isInitialConfiguration(Collection<SRAConfiguration<S>> conf) {
+		for (SRAConfiguration<S> c: conf)
 			if (isInitialState(c.state))
 				return true;
 		return false;
@@ -535,8 +536,8 @@ public class SRA<P, S> {
 	/**
 	 * @return true if <code>conf</code> contains a final state
 	 */
-	public boolean isFinalConfiguration(Collection<Configuration> conf) {
-		for (Configuration c: conf)
+	public boolean isFinalConfiguration(Collection<SRAConfiguration<S>> conf) {
+		for (SRAConfiguration<S> c: conf)
 			if (isFinalState(c.state))
 				return true;
 		return false;
@@ -549,19 +550,14 @@ public class SRA<P, S> {
 		return getFinalStates().contains(state);
 	}
 
-	protected Collection<Configuration> getNextConfigurations(Collection<Configuration> currConf,
+	protected Collection<SRAConfiguration<S>> getNextConfigurations(Collection<SRAConfiguration<S>> currConf,
 															  S inputElement, BooleanAlgebra<P, S> ba) throws TimeoutException {
-		Collection<Configuration> nextConfs = new HashSet<>();
+		Collection<SRAConfiguration<S>> nextConfs = new HashSet<>();
 
-		for (Configuration c: currConf) {
-			for (SRAMove<P, S> t : getMovesFrom(c.state)) {
-				if (t.hasModel(inputElement, ba, c.regValues)) {
-					LinkedList<S> updatedReg = new LinkedList<>(c.regValues);
-					for (Integer index : t.U)
-						updatedReg.set(index, inputElement);
-
-					nextConfs.add(new Configuration(t.to, updatedReg));
-				}
+		for (SRAConfiguration<S> c: currConf) {
+			for (SRAMove<P, S> t : getTransitionsFrom(c.state)) {
+				if (t.hasModel(inputElement, ba, c))
+					nextConfs.add(c.next(t.to, t.U, inputElement));
 			}
 		}
 
@@ -644,51 +640,219 @@ public class SRA<P, S> {
 	}
 
 	/**
-	 * Encapsulates normal SRA state
+	 * Predicates, minterms and initial register abstractions shared by the
+	 * decision procedures on a group of SRAs. Predicates and minterms are
+	 * numbered by their position in <code>predicates</code> and
+	 * <code>minterms</code>, and a register abstraction maps every register
+	 * to the id of the minterm of its content, -1 if the register is empty.
+	 * The context is valid as long as none of the SRAs it was built from
+	 * changes.
 	 */
-	static class NormSRAState<P> {
-		private Pair<Integer, HashMap<Integer, MinTerm<P>>> data;
+	static class AnalysisContext<P, S> {
+		private final BooleanAlgebra<P, S> ba;
+		// weak, so that the context of a pair does not keep the other automaton alive
+		private final List<WeakReference<SRA<P, S>>> sources;
+		private final int[] sourceVersions;
+
+		private final ArrayList<P> predicates;
+		private final HashMap<P, Integer> predicateIds;
+		private final ArrayList<MinTerm<P>> minterms;
+		// mintermsOf[p] lists, in increasing order, the minterms where predicate p is non-negated
+		private final int[][] mintermsOf;
+		// minterms of the conjunctions added by addConjunction
+		private final ConcurrentHashMap<P, int[]> conjunctionMinterms = new ConcurrentHashMap<>();
+
+		AnalysisContext(List<SRA<P, S>> sources, BooleanAlgebra<P, S> ba, long timeout) {
+			this.ba = ba;
+			this.sources = new ArrayList<>();
+			sourceVersions = new int[sources.size()];
+
+			// Guards of the moves and atoms of the initial register values
+			HashSet<P> predicatesSet = new HashSet<>();
+			for (int i = 0; i < sources.size(); i++) {
+				SRA<P, S> aut = sources.get(i);
+				this.sources.add(new WeakReference<>(aut));
+				sourceVersions[i] = aut.modCount;
+				predicatesSet.addAll(aut.getAllPredicates(timeout));
+
+				for (S regVal : aut.registers)
+					if (regVal != null)
+						predicatesSet.add(ba.MkAtom(regVal));
+			}
 
-		NormSRAState(Integer stateID, HashMap<Integer, MinTerm<P>> regAbs) {
-			data = new Pair(stateID, regAbs);
+			predicates = new ArrayList<>(predicatesSet);
+			predicateIds = new HashMap<>();
+			for (int p = 0; p < predicates.size(); p++)
+				predicateIds.put(predicates.get(p), p);
+
+			minterms = new ArrayList<>();
+			for (Pair<P, ArrayList<Integer>> minBA : ba.GetMinterms(predicates))
+				minterms.add(new MinTerm<>(minBA.first, minBA.second));
+
+			int[] counts = new int[predicates.size()];
+			for (MinTerm<P> mint : minterms)
+				for (int p = 0; p < predicates.size(); p++)
+					if (mint.getBitVector().get(p) == 1)
+						counts[p]++;
+
+			mintermsOf = new int[predicates.size()][];
+			for (int p = 0; p < predicates.size(); p++) {
+				mintermsOf[p] = new int[counts[p]];
+				counts[p] = 0;
+			}
+
+			for (int m = 0; m < minterms.size(); m++)
+				for (int p = 0; p < predicates.size(); p++)
+					if (minterms.get(m).getBitVector().get(p) == 1)
+						mintermsOf[p][counts[p]++] = m;
+		}
+
+		/**
+		 * @return true iff the context was built for <code>ba</code> and none
+		 *         of its automata changed since
+		 */
+		boolean isValidFor(BooleanAlgebra<P, S> ba) {
+			if (this.ba != ba)
+				return false;
+
+			for (int i = 0; i < sources.size(); i++) {
+				SRA<P, S> aut = sources.get(i).get();
+				if (aut == null || aut.modCount != sourceVersions[i])
+					return false;
+			}
+
+			return true;
+		}
+
+		int getMintermCount() {
+			return minterms.size();
+		}
+
+		P getPredicate(int minterm) {
+			return minterms.get(minterm).getPredicate();
+		}
+
+		/**
+		 * @return the ids of the minterms where <code>predicate</code> is
+		 *         non-negated, in increasing order
+		 */
+		int[] getMintermsOf(P predicate) {
+			Integer p = predicateIds.get(predicate);
+			return p != null ? mintermsOf[p] : conjunctionMinterms.get(predicate);
+		}
+
+		/**
+		 * Makes <code>conjunction</code>, the conjunction of the predicates
+		 * <code>pred1</code> and <code>pred2</code> of the context, known to
+		 * the context. Its minterms are the ones the two predicates share.
+		 */
+		void addConjunction(P conjunction, P pred1, P pred2) {
+			if (predicateIds.containsKey(conjunction) || conjunctionMinterms.containsKey(conjunction))
+				return;
+
+			int[] minterms1 = getMintermsOf(pred1);
+			int[] minterms2 = getMintermsOf(pred2);
+			int[] shared = new int[Math.min(minterms1.length, minterms2.length)];
+			int count = 0;
+
+			for (int i = 0, j = 0; i < minterms1.length && j < minterms2.length;) {
+				if (minterms1[i] < minterms2[j])
+					i++;
+				else if (minterms1[i] > minterms2[j])
+					j++;
+				else {
+					shared[count++] = minterms1[i];
+					i++;
+					j++;
+				}
+			}
+
+			conjunctionMinterms.putIfAbsent(conjunction, Arrays.copyOf(shared, count));
+		}
+
+		/**
+		 * @return the register abstraction of the initial register values of
+		 *         <code>aut</code>
+		 */
+		int[] getInitialRegAbs(SRA<P, S> aut) {
+			return getInitialRegAbs(aut.registers);
+		}
+
+		/**
+		 * @return the register abstraction of <code>registers</code>, whose
+		 *         non-empty values are among the initial register values of
+		 *         the automata of the context
+		 */
+		int[] getInitialRegAbs(List<S> registers) {
+			int[] initRegAbs = new int[registers.size()];
+			int r = 0;
+
+			for (S regVal : registers) {
+				if (regVal == null)
+					initRegAbs[r] = -1;
+				else
+					initRegAbs[r] = getMintermsOf(ba.MkAtom(regVal))[0]; // There is only 1 minterm for an atom
+
+				r++;
+			}
+
+			return initRegAbs;
+		}
+	}
+
+	/**
+	 * Encapsulates normal SRA state
+	 */
+	static class NormSRAState {
+		private final Integer stateId;
+		private final int[] regAbs;
+		private final int hash;
+
+		NormSRAState(Integer stateID, int[] regAbs) {
+			this.stateId = stateID;
+			this.regAbs = regAbs;
+			this.hash = 31 * stateID.hashCode() + Arrays.hashCode(regAbs);
 		}
 
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) return true;
 			if (o == null || getClass() != o.getClass()) return false;
-			NormSRAState<?> that = (NormSRAState<?>) o;
-			return Objects.equals(data, that.data);
+			NormSRAState that = (NormSRAState) o;
+			return hash == that.hash && stateId.equals(that.stateId) && Arrays.equals(regAbs, that.regAbs);
 		}
 
 		@Override
 		public int hashCode() {
-			return Objects.hash(data);
+			return hash;
 		}
 
 		@Override
 		public String toString() {
-			return "<" +  getStateId() + " , " + getRegAbs() + ">";
+			return "<" +  getStateId() + " , " + Arrays.toString(regAbs) + ">";
 		}
 
 		Integer getStateId() {
-			return data.first;
+			return stateId;
 		}
 
-		HashMap<Integer, MinTerm<P>> getRegAbs() {
-			return data.second;
+		/**
+		 * @return the minterm ids of the registers, must not be modified
+		 */
+		int[] getRegAbs() {
+			return regAbs;
 		}
 
 
 	}
 
-	protected static class NormSRAMove<P> {
-		public NormSRAState<P> from;
-		public NormSRAState<P> to;
-		public MinTerm<P> guard;
+	protected static class NormSRAMove {
+		public NormSRAState from;
+		public NormSRAState to;
+		public int guard;
 		public Integer register;
 
-		public NormSRAMove(NormSRAState<P> from, NormSRAState<P> to, MinTerm<P> guard, Integer register) {
+		public NormSRAMove(NormSRAState from, NormSRAState to, int guard, Integer register) {
 			this.from = from;
 			this.to = to;
 			this.guard = guard;
@@ -696,53 +860,62 @@ public class SRA<P, S> {
 		}
 	}
 
-	protected static class NormSRACheckMove<P> extends NormSRAMove<P> {
+	protected static class NormSRACheckMove extends NormSRAMove {
 
-		public NormSRACheckMove(NormSRAState<P> from, NormSRAState<P> to, MinTerm<P> guard, Integer register) {
+		public NormSRACheckMove(NormSRAState from, NormSRAState to, int guard, Integer register) {
 			super(from, to, guard, register);
 		}
 
 	}
 
-	protected static class NormSRAFreshMove<P> extends NormSRAMove<P> {
+	protected static class NormSRAFreshMove extends NormSRAMove {
 
-		public NormSRAFreshMove(NormSRAState<P> from, NormSRAState<P> to, MinTerm<P> guard, Integer register) {
+		public NormSRAFreshMove(NormSRAState from, NormSRAState to, int guard, Integer register) {
 			super(from, to, guard, register);
 		}
 
 	}
 
 	/**
-	 * Encapsulates a reduced bisimulation triple
+	 * Encapsulates a reduced bisimulation triple. The register map sends
+	 * every register of the first SRA to the register of the second SRA
+	 * holding the same value, -1 if there is none.
 	 */
 	protected  static class NormSimTriple<P> {
-		Triple<NormSRAState<P>, NormSRAState<P>, HashMap<Integer, Integer>> data;
+		private final NormSRAState state1;
+		private final NormSRAState state2;
+		private final int[] regMap;
 		NormSimTriple<P> previousTriple;
 		P predicateLeadingTo;
 		String bisimCase;
 
-		NormSimTriple(NormSRAState<P> NormState1,
-					  NormSRAState<P> NormState2,
-					  HashMap<Integer, Integer> regMap,
+		NormSimTriple(NormSRAState NormState1,
+					  NormSRAState NormState2,
+					  int[] regMap,
 					  NormSimTriple<P> previousTriple,
 					  P predicateLeadingTo,
 					  String bisimCase){
-			data = new Triple<>(NormState1, NormState2, regMap);
+			this.state1 = NormState1;
+			this.state2 = NormState2;
+			this.regMap = regMap;
 			this.previousTriple = previousTriple;
 			this.predicateLeadingTo = predicateLeadingTo;
 			this.bisimCase = bisimCase;
 		}
 
-		NormSRAState<P> getState1() {
-			return data.first;
+		NormSRAState getState1() {
+			return state1;
 		}
 
-		NormSRAState<P> getState2() {
-			return data.second;
+		NormSRAState getState2() {
+			return state2;
 		}
 
-		HashMap<Integer, Integer> getRegMap(){
-			return data.third;
+		/**
+		 * @return the register map, must not be modified
+		 */
+		int[] getRegMap(){
+			return regMap;
 		}
 
 		@Override
@@ -750,12 +923,12 @@ public class SRA<P, S> {
 			if (this == o) return true;
 			if (o == null || getClass() != o.getClass()) return false;
 			NormSimTriple<?> that = (NormSimTriple<?>) o;
-			return Objects.equals(data, that.data);
+			return state1.equals(that.state1) && state2.equals(that.state2) && Arrays.equals(regMap, that.regMap);
 		}
 
 		@Override
 		public int hashCode() {
-			return Objects.hash(data);
+			return 31 * (31 * state1.hashCode() + state2.hashCode()) + Arrays.hashCode(regMap);
 		}
 
 		@Override
@@ -764,54 +937,393 @@ public class SRA<P, S> {
 			if (predicateLeadingTo != null)
 				result = "---" + predicateLeadingTo + "--->";
 
-			result = result + "[ " + data.first + ", " + data.second + ", " + data.third + "] (case" + bisimCase +")";
+			result = result + "[ " + state1 + ", " + state2 + ", " + Arrays.toString(regMap) + "] (case" + bisimCase +")";
 			return result;
 		}
 	}
 
+	/**
+	 * Compact encoding of a reduced bisimulation triple: the ids of its two
+	 * normalised states followed by its register map
+	 */
+	private static final class SimKey {
+		private final int[] code;
+		private final int hash;
+
+		SimKey(int[] code) {
+			this.code = code;
+			this.hash = Arrays.hashCode(code);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof SimKey)) return false;
+			SimKey that = (SimKey) o;
+			return hash == that.hash && Arrays.equals(code, that.code);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Position where a triple was first found by the simulation search: the
+	 * BFS layer, the index of the parent in its layer and the index among the
+	 * successors of the parent. Of the positions found concurrently the
+	 * smallest one wins, so the order of every layer does not depend on the
+	 * scheduling.
+	 */
+	private static final class Discovery {
+		final int layer;
+		final int parent;
+		final int child;
+
+		Discovery(int layer, int parent, int child) {
+			this.layer = layer;
+			this.parent = parent;
+			this.child = child;
+		}
+
+		boolean precedes(Discovery that) {
+			if (layer != that.layer)
+				return layer < that.layer;
+			if (parent != that.parent)
+				return parent < that.parent;
+			return child < that.child;
+		}
+
+		static Discovery first(Discovery d1, Discovery d2) {
+			return d2.precedes(d1) ? d2 : d1;
+		}
+	}
+
+	/**
+	 * Synchronised visit of two single-valued SRAs over reduced bisimulation
+	 * triples. Each BFS layer is split among the workers of a fork/join pool,
+	 * which share the normalised moves and the set of discovered triples.
+	 * The first triple that cannot be simulated stops the workers that only
+	 * hold later triples of its layer, and the triple with the smallest index
+	 * is reported, so the outcome does not depend on the scheduling.
+	 */
+	private static class SimulationSearch<P, S> {
+		private final SRA<P, S> aut1;
+		private final SRA<P, S> aut2;
+		private final BooleanAlgebra<P, S> ba;
+		private final AnalysisContext<P, S> context;
+		private final boolean bisimulation;
+
+		// Moves by source state, read before the visit since the getters of SRA fill the move maps lazily
+		private final HashMap<Integer, Collection<SRAMove<P, S>>> aut1MovesFrom;
+		private final HashMap<Integer, Collection<SRAMove<P, S>>> aut2MovesFrom;
+		// Outgoing normalised moves, generated once per normalised state
+		private final ConcurrentHashMap<NormSRAState, List<NormSRAMove>> aut1NormOut = new ConcurrentHashMap<>();
+		private final ConcurrentHashMap<NormSRAState, List<NormSRAMove>> aut2NormOut = new ConcurrentHashMap<>();
+		// Ids of the normalised states used by the compact triple encoding
+		private final ConcurrentHashMap<NormSRAState, Integer> normStateIds = new ConcurrentHashMap<>();
+		private final AtomicInteger nextNormStateId = new AtomicInteger();
+		// First position of every triple discovered so far
+		private final ConcurrentHashMap<SimKey, Discovery> discovered = new ConcurrentHashMap<>();
+
+		// Smallest index of a triple of the current layer that cannot be simulated
+		private final AtomicInteger failedAt = new AtomicInteger(Integer.MAX_VALUE);
+		private NormSimTriple<P> failure;
+
+		SimulationSearch(SRA<P, S> aut1, SRA<P, S> aut2, BooleanAlgebra<P, S> ba, AnalysisContext<P, S> context,
+						 boolean bisimulation) {
+			this.aut1 = aut1;
+			this.aut2 = aut2;
+			this.ba = ba;
+			this.context = context;
+			this.bisimulation = bisimulation;
+			aut1MovesFrom = getMovesByState(aut1);
+			aut2MovesFrom = getMovesByState(aut2);
+		}
+
+		private static <P, S> HashMap<Integer, Collection<SRAMove<P, S>>> getMovesByState(SRA<P, S> aut) {
+			HashMap<Integer, Collection<SRAMove<P, S>>> movesFrom = new HashMap<>();
+
+			for (Integer state : aut.states)
+				movesFrom.put(state, aut.getMovesFrom(state));
+
+			return movesFrom;
+		}
+
+		/**
+		 * Visits the triples reachable from <code>initTriple</code>, on
+		 * <code>pool</code> or on the calling thread if <code>pool</code> is
+		 * null
+		 * @return true iff every reachable triple can be simulated
+		 */
+		boolean run(NormSimTriple<P> initTriple, ForkJoinPool pool, long timeout) throws TimeoutException {
+			long startTime = System.currentTimeMillis();
+
+			List<NormSimTriple<P>> layer = Collections.singletonList(initTriple);
+			discovered.put(getKey(initTriple), new Discovery(0, 0, 0));
+
+			for (int layerIndex = 1; !layer.isEmpty(); layerIndex++) {
+				LayerVisit visit = new LayerVisit(layer, layerIndex);
+
+				try {
+					if (pool == null)
+						visit.visitRange(0, layer.size());
+					else
+						pool.invoke(visit.new RangeTask(0, layer.size()));
+				} catch (UncheckedTimeoutException e) {
+					throw e.getCause();
+				}
+
+				int failedIndex = failedAt.get();
+				if (failedIndex != Integer.MAX_VALUE) {
+					failure = layer.get(failedIndex);
+					return false;
+				}
+
+				if (System.currentTimeMillis() - startTime > timeout)
+					throw new TimeoutException();
+
+				layer = visit.getNextLayer();
+			}
+
+			return true;
+		}
+
+		/**
+		 * @return the triple that could not be simulated, null if there is none
+		 */
+		NormSimTriple<P> getFailure() {
+			return failure;
+		}
+
+		private SimKey getKey(NormSimTriple<P> triple) {
+			int[] regMap = triple.getRegMap();
+			int[] code = new int[regMap.length + 2];
+
+			code[0] = getNormStateId(triple.getState1());
+			code[1] = getNormStateId(triple.getState2());
+			System.arraycopy(regMap, 0, code, 2, regMap.length);
+
+			return new SimKey(code);
+		}
+
+		private int getNormStateId(NormSRAState state) {
+			Integer id = normStateIds.get(state);
+
+			if (id == null) {
+				Integer newId = nextNormStateId.getAndIncrement();
+				id = normStateIds.putIfAbsent(state, newId);
+				if (id == null)
+					id = newId;
+			}
+
+			return id;
+		}
+
+		private List<NormSRAMove> getNormMovesFrom(HashMap<Integer, Collection<SRAMove<P, S>>> movesFrom,
+												   ConcurrentHashMap<NormSRAState, List<NormSRAMove>> normOut,
+												   NormSRAState state) {
+			List<NormSRAMove> normMoves = normOut.get(state);
+
+			if (normMoves == null) {
+				normMoves = new LinkedList<>();
+
+				for (SRAMove<P, S> move : movesFrom.get(state.getStateId()))
+					normMoves.addAll(toNormSRAMoves(ba, context, state.getRegAbs(), move, state));
+
+				List<NormSRAMove> existing = normOut.putIfAbsent(state, normMoves);
+				if (existing != null)
+					normMoves = existing;
+			}
+
+			return normMoves;
+		}
+
+		/**
+		 * @return the triples that must be simulated after
+		 *         <code>currentTriple</code>, null if it cannot be simulated
+		 */
+		private List<NormSimTriple<P>> getSuccessors(NormSimTriple<P> currentTriple) {
+			NormSRAState aut1NormState = currentTriple.getState1();
+			NormSRAState aut2NormState = currentTriple.getState2();
+			boolean isFinal1 = aut1.finalStates.contains(aut1NormState.getStateId());
+			boolean isFinal2 = aut2.finalStates.contains(aut2NormState.getStateId());
+
+			if (isFinal1 && !isFinal2)
+				return null;
+
+			if (bisimulation && isFinal2 && !isFinal1)
+				return null;
+
+			int[] currentRegAbs1 = aut1NormState.getRegAbs();
+			int[] currentRegAbs2 = aut2NormState.getRegAbs();
+
+			List<NormSRAMove> normMovesFromCurrent1 = getNormMovesFrom(aut1MovesFrom, aut1NormOut, aut1NormState);
+
+			if (!bisimulation && normMovesFromCurrent1.isEmpty()) // we don't need to find matching moves from aut2
+				return Collections.emptyList();
+
+			List<NormSRAMove> normMovesFromCurrent2 = getNormMovesFrom(aut2MovesFrom, aut2NormOut, aut2NormState);
+
+			// Get new similarity triples
+			LinkedList<NormSimTriple<P>> newTriples = normSimSucc(ba, context, normMovesFromCurrent1,
+					normMovesFromCurrent2, currentTriple.getRegMap(), currentRegAbs1, currentRegAbs2);
+
+			if (newTriples == null)
+				return null;
+
+			if (bisimulation && !normMovesFromCurrent2.isEmpty()) {
+				LinkedList<NormSimTriple<P>> invTriples = normSimSucc(ba, context, normMovesFromCurrent2,
+						normMovesFromCurrent1, getRegMapInv(currentTriple.getRegMap(), currentRegAbs2.length),
+						currentRegAbs2, currentRegAbs1);
+
+				if (invTriples == null)
+					return null;
+			}
+
+			for (NormSimTriple<P> triple : newTriples)
+				triple.previousTriple = currentTriple;
+
+			return newTriples;
+		}
+
+		/**
+		 * Visit of one BFS layer
+		 */
+		private class LayerVisit {
+			private final List<NormSimTriple<P>> layer;
+			private final int layerIndex;
+			// successors of every triple of the layer, with their keys
+			private final List<List<NormSimTriple<P>>> successors;
+			private final List<List<SimKey>> successorKeys;
+
+			LayerVisit(List<NormSimTriple<P>> layer, int layerIndex) {
+				this.layer = layer;
+				this.layerIndex = layerIndex;
+				successors = new ArrayList<>(Collections.nCopies(layer.size(), (List<NormSimTriple<P>>) null));
+				successorKeys = new ArrayList<>(Collections.nCopies(layer.size(), (List<SimKey>) null));
+			}
+
+			void visitRange(int from, int to) {
+				for (int i = from; i < to; i++) {
+					// a triple with a smaller index already failed
+					if (i > failedAt.get())
+						return;
+
+					List<NormSimTriple<P>> next = getSuccessors(layer.get(i));
+
+					if (next == null) {
+						failedAt.accumulateAndGet(i, Math::min);
+						return;
+					}
+
+					List<SimKey> keys = new ArrayList<>(next.size());
+					int child = 0;
+					for (NormSimTriple<P> triple : next) {
+						SimKey key = getKey(triple);
+						discovered.merge(key, new Discovery(layerIndex, i, child++), Discovery::first);
+						keys.add(key);
+					}
+
+					// distinct indexes, so the lists can be filled concurrently
+					successors.set(i, next);
+					successorKeys.set(i, keys);
+				}
+			}
+
+			/**
+			 * @return the triples first discovered in this layer, ordered by
+			 *         their position
+			 */
+			List<NormSimTriple<P>> getNextLayer() {
+				List<NormSimTriple<P>> nextLayer = new ArrayList<>();
+
+				for (int i = 0; i < layer.size(); i++) {
+					List<NormSimTriple<P>> next = successors.get(i);
+					List<SimKey> keys = successorKeys.get(i);
+
+					for (int child = 0; child < next.size(); child++) {
+						Discovery d = discovered.get(keys.get(child));
+						if (d.layer == layerIndex && d.parent == i && d.child == child)
+							nextLayer.add(next.get(child));
+					}
+				}
+
+				return nextLayer;
+			}
+
+			/**
+			 * Visits a range of the layer, splitting it among idle workers
+			 */
+			private class RangeTask extends RecursiveAction {
+				private static final long serialVersionUID = 1L;
+				private static final int THRESHOLD = 8;
+
+				private final int from;
+				private final int to;
+
+				RangeTask(int from, int to) {
+					this.from = from;
+					this.to = to;
+				}
+
+				@Override
+				protected void compute() {
+					if (from > failedAt.get())
+						return;
+
+					if (to - from <= THRESHOLD) {
+						visitRange(from, to);
+						return;
+					}
+
+					int mid = (from + to) >>> 1;
+					invokeAll(new RangeTask(from, mid), new RangeTask(mid, to));
+				}
+			}
+		}
+	}
+
 
 
 	/**
 	 * Breaks down a SRA move into minterms.
 	 * Only for single-valued SRAs
-	 * @return a LinkedList of <code>NormSRAMove<P></></code>
+	 * @return a LinkedList of <code>NormSRAMove</code>
 	 */
-	private static <P, S> LinkedList<NormSRAMove<P>> toNormSRAMoves(BooleanAlgebra<P, S> ba,
-																  HashMap<Integer, MinTerm<P>> regAbs,
-																  HashMap<P, LinkedList<MinTerm<P>>> mintermsForPredicate,
-																  SRAMove<P, S> move,
-																  NormSRAState<P> from) {
+	private static <P, S> LinkedList<NormSRAMove> toNormSRAMoves(BooleanAlgebra<P, S> ba,
+																AnalysisContext<P, S> context,
+																int[] regAbs,
+																SRAMove<P, S> move,
+																NormSRAState from) {
 
-		LinkedList<NormSRAMove<P>> normMoves = new LinkedList<>();
-		LinkedList<MinTerm<P>> minterms = mintermsForPredicate.get(move.guard);
+		LinkedList<NormSRAMove> normMoves = new LinkedList<>();
+		int[] minterms = context.getMintermsOf(move.guard);
 
 		if (move instanceof SRACheckMove) {
             Integer register = move.E.iterator().next();
-			MinTerm<P> registerMintInAbs = regAbs.get(register);
+			int registerMintInAbs = regAbs[register];
 
-			if (registerMintInAbs != null && minterms.contains(registerMintInAbs)) {
-				HashMap<Integer, MinTerm<P>> newRegAbs = new HashMap<>(regAbs);
-				NormSRAState<P> targetState = new NormSRAState<>(move.to, newRegAbs);
+			if (registerMintInAbs >= 0 && Arrays.binarySearch(minterms, registerMintInAbs) >= 0) {
+				NormSRAState targetState = new NormSRAState(move.to, regAbs);
 
-				normMoves.add(new NormSRACheckMove<>(from, targetState, registerMintInAbs, register));
+				normMoves.add(new NormSRACheckMove(from, targetState, registerMintInAbs, register));
 			}
 		}
 		else {
-			for (MinTerm<P> mint: minterms) {
+			for (int mint: minterms) {
 				Integer neededWitnessesForMint = 1;
 
-				for (Integer r: regAbs.keySet()) {
-					MinTerm<P> regMint = regAbs.get(r);
-
-					if (regMint != null && regMint.equals(mint))
+				for (int regMint: regAbs)
+					if (regMint == mint)
 						neededWitnessesForMint++;
-				}
 
-				if (ba.hasNDistinctWitnesses(mint.getPredicate(), neededWitnessesForMint)) {
-					HashMap<Integer, MinTerm<P>> newRegAbs = new HashMap<>(regAbs);
-					newRegAbs.put(move.registerIndex, mint);
-					NormSRAState<P> targetState = new NormSRAState<>(move.to, newRegAbs);
-					normMoves.add(new NormSRAFreshMove<>(from, targetState, mint, move.registerIndex));
+				if (ba.hasNDistinctWitnesses(context.getPredicate(mint), neededWitnessesForMint)) {
+					int[] newRegAbs = regAbs.clone();
+					newRegAbs[move.registerIndex] = mint;
+					NormSRAState targetState = new NormSRAState(move.to, newRegAbs);
+					normMoves.add(new NormSRAFreshMove(from, targetState, mint, move.registerIndex));
 				}
 			}
 		}
@@ -820,62 +1332,93 @@ public class SRA<P, S> {
 	}
 
 	/**
-	 * Compute minterms where predicates are non-negated.
+	 * @return the analysis context covering <code>this</code> and
+	 *         <code>aut</code>, computed once until one of them changes
 	 */
-	private static <P> HashMap<P, LinkedList<MinTerm<P>>> getMintermsForPredicates(List<P> allPredicates, List<MinTerm<P>> minTerms) {
-		HashMap<P, LinkedList<MinTerm<P>>> mintermsForPredicates = new HashMap<>();
+	AnalysisContext<P, S> getAnalysisContext(SRA<P, S> aut, BooleanAlgebra<P, S> ba, long timeout) {
+		if (analysisContexts == null)
+			analysisContexts = new WeakHashMap<>();
 
-		for (P pred: allPredicates) {
-			LinkedList<MinTerm<P>> mintList = new LinkedList<>();
+		AnalysisContext<P, S> context = analysisContexts.get(aut);
 
-			Integer predicateIndex = allPredicates.indexOf(pred);
+		if (context == null || !context.isValidFor(ba)) {
+			List<SRA<P, S>> sources = new ArrayList<>();
+			sources.add(this);
+			if (aut != this)
+				sources.add(aut);
 
-			for (MinTerm<P> mint: minTerms) {
-				if (mint.getBitVector().get(predicateIndex) == 1) // pred is non-negated in mint
-					mintList.add(mint);
-			}
+			context = new AnalysisContext<>(sources, ba, timeout);
+			analysisContexts.put(aut, context);
+		}
 
-			mintermsForPredicates.put(pred, mintList);
+		return context;
+	}
+
+	/**
+	 * @return the single-valued view of <code>this</code>, whose translated
+	 *         part is kept until <code>this</code> changes
+	 */
+	private SingleValuedView<P, S> getSingleValuedView(BooleanAlgebra<P, S> ba) {
+		if (isSingleValued)
+			return new SingleValuedView<>(asLazySRA(), ba);
+
+		resetFormsIfNotFor(ba);
+
+		if (singleValuedView == null)
+			singleValuedView = new SingleValuedView<>(asLazySRA(), ba);
+
+		return singleValuedView;
+	}
+
+	// Drops the single-valued forms when they were built for another algebra
+	private void resetFormsIfNotFor(BooleanAlgebra<P, S> ba) {
+		if (formsAlgebra != ba) {
+			singleValuedForm = null;
+			totalSingleValuedForm = null;
+			singleValuedView = null;
+			formsAlgebra = ba;
 		}
+	}
 
-		return mintermsForPredicates;
+	/**
+	 * @return a single-valued SRA equivalent to <code>this</code>, computed
+	 *         once until <code>this</code> changes. The result must not be
+	 *         modified.
+	 */
+	private SRA<P, S> getSingleValuedForm(BooleanAlgebra<P, S> ba, long timeout) throws TimeoutException {
+		if (isSingleValued)
+			return this;
+
+		resetFormsIfNotFor(ba);
+
+		if (singleValuedForm == null)
+			singleValuedForm = toSingleValuedSRA(ba, timeout);
+
+		return singleValuedForm;
 	}
 
 	/**
-	 * Create initial register abstraction
+	 * @return a total single-valued SRA equivalent to <code>this</code>,
+	 *         computed once until <code>this</code> changes. The result must
+	 *         not be modified.
 	 */
-	private HashMap<Integer, MinTerm<P>> getInitialRegAbs(List<P> allPredicates,
-														  BooleanAlgebra<P,S> ba,
-														  //LinkedList<P> initAssAtoms,
-														  HashMap<P, LinkedList<MinTerm<P>>> mintermsForPredicates) {
-		HashMap<Integer, MinTerm<P>> initRegAb = new HashMap<>();
+	private SRA<P, S> getTotalSingleValuedForm(BooleanAlgebra<P, S> ba, long timeout) throws TimeoutException {
+		if (isSingleValued && isTotal)
+			return this;
 
-		//Integer notNullInd = 0;
+		resetFormsIfNotFor(ba);
 
-		for (Integer r = 0; r < registers.size(); r++) {
-			S regVal = registers.get(r);
+		if (totalSingleValuedForm == null) {
+			// toSingleValuedSRA copies a single-valued SRA, so completing the copy leaves the original as is
+			SRA<P, S> aut = getSingleValuedForm(ba, timeout).toSingleValuedSRA(ba, timeout);
 
-			if (regVal == null)
-				initRegAb.put(r, null);
-			else
-			{
-				P atom = ba.MkAtom(regVal);
-				initRegAb.put(r, mintermsForPredicates.get(atom).get(0));
-			}
+			if (!aut.isTotal)
+				aut.complete(ba);
+
+			totalSingleValuedForm = aut;
 		}
-//		for (Integer r = 0; r < registers.size(); r++) {
-//			// P atom = allPredicates.get(initValAtomsIndex + r);
-//
-//			if (registers.get(r) == null)
-//				initRegAb.put(r, null);
-//			else {
-//				P atom = initAssAtoms.get(notNullInd);
-//				initRegAb.put(r, mintermsForPredicates.get(atom).get(0)); // There should be only 1 minterm for atom
-//				notNullInd++;
-//			}
-//		}
 
-		return initRegAb;
+		return totalSingleValuedForm;
 	}
 
 	/**
@@ -888,65 +1431,72 @@ public class SRA<P, S> {
 		if (aut.isEmpty)
 			return true;
 
-		if (!aut.isSingleValued)
-			aut = aut.toSingleValuedSRA(ba, timeout);
-
-
-		// Compute all minterms
-		HashSet<P> allPredicatesSet = aut.getAllPredicates(timeout);
-		// LinkedList<P> initAssAtoms = new LinkedList<>();
+		// The single-valued translation is only built as far as the visit goes
+		SingleValuedView<P, S> view = aut.getSingleValuedView(ba);
 
+		// Predicates and minterms are computed once per automaton, the
+		// translation only uses the guards and register values of aut
+		AnalysisContext<P, S> context = aut.getAnalysisContext(aut, ba, timeout);
 
-		for (S regVal : aut.registers) // Add initial register values to predicates
-			if (regVal != null) {
-				P atom = ba.MkAtom(regVal);
-
-				//if (!allPredicates.contains(atom))
-				allPredicatesSet.add(ba.MkAtom(regVal));
-
-				//initAssAtoms.add(atom);
-			}
-
-		ArrayList<P> allPredicates = new ArrayList<>(allPredicatesSet);
-		LinkedList<MinTerm<P>> minTerms = new LinkedList<>();
+		return isLanguageEmpty(view, context, ba, startTime, timeout);
+	}
 
-		for(Pair<P, ArrayList<Integer>> minBA: ba.GetMinterms(allPredicates))
-			minTerms.add(new MinTerm<>(minBA.first, minBA.second));
+	/**
+	 * Checks if the intersection of <code>aut1</code> and <code>aut2</code> is
+	 * empty without building it: the product and its single-valued translation
+	 * are only computed as far as the search for a final state goes.
+	 * @return true if empty, false if not empty.
+	 */
+	public static <P, S> boolean isIntersectionEmpty(SRA<P, S> aut1, SRA<P, S> aut2, BooleanAlgebra<P, S> ba, long timeout)
+			throws TimeoutException {
+		long startTime = System.currentTimeMillis();
 
+		if (aut1.isEmpty || aut2.isEmpty)
+			return true;
 
-		HashMap<P, LinkedList<MinTerm<P>>> mintermsForPredicates = getMintermsForPredicates(allPredicates, minTerms);
-		HashMap<Integer, MinTerm<P>> initRegAbs = aut.getInitialRegAbs(allPredicates, ba, mintermsForPredicates);
+		// The guards of the product are conjunctions of guards of aut1 and aut2
+		AnalysisContext<P, S> context = aut1.getAnalysisContext(aut2, ba, timeout);
+		LazyProduct<P, S> product = new LazyProduct<>(aut1, aut2, ba, context);
 
+		return isLanguageEmpty(new SingleValuedView<>(product, ba), context, ba, startTime, timeout);
+	}
 
+	// Searches the normalisation of the single-valued view for a final state
+	private static <P, S> boolean isLanguageEmpty(LazySRA<P, S> view, AnalysisContext<P, S> context,
+			BooleanAlgebra<P, S> ba, long startTime, long timeout) throws TimeoutException {
 
 		// Create initial state of the normalised SRA
-		NormSRAState<P> initNormState = new NormSRAState<>(aut.initialState, initRegAbs);
+		NormSRAState initNormState = new NormSRAState(view.getInitialState(), context.getInitialRegAbs(view.getRegisters()));
 
 		// reached contains the product states (p,theta) we discovered and maps
 		// them to a stateId
-		HashMap<NormSRAState<P>, Integer> reached = new HashMap<>();
+		HashMap<NormSRAState, Integer> reached = new HashMap<>();
 		// toVisit contains the product states we still have not explored
-		LinkedList<NormSRAState<P>> toVisit = new LinkedList<>();
+		LinkedList<NormSRAState> toVisit = new LinkedList<>();
 
 		toVisit.add(initNormState);
 		reached.put(initNormState, 0);
 
 		while (!toVisit.isEmpty()) {
-			NormSRAState<P> currentState = toVisit.removeFirst();
+			NormSRAState currentState = toVisit.removeFirst();
 
-			if (aut.finalStates.contains(currentState.getStateId()))
+			if (view.isFinalState(currentState.getStateId()))
 				return false;
 
 
-			for (SRAMove<P, S> move: aut.getMovesFrom(currentState.getStateId())) {
-				LinkedList<NormSRAMove<P>> normMoves =
-						toNormSRAMoves(ba, currentState.getRegAbs(), mintermsForPredicates, move, null);
+			for (SRAMove<P, S> move: view.getMovesFrom(currentState.getStateId())) {
+				LinkedList<NormSRAMove> normMoves;
+				try {
+					normMoves = toNormSRAMoves(ba, context, currentState.getRegAbs(), move, null);
+				} catch (UncheckedTimeoutException e) {
+					throw e.getCause();
+				}
 
 				if (System.currentTimeMillis() - startTime > timeout)
 					throw new TimeoutException();
 
-				for (NormSRAMove<P> normMove: normMoves) {
-					NormSRAState<P> nextState = normMove.to;
+				for (NormSRAMove normMove: normMoves) {
+					NormSRAState nextState = normMove.to;
 
 					getStateId(nextState, reached, toVisit);
 				}
@@ -958,11 +1508,13 @@ public class SRA<P, S> {
 		return true;
 	}
 
-	private static HashMap<Integer, Integer> getRegMapInv(HashMap<Integer, Integer> regMap) {
-		HashMap<Integer, Integer> invRegMap = new HashMap<>();
+	private static int[] getRegMapInv(int[] regMap, int regNum2) {
+		int[] invRegMap = new int[regNum2];
+		Arrays.fill(invRegMap, -1);
 
-		for (Integer r: regMap.keySet())
-			invRegMap.put(regMap.get(r), r);
+		for (int r = 0; r < regMap.length; r++)
+			if (regMap[r] >= 0)
+				invRegMap[regMap[r]] = r;
 
 		return invRegMap;
 	}
@@ -1060,6 +1612,7 @@ public class SRA<P, S> {
 		}
 
 		isTotal = true;
+		invalidateCaches();
 	}
 
 	/**
@@ -1067,22 +1620,8 @@ public class SRA<P, S> {
 	 * @return true of it is equivalent, false if not.
 	 */
 	public boolean isLanguageEquivalent(SRA<P,S> aut, BooleanAlgebra<P,S> ba, long timeout) throws TimeoutException {
-		SRA<P,S> aut1 = (SRA<P,S>) this.clone();
-		SRA<P,S> aut2 = (SRA<P,S>) aut.clone();
-
-		if (!aut1.isSingleValued)
-			aut1 = aut1.toSingleValuedSRA(ba, timeout);
-
-		if (!aut2.isSingleValued)
-			aut2 = aut2.toSingleValuedSRA(ba, timeout);
-
-
-		if (!aut1.isTotal)
-			aut1.complete(ba);
-
-		if (!aut2.isTotal)
-			aut2.complete(ba);
-
+		SRA<P,S> aut1 = getTotalSingleValuedForm(ba, timeout);
+		SRA<P,S> aut2 = aut.getTotalSingleValuedForm(ba, timeout);
 
 		return canSimulate(aut1, aut2, ba, true, timeout);
 	}
@@ -1092,22 +1631,8 @@ public class SRA<P, S> {
 	 * @return true of it includes the language, false if not.
 	 */
 	public boolean languageIncludes(SRA<P,S> aut, BooleanAlgebra<P,S> ba, long timeout) throws TimeoutException {
-		SRA<P,S> aut1 = (SRA<P,S>) this.clone();
-		SRA<P,S> aut2 = (SRA<P,S>) aut.clone();
-
-		if (!aut1.isSingleValued)
-			aut1 = aut1.toSingleValuedSRA(ba, timeout);
-
-		if (!aut2.isSingleValued)
-			aut2 = aut2.toSingleValuedSRA(ba, timeout);
-
-
-		if (!aut1.isTotal)
-			aut1.complete(ba);
-
-		if (!aut2.isTotal)
-			aut2.complete(ba);
-
+		SRA<P,S> aut1 = getTotalSingleValuedForm(ba, timeout);
+		SRA<P,S> aut2 = aut.getTotalSingleValuedForm(ba, timeout);
 
 		return canSimulate(aut2, aut1, ba, false, timeout);
 	}
@@ -1125,37 +1650,16 @@ public class SRA<P, S> {
 	 * @return a Normal SRA
 	 */
 	public SRA<P,S> toNormSRA(BooleanAlgebra<P,S> ba, Long timeout) {
-		// Initial register map
-		HashSet<P> allPredicatesSet = getAllPredicates(timeout);
-
-		// Integer initValPos1 = allPredicates.size();
-
-		for (P predicate: getAllPredicates(timeout))
-			allPredicatesSet.add(predicate);
-
-		for (S regVal: registers) // Add initial register values of aut1 to predicates
-			if (regVal != null) {
-				P atom = ba.MkAtom(regVal);
-				allPredicatesSet.add(atom);
-			}
-
-		ArrayList<P> allPredicates = new ArrayList<>(allPredicatesSet);
-		LinkedList<MinTerm<P>> minTerms = new LinkedList<>();
-
-		for(Pair<P, ArrayList<Integer>> minBA: ba.GetMinterms(allPredicates))
-			minTerms.add(new MinTerm<>(minBA.first, minBA.second));
-
-
-		HashMap<P, LinkedList<MinTerm<P>>> mintermsForPredicates = getMintermsForPredicates(allPredicates, minTerms);
-		HashMap<Integer, MinTerm<P>> initRegAbs = getInitialRegAbs(allPredicates, ba, mintermsForPredicates);
+		// Initial register abstraction
+		AnalysisContext<P, S> context = getAnalysisContext(this, ba, timeout);
 
 		// reached contains the triples we have already discovered and maps them to a stateId
-		HashMap<NormSRAState<P>, Integer> reached = new HashMap<>();
+		HashMap<NormSRAState, Integer> reached = new HashMap<>();
 		// toVisit contains the triples we have not explored yet
-		LinkedList<NormSRAState<P>> toVisit = new LinkedList<>();
+		LinkedList<NormSRAState> toVisit = new LinkedList<>();
 		// LinkedList<NormSimTriple<P>> toVisitInv = new LinkedList<>();
 
-		NormSRAState<P> initState = new NormSRAState<>(initialState, initRegAbs);
+		NormSRAState initState = new NormSRAState(initialState, context.getInitialRegAbs(this));
 
 		// TODO: build normalised SRA and check if there is something wrong in it
 		return null;
@@ -1167,6 +1671,17 @@ public class SRA<P, S> {
 	 */
 	public static <P, S> boolean canSimulate(SRA<P,S> aut1, SRA<P,S> aut2, BooleanAlgebra<P, S> ba, boolean bisimulation, long timeout)
 			throws TimeoutException {
+		return canSimulate(aut1, aut2, ba, bisimulation, timeout, null);
+	}
+
+	/**
+	 * Checks if <code>aut1</code> can simulate <code>aut2</code>, checks for bisimulation if <code>bisimulation</code> is set to true.
+	 * The triples of every BFS layer are visited in parallel on <code>pool</code>, or on the calling
+	 * thread if <code>pool</code> is null. The algebra <code>ba</code> must be safe to use from several threads.
+	 * @return true if it simulates, false otherwise.
+	 */
+	public static <P, S> boolean canSimulate(SRA<P,S> aut1, SRA<P,S> aut2, BooleanAlgebra<P, S> ba, boolean bisimulation, long timeout,
+											 ForkJoinPool pool) throws TimeoutException {
 
 		if (aut1.isEmpty) {
 			if (bisimulation && !aut2.isEmpty)
@@ -1177,230 +1692,90 @@ public class SRA<P, S> {
 
 
 		if(!aut1.isSingleValued)
-			aut1 = aut1.toSingleValuedSRA(ba, timeout);
+			aut1 = aut1.getSingleValuedForm(ba, timeout);
 
 		if(!aut2.isSingleValued)
-			aut2 = aut2.toSingleValuedSRA(ba, timeout);
+			aut2 = aut2.getSingleValuedForm(ba, timeout);
 
 
 		// Implement synchronised visit
 
 		// Initial register map
-		HashMap<Integer, Integer> initRegMap = new HashMap<>();
-		HashMap<Integer, Integer> initRegMapInv = new HashMap<>();
+		int[] initRegMap = new int[aut1.registers.size()];
+		Arrays.fill(initRegMap, -1);
 
 		for (Integer r1 = 0; r1 < aut1.registers.size(); r1++) {
 			for (Integer r2 = 0; r2 < aut2.registers.size(); r2++) {
 				S r1Content = aut1.registers.get(r1);
 				S r2Content = aut2.registers.get(r2);
 
-				if (r1Content != null && r1Content.equals(r2Content)) {
-					initRegMap.put(r1, r2);
-					initRegMapInv.put(r2, r1);
-				}
+				if (r1Content != null && r1Content.equals(r2Content))
+					initRegMap[r1] = r2;
 			}
 		}
 
-		// Get all predicates for both SRA
-		HashSet<P> allPredicatesSet = aut1.getAllPredicates(timeout);
-
-		// Integer initValPos1 = allPredicates.size();
-
-		for (P predicate: aut2.getAllPredicates(timeout))
-				allPredicatesSet.add(predicate);
-
-		for (S regVal: aut1.registers) // Add initial register values of aut1 to predicates
-			if (regVal != null) {
-				P atom = ba.MkAtom(regVal);
-				allPredicatesSet.add(atom);
-			}
-
-		// Integer initValPos2 = allPredicates.size();
-
-		for (S regVal: aut2.registers) // Add initial register values of aut2 to predicates
-			if (regVal != null) {
-				P atom = ba.MkAtom(regVal);
-				allPredicatesSet.add(ba.MkAtom(regVal));
-			}
-
-
-		// Compute minterms
-		ArrayList<P> allPredicates = new ArrayList<>(allPredicatesSet);
-		LinkedList<MinTerm<P>> minTerms = new LinkedList<>();
-
-		for(Pair<P, ArrayList<Integer>> minBA: ba.GetMinterms(allPredicates))
-			minTerms.add(new MinTerm<>(minBA.first, minBA.second));
-
-
-		HashMap<P, LinkedList<MinTerm<P>>> mintermsForPredicates = getMintermsForPredicates(allPredicates, minTerms);
-		HashMap<Integer, MinTerm<P>> initRegAbs1 = aut1.getInitialRegAbs(allPredicates, ba, mintermsForPredicates);
-		HashMap<Integer, MinTerm<P>> initRegAbs2 = aut2.getInitialRegAbs(allPredicates, ba, mintermsForPredicates);
-
-
+		// Predicates and minterms of both SRAs, computed once per pair of automata
+		AnalysisContext<P, S> context = aut1.getAnalysisContext(aut2, ba, timeout);
 
 		// Create initial triples
-		NormSRAState<P> initNormState1 = new NormSRAState<>(aut1.initialState, initRegAbs1);
-		NormSRAState<P> initNormState2 = new NormSRAState<>(aut2.initialState, initRegAbs2);
+		NormSRAState initNormState1 = new NormSRAState(aut1.initialState, context.getInitialRegAbs(aut1));
+		NormSRAState initNormState2 = new NormSRAState(aut2.initialState, context.getInitialRegAbs(aut2));
 
 		NormSimTriple<P> initTriple = new NormSimTriple<>(initNormState1, initNormState2, initRegMap,
 				null, null, null);
 
-		// reached contains the triples we have already discovered and maps them to a stateId
-		HashMap<NormSimTriple<P>, Integer> reached = new HashMap<>();
-		// toVisit contains the triples we have not explored yet
-		LinkedList<NormSimTriple<P>> toVisit = new LinkedList<>();
-		// LinkedList<NormSimTriple<P>> toVisitInv = new LinkedList<>();
-
-		toVisit.add(initTriple);
-		// toVisitInv.add()
-		reached.put(initTriple, 0);
-
-
-
-		// Keep track of outgoing normalised transitions that have already been generated
-		HashMap<NormSRAState<P>, LinkedList<NormSRAMove<P>>> aut1NormOut = new HashMap<>();
-		HashMap<NormSRAState<P>, LinkedList<NormSRAMove<P>>> aut2NormOut = new HashMap<>();
-
-
-		while (!toVisit.isEmpty()) {
-			NormSimTriple<P> currentTriple = toVisit.removeLast(); // BFS visit
-
-			NormSRAState<P> aut1NormState = currentTriple.getState1();
-			NormSRAState<P> aut2NormState = currentTriple.getState2();
-			HashMap<Integer, Integer> regMap = currentTriple.getRegMap();
-
-			if (aut1.finalStates.contains(aut1NormState.getStateId()) &&
-					!aut2.finalStates.contains(aut2NormState.getStateId())) {
-//				printTriples(currentTriple);
-				return false;
-			}
-
-
-			if (bisimulation)
-				if (aut2.finalStates.contains(aut2NormState.getStateId()) &&
-						!aut1.finalStates.contains(aut1NormState.getStateId())) {
-
-//					printTriples(currentTriple);
-					return false;
-				}
-
-
-			// int currentStateID = reached.get(currentTriple);
-
-			HashMap<Integer, MinTerm<P>> currentRegAbs1 = aut1NormState.getRegAbs();
-			HashMap<Integer, MinTerm<P>> currentRegAbs2 = aut2NormState.getRegAbs();
-
-			// Compute all the normalised moves from aut1NormState and aut2NormState
-			LinkedList<NormSRAMove<P>> normMovesFromCurrent1;
-			LinkedList<NormSRAMove<P>> normMovesFromCurrent2;
-
-			if (aut1NormOut.containsKey(aut1NormState))
-				normMovesFromCurrent1 = aut1NormOut.get(aut1NormState);
-			else {
-				normMovesFromCurrent1 = new LinkedList<>();
-
-				for (SRAMove<P, S> move : aut1.getMovesFrom(aut1NormState.getStateId())) {
-					LinkedList<NormSRAMove<P>> partialNormMoves = toNormSRAMoves(ba, currentRegAbs1, mintermsForPredicates,
-							move, aut1NormState);
-
-					normMovesFromCurrent1.addAll(partialNormMoves);
-				}
-
-				aut1NormOut.put(aut1NormState, normMovesFromCurrent1);
-			}
-
-			if (!bisimulation && normMovesFromCurrent1.isEmpty()) // we don't need to find matching moves from aut2
-				continue;
-
-			if (aut2NormOut.containsKey(aut2NormState))
-				normMovesFromCurrent2 = aut2NormOut.get(aut2NormState);
-			else {
-				normMovesFromCurrent2 = new LinkedList<>();
-
-				for (SRAMove<P, S> move : aut2.getMovesFrom(aut2NormState.getStateId())) {
-					LinkedList<NormSRAMove<P>> partialNormMoves = toNormSRAMoves(ba, currentRegAbs2, mintermsForPredicates,
-							move, aut2NormState);
-
-					normMovesFromCurrent2.addAll(partialNormMoves);
-				}
-
-				aut2NormOut.put(aut2NormState, normMovesFromCurrent2);
-			}
-
-			// Get new similarity triples
-			LinkedList<NormSimTriple<P>> newTriples = normSimSucc(ba, normMovesFromCurrent1, normMovesFromCurrent2,
-					regMap, currentRegAbs1, currentRegAbs2);
-
-			if (newTriples == null) {
-//				printTriples(currentTriple);
-				return false;
-			}
-
-			if (bisimulation) {
-				if (normMovesFromCurrent2.isEmpty()) // we don't need to find matching moves from aut1
-					continue;
-
-				LinkedList<NormSimTriple<P>> invTriples = normSimSucc(ba, normMovesFromCurrent2, normMovesFromCurrent1,
-						getRegMapInv(regMap), currentRegAbs2, currentRegAbs1);
-
-				if (invTriples == null) {
-//					printTriples(currentTriple);
-					return false;
-				}
-			}
-
-			for (NormSimTriple<P> triple : newTriples) {
-				triple.previousTriple = currentTriple;
-				getStateId(triple, reached, toVisit);
-			}
+		SimulationSearch<P, S> search = new SimulationSearch<>(aut1, aut2, ba, context, bisimulation);
 
+		if (!search.run(initTriple, pool, timeout)) {
+//			printTriples(search.getFailure());
+			return false;
 		}
 
-
 		return true;
 	}
 
-	private static HashMap<Integer, Integer> updateRegMap(HashMap<Integer, Integer> regMap, Integer r1, Integer r2) {
-		HashMap<Integer, Integer> newRegMap = new HashMap<>(regMap);
+	private static int[] updateRegMap(int[] regMap, Integer r1, Integer r2) {
+		int[] newRegMap = regMap.clone();
 
 		// First remove pair (x, move2.register)
-		for (Integer r: newRegMap.keySet()) {
-			if (newRegMap.get(r).equals(r2)) {
-				newRegMap.remove(r);
+		for (int r = 0; r < newRegMap.length; r++) {
+			if (newRegMap[r] == r2) {
+				newRegMap[r] = -1;
 				break;
 			}
 		}
 
-		newRegMap.put(r1, r2);
+		newRegMap[r1] = r2;
 		return newRegMap;
 
 	}
 
 	// Returns all reduced bisimulation triples that need to be checked in subsequent steps
 	private static <P, S> LinkedList<NormSimTriple<P>> normSimSucc(BooleanAlgebra<P, S> ba,
-															   	   LinkedList<NormSRAMove<P>> normMoves1,
-																   LinkedList<NormSRAMove<P>> normMoves2,
-																   HashMap<Integer, Integer> regMap,
-																   HashMap<Integer, MinTerm<P>> regAbs1,
-																   HashMap<Integer, MinTerm<P>> regAbs2) {
+																   AnalysisContext<P, S> context,
+															   	   List<NormSRAMove> normMoves1,
+																   List<NormSRAMove> normMoves2,
+																   int[] regMap,
+																   int[] regAbs1,
+																   int[] regAbs2) {
 
 		LinkedList<NormSimTriple<P>> nextTriples = new LinkedList<>();
 		String bisimCase = "";
 
-		for (NormSRAMove<P> move1: normMoves1) {
+		for (NormSRAMove move1: normMoves1) {
 			if (move1 instanceof NormSRACheckMove) {
 				Integer r1 = move1.register;
-				NormSRAMove<P> matchingMove = null;
-				HashMap<Integer, Integer> newRegMap = null;
+				NormSRAMove matchingMove = null;
+				int[] newRegMap = null;
 
 				// Case 1(a) in the paper
-				if (regMap.containsKey(r1)){
-					Integer r2 = regMap.get(r1);
+				if (regMap[r1] >= 0){
+					Integer r2 = regMap[r1];
 
-					for (NormSRAMove<P> move2: normMoves2) {
+					for (NormSRAMove move2: normMoves2) {
 						if (move2 instanceof NormSRACheckMove && move2.register.equals(r2)) { // Guard is the same by construction
 							matchingMove = move2;
-							newRegMap = new HashMap<>(regMap);
+							newRegMap = regMap;
 							bisimCase = "read(" + r1 + ") - read(" + r2 +")";
 							break;
 						}
@@ -1408,8 +1783,8 @@ public class SRA<P, S> {
 				}
 				else {
 					// Case 1(b) in the paper
-					for (NormSRAMove<P> move2: normMoves2) {
-						if (move2 instanceof NormSRAFreshMove && move2.guard.equals(move1.guard)) {
+					for (NormSRAMove move2: normMoves2) {
+						if (move2 instanceof NormSRAFreshMove && move2.guard == move1.guard) {
 							matchingMove = move2;
 							newRegMap = updateRegMap(regMap, move1.register, move2.register);
 							bisimCase = "read(" + move1.register + ") - fresh(" + move2.register +")";
@@ -1422,27 +1797,28 @@ public class SRA<P, S> {
 					return null;
 
 				nextTriples.add(new NormSimTriple<>(move1.to, matchingMove.to, newRegMap, null,
-						move1.guard.getPredicate(), bisimCase));
+						context.getPredicate(move1.guard), bisimCase));
 			}
 			else {
 				// Case 2(a)
 
 				// regInImg(r) = false iff r not in img(regMap)
-				Integer regNum2 = regAbs2.size();
+				Integer regNum2 = regAbs2.length;
 				boolean[] regInImg = new boolean[regNum2];
 				Arrays.fill(regInImg, false);
 
-				for (Integer r1: regMap.keySet())
-					regInImg[regMap.get(r1)] = true;
+				for (int r2: regMap)
+					if (r2 >= 0)
+						regInImg[r2] = true;
 
 				for (int r2 = 0; r2 < regNum2; r2++) {
-					MinTerm<P> mintermForReg = regAbs2.get(r2);
+					int mintermForReg = regAbs2[r2];
 
-					if (mintermForReg != null && !regInImg[r2] && mintermForReg.equals(move1.guard)) {
-						NormSRAMove<P> matchingMove = null;
-						HashMap<Integer, Integer> newRegMap = null;
+					if (mintermForReg >= 0 && !regInImg[r2] && mintermForReg == move1.guard) {
+						NormSRAMove matchingMove = null;
+						int[] newRegMap = null;
 
-						for (NormSRAMove<P> move2: normMoves2) {
+						for (NormSRAMove move2: normMoves2) {
 							if (move2 instanceof NormSRACheckMove && move2.register.equals(r2)) { // Guard must be the same
 								matchingMove = move2;
 								newRegMap = updateRegMap(regMap, move1.register, move2.register);
@@ -1454,33 +1830,27 @@ public class SRA<P, S> {
 							return null;
 
 						nextTriples.add(new NormSimTriple<>(move1.to, matchingMove.to, newRegMap, null,
-								move1.guard.getPredicate(), bisimCase));
+								context.getPredicate(move1.guard), bisimCase));
 					}
 				}
 
 				// Case 2(b)
 				Integer howManyEqualToGuard1 = 1;
 
-				for (Integer reg: regAbs1.keySet()) {
-					MinTerm<P> mintermForReg = regAbs1.get(reg);
-
-					if (mintermForReg != null && regAbs1.get(reg).equals(move1.guard))
+				for (int mintermForReg: regAbs1)
+					if (mintermForReg == move1.guard)
 						howManyEqualToGuard1++;
-				}
 
-				for (Integer reg: regAbs2.keySet()) {
-					MinTerm<P> mintermForReg = regAbs2.get(reg);
-
-					if (mintermForReg != null && regAbs2.get(reg).equals(move1.guard))
+				for (int mintermForReg: regAbs2)
+					if (mintermForReg == move1.guard)
 						howManyEqualToGuard1++;
-				}
 
-				if (ba.hasNDistinctWitnesses(move1.guard.getPredicate(), howManyEqualToGuard1)) {
-					NormSRAMove<P> matchingMove = null;
-					HashMap<Integer, Integer> newRegMap = null;
+				if (ba.hasNDistinctWitnesses(context.getPredicate(move1.guard), howManyEqualToGuard1)) {
+					NormSRAMove matchingMove = null;
+					int[] newRegMap = null;
 
-					for (NormSRAMove<P> move2: normMoves2) {
-						if (move2 instanceof NormSRAFreshMove && move2.guard.equals(move1.guard)) { // Guard must be the same
+					for (NormSRAMove move2: normMoves2) {
+						if (move2 instanceof NormSRAFreshMove && move2.guard == move1.guard) { // Guard must be the same
 							matchingMove = move2;
 							newRegMap = updateRegMap(regMap, move1.register, move2.register);
 							bisimCase = "fresh(" + move1.register + ") - fresh(" + move2.register +")";
@@ -1492,7 +1862,7 @@ public class SRA<P, S> {
 						return null;
 
 					nextTriples.add(new NormSimTriple<>(move1.to, matchingMove.to, newRegMap, null,
-							move1.guard.getPredicate(), bisimCase));
+							context.getPredicate(move1.guard), bisimCase));
 				}
 			}
 
@@ -1520,75 +1890,214 @@ public class SRA<P, S> {
             return getEmptySRA(ba);
 
 
-		// Initialise register indexes
-		HashSet<Integer> regIndexes = new HashSet<>();
-		Integer regNum = registers.size();
-
-		for (Integer r = 0; r < regNum; r++) // FIXME: no garbage register
-			regIndexes.add(r);
-
-
 		// components of target SRA
         Collection<SRAMove<P, S>> transitions = new ArrayList<SRAMove<P, S>>();
-        LinkedList<S> newRegisters = new LinkedList<S>(registers);
         Collection<Integer> newFinalStates = new ArrayList<Integer>();
 
-        // Add garbage collector register
-        //newRegisters.add(registers.size(), null);
-
-        HashMap<S, ArrayList<Integer>> valueToRegisters = new HashMap<S, ArrayList<Integer>>();
-        for (Integer index = 0; index < regNum; index++) {
-            S registerValue = newRegisters.get(index);
-            if (valueToRegisters.containsKey(registerValue)) {
-                valueToRegisters.get(registerValue).add(index);
-            } else {
-         //       if (registerValue != null) {
-                    ArrayList<Integer> registersForValue = new ArrayList<Integer>();
-                    registersForValue.add(index);
-                    valueToRegisters.put(registerValue, registersForValue);
-          //      }
-            }
-        }
+        // Explore the whole translation, new states are numbered after the ones already visited
+        SingleValuedView<P, S> view = getSingleValuedView(ba);
 
-        HashMap<Integer, Integer> initialMap = new HashMap<Integer, Integer>();
-        for (ArrayList<Integer> repeatedRegisters : valueToRegisters.values()) {
-            Integer firstElement = repeatedRegisters.get(0);
-            initialMap.put(firstElement, firstElement);
+        for (int stateId = 0; stateId < view.getStateCount(); stateId++) {
+			if (System.currentTimeMillis() - startTime > timeout)
+				throw new TimeoutException();
 
-            for (int i = 1; i < repeatedRegisters.size(); i++) {
-                initialMap.put(repeatedRegisters.get(i), firstElement);
-                newRegisters.set(repeatedRegisters.get(i), null);
-            }
+			for (SRAMove<P, S> transition : view.getMovesFrom(stateId)) {
+				if (view.isFinalState(transition.to))
+					newFinalStates.add(transition.to);
+				transitions.add((SRAMove<P, S>) transition.clone());
+			}
         }
 
-//
-//		newRegisters.add(newRegisters.size(), null);
+        return MkSRA(transitions, view.getInitialState(), newFinalStates, new LinkedList<S>(view.getRegisters()), ba);//, false, false);
+    }
 
+	/**
+	 * SRA whose moves may be computed on demand, so that the decision
+	 * procedures can visit an automaton that is never built in full
+	 */
+	private interface LazySRA<P, S> {
+		Integer getInitialState();
 
-        // reached contains the states (p,f) we discovered and maps
-        // them to a stateId
-        HashMap<Pair<Integer, HashMap<Integer,Integer>>, Integer> reached = new HashMap<Pair<Integer, HashMap<Integer,Integer>>, Integer>();
-        // toVisit contains the product states we still have not explored
-        LinkedList<Pair<Integer, HashMap<Integer,Integer>>> toVisit = new LinkedList<Pair<Integer, HashMap<Integer,Integer>>>();
+		/**
+		 * @return the registers with their initial values, must not be modified
+		 */
+		List<S> getRegisters();
 
-        // The initial state is the pair consisting of the initial state (q0,f0)
-        Pair<Integer, HashMap<Integer,Integer>> initPair = new Pair<Integer, HashMap<Integer,Integer>>(initialState, initialMap);
-        reached.put(initPair, 0);
-        toVisit.add(initPair);
+		boolean isSingleValued();
 
-        // Explore the product automaton until no new states can be reached
-        while (!toVisit.isEmpty()) {
+		boolean isFinalState(Integer state);
 
-            Pair<Integer, HashMap<Integer, Integer>> currentState = toVisit.removeLast(); // BFS visit
-            int currentStateID = reached.get(currentState);
-            HashMap<Integer, Integer> currentMap = currentState.second;
+		Collection<SRAMove<P, S>> getMovesFrom(Integer state) throws TimeoutException;
+	}
 
+	// this as a LazySRA whose moves are already there
+	private LazySRA<P, S> asLazySRA() {
+		return new LazySRA<P, S>() {
+			@Override
+			public Integer getInitialState() {
+				return initialState;
+			}
 
-            for (SRAMove<P, S> ct : getMovesFrom(currentState.first)) {
-				LinkedList<SRAMove<P, S>> SRAMoves = new LinkedList<>();
+			@Override
+			public List<S> getRegisters() {
+				return registers;
+			}
 
-				if (System.currentTimeMillis() - startTime > timeout)
-					throw new TimeoutException();
+			@Override
+			public boolean isSingleValued() {
+				return isSingleValued;
+			}
+
+			@Override
+			public boolean isFinalState(Integer state) {
+				return finalStates.contains(state);
+			}
+
+			@Override
+			public Collection<SRAMove<P, S>> getMovesFrom(Integer state) {
+				return SRA.this.getMovesFrom(state);
+			}
+		};
+	}
+
+	/**
+	 * Single-valued view of an SRA: the SRA itself if it is single-valued,
+	 * otherwise its single-valued translation built on demand. States of the
+	 * translation are the pairs (q, f) of a state q of the SRA and a map f
+	 * sending every register to the register of the translation holding the
+	 * same value. They are numbered from 0 in order of discovery, and the
+	 * moves of every state are computed the first time they are asked for.
+	 */
+	private static class SingleValuedView<P, S> implements LazySRA<P, S> {
+		private final LazySRA<P, S> aut;
+		private final BooleanAlgebra<P, S> ba;
+		private final boolean translate;
+
+		private final HashSet<Integer> regIndexes;
+		private final LinkedList<S> registers;
+
+		// reached contains the states (p,f) we discovered and maps them to a stateId
+		private final HashMap<Pair<Integer, HashMap<Integer, Integer>>, Integer> reached = new HashMap<>();
+		private final ArrayList<Pair<Integer, HashMap<Integer, Integer>>> states = new ArrayList<>();
+		// moves by stateId, null until computed
+		private final ArrayList<List<SRAMove<P, S>>> movesFrom = new ArrayList<>();
+
+		SingleValuedView(LazySRA<P, S> aut, BooleanAlgebra<P, S> ba) {
+			this.aut = aut;
+			this.ba = ba;
+			this.translate = !aut.isSingleValued();
+
+			// Initialise register indexes
+			regIndexes = new HashSet<>();
+			Integer regNum = aut.getRegisters().size();
+
+			for (Integer r = 0; r < regNum; r++) // FIXME: no garbage register
+				regIndexes.add(r);
+
+			registers = new LinkedList<S>(aut.getRegisters());
+
+			if (!translate)
+				return;
+
+			HashMap<S, ArrayList<Integer>> valueToRegisters = new HashMap<S, ArrayList<Integer>>();
+			for (Integer index = 0; index < regNum; index++) {
+				S registerValue = registers.get(index);
+				if (valueToRegisters.containsKey(registerValue)) {
+					valueToRegisters.get(registerValue).add(index);
+				} else {
+					ArrayList<Integer> registersForValue = new ArrayList<Integer>();
+					registersForValue.add(index);
+					valueToRegisters.put(registerValue, registersForValue);
+				}
+			}
+
+			HashMap<Integer, Integer> initialMap = new HashMap<Integer, Integer>();
+			for (ArrayList<Integer> repeatedRegisters : valueToRegisters.values()) {
+				Integer firstElement = repeatedRegisters.get(0);
+				initialMap.put(firstElement, firstElement);
+
+				for (int i = 1; i < repeatedRegisters.size(); i++) {
+					initialMap.put(repeatedRegisters.get(i), firstElement);
+					registers.set(repeatedRegisters.get(i), null);
+				}
+			}
+
+			// The initial state is the pair consisting of the initial state (q0,f0)
+			getStateId(new Pair<Integer, HashMap<Integer, Integer>>(aut.getInitialState(), initialMap));
+		}
+
+		@Override
+		public Integer getInitialState() {
+			return translate ? 0 : aut.getInitialState();
+		}
+
+		/**
+		 * @return the registers of the view with their initial values, must
+		 *         not be modified
+		 */
+		@Override
+		public LinkedList<S> getRegisters() {
+			return registers;
+		}
+
+		@Override
+		public boolean isSingleValued() {
+			return true;
+		}
+
+		/**
+		 * @return the number of states discovered so far, only for a translation
+		 */
+		int getStateCount() {
+			return states.size();
+		}
+
+		@Override
+		public boolean isFinalState(Integer state) {
+			if (!translate)
+				return aut.isFinalState(state);
+
+			return aut.isFinalState(states.get(state).first);
+		}
+
+		/**
+		 * @return the moves from <code>state</code>, computed once
+		 */
+		@Override
+		public Collection<SRAMove<P, S>> getMovesFrom(Integer state) throws TimeoutException {
+			if (!translate)
+				return aut.getMovesFrom(state);
+
+			List<SRAMove<P, S>> moves = movesFrom.get(state);
+			if (moves == null) {
+				moves = computeMovesFrom(state);
+				movesFrom.set(state, moves);
+			}
+
+			return moves;
+		}
+
+		private int getStateId(Pair<Integer, HashMap<Integer, Integer>> state) {
+			Integer stateId = reached.get(state);
+
+			if (stateId == null) {
+				stateId = states.size();
+				reached.put(state, stateId);
+				states.add(state);
+				movesFrom.add(null);
+			}
+
+			return stateId;
+		}
+
+		private List<SRAMove<P, S>> computeMovesFrom(int currentStateID) throws TimeoutException {
+			List<SRAMove<P, S>> transitions = new ArrayList<SRAMove<P, S>>();
+			Pair<Integer, HashMap<Integer, Integer>> currentState = states.get(currentStateID);
+			HashMap<Integer, Integer> currentMap = currentState.second;
+			Integer regNum = registers.size();
+
+			for (SRAMove<P, S> ct : aut.getMovesFrom(currentState.first)) {
+				LinkedList<SRAMove<P, S>> SRAMoves = new LinkedList<>();
 
 				HashSet<HashSet<Integer>> compatibleSets = ct.getCompatibleSets(regIndexes);
 
@@ -1639,41 +2148,37 @@ public class SRA<P, S> {
 								LinkedList<Integer> inverseImg = inverseMap.get(r);
 
 								if (inverseImg == null || ct.U.containsAll(inverseImg)) {
-									SRAMoves.add(new SRAFreshMove<P, S>(currentStateID, null, ct.guard, r, newRegisters.size()));
+									SRAMoves.add(new SRAFreshMove<P, S>(currentStateID, null, ct.guard, r, registers.size()));
 									break;
 								}
 							}
 						} else {
 							// Rule (NOP)
 							// FIXME: have a look at this
-							// Integer garbageReg = newRegisters.size() - 1;
+							// Integer garbageReg = registers.size() - 1;
 							// SRAMoves.add(new SRACheckMove<P, S>(currentStateID, null, ct.guard, garbageReg));
-							// SRAMoves.add(new SRAFreshMove<P, S>(currentStateID, null, ct.guard, garbageReg, newRegisters.size()));
+							// SRAMoves.add(new SRAFreshMove<P, S>(currentStateID, null, ct.guard, garbageReg, registers.size()));
 						}
 					}
 				}
 
-                for (SRAMove<P, S> transition : SRAMoves) {
-                    if (transition.isSatisfiable(ba)) {
-                        HashMap<Integer, Integer> nextMap = new HashMap<>(currentMap);
-                        Integer transitionRegister = transition.registerIndex;
-
-                        for (Integer registersToUpdate : ct.U)
-                            nextMap.put(registersToUpdate, transitionRegister);
+				for (SRAMove<P, S> transition : SRAMoves) {
+					if (transition.isSatisfiable(ba)) {
+						HashMap<Integer, Integer> nextMap = new HashMap<>(currentMap);
+						Integer transitionRegister = transition.registerIndex;
 
-                        Pair<Integer, HashMap<Integer, Integer>> nextState = new Pair<>(ct.to, nextMap);
-                        transition.to = getStateId(nextState, reached, toVisit);
+						for (Integer registersToUpdate : ct.U)
+							nextMap.put(registersToUpdate, transitionRegister);
 
-                        if (finalStates.contains(ct.to))
-                            newFinalStates.add(transition.to);
-                        transitions.add(transition);
-                    }
-                }
+						transition.to = getStateId(new Pair<>(ct.to, nextMap));
+						transitions.add(transition);
+					}
+				}
+			}
 
-            }
-        }
-        return MkSRA(transitions, initialState, newFinalStates, newRegisters, ba);//, false, false);
-    }
+			return transitions;
+		}
+	}
 
 	/**
 	 * If <code>state<code> belongs to reached returns reached(state) otherwise
@@ -1773,12 +2278,19 @@ public class SRA<P, S> {
         reached.put(initPair, 0);
         toVisit.add(initPair);
 
+        // the registers of aut2 follow the ones of aut1
+        int offset = aut1.registers.size();
+
         // Explore the product automaton until no new states can be reached
         while (!toVisit.isEmpty()) {
 
             Pair<Integer, Integer> currentState = toVisit.removeFirst();
             int currentStateID = reached.get(currentState);
 
+            // a product state is final iff both of its components are
+            if (aut1.finalStates.contains(currentState.first) && aut2.finalStates.contains(currentState.second))
+                finalStates.add(currentStateID);
+
             // Try to pair transitions out of both automata
             for (SRAMove<A, B> ct1 : aut1.getMovesFrom(currentState.first))
                 for (SRAMove<A, B> ct2 : aut2.getMovesFrom(currentState.second)) {
@@ -1786,43 +2298,142 @@ public class SRA<P, S> {
                     if (System.currentTimeMillis() - startTime > timeout)
                         throw new TimeoutException();
 
-                    // create conjunction of the two guards and create
-                    // transition only if the conjunction is satisfiable
-                    A intersGuard = ba.MkAnd(ct1.guard, ct2.guard);
-
-                    // create union of the two E sets.
-                    Set<Integer> intersE = new HashSet<Integer>();
-                    intersE.addAll(ct1.E);
-                    for (Integer registerE : ct2.E)
-                        intersE.add(registerE + ct1.E.size());
-
-                    // create union of the two I sets.
-                    Set<Integer> intersI = new HashSet<Integer>();
-                    intersI.addAll(ct1.I);
-                    for (Integer registerI : ct2.I)
-                        intersI.add(registerI + ct1.I.size());
-
-                    // create union fo the two U sets.
-                    Set<Integer> intersU = new HashSet<Integer>();
-                    intersU.addAll(ct1.U);
-                    for (Integer registerU : ct2.U)
-                        intersU.add(registerU + ct1.U.size());
-                    
                     // construct potential transition.
-                    SRAMove<A, B> transition = new SRAMove<A, B>(currentStateID, null, intersGuard, intersE, intersI, intersU);
+                    SRAMove<A, B> transition = getProductMove(currentStateID, ct1, ct2, offset, ba);
 
                     // if it is satisfiable, add nextStateID and update iteration lists.
                     if (transition.isSatisfiable(ba)) {
                         Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(ct1.to, ct2.to);
                         transition.to = getStateId(nextState, reached, toVisit);
-                        if (aut1.finalStates.contains(ct1.to) || aut2.finalStates.contains(ct2.to))
-                            finalStates.add(transition.to);
                         transitions.add(transition);
                     }
                 }
         }
 
-        return MkSRA(transitions, initialState, finalStates, registers, ba);
+        // Registers that are dead or always equal to another one are removed
+        return getRegisterMinimized(MkSRA(transitions, initialState, finalStates, registers, ba), ba);
+    }
+
+    // The move from from pairing ct1 and ct2 in the product of intersection,
+    // where the registers of ct2 start at offset; its target is left to the
+    // caller
+    private static <A, B> SRAMove<A, B> getProductMove(Integer from, SRAMove<A, B> ct1, SRAMove<A, B> ct2,
+            int offset, BooleanAlgebra<A, B> ba) throws TimeoutException {
+        // create conjunction of the two guards and create
+        // transition only if the conjunction is satisfiable
+        A intersGuard = ba.MkAnd(ct1.guard, ct2.guard);
+
+        // create union of the two E sets.
+        Set<Integer> intersE = new HashSet<Integer>();
+        intersE.addAll(ct1.E);
+        for (Integer registerE : ct2.E)
+            intersE.add(registerE + offset);
+
+        // create union of the two I sets.
+        Set<Integer> intersI = new HashSet<Integer>();
+        intersI.addAll(ct1.I);
+        for (Integer registerI : ct2.I)
+            intersI.add(registerI + offset);
+
+        // create union fo the two U sets.
+        Set<Integer> intersU = new HashSet<Integer>();
+        intersU.addAll(ct1.U);
+        for (Integer registerU : ct2.U)
+            intersU.add(registerU + offset);
+        
+        return new SRAMove<A, B>(from, null, intersGuard, intersE, intersI, intersU);
+    }
+
+    /**
+     * Product of two SRAs with the states, moves and registers of the
+     * automaton built by intersection before its clean-up. Product states
+     * are numbered from 0 in order of discovery, and the moves of every
+     * state are computed the first time they are asked for. The guards of
+     * the moves are made known to <code>context</code>.
+     */
+    private static class LazyProduct<P, S> implements LazySRA<P, S> {
+        private final SRA<P, S> aut1;
+        private final SRA<P, S> aut2;
+        private final BooleanAlgebra<P, S> ba;
+        private final AnalysisContext<P, S> context;
+        private final LinkedList<S> registers;
+
+        // reached contains the product states (p1,p2) we discovered and maps them to a stateId
+        private final HashMap<Pair<Integer, Integer>, Integer> reached = new HashMap<>();
+        private final ArrayList<Pair<Integer, Integer>> states = new ArrayList<>();
+        // moves by stateId, null until computed
+        private final ArrayList<List<SRAMove<P, S>>> movesFrom = new ArrayList<>();
+
+        LazyProduct(SRA<P, S> aut1, SRA<P, S> aut2, BooleanAlgebra<P, S> ba, AnalysisContext<P, S> context) {
+            this.aut1 = aut1;
+            this.aut2 = aut2;
+            this.ba = ba;
+            this.context = context;
+
+            registers = new LinkedList<S>(aut1.registers);
+            registers.addAll(aut2.registers);
+
+            getStateId(new Pair<Integer, Integer>(aut1.initialState, aut2.initialState));
+        }
+
+        @Override
+        public Integer getInitialState() {
+            return 0;
+        }
+
+        @Override
+        public List<S> getRegisters() {
+            return registers;
+        }
+
+        @Override
+        public boolean isSingleValued() {
+            return false;
+        }
+
+        @Override
+        public boolean isFinalState(Integer state) {
+            Pair<Integer, Integer> pair = states.get(state);
+            return aut1.finalStates.contains(pair.first) && aut2.finalStates.contains(pair.second);
+        }
+
+        @Override
+        public Collection<SRAMove<P, S>> getMovesFrom(Integer state) throws TimeoutException {
+            List<SRAMove<P, S>> moves = movesFrom.get(state);
+
+            if (moves == null) {
+                moves = new ArrayList<SRAMove<P, S>>();
+                Pair<Integer, Integer> pair = states.get(state);
+
+                for (SRAMove<P, S> ct1 : aut1.getMovesFrom(pair.first))
+                    for (SRAMove<P, S> ct2 : aut2.getMovesFrom(pair.second)) {
+                        SRAMove<P, S> transition = getProductMove(state, ct1, ct2, aut1.registers.size(), ba);
+
+                        if (transition.isSatisfiable(ba)) {
+                            context.addConjunction(transition.guard, ct1.guard, ct2.guard);
+                            transition.to = getStateId(new Pair<Integer, Integer>(ct1.to, ct2.to));
+                            moves.add(transition);
+                        }
+                    }
+
+                movesFrom.set(state, moves);
+            }
+
+            return moves;
+        }
+
+        private int getStateId(Pair<Integer, Integer> state) {
+            Integer stateId = reached.get(state);
+
+            if (stateId == null) {
+                stateId = states.size();
+                reached.put(state, stateId);
+                states.add(state);
+                movesFrom.add(null);
+            }
+
+            return stateId;
+        }
     }
 
 	// ------------------------------------------------------
@@ -1895,7 +2506,8 @@ public class SRA<P, S> {
 					if (regPredMap.containsKey(reg)) {
 						A guard = regPredMap.get(reg);
 						regPredMap.replace(reg, ba.MkOr(guard, move.guard));
-					}
+					} else
+						regPredMap.put(reg, move.guard);
 				} else {
 					regPredMap = new HashMap<>();
 					regPredMap.put(reg, move.guard);
@@ -1914,7 +2526,8 @@ public class SRA<P, S> {
 					if (regPredMapGen.containsKey(regConstraints)) {
 						A guard = regPredMapGen.get(regConstraints);
 						regPredMapGen.replace(regConstraints, ba.MkOr(guard, move.guard));
-					}
+					} else
+						regPredMapGen.put(regConstraints, move.guard);
 				} else {
 					regPredMapGen = new HashMap<>();
 					regPredMapGen.put(regConstraints, move.guard);
@@ -1987,6 +2600,249 @@ public class SRA<P, S> {
         return MkSRA(transitions, initialState, finalStates, registers, ba, false, false);
     }
 
+    /**
+     * Creates a copy of the SRA with the same language and as few registers
+     * as the analysis of <code>getRegisterMinimized</code> allows
+     *
+     * @throws TimeoutException
+     */
+    public SRA<P, S> minimizeRegisters(BooleanAlgebra<P, S> ba) throws TimeoutException {
+        return getRegisterMinimized(this, ba);
+    }
+
+    /**
+     * Creates a copy of <code>aut</code> with the same language where
+     * registers that hold the same value whenever they are both live share a
+     * register, registers the input is never compared with are removed, and
+     * the initial value of a register is cleared when it is overwritten
+     * before being compared
+     *
+     * @throws TimeoutException
+     */
+    public static <A, B> SRA<A, B> getRegisterMinimized(SRA<A, B> aut, BooleanAlgebra<A, B> ba) throws TimeoutException {
+
+        if (aut.isEmpty)
+            return getEmptySRA(ba);
+
+        int regNum = aut.registers.size();
+        ArrayList<B> initValues = new ArrayList<B>(aut.registers);
+
+        // Forward must-analysis: equal.get(q)[r][s] holds iff the registers r
+        // and s hold the same value every time q is reached
+        HashMap<Integer, boolean[][]> equal = new HashMap<Integer, boolean[][]>();
+        boolean[][] initEqual = new boolean[regNum][regNum];
+        for (int r = 0; r < regNum; r++)
+            for (int s = 0; s < regNum; s++)
+                initEqual[r][s] = Objects.equals(initValues.get(r), initValues.get(s));
+
+        equal.put(aut.initialState, initEqual);
+        LinkedList<Integer> toVisit = new LinkedList<Integer>();
+        HashSet<Integer> queued = new HashSet<Integer>();
+        toVisit.add(aut.initialState);
+        queued.add(aut.initialState);
+
+        while (!toVisit.isEmpty()) {
+            Integer state = toVisit.removeFirst();
+            queued.remove(state);
+
+            for (SRAMove<A, B> t : aut.getMovesFrom(state)) {
+                boolean[][] next = getEqualAfter(equal.get(state), t);
+                if (next == null)
+                    continue;
+
+                boolean[][] old = equal.get(t.to);
+                boolean changed = old == null;
+
+                if (changed)
+                    equal.put(t.to, next);
+                else
+                    for (int r = 0; r < regNum; r++)
+                        for (int s = 0; s < regNum; s++)
+                            if (old[r][s] && !next[r][s]) {
+                                old[r][s] = false;
+                                changed = true;
+                            }
+
+                if (changed && queued.add(t.to))
+                    toVisit.add(t.to);
+            }
+        }
+
+        // The moves that can be taken
+        List<SRAMove<A, B>> moves = new ArrayList<SRAMove<A, B>>();
+        for (Integer state : equal.keySet())
+            for (SRAMove<A, B> t : aut.getMovesFrom(state))
+                if (getEqualAfter(equal.get(state), t) != null)
+                    moves.add(t);
+
+        // Backward may-analysis: live.get(q)[r] holds iff the input may be
+        // compared with r after q before r is overwritten
+        HashMap<Integer, boolean[]> live = new HashMap<Integer, boolean[]>();
+        for (Integer state : equal.keySet())
+            live.put(state, new boolean[regNum]);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (SRAMove<A, B> t : moves) {
+                boolean[] liveFrom = live.get(t.from);
+                boolean[] liveTo = live.get(t.to);
+
+                for (int r = 0; r < regNum; r++)
+                    if (!liveFrom[r] && (t.E.contains(r) || t.I.contains(r) || (liveTo[r] && !t.U.contains(r)))) {
+                        liveFrom[r] = true;
+                        changed = true;
+                    }
+            }
+        }
+
+        // Two registers can share a register of the new SRA if they hold the
+        // same value whenever both are live: initially, and after every move
+        // writing one of them, where each one that is live must hold the input
+        boolean[] liveAtInit = live.get(aut.initialState);
+        boolean[][] compatible = new boolean[regNum][regNum];
+        for (int r = 0; r < regNum; r++)
+            for (int s = 0; s < regNum; s++)
+                compatible[r][s] = !liveAtInit[r] || !liveAtInit[s] || initEqual[r][s];
+
+        for (SRAMove<A, B> t : moves) {
+            boolean[] holdsInput = getHoldsInputAfter(equal.get(t.from), t);
+            boolean[] liveTo = live.get(t.to);
+
+            for (int r = 0; r < regNum; r++)
+                for (int s = 0; s < regNum; s++)
+                    if ((t.U.contains(r) || t.U.contains(s))
+                            && ((liveTo[r] && !holdsInput[r]) || (liveTo[s] && !holdsInput[s])))
+                        compatible[r][s] = false;
+        }
+
+        // Registers that are never live are dropped, the others are grouped
+        // in order with the first group they are compatible with
+        boolean[] used = new boolean[regNum];
+        for (boolean[] liveRegs : live.values())
+            for (int r = 0; r < regNum; r++)
+                used[r] |= liveRegs[r];
+
+        int[] newIndex = new int[regNum];
+        List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        LinkedList<B> registers = new LinkedList<B>();
+        for (int s = 0; s < regNum; s++) {
+            newIndex[s] = -1;
+            if (!used[s])
+                continue;
+
+            for (int g = 0; g < groups.size() && newIndex[s] < 0; g++) {
+                boolean fits = true;
+                for (Integer r : groups.get(g))
+                    fits &= compatible[r][s];
+
+                if (fits) {
+                    groups.get(g).add(s);
+                    newIndex[s] = g;
+                    if (liveAtInit[s])
+                        registers.set(g, initValues.get(s));
+                }
+            }
+
+            if (newIndex[s] < 0) {
+                newIndex[s] = groups.size();
+                groups.add(new ArrayList<Integer>(Collections.singletonList(s)));
+                registers.add(liveAtInit[s] ? initValues.get(s) : null);
+            }
+        }
+
+        // An SRA needs at least one register
+        if (registers.isEmpty())
+            registers.add(null);
+
+        Collection<SRAMove<A, B>> transitions = new ArrayList<SRAMove<A, B>>();
+        for (SRAMove<A, B> t : moves) {
+            Set<Integer> E = mapRegisters(t.E, newIndex);
+            Set<Integer> I = mapRegisters(t.I, newIndex);
+
+            // A register need not be written when it holds a live register
+            // already equal to the input
+            Set<Integer> U = new HashSet<Integer>();
+            for (Integer r : t.U) {
+                if (newIndex[r] < 0)
+                    continue;
+
+                boolean holdsInput = false;
+                for (Integer x : groups.get(newIndex[r]))
+                    holdsInput |= live.get(t.from)[x] && isEqualToInput(equal.get(t.from), t, x);
+
+                if (!holdsInput)
+                    U.add(newIndex[r]);
+            }
+
+            // Check and fresh moves only use live registers and keep their kind
+            if (t instanceof SRACheckMove<?, ?>)
+                transitions.add(new SRACheckMove<A, B>(t.from, t.to, t.guard, E.iterator().next()));
+            else if (t instanceof SRAFreshMove<?, ?> && U.size() == 1)
+                transitions.add(new SRAFreshMove<A, B>(t.from, t.to, t.guard, U.iterator().next(), registers.size()));
+            else if (t instanceof SRAStoreMove<?, ?> && U.size() == 1)
+                transitions.add(new SRAStoreMove<A, B>(t.from, t.to, t.guard, U.iterator().next()));
+            else
+                transitions.add(new SRAMove<A, B>(t.from, t.to, t.guard, E, I, U));
+        }
+
+        return MkSRA(transitions, aut.initialState, new HashSet<Integer>(aut.finalStates), registers, ba);
+    }
+
+    // The register equalities after t when before it they are eq, null if t
+    // can never be taken because it needs the input to be equal and
+    // different from the same value
+    private static <A, B> boolean[][] getEqualAfter(boolean[][] eq, SRAMove<A, B> t) {
+        for (Integer e : t.E)
+            for (Integer i : t.I)
+                if (eq[e][i])
+                    return null;
+
+        int regNum = eq.length;
+        boolean[] holdsInput = getHoldsInputAfter(eq, t);
+
+        boolean[][] next = new boolean[regNum][regNum];
+        for (int r = 0; r < regNum; r++)
+            for (int s = 0; s < regNum; s++) {
+                boolean rUpdated = t.U.contains(r);
+                boolean sUpdated = t.U.contains(s);
+
+                if (!rUpdated && !sUpdated)
+                    next[r][s] = eq[r][s];
+                else
+                    next[r][s] = holdsInput[r] && holdsInput[s];
+            }
+
+        return next;
+    }
+
+    // holdsInput[r] iff r holds the input after t when before it the
+    // register equalities are eq
+    private static <A, B> boolean[] getHoldsInputAfter(boolean[][] eq, SRAMove<A, B> t) {
+        boolean[] holdsInput = new boolean[eq.length];
+        for (int r = 0; r < eq.length; r++)
+            holdsInput[r] = t.U.contains(r) || isEqualToInput(eq, t, r);
+        return holdsInput;
+    }
+
+    // Whether r is equal to the input of t when the register equalities are eq
+    private static <A, B> boolean isEqualToInput(boolean[][] eq, SRAMove<A, B> t, int r) {
+        for (Integer e : t.E)
+            if (eq[r][e])
+                return true;
+        return false;
+    }
+
+    // The images under map of the registers, dropping the ones mapped to -1
+    private static Set<Integer> mapRegisters(Set<Integer> registers, int[] map) {
+        Set<Integer> image = new HashSet<Integer>();
+        for (Integer r : registers)
+            if (map[r] >= 0)
+                image.add(map[r]);
+        return image;
+    }
+
 	// ------------------------------------------------------
 	// Reachability methods
 	// ------------------------------------------------------
@@ -0,0 +1,142 @@
+/**
+ * SVPAlib
+ * automata.sra
+ */
+package automata.sra;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Configuration of an SRA: a state together with the contents of the
+ * registers. The contents are kept in chunks of a few registers that
+ * successor configurations share, so that a move only copies the chunks of
+ * the registers it changes, and the hash code is updated register by
+ * register.
+ * @param <S> domain of the automaton alphabet
+ */
+public class SRAConfiguration<S> {
+
+	private static final int CHUNK_BITS = 3, CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	public final Integer state;
+	private final Object[][] chunks;
+	private final int size;
+	// the sum of the hashes of the registers, see registerHash
+	private final int contentHash;
+	private final int hash;
+
+	private SRAConfiguration(Integer state, Object[][] chunks, int size, int contentHash) {
+		this.state = state;
+		this.chunks = chunks;
+		this.size = size;
+		this.contentHash = contentHash;
+		this.hash = 31 * state.hashCode() + contentHash;
+	}
+
+	private static int registerHash(int index, Object content) {
+		return (31 * index + (content == null ? 0 : content.hashCode())) * 0x9E3779B9;
+	}
+
+	/**
+	 * @return the configuration in <code>state</code> with register contents
+	 *         <code>registers</code>
+	 */
+	public static <S> SRAConfiguration<S> of(Integer state, List<S> registers) {
+		int size = registers.size();
+		Object[][] chunks = new Object[(size + CHUNK_SIZE - 1) >>> CHUNK_BITS][];
+		int contentHash = 0;
+		int index = 0;
+		for (S content : registers) {
+			if ((index & (CHUNK_SIZE - 1)) == 0)
+				chunks[index >>> CHUNK_BITS] = new Object[Math.min(CHUNK_SIZE, size - index)];
+			chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)] = content;
+			contentHash += registerHash(index, content);
+			index++;
+		}
+		return new SRAConfiguration<S>(state, chunks, size, contentHash);
+	}
+
+	/**
+	 * @return the configuration reached in <code>to</code> by storing
+	 *         <code>input</code> in the registers <code>U</code>, sharing the
+	 *         chunks of the registers that do not change
+	 */
+	public SRAConfiguration<S> next(Integer to, Set<Integer> U, S input) {
+		Object[][] updated = chunks;
+		int contentHash = this.contentHash;
+		for (Integer index : U) {
+			int c = index >>> CHUNK_BITS, i = index & (CHUNK_SIZE - 1);
+			Object old = updated[c][i];
+			if (Objects.equals(old, input))
+				continue;
+			if (updated == chunks)
+				updated = chunks.clone();
+			if (updated[c] == chunks[c])
+				updated[c] = chunks[c].clone();
+			updated[c][i] = input;
+			contentHash += registerHash(index, input) - registerHash(index, old);
+		}
+		return new SRAConfiguration<S>(to, updated, size, contentHash);
+	}
+
+	/**
+	 * @return the content of register <code>index</code>, null if empty
+	 */
+	@SuppressWarnings("unchecked")
+	public S getRegister(int index) {
+		return (S) chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+	}
+
+	/**
+	 * @return the number of registers
+	 */
+	public int getRegisterCount() {
+		return size;
+	}
+
+	/**
+	 * @return a read-only view of the register contents
+	 */
+	public List<S> getRegisters() {
+		return new AbstractList<S>() {
+			@Override
+			public S get(int index) {
+				return getRegister(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof SRAConfiguration))
+			return false;
+		SRAConfiguration<?> that = (SRAConfiguration<?>) o;
+		if (hash != that.hash || size != that.size || !state.equals(that.state))
+			return false;
+		for (int c = 0; c < chunks.length; c++)
+			if (chunks[c] != that.chunks[c] && !Arrays.equals(chunks[c], that.chunks[c]))
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + state + "," + getRegisters() + ")";
+	}
+}
@@ -73,17 +73,22 @@ public class SRAMove<P, S> {
 	 * @throws TimeoutException 
 	 */
 	public boolean hasModel(S input, BooleanAlgebra<P, S> ba, LinkedList<S> registerValues) throws TimeoutException {
-		Set<Integer> registersWithInput = new HashSet<Integer>();
+		return hasModelWith(input, ba, registerValues);
+	}
 
-		for (Integer registerE : E)
-		{
-			boolean regIsNull = registerValues.get(registerE) == null;
-			boolean regNotNullAndNotInput = registerValues.get(registerE) != null &&
-					!registerValues.get(registerE).equals(input);
+	/**
+	 * @return true iff <code>input</code> can trigger the transition from the
+	 *         register contents of <code>conf</code>
+	 * @throws TimeoutException 
+	 */
+	public boolean hasModel(S input, BooleanAlgebra<P, S> ba, SRAConfiguration<S> conf) throws TimeoutException {
+		return hasModelWith(input, ba, conf.getRegisters());
+	}
 
-			if (regIsNull || regNotNullAndNotInput)
+	private boolean hasModelWith(S input, BooleanAlgebra<P, S> ba, List<S> registerValues) throws TimeoutException {
+		for (Integer registerE : E)
+			if (registerValues.get(registerE) == null || !registerValues.get(registerE).equals(input))
 				return false;
-		}
 
 		for (Integer registerI : I)
 			if (registerValues.get(registerI) != null && registerValues.get(registerI).equals(input))
@@ -0,0 +1,137 @@
+/**
+ * SVPAlib
+ * automata.sra
+ */
+package automata.sra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+
+/**
+ * Incremental run of an SRA over an input that is read one symbol at a time.
+ * The run keeps the current set of configurations without duplicates and
+ * drops the configurations whose state cannot reach a final state, so a run
+ * that can no longer accept is reported dead as soon as possible. The moves
+ * of the automaton are read once, so it must not change during the run.
+ * @param <P> set of predicates over the domain S
+ * @param <S> domain of the automaton alphabet
+ */
+public class SRARun<P, S> {
+
+	private final SRA<P, S> aut;
+	private final BooleanAlgebra<P, S> ba;
+
+	// states from which a final state is reachable
+	private final Set<Integer> live;
+	// moves by source state, filled on demand
+	private final Map<Integer, List<SRAMove<P, S>>> movesFrom;
+
+	private Collection<SRAConfiguration<S>> conf;
+
+	/**
+	 * Starts a run of <code>aut</code>
+	 */
+	public SRARun(SRA<P, S> aut, BooleanAlgebra<P, S> ba) {
+		this.aut = aut;
+		this.ba = ba;
+
+		live = new HashSet<Integer>(aut.getFinalStates());
+		LinkedList<Integer> toVisit = new LinkedList<Integer>(live);
+		while (!toVisit.isEmpty())
+			for (SRAMove<P, S> t : aut.getMovesTo(toVisit.removeFirst()))
+				if (live.add(t.from))
+					toVisit.add(t.from);
+		movesFrom = new HashMap<Integer, List<SRAMove<P, S>>>();
+
+		reset();
+	}
+
+	/**
+	 * Moves the run back to the initial configuration
+	 */
+	public void reset() {
+		conf = new HashSet<SRAConfiguration<S>>();
+		if (live.contains(aut.getInitialState()))
+			conf.add(SRAConfiguration.of(aut.getInitialState(), aut.getRegisters()));
+	}
+
+	/**
+	 * Reads the symbol <code>input</code>
+	 * @return false iff the run is dead
+	 * @throws TimeoutException
+	 */
+	public boolean feed(S input) throws TimeoutException {
+		if (conf.isEmpty())
+			return false;
+
+		Collection<SRAConfiguration<S>> next = new HashSet<SRAConfiguration<S>>();
+		for (SRAConfiguration<S> c : conf)
+			for (SRAMove<P, S> t : getMovesFrom(c.state))
+				if (t.hasModel(input, ba, c))
+					next.add(c.next(t.to, t.U, input));
+		conf = next;
+		return !conf.isEmpty();
+	}
+
+	/**
+	 * Reads the symbols of <code>input</code> in order, stopping as soon as
+	 * the run is dead
+	 * @return false iff the run is dead
+	 * @throws TimeoutException
+	 */
+	public boolean feed(Iterable<S> input) throws TimeoutException {
+		for (S el : input)
+			if (!feed(el))
+				return false;
+		return !conf.isEmpty();
+	}
+
+	// the moves from state leading to live states
+	private List<SRAMove<P, S>> getMovesFrom(Integer state) {
+		List<SRAMove<P, S>> moves = movesFrom.get(state);
+		if (moves == null) {
+			moves = new ArrayList<SRAMove<P, S>>();
+			for (SRAMove<P, S> t : aut.getTransitionsFrom(state))
+				if (live.contains(t.to))
+					moves.add(t);
+			movesFrom.put(state, moves);
+		}
+		return moves;
+	}
+
+	/**
+	 * @return true iff no final state is reachable from the configurations
+	 *         of the run
+	 */
+	public boolean isDead() {
+		return conf.isEmpty();
+	}
+
+	/**
+	 * @return true iff the input read so far is accepted
+	 */
+	public boolean isAccepting() {
+		for (SRAConfiguration<S> c : conf)
+			if (aut.isFinalState(c.state))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the current configurations of the run
+	 */
+	public Collection<SRAConfiguration<S>> getConfigurations() {
+		return Collections.unmodifiableCollection(conf);
+	}
+}
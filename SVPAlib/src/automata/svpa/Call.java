@@ -5,7 +5,6 @@ package automata.svpa;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 import org.sat4j.specs.TimeoutException;
 
@@ -45,17 +44,12 @@ public class Call<U,S> extends SVPAMove<U,S> {
 		return boolal.IsSatisfiable(guard);
 	}
 	
-	public Pair<Integer, Stack<Pair<Integer, S>>> getNextState(Pair<Integer, Stack<Pair<Integer, S>>> state,
+	public Pair<Integer, SVPAStack<S>> getNextState(Pair<Integer, SVPAStack<S>> state,
 			TaggedSymbol<S> input, BooleanAlgebra<U, S> ba) throws TimeoutException{
 		if(input.tag==SymbolTag.Call)
-			if (ba.HasModel(guard, input.input)) {
-				@SuppressWarnings("unchecked")
-				Stack<Pair<Integer, S>> newStack = (Stack<Pair<Integer, S>>) state.second.clone();
-				newStack.push(new Pair<Integer, S>(stackState,
-						input.input));
-				return new Pair<Integer, Stack<Pair<Integer, S>>>(
-								to, newStack);
-			}
+			if (ba.HasModel(guard, input.input))
+				return new Pair<Integer, SVPAStack<S>>(
+								to, state.second.push(stackState, input.input));
 		return null;		
 	}
 	
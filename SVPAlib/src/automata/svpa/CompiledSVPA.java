@@ -0,0 +1,323 @@
+package automata.svpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+import theory.characters.BinaryCharPred;
+import theory.characters.CharPred;
+import theory.characters.ICharPred;
+import theory.characters.StdCharPred;
+import utilities.Pair;
+
+/**
+ * Table representation of a deterministic SVPA over character intervals.
+ * Characters are split into the classes induced by the interval bounds of
+ * the guards, and every move is a lookup in a table indexed by state, class
+ * and, for returns, stack state and class of the matching call. A return on a
+ * character other than the call's is found in a row of class ranges shared by
+ * all the entries with the same targets, so the tables grow linearly with the
+ * number of classes. The tables are immutable and can be shared by any
+ * number of {@link CompiledSVPARun}.
+ */
+public class CompiledSVPA {
+
+	// class of every character
+	final char[] classOf;
+	final int classCount;
+	final int stateCount;
+	final int stackStateCount;
+
+	final int initialState;
+	final boolean[] isFinal;
+
+	// [state * classCount + class]: target state, -1 if none
+	final int[] internals;
+	final int[] calls;
+	// [state * classCount + class]: stack state pushed by the call
+	final int[] callStackStates;
+	// [state * classCount + class]: target state on the empty stack
+	final int[] returnsBS;
+	// [(state * stackStateCount + stackState) * classCount + callClass]: row
+	// of the targets when the return differs from the call
+	final int[] returnRows;
+	// row r covers the ranges rowStart[r] until rowStart[r + 1]: the return
+	// classes rangeLow[i] to rangeHigh[i] go to rangeTarget[i], the other
+	// classes have no move
+	final int[] rowStart;
+	final int[] rangeLow;
+	final int[] rangeHigh;
+	final int[] rangeTarget;
+	// [(state * stackStateCount + stackState) * classCount + class]: target
+	// state when the return is equal to the call
+	final int[] returnsEq;
+
+	/**
+	 * Compiles the deterministic SVPA <code>aut</code>
+	 * @throws IllegalArgumentException if <code>aut</code> is not
+	 *         deterministic or its tables do not fit in an array
+	 */
+	public CompiledSVPA(SVPA<ICharPred, Character> aut, BooleanAlgebra<ICharPred, Character> ba)
+			throws TimeoutException {
+		if (!aut.isDeterministic(ba))
+			throw new IllegalArgumentException("only deterministic SVPAs can be compiled");
+
+		// number states and stack states
+		Map<Integer, Integer> stateId = new HashMap<Integer, Integer>();
+		for (Integer state : aut.getStates())
+			stateId.put(state, stateId.size());
+		Map<Integer, Integer> stackStateId = new HashMap<Integer, Integer>();
+		for (Integer state : aut.getStates()) {
+			for (Call<ICharPred, Character> t : aut.getCallsFrom(state))
+				if (!stackStateId.containsKey(t.stackState))
+					stackStateId.put(t.stackState, stackStateId.size());
+		}
+		stateCount = stateId.size();
+		stackStateCount = stackStateId.size();
+
+		// character classes
+		boolean[] starts = new boolean[Character.MAX_VALUE + 2];
+		starts[0] = true;
+		for (Integer state : aut.getStates())
+			for (SVPAMove<ICharPred, Character> t : aut.getMovesFrom(state))
+				markBounds(guardOf(t), starts);
+		classOf = new char[Character.MAX_VALUE + 1];
+		int cls = -1;
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (starts[c])
+				cls++;
+			classOf[c] = (char) cls;
+		}
+		classCount = cls + 1;
+		// the smallest character of every class
+		Character[] representative = new Character[classCount];
+		for (int c = Character.MAX_VALUE; c >= 0; c--)
+			representative[classOf[c]] = (char) c;
+
+		long returnsSize = (long) stateCount * stackStateCount * classCount;
+		if (returnsSize > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("the SVPA has too many states or classes to be compiled");
+
+		initialState = stateId.get(aut.getInitialStates().iterator().next());
+		isFinal = new boolean[stateCount];
+		for (Integer state : aut.getFinalStates())
+			isFinal[stateId.get(state)] = true;
+
+		internals = newTable(stateCount * classCount);
+		calls = newTable(stateCount * classCount);
+		callStackStates = newTable(stateCount * classCount);
+		returnsBS = newTable(stateCount * classCount);
+		returnRows = new int[(int) returnsSize];
+		returnsEq = newTable((int) returnsSize);
+		// rows, shared by the entries with the same ranges
+		Map<List<Integer>, Integer> rowId = new HashMap<List<Integer>, Integer>();
+		List<Integer> rows = new ArrayList<Integer>();
+		rowId.put(new ArrayList<Integer>(), 0);
+		List<Integer> rowStarts = new ArrayList<Integer>();
+		rowStarts.add(0);
+
+		for (Integer state : aut.getStates()) {
+			int from = stateId.get(state);
+			for (Internal<ICharPred, Character> t : aut.getInternalsFrom(state))
+				for (int c = 0; c < classCount; c++)
+					if (ba.HasModel(t.guard, representative[c]))
+						internals[from * classCount + c] = stateId.get(t.to);
+			for (Call<ICharPred, Character> t : aut.getCallsFrom(state))
+				for (int c = 0; c < classCount; c++)
+					if (ba.HasModel(t.guard, representative[c])) {
+						calls[from * classCount + c] = stateId.get(t.to);
+						callStackStates[from * classCount + c] = stackStateId.get(t.stackState);
+					}
+			for (ReturnBS<ICharPred, Character> t : aut.getReturnBSFrom(state))
+				for (int c = 0; c < classCount; c++)
+					if (ba.HasModel(t.guard, representative[c]))
+						returnsBS[from * classCount + c] = stateId.get(t.to);
+			// the returns of every stack state; one on a stack state no call
+			// pushes is never taken
+			Map<Integer, List<Return<ICharPred, Character>>> returnsOf =
+					new HashMap<Integer, List<Return<ICharPred, Character>>>();
+			for (Return<ICharPred, Character> t : aut.getReturnsFrom(state)) {
+				Integer stackState = stackStateId.get(t.stackState);
+				if (stackState == null)
+					continue;
+				if (!returnsOf.containsKey(stackState))
+					returnsOf.put(stackState, new ArrayList<Return<ICharPred, Character>>());
+				returnsOf.get(stackState).add(t);
+			}
+			for (Map.Entry<Integer, List<Return<ICharPred, Character>>> e : returnsOf.entrySet()) {
+				int base = (from * stackStateCount + e.getKey()) * classCount;
+				for (int c1 = 0; c1 < classCount; c1++) {
+					Character call = representative[c1];
+					List<int[]> ranges = new ArrayList<int[]>();
+					for (Return<ICharPred, Character> t : e.getValue()) {
+						if (ba.HasModel(t.guard, call, call))
+							returnsEq[base + c1] = stateId.get(t.to);
+						for (CharPred p : returnGuards(t.guard, call))
+							for (ImmutablePair<Character, Character> interval : p.intervals)
+								ranges.add(new int[] { classOf[interval.left], classOf[interval.right],
+										stateId.get(t.to) });
+					}
+					List<Integer> row = mergeRanges(ranges);
+					Integer id = rowId.get(row);
+					if (id == null) {
+						id = rowStarts.size() - 1;
+						rowId.put(row, id);
+						rows.addAll(row);
+						rowStarts.add(rows.size() / 3);
+					}
+					returnRows[base + c1] = id;
+				}
+			}
+		}
+
+		rowStart = new int[rowStarts.size()];
+		for (int r = 0; r < rowStart.length; r++)
+			rowStart[r] = rowStarts.get(r);
+		int rangeCount = rows.size() / 3;
+		rangeLow = new int[rangeCount];
+		rangeHigh = new int[rangeCount];
+		rangeTarget = new int[rangeCount];
+		for (int i = 0; i < rangeCount; i++) {
+			rangeLow[i] = rows.get(3 * i);
+			rangeHigh[i] = rows.get(3 * i + 1);
+			rangeTarget[i] = rows.get(3 * i + 2);
+		}
+	}
+
+	/**
+	 * @return the target of a return on a character of class <code>cls</code>
+	 *         other than the call's, using the row of entry
+	 *         <code>(state * stackStateCount + stackState) * classCount +
+	 *         callClass</code>, -1 if none
+	 */
+	int returnTarget(int entry, int cls) {
+		int row = returnRows[entry];
+		// last range starting at or before cls
+		int lo = rowStart[row], hi = rowStart[row + 1] - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (rangeLow[mid] <= cls) {
+				found = mid;
+				lo = mid + 1;
+			} else
+				hi = mid - 1;
+		}
+		return found >= 0 && cls <= rangeHigh[found] ? rangeTarget[found] : -1;
+	}
+
+	/**
+	 * @return the predicates on the return character of <code>guard</code>
+	 *         when the call character is <code>call</code> and differs from it
+	 */
+	private static List<CharPred> returnGuards(ICharPred guard, char call) {
+		List<CharPred> ret = new ArrayList<CharPred>();
+		if (guard instanceof CharPred) {
+			// a unary guard only constrains the call
+			if (((CharPred) guard).isSatisfiedBy(call))
+				ret.add(StdCharPred.TRUE);
+		} else if (guard instanceof BinaryCharPred) {
+			for (Pair<CharPred, CharPred> pair : ((BinaryCharPred) guard).notEqual)
+				if (pair.first.isSatisfiedBy(call))
+					ret.add(pair.second);
+		} else
+			throw new IllegalArgumentException("unsupported predicate " + guard);
+		return ret;
+	}
+
+	/**
+	 * @return the class ranges sorted and with the adjacent ones going to the
+	 *         same target merged, flattened as low, high and target
+	 */
+	private static List<Integer> mergeRanges(List<int[]> ranges) {
+		Collections.sort(ranges, new Comparator<int[]>() {
+			public int compare(int[] r1, int[] r2) {
+				return Integer.compare(r1[0], r2[0]);
+			}
+		});
+		List<Integer> row = new ArrayList<Integer>();
+		for (int[] range : ranges) {
+			int n = row.size();
+			if (n > 0 && row.get(n - 1) == range[2] && range[0] <= row.get(n - 2) + 1) {
+				row.set(n - 2, Math.max(row.get(n - 2), range[1]));
+				continue;
+			}
+			row.add(range[0]);
+			row.add(range[1]);
+			row.add(range[2]);
+		}
+		return row;
+	}
+
+	/**
+	 * @return a new run of this automaton from its initial state
+	 */
+	public CompiledSVPARun newRun() {
+		return new CompiledSVPARun(this);
+	}
+
+	/**
+	 * @return true iff this automaton accepts <code>input</code>
+	 */
+	public boolean accepts(List<TaggedSymbol<Character>> input) {
+		CompiledSVPARun run = newRun();
+		for (TaggedSymbol<Character> el : input)
+			if (!run.step(el.input, el.tag))
+				return false;
+		return run.isAccepting();
+	}
+
+	/**
+	 * @return the number of character classes
+	 */
+	public int getClassCount() {
+		return classCount;
+	}
+
+	private static int[] newTable(int size) {
+		int[] table = new int[size];
+		Arrays.fill(table, -1);
+		return table;
+	}
+
+	private static ICharPred guardOf(SVPAMove<ICharPred, Character> t) {
+		if (t instanceof Internal)
+			return ((Internal<ICharPred, Character>) t).guard;
+		if (t instanceof Call)
+			return ((Call<ICharPred, Character>) t).guard;
+		if (t instanceof Return)
+			return ((Return<ICharPred, Character>) t).guard;
+		if (t instanceof ReturnBS)
+			return ((ReturnBS<ICharPred, Character>) t).guard;
+		throw new IllegalArgumentException("SVPAs with epsilon moves cannot be compiled");
+	}
+
+	private static void markBounds(ICharPred p, boolean[] starts) {
+		if (p instanceof CharPred)
+			markBounds((CharPred) p, starts);
+		else if (p instanceof BinaryCharPred) {
+			BinaryCharPred b = (BinaryCharPred) p;
+			markBounds(b.equals, starts);
+			for (Pair<CharPred, CharPred> pair : b.notEqual) {
+				markBounds(pair.first, starts);
+				markBounds(pair.second, starts);
+			}
+		} else
+			throw new IllegalArgumentException("unsupported predicate " + p);
+	}
+
+	private static void markBounds(CharPred p, boolean[] starts) {
+		for (ImmutablePair<Character, Character> interval : p.intervals) {
+			starts[interval.left] = true;
+			starts[interval.right + 1] = true;
+		}
+	}
+}
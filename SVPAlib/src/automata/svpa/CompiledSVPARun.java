@@ -0,0 +1,134 @@
+package automata.svpa;
+
+import java.util.Arrays;
+
+import automata.svpa.TaggedSymbol.SymbolTag;
+
+/**
+ * Run of a {@link CompiledSVPA}. Every step is a constant number of table
+ * lookups; the stack is an <code>int</code> array holding, for every pending
+ * call, the pushed stack state and the call character, and it only allocates
+ * when it grows past its largest depth so far.
+ */
+public class CompiledSVPARun implements NestedWordRun<Character> {
+
+	private final CompiledSVPA aut;
+
+	// current state, -1 once the run is dead
+	private int state;
+	// two entries per frame: stack state and call character
+	private int[] stack = new int[32];
+	private int top;
+
+	CompiledSVPARun(CompiledSVPA aut) {
+		this.aut = aut;
+		reset();
+	}
+
+	@Override
+	public void reset() {
+		state = aut.initialState;
+		top = 0;
+	}
+
+	/**
+	 * Reads a call character
+	 * @return false iff the run is dead
+	 */
+	public boolean call(char input) {
+		if (state < 0)
+			return false;
+		int i = state * aut.classCount + aut.classOf[input];
+		state = aut.calls[i];
+		if (state < 0)
+			return false;
+		if (top == stack.length)
+			stack = Arrays.copyOf(stack, 2 * stack.length);
+		stack[top++] = aut.callStackStates[i];
+		stack[top++] = input;
+		return true;
+	}
+
+	/**
+	 * Reads an internal character
+	 * @return false iff the run is dead
+	 */
+	public boolean internal(char input) {
+		if (state < 0)
+			return false;
+		state = aut.internals[state * aut.classCount + aut.classOf[input]];
+		return state >= 0;
+	}
+
+	/**
+	 * Reads a return character
+	 * @return false iff the run is dead
+	 */
+	public boolean ret(char input) {
+		if (state < 0)
+			return false;
+		int cls = aut.classOf[input];
+		if (top == 0) {
+			state = aut.returnsBS[state * aut.classCount + cls];
+			return state >= 0;
+		}
+		int call = stack[--top];
+		int entry = (state * aut.stackStateCount + stack[--top]) * aut.classCount;
+		if (call == input)
+			state = aut.returnsEq[entry + cls];
+		else
+			state = aut.returnTarget(entry + aut.classOf[call], cls);
+		return state >= 0;
+	}
+
+	/**
+	 * Reads a character with tag <code>tag</code>
+	 * @return false iff the run is dead
+	 */
+	public boolean step(char input, SymbolTag tag) {
+		switch (tag) {
+		case Call:
+			return call(input);
+		case Return:
+			return ret(input);
+		default:
+			return internal(input);
+		}
+	}
+
+	@Override
+	public boolean call(Character input) {
+		return call(input.charValue());
+	}
+
+	@Override
+	public boolean internal(Character input) {
+		return internal(input.charValue());
+	}
+
+	@Override
+	public boolean ret(Character input) {
+		return ret(input.charValue());
+	}
+
+	/**
+	 * @return true iff the run has no state left, so that no extension of
+	 *         the input read so far is accepted
+	 */
+	@Override
+	public boolean isDead() {
+		return state < 0;
+	}
+
+	@Override
+	public boolean isAccepting() {
+		return state >= 0 && top == 0 && aut.isFinal[state];
+	}
+
+	/**
+	 * @return the number of calls read so far that are still pending
+	 */
+	public int getDepth() {
+		return top / 2;
+	}
+}
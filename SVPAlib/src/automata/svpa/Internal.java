@@ -5,7 +5,6 @@ package automata.svpa;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 import org.sat4j.specs.TimeoutException;
 
@@ -43,20 +42,16 @@ public class Internal<U, S> extends SVPAMove<U, S> {
 		return boolal.IsSatisfiable(guard);
 	}
 
-	public Pair<Integer, Stack<Pair<Integer, S>>> getNextState(
-			Pair<Integer, Stack<Pair<Integer, S>>> state,
+	public Pair<Integer, SVPAStack<S>> getNextState(
+			Pair<Integer, SVPAStack<S>> state,
 			TaggedSymbol<S> input, BooleanAlgebra<U, S> ba) throws TimeoutException {
 
 		if (input.tag == SymbolTag.Internal) {
 			Integer currState = state.first;
 			if (currState.equals(from)) {
-				Stack<Pair<Integer, S>> currStack = state.second;
 				if (ba.HasModel(guard, input.input)) {
-					@SuppressWarnings("unchecked")
-					Stack<Pair<Integer, S>> newStack = (Stack<Pair<Integer, S>>) currStack
-							.clone();
-					return new Pair<Integer, Stack<Pair<Integer, S>>>(to,
-							newStack);
+					return new Pair<Integer, SVPAStack<S>>(to,
+							state.second);
 				}
 			}
 		}
@@ -0,0 +1,326 @@
+package automata.svpa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.svpa.TaggedSymbol.SymbolTag;
+
+/**
+ * Reads the characters of an XML, HTML or JSON document as a nested word,
+ * one tagged character at a time and without buffering the document.
+ * <ul>
+ * <li>XML and HTML: the <code>&lt;</code> opening an element is a call and
+ * the <code>&gt;</code> closing its end tag (or the start tag itself, for
+ * self-closing and HTML void elements) is the matching return. Comments,
+ * processing instructions, CDATA sections and declarations are internal.</li>
+ * <li>JSON: <code>{</code> and <code>[</code> are calls, <code>}</code> and
+ * <code>]</code> are returns, except inside strings.</li>
+ * </ul>
+ * All other characters are internal. The reader does not check that the
+ * document is well formed: that is the job of the automaton.
+ */
+public class NestedWordReader {
+
+	public enum Format {
+		XML, HTML, JSON;
+	}
+
+	private static final Set<String> htmlVoidElements = new HashSet<String>(Arrays.asList(
+			"area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta",
+			"param", "source", "track", "wbr"));
+
+	private static final Set<String> htmlRawTextElements = new HashSet<String>(Arrays.asList(
+			"script", "style"));
+
+	private enum Mode {
+		// markup: text, start tag, end tag, comment and the like, and a
+		// possible end tag of the current raw text element
+		TEXT, START_TAG, END_TAG, SKIP, RAW_END_TAG,
+		// json: outside and inside strings
+		VALUE, STRING
+	}
+
+	private final Reader in;
+	private final Format format;
+
+	private Mode mode;
+	// one character of lookahead, -2 if none
+	private int peeked = -2;
+
+	// the current tagged character
+	private char symbol;
+	private SymbolTag tag;
+
+	// start tag: quote we are in (0 if none), last character outside quotes
+	// and tag name so far
+	private char quote;
+	private char last;
+	private boolean inName;
+	private final StringBuilder tagName = new StringBuilder();
+	// SKIP: terminator of the skipped section and how much of it we matched
+	private String terminator;
+	// SKIP and RAW_END_TAG: how much of the terminator or of the name in
+	// rawTextEnd we matched
+	private int matched;
+	// HTML: end tag that closes the current raw text element, if any
+	private String rawTextEnd;
+	// JSON: the previous character was a backslash in a string
+	private boolean escaped;
+
+	public NestedWordReader(Reader in, Format format) {
+		this.in = in;
+		this.format = format;
+		this.mode = format == Format.JSON ? Mode.VALUE : Mode.TEXT;
+	}
+
+	public static NestedWordReader xml(Reader in) {
+		return new NestedWordReader(in, Format.XML);
+	}
+
+	public static NestedWordReader html(Reader in) {
+		return new NestedWordReader(in, Format.HTML);
+	}
+
+	public static NestedWordReader json(Reader in) {
+		return new NestedWordReader(in, Format.JSON);
+	}
+
+	/**
+	 * Advances to the next tagged character
+	 * @return false iff the end of the input has been reached
+	 */
+	public boolean next() throws IOException {
+		int c = read();
+		if (c < 0)
+			return false;
+		symbol = (char) c;
+		tag = format == Format.JSON ? nextJson(symbol) : nextMarkup(symbol);
+		return true;
+	}
+
+	/**
+	 * @return the current character
+	 */
+	public char getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @return the tag of the current character
+	 */
+	public SymbolTag getTag() {
+		return tag;
+	}
+
+	/**
+	 * Feeds the rest of the input to <code>run</code>, stopping early if the
+	 * run dies
+	 * @return true iff <code>run</code> accepts the input
+	 */
+	public boolean feed(NestedWordRun<Character> run) throws IOException, TimeoutException {
+		while (next()) {
+			boolean alive;
+			switch (tag) {
+			case Call:
+				alive = run.call(symbol);
+				break;
+			case Return:
+				alive = run.ret(symbol);
+				break;
+			default:
+				alive = run.internal(symbol);
+			}
+			if (!alive)
+				return false;
+		}
+		return run.isAccepting();
+	}
+
+	/**
+	 * Feeds the rest of the input to a compiled run without boxing the
+	 * characters
+	 * @return true iff <code>run</code> accepts the input
+	 */
+	public boolean feed(CompiledSVPARun run) throws IOException {
+		while (next()) {
+			boolean alive;
+			switch (tag) {
+			case Call:
+				alive = run.call(symbol);
+				break;
+			case Return:
+				alive = run.ret(symbol);
+				break;
+			default:
+				alive = run.internal(symbol);
+			}
+			if (!alive)
+				return false;
+		}
+		return run.isAccepting();
+	}
+
+	private int read() throws IOException {
+		if (peeked != -2) {
+			int c = peeked;
+			peeked = -2;
+			return c;
+		}
+		return in.read();
+	}
+
+	private int peek() throws IOException {
+		if (peeked == -2)
+			peeked = in.read();
+		return peeked;
+	}
+
+	private SymbolTag nextJson(char c) {
+		if (mode == Mode.STRING) {
+			if (escaped)
+				escaped = false;
+			else if (c == '\\')
+				escaped = true;
+			else if (c == '"')
+				mode = Mode.VALUE;
+			return SymbolTag.Internal;
+		}
+		switch (c) {
+		case '"':
+			mode = Mode.STRING;
+			return SymbolTag.Internal;
+		case '{':
+		case '[':
+			return SymbolTag.Call;
+		case '}':
+		case ']':
+			return SymbolTag.Return;
+		default:
+			return SymbolTag.Internal;
+		}
+	}
+
+	private SymbolTag nextMarkup(char c) throws IOException {
+		switch (mode) {
+		case TEXT:
+			if (c != '<')
+				return SymbolTag.Internal;
+			int n = peek();
+			if (rawTextEnd != null) {
+				// only the end tag of the raw text element is markup
+				if (n == '/') {
+					mode = Mode.RAW_END_TAG;
+					matched = -1;
+				}
+				return SymbolTag.Internal;
+			}
+			if (n == '/') {
+				mode = Mode.END_TAG;
+				return SymbolTag.Internal;
+			}
+			if (n == '!' || n == '?') {
+				mode = Mode.SKIP;
+				terminator = null;
+				return SymbolTag.Internal;
+			}
+			mode = Mode.START_TAG;
+			quote = 0;
+			last = '<';
+			inName = true;
+			tagName.setLength(0);
+			return SymbolTag.Call;
+
+		case START_TAG:
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+				return SymbolTag.Internal;
+			}
+			if (c == '"' || c == '\'') {
+				quote = c;
+				last = c;
+				return SymbolTag.Internal;
+			}
+			if (c == '>') {
+				mode = Mode.TEXT;
+				inName = false;
+				if (last == '/')
+					return SymbolTag.Return;
+				if (format == Format.HTML) {
+					String name = tagName.toString().toLowerCase();
+					if (htmlVoidElements.contains(name))
+						return SymbolTag.Return;
+					if (htmlRawTextElements.contains(name))
+						rawTextEnd = name;
+				}
+				return SymbolTag.Internal;
+			}
+			if (inName) {
+				if (Character.isWhitespace(c) || c == '/')
+					inName = false;
+				else
+					tagName.append(c);
+			}
+			last = c;
+			return SymbolTag.Internal;
+
+		case RAW_END_TAG:
+			if (matched < 0) {
+				// c is the '/' following '<'
+				matched = 0;
+				return SymbolTag.Internal;
+			}
+			if (matched < rawTextEnd.length()) {
+				if (Character.toLowerCase(c) == rawTextEnd.charAt(matched)) {
+					matched++;
+					return SymbolTag.Internal;
+				}
+			} else if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+				// the name is complete: this is the end tag
+				rawTextEnd = null;
+				mode = Mode.END_TAG;
+				return nextMarkup(c);
+			}
+			// still raw text, c may open another candidate end tag
+			mode = Mode.TEXT;
+			return nextMarkup(c);
+
+		case END_TAG:
+			if (c == '>') {
+				mode = Mode.TEXT;
+				return SymbolTag.Return;
+			}
+			return SymbolTag.Internal;
+
+		case SKIP:
+		default:
+			if (terminator == null) {
+				// c is the '!' or '?' following '<'
+				if (c == '?')
+					terminator = "?>";
+				else if (peek() == '-')
+					terminator = "-->";
+				else if (peek() == '[')
+					terminator = "]]>";
+				else
+					terminator = ">";
+				matched = 0;
+				return SymbolTag.Internal;
+			}
+			if (c == terminator.charAt(matched))
+				matched++;
+			else if (terminator.length() > 1 && c == terminator.charAt(0))
+				matched = c == terminator.charAt(1) ? matched : 1;
+			else
+				matched = 0;
+			if (matched == terminator.length())
+				mode = Mode.TEXT;
+			return SymbolTag.Internal;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package automata.svpa;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A run of a nested-word automaton that reads its input one tagged symbol at
+ * a time
+ */
+public interface NestedWordRun<S> {
+
+	/**
+	 * Reads a call symbol
+	 * @return false iff the run is dead
+	 */
+	boolean call(S input) throws TimeoutException;
+
+	/**
+	 * Reads an internal symbol
+	 * @return false iff the run is dead
+	 */
+	boolean internal(S input) throws TimeoutException;
+
+	/**
+	 * Reads a return symbol
+	 * @return false iff the run is dead
+	 */
+	boolean ret(S input) throws TimeoutException;
+
+	/**
+	 * @return true iff the run has no configuration left, so that no
+	 *         extension of the input read so far is accepted
+	 */
+	boolean isDead();
+
+	/**
+	 * @return true iff the input read so far is accepted
+	 */
+	boolean isAccepting();
+
+	/**
+	 * Moves the run back to its initial configuration
+	 */
+	void reset();
+}
@@ -5,7 +5,6 @@ package automata.svpa;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 import org.sat4j.specs.TimeoutException;
 
@@ -46,25 +45,19 @@ public class Return<U, S> extends SVPAMove<U, S> {
 		return boolal.IsSatisfiable(guard);
 	}
 
-	public Pair<Integer, Stack<Pair<Integer, S>>> getNextState(
-			Pair<Integer, Stack<Pair<Integer, S>>> state,
+	public Pair<Integer, SVPAStack<S>> getNextState(
+			Pair<Integer, SVPAStack<S>> state,
 			TaggedSymbol<S> input, BooleanAlgebra<U, S> ba) throws TimeoutException {
 
 		if (input.tag == SymbolTag.Return) {
 			Integer currState = state.first;
 			if (currState.equals(from)) {
-				Stack<Pair<Integer, S>> currStack = state.second;
-				if (currStack.size() > 0) {
-					Pair<Integer, S> stackTop = currStack.peek();
-
-					if (stackTop.first.equals(stackState)
-							&& ba.HasModel(guard, stackTop.second, input.input)) {
-						@SuppressWarnings("unchecked")
-						Stack<Pair<Integer, S>> newStack = (Stack<Pair<Integer, S>>) currStack
-								.clone();
-						newStack.pop();
-						return new Pair<Integer, Stack<Pair<Integer, S>>>(to,
-								newStack);
+				SVPAStack<S> currStack = state.second;
+				if (!currStack.isEmpty()) {
+					if (currStack.peekState().equals(stackState)
+							&& ba.HasModel(guard, currStack.peekSymbol(), input.input)) {
+						return new Pair<Integer, SVPAStack<S>>(to,
+								currStack.pop());
 					}
 				}
 			}
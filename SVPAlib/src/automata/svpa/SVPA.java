@@ -4,19 +4,25 @@
 package automata.svpa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.sat4j.specs.TimeoutException;
 
 import automata.AutomataException;
 import theory.BooleanAlgebra;
-import utilities.BitVecUtil;
 import utilities.Pair;
 
 public class SVPA<U, S> extends VPAutomaton<U, S> {
@@ -146,14 +152,15 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 		return removeUnreachableStates(aut, ba);
 	}
 
-	public Collection<Pair<Integer, Stack<Pair<Integer, S>>>> getConfiguration(
+	public Collection<Pair<Integer, SVPAStack<S>>> getConfiguration(
 			List<TaggedSymbol<S>> input, BooleanAlgebra<U, S> ba) throws TimeoutException {
 
-		Collection<Pair<Integer, Stack<Pair<Integer, S>>>> currConf = new HashSet<Pair<Integer, Stack<Pair<Integer, S>>>>();
+		Collection<Pair<Integer, SVPAStack<S>>> currConf = new HashSet<Pair<Integer, SVPAStack<S>>>();
 
+		// all stacks of a run are pushed on the same empty stack
+		SVPAStack<S> empty = new SVPAStack<S>();
 		for (Integer state : initialStates)
-			currConf.add(new Pair<Integer, Stack<Pair<Integer, S>>>(state,
-					new Stack<Pair<Integer, S>>()));
+			currConf.add(new Pair<Integer, SVPAStack<S>>(state, empty));
 
 		currConf = getConfigurationEpsClosure(currConf, ba);
 		for (TaggedSymbol<S> el : input) {
@@ -167,14 +174,14 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	}
 
 	public boolean accepts(List<TaggedSymbol<S>> input, BooleanAlgebra<U, S> ba) throws TimeoutException {
-		Collection<Pair<Integer, Stack<Pair<Integer, S>>>> conf = getConfiguration(input, ba);
+		Collection<Pair<Integer, SVPAStack<S>>> conf = getConfiguration(input, ba);
 
 		if (conf == null) {
 			return false;
 		}
 
-		for (Pair<Integer, Stack<Pair<Integer, S>>> state : conf) {
-			if (isFinalState(state.first) && state.second.empty())
+		for (Pair<Integer, SVPAStack<S>> state : conf) {
+			if (isFinalState(state.first) && state.second.isEmpty())
 				return true;
 		}
 
@@ -182,19 +189,19 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 		return false;
 	}
 
-	private Collection<Pair<Integer, Stack<Pair<Integer, S>>>> getConfigurationEpsClosure(
-			Collection<Pair<Integer, Stack<Pair<Integer, S>>>> currConf,
+	Collection<Pair<Integer, SVPAStack<S>>> getConfigurationEpsClosure(
+			Collection<Pair<Integer, SVPAStack<S>>> currConf,
 			BooleanAlgebra<U, S> ba) {
 
-		Collection<Pair<Integer, Stack<Pair<Integer, S>>>> currConfEps = currConf;
-		LinkedList<Pair<Integer, Stack<Pair<Integer, S>>>> toVisit = new LinkedList<Pair<Integer, Stack<Pair<Integer, S>>>>(
+		Collection<Pair<Integer, SVPAStack<S>>> currConfEps = currConf;
+		LinkedList<Pair<Integer, SVPAStack<S>>> toVisit = new LinkedList<Pair<Integer, SVPAStack<S>>>(
 				currConf);
 
 		while (toVisit.size() > 0) {
-			Pair<Integer, Stack<Pair<Integer, S>>> visState = toVisit.remove();
+			Pair<Integer, SVPAStack<S>> visState = toVisit.remove();
 
 			for (SVPAEpsilon<U, S> t : getEpsilonsFrom(visState.first)) {
-				Pair<Integer, Stack<Pair<Integer, S>>> newEl = new Pair<Integer, Stack<Pair<Integer, S>>>(
+				Pair<Integer, SVPAStack<S>> newEl = new Pair<Integer, SVPAStack<S>>(
 						t.to, visState.second);
 				if (!currConfEps.contains(newEl)) {
 					currConfEps.add(newEl);
@@ -230,15 +237,15 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 		return reached;
 	}
 
-	public Collection<Pair<Integer, Stack<Pair<Integer, S>>>> getNextState(
-			Collection<Pair<Integer, Stack<Pair<Integer, S>>>> currConf,
+	public Collection<Pair<Integer, SVPAStack<S>>> getNextState(
+			Collection<Pair<Integer, SVPAStack<S>>> currConf,
 			TaggedSymbol<S> input, BooleanAlgebra<U, S> ba) throws TimeoutException {
 
-		Collection<Pair<Integer, Stack<Pair<Integer, S>>>> nextState = new HashSet<Pair<Integer, Stack<Pair<Integer, S>>>>();
+		Collection<Pair<Integer, SVPAStack<S>>> nextState = new HashSet<Pair<Integer, SVPAStack<S>>>();
 
-		for (Pair<Integer, Stack<Pair<Integer, S>>> conf : currConf) {
+		for (Pair<Integer, SVPAStack<S>> conf : currConf) {
 
-			Pair<Integer, Stack<Pair<Integer, S>>> newState = null;
+			Pair<Integer, SVPAStack<S>> newState = null;
 			for (SVPAMove<U, S> t : getTransitionsFrom(conf)) {
 				newState = t.getNextState(conf, input, ba);
 				if (newState != null)
@@ -340,7 +347,108 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 		Map<Pair<Integer, Integer>, Integer> reachedStates = new HashMap<Pair<Integer, Integer>, Integer>();
 		LinkedList<Pair<Integer, Integer>> toVisitStates = new LinkedList<Pair<Integer, Integer>>();
 
-		// Add initial states
+		addInitialProductStates(aut1, aut2, inters, reachedStates, toVisitStates);
+
+		// BFS to discover next states and transitions
+		while (!toVisitStates.isEmpty()) {
+			Pair<Integer, Integer> currState = toVisitStates.removeFirst();
+			int currStateId = reachedStates.get(currState);
+
+			if (isProductFinal(aut1, aut2, currState, ba))
+				inters.finalStates.add(currStateId);
+			addProductSteps(inters, currStateId, productStepsFrom(aut1, aut2, currState, ba),
+					reachedStates, reachedStackStates, toVisitStates, ba);
+		}
+
+		return removeUnreachableStates(inters, ba);
+	}
+
+	/**
+	 * Computes the intersection of <code>aut1</code> and <code>aut2</code>,
+	 * expanding the product states of each BFS level in parallel on
+	 * <code>pool</code>. States are numbered as in
+	 * {@link #intersection(SVPA, SVPA, BooleanAlgebra)}, so the result does
+	 * not depend on the scheduling. The algebra <code>ba</code> must be safe
+	 * to use from several threads.
+	 * @throws TimeoutException 
+	 */
+	public static <A, B> SVPA<A, B> intersection(final SVPA<A, B> aut1,
+			final SVPA<A, B> aut2, final BooleanAlgebra<A, B> ba, ForkJoinPool pool) throws TimeoutException {
+
+		SVPA<A, B> inters = new SVPA<A, B>();
+
+		Map<Pair<Integer, Integer>, Integer> reachedStackStates = new HashMap<Pair<Integer, Integer>, Integer>();
+
+		Map<Pair<Integer, Integer>, Integer> reachedStates = new HashMap<Pair<Integer, Integer>, Integer>();
+		LinkedList<Pair<Integer, Integer>> toVisitStates = new LinkedList<Pair<Integer, Integer>>();
+
+		addInitialProductStates(aut1, aut2, inters, reachedStates, toVisitStates);
+
+		while (!toVisitStates.isEmpty()) {
+			List<Pair<Integer, Integer>> level = new ArrayList<Pair<Integer, Integer>>(toVisitStates);
+			toVisitStates.clear();
+
+			// expand the level in parallel
+			List<Callable<List<ProductStep<A>>>> tasks = new ArrayList<Callable<List<ProductStep<A>>>>();
+			for (final Pair<Integer, Integer> currState : level)
+				tasks.add(new Callable<List<ProductStep<A>>>() {
+					public List<ProductStep<A>> call() throws TimeoutException {
+						return productStepsFrom(aut1, aut2, currState, ba);
+					}
+				});
+			List<Future<List<ProductStep<A>>>> steps = pool.invokeAll(tasks);
+
+			// number the new states in order
+			for (int i = 0; i < level.size(); i++) {
+				Pair<Integer, Integer> currState = level.get(i);
+				int currStateId = reachedStates.get(currState);
+
+				if (isProductFinal(aut1, aut2, currState, ba))
+					inters.finalStates.add(currStateId);
+				addProductSteps(inters, currStateId, getStepsOf(steps.get(i)),
+						reachedStates, reachedStackStates, toVisitStates, ba);
+			}
+		}
+
+		return removeUnreachableStates(inters, ba);
+	}
+
+	private static <A> List<ProductStep<A>> getStepsOf(Future<List<ProductStep<A>>> future)
+			throws TimeoutException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException)
+				throw (TimeoutException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * A move of a product SVPA before its states are numbered
+	 */
+	private static class ProductStep<A> {
+		final Tag tag;
+		final A guard;
+		final Pair<Integer, Integer> to;
+		final Pair<Integer, Integer> stackState;
+
+		ProductStep(Tag tag, A guard, Pair<Integer, Integer> to, Pair<Integer, Integer> stackState) {
+			this.tag = tag;
+			this.guard = guard;
+			this.to = to;
+			this.stackState = stackState;
+		}
+	}
+
+	private static <A, B> void addInitialProductStates(SVPA<A, B> aut1, SVPA<A, B> aut2,
+			SVPA<A, B> inters, Map<Pair<Integer, Integer>, Integer> reachedStates,
+			LinkedList<Pair<Integer, Integer>> toVisitStates) {
 		for (Integer st1 : aut1.initialStates)
 			for (Integer st2 : aut2.initialStates) {
 				Pair<Integer, Integer> p = new Pair<Integer, Integer>(st1, st2);
@@ -352,111 +460,252 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 				reachedStates.put(p, nextId);
 				toVisitStates.add(p);
 			}
+	}
 
-		// DFS to discover next states and transitions
-		while (!toVisitStates.isEmpty()) {
-			Pair<Integer, Integer> currState = toVisitStates.removeFirst();
-			int currStateId = reachedStates.get(currState);
+	private static <A, B> boolean isProductFinal(SVPA<A, B> aut1, SVPA<A, B> aut2,
+			Pair<Integer, Integer> state, BooleanAlgebra<A, B> ba) {
+		return aut1.isFinalConfiguration(aut1.getEpsClosure(state.first, ba))
+				&& aut2.isFinalConfiguration(aut2.getEpsClosure(state.second, ba));
+	}
 
-			// Consider epsilon closure
-			Collection<Integer> epsClose1 = aut1.getEpsClosure(currState.first,
-					ba);
-			Collection<Integer> epsClose2 = aut2.getEpsClosure(
-					currState.second, ba);
+	/**
+	 * Returns the moves of the product of <code>aut1</code> and
+	 * <code>aut2</code> leaving <code>state</code>. Only reads the two
+	 * automata, so it can run concurrently.
+	 */
+	private static <A, B> List<ProductStep<A>> productStepsFrom(SVPA<A, B> aut1,
+			SVPA<A, B> aut2, Pair<Integer, Integer> state, BooleanAlgebra<A, B> ba) throws TimeoutException {
+
+		List<ProductStep<A>> steps = new ArrayList<ProductStep<A>>();
+
+		// Consider epsilon closure
+		Collection<Integer> epsClose1 = aut1.getEpsClosure(state.first, ba);
+		Collection<Integer> epsClose2 = aut2.getEpsClosure(state.second, ba);
+
+		for (Return<A, B> t1 : aut1.getReturnsFrom(epsClose1))
+			for (Return<A, B> t2 : aut2.getReturnsFrom(epsClose2)) {
+				A intersGuard = ba.MkAnd(t1.guard, t2.guard);
+				if (ba.IsSatisfiable(intersGuard))
+					steps.add(new ProductStep<A>(Tag.Return, intersGuard,
+							new Pair<Integer, Integer>(t1.to, t2.to),
+							new Pair<Integer, Integer>(t1.stackState, t2.stackState)));
+			}
 
-			boolean isFin = false;
-			for (Integer st : epsClose1)
-				if (aut1.isFinalState(st)) {
-					isFin = true;
-					break;
-				}
-			if (isFin) {
-				isFin = false;
-				for (Integer st : epsClose2)
-					if (aut2.isFinalState(st)) {
-						isFin = true;
-						break;
-					}
-				if (isFin)
-					inters.finalStates.add(currStateId);
+		for (Call<A, B> t1 : aut1.getCallsFrom(epsClose1))
+			for (Call<A, B> t2 : aut2.getCallsFrom(epsClose2)) {
+				A intersGuard = ba.MkAnd(t1.guard, t2.guard);
+				if (ba.IsSatisfiable(intersGuard))
+					steps.add(new ProductStep<A>(Tag.Call, intersGuard,
+							new Pair<Integer, Integer>(t1.to, t2.to),
+							new Pair<Integer, Integer>(t1.stackState, t2.stackState)));
+			}
+
+		for (ReturnBS<A, B> t1 : aut1.getReturnBSFrom(epsClose1))
+			for (ReturnBS<A, B> t2 : aut2.getReturnBSFrom(epsClose2)) {
+				A intersGuard = ba.MkAnd(t1.guard, t2.guard);
+				if (ba.IsSatisfiable(intersGuard))
+					steps.add(new ProductStep<A>(Tag.ReturnBS, intersGuard,
+							new Pair<Integer, Integer>(t1.to, t2.to), null));
 			}
 
-			for (Return<A, B> t1 : aut1.getReturnsFrom(epsClose1))
-				for (Return<A, B> t2 : aut2.getReturnsFrom(epsClose2)) {
-					A intersGuard = ba.MkAnd(t1.guard, t2.guard);
-					if (ba.IsSatisfiable(intersGuard)) {
+		for (Internal<A, B> t1 : aut1.getInternalsFrom(epsClose1))
+			for (Internal<A, B> t2 : aut2.getInternalsFrom(epsClose2)) {
+				A intersGuard = ba.MkAnd(t1.guard, t2.guard);
+				if (ba.IsSatisfiable(intersGuard))
+					steps.add(new ProductStep<A>(Tag.Internal, intersGuard,
+							new Pair<Integer, Integer>(t1.to, t2.to), null));
+			}
 
-						Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(
-								t1.to, t2.to);
-						Pair<Integer, Integer> nextStackState = new Pair<Integer, Integer>(
-								t1.stackState, t2.stackState);
+		return steps;
+	}
 
-						int nextStateId = addStateBinOpHelper(inters,
-								reachedStates, toVisitStates, nextState, 0);
-						int nextStackStateId = addStackStateBinOpHelper(inters,
-								reachedStackStates, nextStackState, 0);
+	// numbers the targets of the steps and adds the steps to the product
+	private static <A, B> void addProductSteps(SVPA<A, B> inters, int currStateId,
+			List<ProductStep<A>> steps, Map<Pair<Integer, Integer>, Integer> reachedStates,
+			Map<Pair<Integer, Integer>, Integer> reachedStackStates,
+			LinkedList<Pair<Integer, Integer>> toVisitStates, BooleanAlgebra<A, B> ba) throws TimeoutException {
 
-						Return<A, B> newTrans = new Return<A, B>(currStateId,
-								nextStateId, nextStackStateId, intersGuard);
+		for (ProductStep<A> step : steps) {
+			int nextStateId = addStateBinOpHelper(inters, reachedStates, toVisitStates, step.to, 0);
+			switch (step.tag) {
+			case Return:
+				inters.addTransition(new Return<A, B>(currStateId, nextStateId,
+						addStackStateBinOpHelper(inters, reachedStackStates, step.stackState, 0),
+						step.guard), ba, true);
+				break;
+			case Call:
+				inters.addTransition(new Call<A, B>(currStateId, nextStateId,
+						addStackStateBinOpHelper(inters, reachedStackStates, step.stackState, 0),
+						step.guard), ba, true);
+				break;
+			case ReturnBS:
+				inters.addTransition(new ReturnBS<A, B>(currStateId, nextStateId, step.guard), ba, true);
+				break;
+			default:
+				inters.addTransition(new Internal<A, B>(currStateId, nextStateId, step.guard), ba, true);
+			}
+		}
+	}
 
-						inters.addTransition(newTrans, ba, true);
-					}
-				}
+	/**
+	 * Checks whether the intersection with <code>aut</code> is empty without
+	 * building it
+	 * @throws TimeoutException 
+	 */
+	public boolean hasEmptyIntersectionWith(SVPA<U, S> aut, BooleanAlgebra<U, S> ba) throws TimeoutException {
+		return isIntersectionEmpty(this, aut, ba);
+	}
 
-			for (Call<A, B> t1 : aut1.getCallsFrom(epsClose1))
-				for (Call<A, B> t2 : aut2.getCallsFrom(epsClose2)) {
-					A intersGuard = ba.MkAnd(t1.guard, t2.guard);
-					if (ba.IsSatisfiable(intersGuard)) {
+	/**
+	 * Checks whether the intersection of <code>aut1</code> and
+	 * <code>aut2</code> is empty. The product is explored lazily from its
+	 * initial states and the search stops at the first final state reached.
+	 * Facts are pairs (context, product state), where the context is the
+	 * product state entered by the pending call, or the top level before or
+	 * after the first unmatched call; a call and a return are matched when
+	 * the return leaves a state reached in the context the call entered.
+	 * @throws TimeoutException 
+	 */
+	public static <A, B> boolean isIntersectionEmpty(SVPA<A, B> aut1, SVPA<A, B> aut2,
+			BooleanAlgebra<A, B> ba) throws TimeoutException {
+		return new LazyProduct<A, B>(aut1, aut2, ba).isEmpty();
+	}
 
-						Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(
-								t1.to, t2.to);
-						Pair<Integer, Integer> nextStackState = new Pair<Integer, Integer>(
-								t1.stackState, t2.stackState);
+	private static class LazyProduct<A, B> {
+		// contexts at the top level, the others are product state ids + 2
+		static final int TOP = 0, TOP_AFTER_CALL = 1;
 
-						int nextStateId = addStateBinOpHelper(inters,
-								reachedStates, toVisitStates, nextState, 0);
-						int nextStackStateId = addStackStateBinOpHelper(inters,
-								reachedStackStates, nextStackState, 0);
+		final SVPA<A, B> aut1, aut2;
+		final BooleanAlgebra<A, B> ba;
 
-						Call<A, B> newTrans = new Call<A, B>(currStateId,
-								nextStateId, nextStackStateId, intersGuard);
+		final Map<Pair<Integer, Integer>, Integer> stateIds = new HashMap<Pair<Integer, Integer>, Integer>();
+		final List<Pair<Integer, Integer>> states = new ArrayList<Pair<Integer, Integer>>();
 
-						inters.addTransition(newTrans, ba, true);
-					}
-				}
+		final HashSet<Long> facts = new HashSet<Long>();
+		final LinkedList<Long> toVisit = new LinkedList<Long>();
+		// product states reached in every call context
+		final Map<Integer, List<Integer>> reachedIn = new HashMap<Integer, List<Integer>>();
+		// calls entering every call context
+		final Map<Integer, List<PendingCall<A, B>>> callsInto = new HashMap<Integer, List<PendingCall<A, B>>>();
+
+		LazyProduct(SVPA<A, B> aut1, SVPA<A, B> aut2, BooleanAlgebra<A, B> ba) {
+			this.aut1 = aut1;
+			this.aut2 = aut2;
+			this.ba = ba;
+		}
+
+		int getId(Integer st1, Integer st2) {
+			Pair<Integer, Integer> state = new Pair<Integer, Integer>(st1, st2);
+			Integer id = stateIds.get(state);
+			if (id == null) {
+				id = states.size();
+				stateIds.put(state, id);
+				states.add(state);
+			}
+			return id;
+		}
+
+		void add(int context, int state) {
+			Long fact = ((long) context << 32) | state;
+			if (facts.add(fact))
+				toVisit.add(fact);
+		}
 
-			for (ReturnBS<A, B> t1 : aut1.getReturnBSFrom(epsClose1))
-				for (ReturnBS<A, B> t2 : aut2.getReturnBSFrom(epsClose2)) {
-					A intersGuard = ba.MkAnd(t1.guard, t2.guard);
-					if (ba.IsSatisfiable(intersGuard)) {
-						Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(
-								t1.to, t2.to);
-						int nextStateId = addStateBinOpHelper(inters,
-								reachedStates, toVisitStates, nextState, 0);
-						ReturnBS<A, B> newTrans = new ReturnBS<A, B>(
-								currStateId, nextStateId, intersGuard);
-
-						inters.addTransition(newTrans, ba, true);
+		boolean isEmpty() throws TimeoutException {
+			for (Integer st1 : aut1.initialStates)
+				for (Integer st2 : aut2.initialStates)
+					add(TOP, getId(st1, st2));
+
+			while (!toVisit.isEmpty()) {
+				long fact = toVisit.removeFirst();
+				int context = (int) (fact >>> 32);
+				int id = (int) fact;
+				Pair<Integer, Integer> state = states.get(id);
+
+				if (context < 2) {
+					if (aut1.isFinalState(state.first) && aut2.isFinalState(state.second))
+						return false;
+				} else {
+					List<Integer> reached = reachedIn.get(context);
+					if (reached == null) {
+						reached = new ArrayList<Integer>();
+						reachedIn.put(context, reached);
 					}
+					reached.add(id);
+					List<PendingCall<A, B>> calls = callsInto.get(context);
+					if (calls != null)
+						for (PendingCall<A, B> call : calls)
+							matchReturns(call, state);
 				}
 
-			for (Internal<A, B> t1 : aut1.getInternalsFrom(epsClose1))
-				for (Internal<A, B> t2 : aut2.getInternalsFrom(epsClose2)) {
-					A intersGuard = ba.MkAnd(t1.guard, t2.guard);
-					if (ba.IsSatisfiable(intersGuard)) {
-						Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(
-								t1.to, t2.to);
-						int nextStateId = addStateBinOpHelper(inters,
-								reachedStates, toVisitStates, nextState, 0);
-						Internal<A, B> newTrans = new Internal<A, B>(
-								currStateId, nextStateId, intersGuard);
-						inters.addTransition(newTrans, ba, true);
+				for (SVPAEpsilon<A, B> t1 : aut1.getEpsilonsFrom(state.first))
+					add(context, getId(t1.to, state.second));
+				for (SVPAEpsilon<A, B> t2 : aut2.getEpsilonsFrom(state.second))
+					add(context, getId(state.first, t2.to));
+
+				for (Internal<A, B> t1 : aut1.getInternalsFrom(state.first))
+					for (Internal<A, B> t2 : aut2.getInternalsFrom(state.second))
+						if (ba.IsSatisfiable(ba.MkAnd(t1.guard, t2.guard)))
+							add(context, getId(t1.to, t2.to));
+
+				// returns on the empty stack
+				if (context == TOP)
+					for (ReturnBS<A, B> t1 : aut1.getReturnBSFrom(state.first))
+						for (ReturnBS<A, B> t2 : aut2.getReturnBSFrom(state.second))
+							if (ba.IsSatisfiable(ba.MkAnd(t1.guard, t2.guard)))
+								add(TOP, getId(t1.to, t2.to));
+
+				for (Call<A, B> t1 : aut1.getCallsFrom(state.first))
+					for (Call<A, B> t2 : aut2.getCallsFrom(state.second)) {
+						A guard = ba.MkAnd(t1.guard, t2.guard);
+						if (!ba.IsSatisfiable(guard))
+							continue;
+						int entry = getId(t1.to, t2.to);
+
+						// unmatched call
+						if (context < 2)
+							add(TOP_AFTER_CALL, entry);
+
+						// matched call
+						PendingCall<A, B> call = new PendingCall<A, B>(context, t1, t2, guard);
+						List<PendingCall<A, B>> calls = callsInto.get(entry + 2);
+						if (calls == null) {
+							calls = new ArrayList<PendingCall<A, B>>();
+							callsInto.put(entry + 2, calls);
+						}
+						calls.add(call);
+						add(entry + 2, entry);
+						List<Integer> reached = reachedIn.get(entry + 2);
+						if (reached != null)
+							for (Integer r : reached)
+								matchReturns(call, states.get(r));
 					}
-				}
+			}
+			return true;
+		}
 
+		// adds the targets of the returns from state matching call
+		void matchReturns(PendingCall<A, B> call, Pair<Integer, Integer> state) throws TimeoutException {
+			for (Return<A, B> t1 : aut1.getReturnsFrom(state.first, call.t1.stackState))
+				for (Return<A, B> t2 : aut2.getReturnsFrom(state.second, call.t2.stackState)) {
+					A retGuard = ba.MkAnd(t1.guard, t2.guard);
+					if (ba.IsSatisfiable(ba.MkAnd(ba.toBinaryPredicate(call.guard), retGuard)))
+						add(call.context, getId(t1.to, t2.to));
+				}
 		}
+	}
 
-		return removeUnreachableStates(inters, ba);
+	private static class PendingCall<A, B> {
+		final int context;
+		final Call<A, B> t1, t2;
+		final A guard;
+
+		PendingCall(int context, Call<A, B> t1, Call<A, B> t2, A guard) {
+			this.context = context;
+			this.t1 = t1;
+			this.t2 = t2;
+			this.guard = guard;
+		}
 	}
 
 	private static <A, B> int addStateBinOpHelper(SVPA<A, B> binAut,
@@ -733,9 +982,9 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public static <A, B> boolean areEquivalent(SVPA<A, B> aut1,
 			SVPA<A, B> aut2, BooleanAlgebra<A, B> ba) throws TimeoutException {
-		if (!differnce(aut1, aut2, ba).isEmpty)
+		if (!isIntersectionEmpty(aut1, aut2.complement(ba), ba))
 			return false;
-		return differnce(aut2, aut1, ba).isEmpty;
+		return isIntersectionEmpty(aut2, aut1.complement(ba), ba);
 	}
 
 	/**
@@ -761,43 +1010,114 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 		if (aut1.isDeterministic(ba))
 			return aut1;
 		
-		SVPA<A, B> deter = new SVPA<A, B>();
-
-		HashMap<Collection<Pair<Integer, Integer>>, Integer> reachedStates = new HashMap<Collection<Pair<Integer, Integer>>, Integer>();
-		LinkedList<Collection<Pair<Integer, Integer>>> toVisitStates = new LinkedList<Collection<Pair<Integer, Integer>>>();
+		return new Determinization<A, B>(aut, ba).run();
+	}
 
-		HashMap<Pair<Collection<Pair<Integer, Integer>>, A>, Integer> reachedStackStates = new HashMap<Pair<Collection<Pair<Integer, Integer>>, A>, Integer>();
+	/**
+	 * Subset construction of an SVPA. Every state of the result is a summary,
+	 * the set of pairs (q, q') such that q' is reachable from q, q being a
+	 * state entered by the last pending call, and every stack state is the
+	 * pair (caller, call guard). Returns are only built for the pairs
+	 * (state, stack state) that can actually occur: every state keeps the set
+	 * of stack states that can be on top of the stack when it is reached, and
+	 * these contexts are propagated along internal moves and from callers to
+	 * the targets of the matching returns.
+	 */
+	private static class Determinization<A, B> {
+		// context of the states reached with an empty stack
+		static final int EMPTY_STACK = -1;
+
+		final SVPA<A, B> aut;
+		final BooleanAlgebra<A, B> ba;
+		final SVPA<A, B> deter = new SVPA<A, B>();
+
+		final Map<StateSummary, Integer> reachedStates = new HashMap<StateSummary, Integer>();
+		final List<StateSummary> summaries = new ArrayList<StateSummary>();
+		// stack states as (caller id, call guard)
+		final Map<Pair<Integer, A>, Integer> reachedStackStates = new HashMap<Pair<Integer, A>, Integer>();
+		final List<Pair<Integer, A>> stackStates = new ArrayList<Pair<Integer, A>>();
+
+		// by state id
+		final List<Set<Integer>> contexts = new ArrayList<Set<Integer>>();
+		final List<List<Integer>> internalTargets = new ArrayList<List<Integer>>();
+		final List<List<Integer>> returnBSTargets = new ArrayList<List<Integer>>();
+		// targets of the returns matching the calls of every state
+		final List<List<Integer>> returnTargets = new ArrayList<List<Integer>>();
+
+		final LinkedList<Integer> toExpand = new LinkedList<Integer>();
+		final LinkedList<Pair<Integer, Integer>> toVisit = new LinkedList<Pair<Integer, Integer>>();
+
+		// pairs of the summary under construction
+		long[] buffer = new long[16];
+		int bufferSize;
+
+		Determinization(SVPA<A, B> aut, BooleanAlgebra<A, B> ba) {
+			this.aut = aut;
+			this.ba = ba;
+		}
 
-		// Add initial state
-		Collection<Pair<Integer, Integer>> currState = new HashSet<Pair<Integer, Integer>>();
-		for (Integer st : aut.initialStates)
-			currState.add(new Pair<Integer, Integer>(st, st));
-		deter.initialStates.add(0);
-		deter.states.add(0);
+		SVPA<A, B> run() throws TimeoutException {
+			bufferSize = 0;
+			for (Integer st : aut.initialStates)
+				addToBuffer(st, st);
+			int initialId = getStateId();
+			deter.initialStates.add(initialId);
+			addContext(initialId, EMPTY_STACK);
+
+			// a state is always expanded before its contexts are visited
+			while (!toExpand.isEmpty() || !toVisit.isEmpty()) {
+				if (!toExpand.isEmpty())
+					expand(toExpand.removeFirst());
+				else {
+					Pair<Integer, Integer> fact = toVisit.removeFirst();
+					visit(fact.first, fact.second);
+				}
+			}
 
-		reachedStates.put(currState, 0);
-		toVisitStates.add(currState);
+			deter.isDeterministic = true;
+			return deter;
+		}
 
-		Collection<Collection<Pair<Integer, Integer>>> previouslyVisited = new HashSet<Collection<Pair<Integer, Integer>>>();
+		void addToBuffer(int first, int second) {
+			if (bufferSize == buffer.length)
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			buffer[bufferSize++] = StateSummary.pack(first, second);
+		}
 
-		while (toVisitStates.size() > 0) {
+		// the id of the summary in the buffer
+		int getStateId() {
+			StateSummary summary = new StateSummary(buffer, bufferSize);
+			Integer id = reachedStates.get(summary);
+			if (id == null) {
+				id = summaries.size();
+				reachedStates.put(summary, id);
+				summaries.add(summary);
+				contexts.add(new HashSet<Integer>());
+				internalTargets.add(new ArrayList<Integer>());
+				returnBSTargets.add(new ArrayList<Integer>());
+				returnTargets.add(new ArrayList<Integer>());
+				deter.states.add(id);
+				toExpand.add(id);
+			}
+			return id;
+		}
 
-			// pop first state from tVisit and add to visited
-			currState = toVisitStates.removeFirst();
-			int currStateId = reachedStates.get(currState);
-			previouslyVisited.add(currState);
+		// the satisfiable boolean combinations of predicates
+		Collection<Pair<A, ArrayList<Integer>>> getMinterms(ArrayList<A> predicates) throws TimeoutException {
+			if (predicates.isEmpty())
+				return Collections.emptyList();
+			return ba.GetMinterms(predicates, Long.MAX_VALUE);
+		}
 
-			// for every stackState discovered so far, add (currState,
-			// stackState) to the those to be visited for creating the returns
-			Collection<Pair<Collection<Pair<Integer, Integer>>, Pair<Collection<Pair<Integer, Integer>>, A>>> toVisitPairStateStackStates = new HashSet<Pair<Collection<Pair<Integer, Integer>>, Pair<Collection<Pair<Integer, Integer>>, A>>>();
-			for (Pair<Collection<Pair<Integer, Integer>>, A> stackState : reachedStackStates
-					.keySet())
-				toVisitPairStateStackStates
-						.add(new Pair<Collection<Pair<Integer, Integer>>, Pair<Collection<Pair<Integer, Integer>>, A>>(
-								currState, stackState));
+		void addContext(int state, int context) {
+			if (contexts.get(state).add(context))
+				toVisit.add(new Pair<Integer, Integer>(state, context));
+		}
 
-			// take all the second components of the pairs in currState
-			Collection<Integer> secondComp = projectSecondComponents(currState);
+		// builds the internal, call and empty-stack return moves of state
+		void expand(int currStateId) throws TimeoutException {
+			StateSummary currState = summaries.get(currStateId);
+			Collection<Integer> secondComp = currState.getSecondComponents();
 
 			// if any pair has a final state as second component the current
 			// state is final
@@ -808,40 +1128,23 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 			ArrayList<Internal<A, B>> internalMovesFromCS = new ArrayList<Internal<A, B>>(
 					aut.getInternalsFrom(secondComp));
 
-			// Start at 1 to avoid case in which they are all false (we are not
-			// building a total SVPA
-			for (int i = 1; i < Math.pow(2, internalMovesFromCS.size()); i++) {
-				A guard = null;
-
-				Collection<Pair<Integer, Integer>> toState = new HashSet<Pair<Integer, Integer>>();
-
-				for (int bit = 0; bit < internalMovesFromCS.size(); bit++) {
-					Internal<A, B> currMove = internalMovesFromCS.get(bit);
-
-					if (BitVecUtil.get_nth_bit(i, bit) == 1) {
-						guard = intersectGuards(guard, currMove.guard, ba);
-
-						for (Pair<Integer, Integer> pair : secondIs(currState,
-								currMove.from))
-							toState.add(new Pair<Integer, Integer>(pair.first,
-									currMove.to));
-
-					} else {
-						guard = intersectGuards(guard,
-								ba.MkNot(currMove.guard), ba);
-					}
-				}
-
-				// If guard satisfiable add move to deterministic version
-				if (ba.IsSatisfiable(guard)) {
-					Integer toStateId = reachedStates.get(toState);
-					if (toStateId == null) {
-						toStateId = reachedStates.size();
-						reachedStates.put(toState, toStateId);
-						toVisitStates.add(toState);
+			ArrayList<A> predicates = new ArrayList<A>();
+			for (Internal<A, B> move : internalMovesFromCS)
+				predicates.add(move.guard);
+			// minterms are satisfiable, skip the one where all moves are
+			// disabled (we are not building a total SVPA)
+			for (Pair<A, ArrayList<Integer>> minterm : getMinterms(predicates)) {
+				bufferSize = 0;
+				for (int bit = 0; bit < internalMovesFromCS.size(); bit++)
+					if (minterm.second.get(bit) == 1) {
+						Internal<A, B> currMove = internalMovesFromCS.get(bit);
+						for (Integer first : currState.getFirstsOf(currMove.from))
+							addToBuffer(first, currMove.to);
 					}
-					deter.addTransition(new Internal<A, B>(currStateId,
-							toStateId, guard), ba, true);
+				if (bufferSize > 0) {
+					int toStateId = getStateId();
+					deter.addTransition(new Internal<A, B>(currStateId, toStateId, minterm.first), ba, true);
+					internalTargets.get(currStateId).add(toStateId);
 				}
 			}
 
@@ -849,242 +1152,465 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 			ArrayList<ReturnBS<A, B>> returnBSMovesFromCS = new ArrayList<ReturnBS<A, B>>(
 					aut.getReturnBSFrom(secondComp));
 
-			// Start at 1 to avoid case in which they are all false
-			for (int i = 1; i < Math.pow(2, returnBSMovesFromCS.size()); i++) {
-				A guard = null;
-
-				Collection<Pair<Integer, Integer>> toState = new HashSet<Pair<Integer, Integer>>();
-
-				for (int bit = 0; bit < returnBSMovesFromCS.size(); bit++) {
-					ReturnBS<A, B> currMove = returnBSMovesFromCS.get(bit);
-
-					if (BitVecUtil.get_nth_bit(i, bit) == 1) {
-						guard = intersectGuards(guard, currMove.guard, ba);
-
-						for (Pair<Integer, Integer> pair : secondIs(currState,
-								currMove.from))
-							toState.add(new Pair<Integer, Integer>(pair.first,
-									currMove.to));
-
-					} else {
-						guard = intersectGuards(guard,
-								ba.MkNot(currMove.guard), ba);
+			predicates = new ArrayList<A>();
+			for (ReturnBS<A, B> move : returnBSMovesFromCS)
+				predicates.add(move.guard);
+			for (Pair<A, ArrayList<Integer>> minterm : getMinterms(predicates)) {
+				bufferSize = 0;
+				for (int bit = 0; bit < returnBSMovesFromCS.size(); bit++)
+					if (minterm.second.get(bit) == 1) {
+						ReturnBS<A, B> currMove = returnBSMovesFromCS.get(bit);
+						for (Integer first : currState.getFirstsOf(currMove.from))
+							addToBuffer(first, currMove.to);
 					}
-				}
-
-				// If guard satisfiable add move to deterministic version
-				if (ba.IsSatisfiable(guard)) {
-					Integer toStateId = reachedStates.get(toState);
-					if (toStateId == null) {
-						toStateId = reachedStates.size();
-						reachedStates.put(toState, toStateId);
-						toVisitStates.add(toState);
-					}
-					deter.addTransition(new ReturnBS<A, B>(currStateId,
-							toStateId, guard), ba, true);
+				if (bufferSize > 0) {
+					int toStateId = getStateId();
+					deter.addTransition(new ReturnBS<A, B>(currStateId, toStateId, minterm.first), ba, true);
+					returnBSTargets.get(currStateId).add(toStateId);
 				}
 			}
 
 			// CALLS out of currState
-			ArrayList<Call<A, B>> callsFromCurrState = new ArrayList<Call<A, B>>(
-					aut.getCallsFrom(secondComp));
+			ArrayList<Call<A, B>> callsFromCurrState = new ArrayList<Call<A, B>>(aut.getCallsFrom(secondComp));
 
-			// Start at 1 to avoid case in which they are all false
-			for (int i = 1; i < Math.pow(2, callsFromCurrState.size()); i++) {
-				A a = null;
+			predicates = new ArrayList<A>();
+			for (Call<A, B> move : callsFromCurrState)
+				predicates.add(move.guard);
+			for (Pair<A, ArrayList<Integer>> minterm : getMinterms(predicates)) {
+				A a = minterm.first;
+				bufferSize = 0;
 
 				// delta_C(S,a)=(S',(S,a)) where
 				// S'={(q'',q'') | (q,q') in S and delta_c(q',a)=q'',p}
-
-				// Compute the guard of new move and target state
-				Collection<Pair<Integer, Integer>> sPrime = new HashSet<Pair<Integer, Integer>>();
-				for (int bit = 0; bit < callsFromCurrState.size(); bit++) {
-					// get the ith call in the list
-					Call<A, B> currMove = callsFromCurrState.get(bit);
-
-					// use the predicate positively if i-th bit of i is 1
-					if (BitVecUtil.get_nth_bit(i, bit) == 1) {
-						a = intersectGuards(a, currMove.guard, ba);
-
-						sPrime.add(new Pair<Integer, Integer>(currMove.to,
-								currMove.to));
-					} else
-						a = intersectGuards(a, ba.MkNot(currMove.guard), ba);
-				}
-
-				// If guard satisfiable add move to deterministic version
-				if (ba.IsSatisfiable(a)) {
-
-					// Pick the state id
-					Integer toStateId = reachedStates.get(sPrime);
-					if (toStateId == null) {
-						toStateId = reachedStates.size();
-						reachedStates.put(sPrime, toStateId);
-						toVisitStates.add(sPrime);
+				for (int bit = 0; bit < callsFromCurrState.size(); bit++)
+					if (minterm.second.get(bit) == 1) {
+						Call<A, B> currMove = callsFromCurrState.get(bit);
+						addToBuffer(currMove.to, currMove.to);
 					}
 
-					// Add stack states to be visited by returns
-					Pair<Collection<Pair<Integer, Integer>>, A> currStackState = new Pair<Collection<Pair<Integer, Integer>>, A>(
-							currState, a);
+				if (bufferSize > 0) {
+					int toStateId = getStateId();
 
-					Integer stackStateId = reachedStackStates
-							.get(currStackState);
+					Pair<Integer, A> stackState = new Pair<Integer, A>(currStateId, a);
+					Integer stackStateId = reachedStackStates.get(stackState);
 					if (stackStateId == null) {
-						stackStateId = reachedStackStates.size();
-						reachedStackStates.put(currStackState, stackStateId);
-
-						// Add new discovered stack states to those to be
-						// visited by returns
-						for (Collection<Pair<Integer, Integer>> visitedState : previouslyVisited)
-							toVisitPairStateStackStates
-									.add(new Pair<Collection<Pair<Integer, Integer>>, Pair<Collection<Pair<Integer, Integer>>, A>>(
-											visitedState, currStackState));
+						stackStateId = stackStates.size();
+						reachedStackStates.put(stackState, stackStateId);
+						stackStates.add(stackState);
 					}
 
-					deter.addTransition(new Call<A, B>(currStateId, toStateId,
-							stackStateId, a), ba, true);
+					deter.addTransition(new Call<A, B>(currStateId, toStateId, stackStateId, a), ba, true);
+					addContext(toStateId, stackStateId);
 				}
 			}
+		}
 
-			// RETURNS out of every pair in to visit PairStateStackStates
-			for (Pair<Collection<Pair<Integer, Integer>>, Pair<Collection<Pair<Integer, Integer>>, A>> stPair : toVisitPairStateStackStates) {				
-				
-				// adding delta_r(S,(S',a),b)
-				Collection<Pair<Integer, Integer>> S = stPair.first;
-				Pair<Collection<Pair<Integer, Integer>>, A> stackState = stPair.second;
-				Collection<Pair<Integer, Integer>> Sprime = stackState.first;
-				A a = stackState.second;
-				
-				//These transitions are independent from currStateId
-				currStateId = reachedStates.get(S);
-
-				// Calls and returns causing the match
-				// (q,q'') such that,
-				// 1) (q,q') in S',
-				// 2) delta_c(q',a)=(q1,p)
-				// 3) (q1,q2) in S,
-				// 4) delta_r(q2,b,p)=q''
-
-				HashSet<Pair<A, Pair<Call<A, B>, Return<A, B>>>> callRetGuardTripletHS = new HashSet<Pair<A, Pair<Call<A, B>, Return<A, B>>>>();
-				for (Call<A, B> call : aut
-						.getCallsFrom(projectSecondComponents(Sprime))) {
-					A callRetGuard = ba.MkAnd(a, call.guard);
-					//if I store all the calls in the stack triplet i can avoid this satisfiability check
-					if (ba.IsSatisfiable(callRetGuard))
-						for (Return<A, B> ret : aut.getReturnsFrom(
-								projectSecondComponents(firstIs(S, call.to)),
-								call.stackState))
-							if (ba.IsSatisfiable(ba.MkAnd(callRetGuard,
-									ret.guard)))
-								callRetGuardTripletHS
-										.add(new Pair<A, Pair<Call<A, B>, Return<A, B>>>(
-												ba.MkAnd(call.guard, ret.guard),
-												new Pair<Call<A, B>, Return<A, B>>(
-														call, ret)));
-				}
+		// propagates context to the successors of state and, if it is a
+		// stack state, builds the returns of state reading it
+		void visit(int state, int context) throws TimeoutException {
+			for (Integer to : internalTargets.get(state))
+				addContext(to, context);
+			for (Integer to : returnTargets.get(state))
+				addContext(to, context);
+
+			if (context == EMPTY_STACK) {
+				for (Integer to : returnBSTargets.get(state))
+					addContext(to, context);
+			} else
+				addReturns(state, context);
+		}
 
-				ArrayList<Pair<A, Pair<Call<A, B>, Return<A, B>>>> callRetGuardTriplet = new ArrayList<Pair<A, Pair<Call<A, B>, Return<A, B>>>>(callRetGuardTripletHS);
-				
-				// Start at 1 to avoid case in which they are all false
-				for (int i = 1; i < Math.pow(2, callRetGuardTriplet.size()); i++) {
-					A b = a;
+		void addReturns(int currStateId, int stackStateId) throws TimeoutException {
+			// adding delta_r(S,(S',a),b)
+			StateSummary S = summaries.get(currStateId);
+			Pair<Integer, A> stackState = stackStates.get(stackStateId);
+			int callerId = stackState.first;
+			StateSummary Sprime = summaries.get(callerId);
+			A a = stackState.second;
+
+			// Calls and returns causing the match
+			// (q,q'') such that,
+			// 1) (q,q') in S',
+			// 2) delta_c(q',a)=(q1,p)
+			// 3) (q1,q2) in S,
+			// 4) delta_r(q2,b,p)=q''
+			HashSet<Pair<A, Pair<Call<A, B>, Return<A, B>>>> callRetGuardTripletHS = new HashSet<Pair<A, Pair<Call<A, B>, Return<A, B>>>>();
+			for (Call<A, B> call : aut.getCallsFrom(Sprime.getSecondComponents())) {
+				A callRetGuard = ba.MkAnd(a, call.guard);
+				if (ba.IsSatisfiable(callRetGuard))
+					for (Return<A, B> ret : aut.getReturnsFrom(S.getSecondsOf(call.to), call.stackState))
+						if (ba.IsSatisfiable(ba.MkAnd(callRetGuard, ret.guard)))
+							callRetGuardTripletHS.add(new Pair<A, Pair<Call<A, B>, Return<A, B>>>(
+									ba.MkAnd(call.guard, ret.guard),
+									new Pair<Call<A, B>, Return<A, B>>(call, ret)));
+			}
 
-					Collection<Pair<Integer, Integer>> toState = new HashSet<Pair<Integer, Integer>>();
+			ArrayList<Pair<A, Pair<Call<A, B>, Return<A, B>>>> callRetGuardTriplet = new ArrayList<Pair<A, Pair<Call<A, B>, Return<A, B>>>>(
+					callRetGuardTripletHS);
+
+			ArrayList<A> predicates = new ArrayList<A>();
+			for (Pair<A, Pair<Call<A, B>, Return<A, B>>> triplet : callRetGuardTriplet)
+				predicates.add(triplet.first);
+			for (Pair<A, ArrayList<Integer>> minterm : getMinterms(predicates)) {
+				bufferSize = 0;
+				for (int bit = 0; bit < callRetGuardTriplet.size(); bit++)
+					if (minterm.second.get(bit) == 1) {
+						Pair<A, Pair<Call<A, B>, Return<A, B>>> currTriplet = callRetGuardTriplet.get(bit);
+						for (Integer first : Sprime.getFirstsOf(currTriplet.second.first.from))
+							addToBuffer(first, currTriplet.second.second.to);
+					}
+				if (bufferSize == 0)
+					continue;
+
+				A b = ba.MkAnd(a, minterm.first);
+				if (ba.IsSatisfiable(b)) {
+					int toStateId = getStateId();
+					deter.addTransition(new Return<A, B>(currStateId, toStateId, stackStateId, b), ba, true);
+
+					// the return leads back to the contexts of the caller
+					returnTargets.get(callerId).add(toStateId);
+					for (Integer context : new ArrayList<Integer>(contexts.get(callerId)))
+						addContext(toStateId, context);
+				}
+			}
+		}
+	}
 
-					for (int bit = 0; bit < callRetGuardTriplet.size(); bit++) {
-						Pair<A, Pair<Call<A, B>, Return<A, B>>> currTriplet = callRetGuardTriplet
-								.get(bit);
+	/**
+	 * Set of pairs of states, each packed in a long, kept sorted and without
+	 * duplicates so that equal sets have equal arrays
+	 */
+	private static class StateSummary {
+		final long[] pairs;
+		final int hash;
+
+		// computed on demand
+		private Collection<Integer> secondComponents;
+		private Map<Integer, List<Integer>> firstsBySecond;
+
+		StateSummary(long[] buffer, int size) {
+			long[] sorted = Arrays.copyOf(buffer, size);
+			Arrays.sort(sorted);
+			int distinct = 0;
+			for (int i = 0; i < size; i++)
+				if (distinct == 0 || sorted[distinct - 1] != sorted[i])
+					sorted[distinct++] = sorted[i];
+			pairs = distinct == size ? sorted : Arrays.copyOf(sorted, distinct);
+			hash = Arrays.hashCode(pairs);
+		}
 
-						A callRetGuard = currTriplet.first;
-						Call<A, B> currCall = currTriplet.second.first;
-						Return<A, B> currRet = currTriplet.second.second;
+		static long pack(int first, int second) {
+			return ((long) first << 32) | (second & 0xffffffffL);
+		}
 
-						if (BitVecUtil.get_nth_bit(i, bit) == 1) {
+		Collection<Integer> getSecondComponents() {
+			if (secondComponents == null) {
+				secondComponents = new HashSet<Integer>();
+				for (long pair : pairs)
+					secondComponents.add((int) pair);
+			}
+			return secondComponents;
+		}
 
-							b = intersectGuards(b, callRetGuard, ba);
+		// the states q' such that (first, q') is in the set
+		Collection<Integer> getSecondsOf(int first) {
+			Collection<Integer> seconds = new ArrayList<Integer>();
+			int i = Arrays.binarySearch(pairs, pack(first, 0));
+			for (i = i < 0 ? -i - 1 : i; i < pairs.length && (int) (pairs[i] >> 32) == first; i++)
+				seconds.add((int) pairs[i]);
+			return seconds;
+		}
 
-							for (Pair<Integer, Integer> fst : secondIs(Sprime,
-									currCall.from))
-								if (S.contains(new Pair<Integer, Integer>(
-										currCall.to, currRet.from)))
-									toState.add(new Pair<Integer, Integer>(
-											fst.first, currRet.to));
-						} else {
-							b = intersectGuards(b, ba.MkNot(callRetGuard), ba);
-						}
+		// the states q such that (q, second) is in the set
+		List<Integer> getFirstsOf(int second) {
+			if (firstsBySecond == null) {
+				firstsBySecond = new HashMap<Integer, List<Integer>>();
+				for (long pair : pairs) {
+					List<Integer> firsts = firstsBySecond.get((int) pair);
+					if (firsts == null) {
+						firsts = new ArrayList<Integer>();
+						firstsBySecond.put((int) pair, firsts);
 					}
+					firsts.add((int) (pair >> 32));
+				}
+			}
+			List<Integer> firsts = firstsBySecond.get(second);
+			return firsts == null ? Collections.<Integer> emptyList() : firsts;
+		}
 
-					// If guard satisfiable add move to deterministic
-					// version
-					if (ba.IsSatisfiable(b)) {
-						
-						Integer toStateId = reachedStates.get(toState);
-						if (toStateId == null) {
-							toStateId = reachedStates.size();
-							reachedStates.put(toState, toStateId);
-							toVisitStates.add(toState);
-						}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof StateSummary && hash == ((StateSummary) other).hash
+					&& Arrays.equals(pairs, ((StateSummary) other).pairs);
+		}
+	}
 
-						Integer toStackStateId = reachedStackStates
-								.get(stackState);
+	/**
+	 * @return the quotient of the SVPA by its largest forward bisimulation
+	 * @throws TimeoutException 
+	 */
+	public SVPA<U, S> reduce(BooleanAlgebra<U, S> ba) throws TimeoutException {
+		return reduce(this, ba);
+	}
+
+	/**
+	 * Computes the quotient of <code>aut</code> by its largest forward
+	 * bisimulation, which merges both states and stack states. Two states are
+	 * equivalent when they agree on finality and, for every kind of move and
+	 * every block of targets (and of pushed stack states for calls, of read
+	 * stack states for returns), the unions of their guards are equivalent.
+	 * Two stack states are equivalent when every state returns on them to the
+	 * same blocks under equivalent guards. The two partitions are refined
+	 * together, recomputing only the signatures of the elements with a move
+	 * into a block that was split, until neither of them changes.
+	 * @throws TimeoutException 
+	 */
+	public static <A, B> SVPA<A, B> reduce(SVPA<A, B> aut, BooleanAlgebra<A, B> ba) throws TimeoutException {
 
-						if (toStackStateId == null)
-							System.out.println("shouldn't be null");
+		if (aut.isEmpty)
+			return getEmptySVPA(ba);
 
-						deter.addTransition(new Return<A, B>(currStateId,
-								toStateId, toStackStateId, b), ba, true);
-					}
+		if (!aut.isEpsilonFree)
+			aut = removeEpsilonMovesFrom(aut, ba);
+
+		// the elements whose signature depends on the block of every state or
+		// stack state: the sources of the moves into a state and the stack
+		// states read by them, the sources of the calls pushing a stack state
+		Map<Integer, Set<Integer>> statePreds = new HashMap<Integer, Set<Integer>>();
+		Map<Integer, Set<Integer>> stackPreds = new HashMap<Integer, Set<Integer>>();
+		Map<Integer, Set<Integer>> pushers = new HashMap<Integer, Set<Integer>>();
+		Map<Integer, List<Return<A, B>>> returnsOn = new HashMap<Integer, List<Return<A, B>>>();
+		for (Integer state : aut.states) {
+			for (Internal<A, B> t : aut.getInternalsFrom(state))
+				addToIndex(statePreds, t.to, state);
+			for (Call<A, B> t : aut.getCallsFrom(state)) {
+				addToIndex(statePreds, t.to, state);
+				addToIndex(pushers, t.stackState, state);
+			}
+			for (Return<A, B> t : aut.getReturnsFrom(state)) {
+				addToIndex(statePreds, t.to, state);
+				addToIndex(stackPreds, t.to, t.stackState);
+				List<Return<A, B>> returns = returnsOn.get(t.stackState);
+				if (returns == null) {
+					returns = new ArrayList<Return<A, B>>();
+					returnsOn.put(t.stackState, returns);
 				}
-
+				returns.add(t);
 			}
+			for (ReturnBS<A, B> t : aut.getReturnBSFrom(state))
+				addToIndex(statePreds, t.to, state);
+		}
 
+		// initially split states into final and non-final
+		Map<Integer, Integer> stateBlock = new HashMap<Integer, Integer>();
+		Map<Integer, List<Integer>> stateMembers = new HashMap<Integer, List<Integer>>();
+		stateMembers.put(0, new ArrayList<Integer>());
+		stateMembers.put(1, new ArrayList<Integer>());
+		for (Integer state : aut.states) {
+			Integer block = aut.isFinalState(state) ? 1 : 0;
+			stateBlock.put(state, block);
+			stateMembers.get(block).add(state);
+		}
+		Map<Integer, Integer> stackBlock = new HashMap<Integer, Integer>();
+		Map<Integer, List<Integer>> stackMembers = new HashMap<Integer, List<Integer>>();
+		stackMembers.put(0, new ArrayList<Integer>(aut.stackStates));
+		for (Integer stackState : aut.stackStates)
+			stackBlock.put(stackState, 0);
+
+		// the signatures are only recomputed for the elements with a move into
+		// a block that was split, starting from all of them
+		Map<Integer, Map<List<Integer>, A>> stateSignatures = new HashMap<Integer, Map<List<Integer>, A>>();
+		Map<Integer, Map<List<Integer>, Integer>> stateClasses = new HashMap<Integer, Map<List<Integer>, Integer>>();
+		Map<Integer, Map<List<Integer>, Integer>> stackClasses = new HashMap<Integer, Map<List<Integer>, Integer>>();
+		// the pairwise inequivalent guards met so far under every key
+		Map<List<Integer>, List<A>> guardClasses = new HashMap<List<Integer>, List<A>>();
+		Set<Integer> dirtyStates = new HashSet<Integer>(aut.states);
+		Set<Integer> dirtyStackStates = new HashSet<Integer>(aut.stackStates);
+		while (!dirtyStates.isEmpty() || !dirtyStackStates.isEmpty()) {
+			for (Integer state : dirtyStates) {
+				Map<List<Integer>, A> signature = getStateSignature(aut, state, stateBlock, stackBlock, ba);
+				stateSignatures.put(state, signature);
+				stateClasses.put(state, canonicalize(signature, guardClasses, ba));
+			}
+			for (Integer stackState : dirtyStackStates)
+				stackClasses.put(stackState,
+						canonicalize(getStackSignature(returnsOn.get(stackState), stateBlock, ba), guardClasses, ba));
+
+			List<Integer> movedStates = splitBlocks(dirtyStates, stateBlock, stateMembers, stateClasses);
+			List<Integer> movedStackStates = splitBlocks(dirtyStackStates, stackBlock, stackMembers, stackClasses);
+
+			dirtyStates = new HashSet<Integer>();
+			dirtyStackStates = new HashSet<Integer>();
+			for (Integer state : movedStates) {
+				addAll(dirtyStates, statePreds.get(state));
+				addAll(dirtyStackStates, stackPreds.get(state));
+			}
+			for (Integer stackState : movedStackStates)
+				addAll(dirtyStates, pushers.get(stackState));
 		}
-		
-		deter.isDeterministic = true;
-		return deter;
-	}
 
-	private static <A, B> A intersectGuards(A guard, A conjunct,
+		// the moves of the first state of every block represent the block
+		SVPA<A, B> quotient = new SVPA<A, B>();
+		HashSet<Integer> reprStackStates = new HashSet<Integer>();
+		HashSet<Integer> reprStackBlocks = new HashSet<Integer>();
+		for (Integer stackState : aut.stackStates)
+			if (reprStackBlocks.add(stackBlock.get(stackState)))
+				reprStackStates.add(stackState);
+
+		HashSet<Integer> reprBlocks = new HashSet<Integer>();
+		for (Integer state : aut.states) {
+			Integer from = stateBlock.get(state);
+			quotient.states.add(from);
+			if (aut.initialStates.contains(state))
+				quotient.initialStates.add(from);
+			if (aut.isFinalState(state))
+				quotient.finalStates.add(from);
+			if (!reprBlocks.add(from))
+				continue;
+
+			for (Entry<List<Integer>, A> move : stateSignatures.get(state).entrySet()) {
+				List<Integer> key = move.getKey();
+				switch (key.get(0)) {
+				case 0:
+					quotient.addTransition(new Internal<A, B>(from, key.get(1), move.getValue()), ba, true);
+					break;
+				case 1:
+					quotient.addTransition(new Call<A, B>(from, key.get(1), key.get(2), move.getValue()), ba,
+							true);
+					break;
+				case 2:
+					if (reprStackStates.contains(key.get(1)))
+						quotient.addTransition(new Return<A, B>(from, key.get(2), stackBlock.get(key.get(1)),
+								move.getValue()), ba, true);
+					break;
+				default:
+					quotient.addTransition(new ReturnBS<A, B>(from, key.get(1), move.getValue()), ba, true);
+				}
+			}
+		}
+		quotient.stateCount = quotient.states.size();
+
+		return removeUnreachableStates(quotient, ba);
+	}
+
+	// the union of the guards of the moves of a state by kind of move, block
+	// of the target and, for calls, block of the pushed stack state or, for
+	// returns, read stack state
+	private static <A, B> Map<List<Integer>, A> getStateSignature(SVPA<A, B> aut, Integer state,
+			Map<Integer, Integer> stateBlock, Map<Integer, Integer> stackBlock, BooleanAlgebra<A, B> ba)
+			throws TimeoutException {
+		Map<List<Integer>, A> signature = new HashMap<List<Integer>, A>();
+		for (Internal<A, B> t : aut.getInternalsFrom(state))
+			addToSignature(signature, Arrays.asList(0, stateBlock.get(t.to)), t.guard, ba);
+		for (Call<A, B> t : aut.getCallsFrom(state))
+			addToSignature(signature, Arrays.asList(1, stateBlock.get(t.to), stackBlock.get(t.stackState)),
+					t.guard, ba);
+		for (Return<A, B> t : aut.getReturnsFrom(state))
+			addToSignature(signature, Arrays.asList(2, t.stackState, stateBlock.get(t.to)), t.guard, ba);
+		for (ReturnBS<A, B> t : aut.getReturnBSFrom(state))
+			addToSignature(signature, Arrays.asList(3, stateBlock.get(t.to)), t.guard, ba);
+		return signature;
+	}
+
+	// the union of the guards of the returns reading a stack state by source
+	// and block of the target
+	private static <A, B> Map<List<Integer>, A> getStackSignature(List<Return<A, B>> returns,
+			Map<Integer, Integer> stateBlock, BooleanAlgebra<A, B> ba) throws TimeoutException {
+		Map<List<Integer>, A> signature = new HashMap<List<Integer>, A>();
+		if (returns != null)
+			for (Return<A, B> t : returns)
+				addToSignature(signature, Arrays.asList(t.from, stateBlock.get(t.to)), t.guard, ba);
+		return signature;
+	}
+
+	private static <A, B> void addToSignature(Map<List<Integer>, A> signature, List<Integer> key, A guard,
 			BooleanAlgebra<A, B> ba) throws TimeoutException {
-		if (guard == null)
-			return conjunct;
-		else
-			return ba.MkAnd(guard, conjunct);
-	}
-
-	@SuppressWarnings("unused")
-	private static Collection<Integer> projectFirstComponents(
-			Collection<Pair<Integer, Integer>> state) {
-		HashSet<Integer> fc = new HashSet<Integer>();
-		for (Pair<Integer, Integer> st : state)
-			fc.add(st.first);
-		return fc;
-	}
-
-	private static Collection<Integer> projectSecondComponents(
-			Collection<Pair<Integer, Integer>> state) {
-		HashSet<Integer> sc = new HashSet<Integer>();
-		for (Pair<Integer, Integer> st : state)
-			sc.add(st.second);
-		return sc;
+		A union = signature.get(key);
+		signature.put(key, union == null ? guard : ba.MkOr(union, guard));
+	}
+
+	// replaces every guard of the signature by the index of its equivalence
+	// class among the guards met under the same key, so that equivalent
+	// signatures become equal maps
+	private static <A, B> Map<List<Integer>, Integer> canonicalize(Map<List<Integer>, A> signature,
+			Map<List<Integer>, List<A>> guardClasses, BooleanAlgebra<A, B> ba) throws TimeoutException {
+		Map<List<Integer>, Integer> classes = new HashMap<List<Integer>, Integer>();
+		for (Entry<List<Integer>, A> entry : signature.entrySet()) {
+			List<A> guards = guardClasses.get(entry.getKey());
+			if (guards == null) {
+				guards = new ArrayList<A>();
+				guardClasses.put(entry.getKey(), guards);
+			}
+			A guard = entry.getValue();
+			int index = guards.indexOf(guard);
+			for (int i = 0; index < 0 && i < guards.size(); i++)
+				if (ba.AreEquivalent(guard, guards.get(i)))
+					index = i;
+			if (index < 0) {
+				index = guards.size();
+				guards.add(guard);
+			}
+			classes.put(entry.getKey(), index);
+		}
+		return classes;
+	}
+
+	// splits every block with a dirty element into the classes of elements
+	// with equal canonical signatures; the largest class keeps the block and
+	// the elements of the other ones, which are returned, get new blocks
+	private static List<Integer> splitBlocks(Set<Integer> dirty, Map<Integer, Integer> partition,
+			Map<Integer, List<Integer>> members, Map<Integer, Map<List<Integer>, Integer>> signatures) {
+		List<Integer> moved = new ArrayList<Integer>();
+		Set<Integer> blocks = new HashSet<Integer>();
+		for (Integer element : dirty)
+			blocks.add(partition.get(element));
+		for (Integer block : blocks) {
+			Map<Map<List<Integer>, Integer>, List<Integer>> parts = new HashMap<Map<List<Integer>, Integer>, List<Integer>>();
+			for (Integer element : members.get(block)) {
+				List<Integer> part = parts.get(signatures.get(element));
+				if (part == null) {
+					part = new ArrayList<Integer>();
+					parts.put(signatures.get(element), part);
+				}
+				part.add(element);
+			}
+			if (parts.size() == 1)
+				continue;
+
+			List<Integer> largest = null;
+			for (List<Integer> part : parts.values())
+				if (largest == null || part.size() > largest.size())
+					largest = part;
+			members.put(block, largest);
+			for (List<Integer> part : parts.values())
+				if (part != largest) {
+					Integer newBlock = members.size();
+					members.put(newBlock, part);
+					for (Integer element : part)
+						partition.put(element, newBlock);
+					moved.addAll(part);
+				}
+		}
+		return moved;
 	}
 
-	private static Collection<Pair<Integer, Integer>> firstIs(
-			Collection<Pair<Integer, Integer>> state, Integer fst) {
-		HashSet<Pair<Integer, Integer>> sc = new HashSet<Pair<Integer, Integer>>();
-		for (Pair<Integer, Integer> st : state)
-			if (st.first.equals(fst))
-				sc.add(st);
-		return sc;
+	private static void addToIndex(Map<Integer, Set<Integer>> index, Integer key, Integer element) {
+		Set<Integer> elements = index.get(key);
+		if (elements == null) {
+			elements = new HashSet<Integer>();
+			index.put(key, elements);
+		}
+		elements.add(element);
 	}
 
-	private static Collection<Pair<Integer, Integer>> secondIs(
-			Collection<Pair<Integer, Integer>> state, Integer sec) {
-		HashSet<Pair<Integer, Integer>> sc = new HashSet<Pair<Integer, Integer>>();
-		for (Pair<Integer, Integer> st : state)
-			if (st.second.equals(sec))
-				sc.add(st);
-		return sc;
+	private static void addAll(Set<Integer> set, Set<Integer> elements) {
+		if (elements != null)
+			set.addAll(elements);
 	}
 
 	// /////////////////////////////////////////////////////////////////////////////
@@ -1095,13 +1621,9 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	private static <A, B> SVPA<A, B> removeUnreachableStates(SVPA<A, B> aut,
 			BooleanAlgebra<A, B> ba) throws TimeoutException {
 
-		Map<Integer, Collection<Integer>> reachRel = aut.getReachRel(ba).fourth;
-
 		SVPA<A, B> clean = new SVPA<A, B>();
 
-		HashSet<Integer> fromInitial = new HashSet<Integer>();
-		for (Integer state : aut.initialStates)
-			fromInitial.addAll(reachRel.get(state));
+		Collection<Integer> fromInitial = aut.getReachableStates(ba);
 
 		if (!aut.isFinalConfiguration(fromInitial))
 			return getEmptySVPA(ba);
@@ -1180,10 +1702,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<Return<U, S>> getReturnsFrom(Pair<Integer, Integer> state) {
 		Collection<Return<U, S>> trset = returnsFrom.get(state);
-		if (trset == null) {
-			trset = new HashSet<Return<U, S>>();
-			returnsFrom.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1192,10 +1712,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<Return<U, S>> getReturnsTo(Pair<Integer, Integer> state) {
 		Collection<Return<U, S>> trset = returnsTo.get(state);
-		if (trset == null) {
-			trset = new HashSet<Return<U, S>>();
-			returnsTo.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1273,10 +1791,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<Call<U, S>> getCallsFrom(Integer state) {
 		Collection<Call<U, S>> trset = callsFrom.get(state);
-		if (trset == null) {
-			trset = new HashSet<Call<U, S>>();
-			callsFrom.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1285,14 +1801,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 * with stack state <code>stackState</code>
 	 */
 	public Collection<Call<U, S>> getCallsFrom(Integer state, Integer stackState) {
-		Collection<Call<U, S>> trset = callsFrom.get(state);
-		if (trset == null) {
-			trset = new HashSet<Call<U, S>>();
-			callsFrom.put(state, trset);
-		}
-
 		Collection<Call<U, S>> output = new HashSet<Call<U, S>>();
-		for (Call<U, S> call : trset)
+		for (Call<U, S> call : getCallsFrom(state))
 			if (call.stackState.equals(stackState))
 				output.add(call);
 		return output;
@@ -1316,10 +1826,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<Call<U, S>> getCallsTo(Integer state) {
 		Collection<Call<U, S>> trset = callsTo.get(state);
-		if (trset == null) {
-			trset = new HashSet<Call<U, S>>();
-			callsTo.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1348,10 +1856,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<ReturnBS<U, S>> getReturnBSFrom(Integer state) {
 		Collection<ReturnBS<U, S>> trset = returnBSFrom.get(state);
-		if (trset == null) {
-			trset = new HashSet<ReturnBS<U, S>>();
-			returnBSFrom.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1360,10 +1866,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<ReturnBS<U, S>> getReturnBSTo(Integer state) {
 		Collection<ReturnBS<U, S>> trset = returnBSTo.get(state);
-		if (trset == null) {
-			trset = new HashSet<ReturnBS<U, S>>();
-			returnBSTo.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1393,10 +1897,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<SVPAEpsilon<U, S>> getEpsilonsFrom(Integer state) {
 		Collection<SVPAEpsilon<U, S>> trset = epsilonsFrom.get(state);
-		if (trset == null) {
-			trset = new HashSet<SVPAEpsilon<U, S>>();
-			epsilonsFrom.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1405,10 +1907,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<SVPAEpsilon<U, S>> getEpsilonsTo(Integer state) {
 		Collection<SVPAEpsilon<U, S>> trset = epsilonsTo.get(state);
-		if (trset == null) {
-			trset = new HashSet<SVPAEpsilon<U, S>>();
-			epsilonsTo.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1438,10 +1938,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<Internal<U, S>> getInternalsFrom(Integer state) {
 		Collection<Internal<U, S>> trset = internalsFrom.get(state);
-		if (trset == null) {
-			trset = new HashSet<Internal<U, S>>();
-			internalsFrom.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1450,10 +1948,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 */
 	public Collection<Internal<U, S>> getInternalsTo(Integer state) {
 		Collection<Internal<U, S>> trset = internalsTo.get(state);
-		if (trset == null) {
-			trset = new HashSet<Internal<U, S>>();
-			internalsTo.put(state, trset);
-		}
+		if (trset == null)
+			return Collections.emptySet();
 		return trset;
 	}
 
@@ -1483,22 +1979,20 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 * Returns the set of transitions starting a state <code>s</code>
 	 */
 	public Collection<SVPAMove<U, S>> getTransitionsFrom(
-			Pair<Integer, Stack<Pair<Integer, S>>> configuration) {
+			Pair<Integer, SVPAStack<S>> configuration) {
 
 		Collection<SVPAMove<U, S>> transitions = new LinkedList<SVPAMove<U, S>>();
 
 		Integer state = configuration.first;
-		Stack<Pair<Integer, S>> stack = configuration.second;
+		SVPAStack<S> stack = configuration.second;
 
 		transitions.addAll(getCallsFrom(state));
 		transitions.addAll(getEpsilonsFrom(state));
 		transitions.addAll(getInternalsFrom(state));
 		transitions.addAll(getReturnBSFrom(state));
 
-		if (stack.size() > 0) {
-			Pair<Integer, S> stackTop = stack.peek();
-			transitions.addAll(getReturnsFrom(state, stackTop.first));
-		}
+		if (!stack.isEmpty())
+			transitions.addAll(getReturnsFrom(state, stack.peekState()));
 		return transitions;
 	}
 
@@ -1506,10 +2000,10 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 * Returns the set of transitions starting set of states
 	 */
 	public Collection<SVPAMove<U, S>> getTransitionsFrom(
-			HashSet<Pair<Integer, Stack<Pair<Integer, S>>>> configurationSet) {
+			HashSet<Pair<Integer, SVPAStack<S>>> configurationSet) {
 		Collection<SVPAMove<U, S>> transitions = new LinkedList<SVPAMove<U, S>>();
 
-		for (Pair<Integer, Stack<Pair<Integer, S>>> configuration : configurationSet)
+		for (Pair<Integer, SVPAStack<S>> configuration : configurationSet)
 			transitions.addAll(getTransitionsFrom(configuration));
 		return transitions;
 	}
@@ -1518,20 +2012,19 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 * Returns the set of transitions starting a state <code>s</code>
 	 */
 	public Collection<SVPAMove<U, S>> getTransitionsTo(
-			Pair<Integer, Stack<Pair<Integer, S>>> configuration) {
+			Pair<Integer, SVPAStack<S>> configuration) {
 
 		Collection<SVPAMove<U, S>> transitions = new LinkedList<SVPAMove<U, S>>();
 
 		Integer state = configuration.first;
-		Stack<Pair<Integer, S>> stack = configuration.second;
+		SVPAStack<S> stack = configuration.second;
 
 		transitions.addAll(getCallsTo(state));
 		transitions.addAll(getEpsilonsTo(state));
 		transitions.addAll(getInternalsTo(state));
 
-		if (stack.size() > 0) {
-			Pair<Integer, S> stackTop = stack.peek();
-			transitions.addAll(getReturnsTo(state, stackTop.first));
+		if (!stack.isEmpty()) {
+			transitions.addAll(getReturnsTo(state, stack.peekState()));
 		} else {
 			transitions.addAll(getReturnBSTo(state));
 		}
@@ -1571,10 +2064,10 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 	 * Returns the set of transitions starting set of states
 	 */
 	public Collection<SVPAMove<U, S>> getTransitionsTo(
-			HashSet<Pair<Integer, Stack<Pair<Integer, S>>>> configurationSet) {
+			HashSet<Pair<Integer, SVPAStack<S>>> configurationSet) {
 
 		Collection<SVPAMove<U, S>> transitions = new LinkedList<SVPAMove<U, S>>();
-		for (Pair<Integer, Stack<Pair<Integer, S>>> configuration : configurationSet)
+		for (Pair<Integer, SVPAStack<S>> configuration : configurationSet)
 			transitions.addAll(getTransitionsTo(configuration));
 		return transitions;
 	}
@@ -1622,7 +2115,7 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 		return false;
 	}
 
-	private boolean isFinalState(Integer state) {
+	boolean isFinalState(Integer state) {
 		return finalStates.contains(state);
 	}
 
@@ -1658,8 +2151,8 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 				if (maxStackStateId < ct.stackState)
 					maxStackStateId = ct.stackState;
 
-				getCallsFrom(transition.from).add(ct);
-				getCallsTo(transition.to).add(ct);
+				addMove(callsFrom, transition.from, ct);
+				addMove(callsTo, transition.to, ct);
 				break;
 			}
 
@@ -1669,33 +2162,43 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 				if (maxStackStateId < ct.stackState)
 					maxStackStateId = ct.stackState;
 
-				getReturnsFrom(ct.from, ct.stackState).add(ct);
-				getReturnsTo(ct.to, ct.stackState).add(ct);
+				addMove(returnsFrom, new Pair<Integer, Integer>(ct.from, ct.stackState), ct);
+				addMove(returnsTo, new Pair<Integer, Integer>(ct.to, ct.stackState), ct);
 				break;
 			}
 
 			case Internal: {
 				Internal<U, S> ct = (Internal<U, S>) transition;
-				getInternalsFrom(transition.from).add(ct);
-				getInternalsTo(transition.to).add(ct);
+				addMove(internalsFrom, transition.from, ct);
+				addMove(internalsTo, transition.to, ct);
 				break;
 			}
 			case Epsilon: {
 				SVPAEpsilon<U, S> ct = (SVPAEpsilon<U, S>) transition;
-				getEpsilonsFrom(transition.from).add(ct);
-				getEpsilonsTo(transition.to).add(ct);
+				addMove(epsilonsFrom, transition.from, ct);
+				addMove(epsilonsTo, transition.to, ct);
 				break;
 			}
 			case ReturnBS: {
 				ReturnBS<U, S> ct = (ReturnBS<U, S>) transition;
-				getReturnBSFrom(transition.from).add(ct);
-				getReturnBSTo(transition.to).add(ct);
+				addMove(returnBSFrom, transition.from, ct);
+				addMove(returnBSTo, transition.to, ct);
 				break;
 			}
 			}
 		}
 	}
 
+	// adds t to the moves indexed by key
+	private static <K, T> void addMove(Map<K, Collection<T>> moves, K key, T t) {
+		Collection<T> trset = moves.get(key);
+		if (trset == null) {
+			trset = new HashSet<T>();
+			moves.put(key, trset);
+		}
+		trset.add(t);
+	}
+
 	@Override
 	public Collection<SVPAMove<U, S>> getMovesFrom(Integer state) {
 		Collection<SVPAMove<U, S>> moves = new LinkedList<SVPAMove<U, S>>();
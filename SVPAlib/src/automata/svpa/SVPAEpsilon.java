@@ -3,7 +3,6 @@
  */
 package automata.svpa;
 
-import java.util.Stack;
 
 
 
@@ -28,8 +27,8 @@ public class SVPAEpsilon<U, S> extends SVPAMove<U, S> {
 		return true;
 	}
 
-	public Pair<Integer, Stack<Pair<Integer, S>>> getNextState(
-			Pair<Integer, Stack<Pair<Integer, S>>> state,
+	public Pair<Integer, SVPAStack<S>> getNextState(
+			Pair<Integer, SVPAStack<S>> state,
 			TaggedSymbol<S> input, BooleanAlgebra<U, S> ba) {
 		return null;
 	}
@@ -3,8 +3,6 @@
  */
 package automata.svpa;
 
-import java.util.Stack;
-
 import org.sat4j.specs.TimeoutException;
 
 import theory.BooleanAlgebra;
@@ -28,7 +26,7 @@ public abstract class SVPAMove<U,S> implements Cloneable{
 	
 	public abstract boolean isDisjointFrom(SVPAMove<U,S> t, BooleanAlgebra<U,S> ba) throws TimeoutException;		
 	
-	public abstract Pair<Integer, Stack<Pair<Integer, S>>> getNextState(Pair<Integer, Stack<Pair<Integer, S>>> state,
+	public abstract Pair<Integer, SVPAStack<S>> getNextState(Pair<Integer, SVPAStack<S>> state,
 			TaggedSymbol<S> input, BooleanAlgebra<U, S> ba) throws TimeoutException;	
 
 	
@@ -0,0 +1,132 @@
+package automata.svpa;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.svpa.TaggedSymbol.SymbolTag;
+import theory.BooleanAlgebra;
+import utilities.Pair;
+
+/**
+ * Incremental run of an SVPA over a nested word that is read one tagged
+ * symbol at a time. The run keeps the current set of configurations only, so
+ * its memory is proportional to the nesting depth of the input and not to its
+ * length.
+ */
+public class SVPARun<U, S> implements NestedWordRun<S> {
+
+	private final SVPA<U, S> aut;
+	private final BooleanAlgebra<U, S> ba;
+	private final int maxDepth;
+
+	// every stack of the run is pushed on this one
+	private final SVPAStack<S> empty;
+	// reused for every symbol of the input
+	private final TaggedSymbol<S> current;
+
+	private Collection<Pair<Integer, SVPAStack<S>>> conf;
+	private int depth;
+
+	/**
+	 * Starts a run of <code>aut</code> with unbounded nesting depth
+	 */
+	public SVPARun(SVPA<U, S> aut, BooleanAlgebra<U, S> ba) {
+		this(aut, ba, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Starts a run of <code>aut</code> that rejects any input nesting deeper
+	 * than <code>maxDepth</code> calls
+	 */
+	public SVPARun(SVPA<U, S> aut, BooleanAlgebra<U, S> ba, int maxDepth) {
+		if (maxDepth < 0)
+			throw new IllegalArgumentException("maxDepth must be non-negative");
+		this.aut = aut;
+		this.ba = ba;
+		this.maxDepth = maxDepth;
+		this.empty = new SVPAStack<S>();
+		this.current = new TaggedSymbol<S>(null, SymbolTag.Internal);
+		reset();
+	}
+
+	@Override
+	public void reset() {
+		conf = new HashSet<Pair<Integer, SVPAStack<S>>>();
+		for (Integer state : aut.getInitialStates())
+			conf.add(new Pair<Integer, SVPAStack<S>>(state, empty));
+		conf = aut.getConfigurationEpsClosure(conf, ba);
+		depth = 0;
+	}
+
+	@Override
+	public boolean call(S input) throws TimeoutException {
+		return step(input, SymbolTag.Call);
+	}
+
+	@Override
+	public boolean internal(S input) throws TimeoutException {
+		return step(input, SymbolTag.Internal);
+	}
+
+	@Override
+	public boolean ret(S input) throws TimeoutException {
+		return step(input, SymbolTag.Return);
+	}
+
+	/**
+	 * Reads a tagged symbol
+	 * @return false iff the run is dead
+	 */
+	public boolean step(TaggedSymbol<S> input) throws TimeoutException {
+		return step(input.input, input.tag);
+	}
+
+	private boolean step(S input, SymbolTag tag) throws TimeoutException {
+		if (conf.isEmpty())
+			return false;
+
+		if (tag == SymbolTag.Call) {
+			if (depth == maxDepth) {
+				conf = Collections.emptySet();
+				return false;
+			}
+			depth++;
+		} else if (tag == SymbolTag.Return && depth > 0)
+			depth--;
+
+		current.input = input;
+		current.tag = tag;
+		conf = aut.getConfigurationEpsClosure(aut.getNextState(conf, current, ba), ba);
+		return !conf.isEmpty();
+	}
+
+	@Override
+	public boolean isDead() {
+		return conf.isEmpty();
+	}
+
+	@Override
+	public boolean isAccepting() {
+		for (Pair<Integer, SVPAStack<S>> c : conf)
+			if (aut.isFinalState(c.first) && c.second.isEmpty())
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the number of calls read so far that are still pending
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the current configurations of the run
+	 */
+	public Collection<Pair<Integer, SVPAStack<S>>> getConfiguration() {
+		return Collections.unmodifiableCollection(conf);
+	}
+}
@@ -0,0 +1,131 @@
+package automata.svpa;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import utilities.Pair;
+
+/**
+ * Immutable stack of an SVPA configuration. Each frame holds the stack state
+ * and the symbol read by the call that pushed it. Stacks are persistent
+ * linked lists and frames are hash-consed through their parent, so pushing
+ * the same frame on the same stack twice returns the same object: push and
+ * pop are O(1), equal stacks are identical, and configurations sharing a
+ * stack suffix share its frames. Pushed frames are only weakly referenced by
+ * their parent, so a long run keeps alive the frames of its current stacks
+ * and not every frame it ever pushed.
+ */
+public final class SVPAStack<S> {
+
+	private final SVPAStack<S> parent;
+	private final Integer stackState;
+	private final S symbol;
+	private final int size;
+	private final int hash;
+
+	// frames already pushed on this stack
+	private HashMap<Pair<Integer, S>, WeakReference<SVPAStack<S>>> children;
+	// size of children after the last purge of collected frames
+	private int purgedSize;
+
+	/**
+	 * Creates an empty stack. Stacks obtained by pushing on different empty
+	 * stacks are never identical, so a run should start from a single one.
+	 */
+	public SVPAStack() {
+		this.parent = null;
+		this.stackState = null;
+		this.symbol = null;
+		this.size = 0;
+		this.hash = 0;
+	}
+
+	private SVPAStack(SVPAStack<S> parent, Integer stackState, S symbol) {
+		this.parent = parent;
+		this.stackState = stackState;
+		this.symbol = symbol;
+		this.size = parent.size + 1;
+		this.hash = (parent.hash * 31 + stackState) * 31 + (symbol == null ? 0 : symbol.hashCode());
+	}
+
+	/**
+	 * @return the stack obtained by pushing the frame
+	 *         <code>(stackState, symbol)</code> on this one
+	 */
+	public SVPAStack<S> push(Integer stackState, S symbol) {
+		if (children == null)
+			children = new HashMap<Pair<Integer, S>, WeakReference<SVPAStack<S>>>();
+		Pair<Integer, S> frame = new Pair<Integer, S>(stackState, symbol);
+		WeakReference<SVPAStack<S>> ref = children.get(frame);
+		SVPAStack<S> child = ref == null ? null : ref.get();
+		if (child == null) {
+			child = new SVPAStack<S>(this, stackState, symbol);
+			children.put(frame, new WeakReference<SVPAStack<S>>(child));
+			if (children.size() > 2 * purgedSize + 16)
+				purgeChildren();
+		}
+		return child;
+	}
+
+	// drops the entries of frames that have been garbage collected
+	private void purgeChildren() {
+		Iterator<WeakReference<SVPAStack<S>>> it = children.values().iterator();
+		while (it.hasNext())
+			if (it.next().get() == null)
+				it.remove();
+		purgedSize = children.size();
+	}
+
+	/**
+	 * @return the stack without its top frame
+	 */
+	public SVPAStack<S> pop() {
+		if (parent == null)
+			throw new IllegalStateException("pop on an empty stack");
+		return parent;
+	}
+
+	/**
+	 * @return the stack state of the top frame
+	 */
+	public Integer peekState() {
+		return stackState;
+	}
+
+	/**
+	 * @return the call symbol of the top frame
+	 */
+	public S peekSymbol() {
+		return symbol;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return this == other;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("]");
+		for (SVPAStack<S> s = this; s.parent != null; s = s.parent) {
+			sb.insert(0, "(" + s.stackState + ", " + s.symbol + ")");
+			if (s.parent.parent != null)
+				sb.insert(0, ", ");
+		}
+		return sb.insert(0, "[").toString();
+	}
+}
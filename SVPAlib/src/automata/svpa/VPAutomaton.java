@@ -4,17 +4,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
 
 import org.sat4j.specs.TimeoutException;
 
-import automata.svpa.TaggedSymbol.SymbolTag;
 import theory.BooleanAlgebra;
 import utilities.Pair;
-import utilities.Quadruple;
 
 public abstract class VPAutomaton<P, S> {
 
@@ -291,493 +287,26 @@ public abstract class VPAutomaton<P, S> {
 	 * @throws TimeoutException 
 	 */
 	public LinkedList<TaggedSymbol<S>> getWitness(BooleanAlgebra<P, S> ba) throws TimeoutException {
-
-		Collection<Integer> states = getStates();
-		Map<Integer, Integer> stateToId = new HashMap<Integer, Integer>();
-		Map<Integer, Integer> idToState = new HashMap<Integer, Integer>();
-
-		Map<Integer, Collection<Integer>> wmRelList = new HashMap<Integer, Collection<Integer>>();
-		boolean[][] wmReachRel = new boolean[states.size()][states.size()];
-		HashMap<Pair<Integer, Integer>, LinkedList<TaggedSymbol<S>>> witnesses = new HashMap<>();
-
-		Integer count = 0;
-		for (Integer state : getStates()) {
-			stateToId.put(state, count);
-			idToState.put(count, state);
-			wmReachRel[count][count] = true;
-
-			Collection<Integer> reachableFromi = new HashSet<Integer>();
-			reachableFromi.add(state);
-			wmRelList.put(state, reachableFromi);
-
-			LinkedList<TaggedSymbol<S>> witness = new LinkedList<>();
-			witnesses.put(new Pair<Integer, Integer>(state, state), witness);
-
-			for (int j = 0; j < wmReachRel.length; j++)
-				if (count != j)
-					wmReachRel[count][j] = false;
-
-			if (getInitialStates().contains(state) && getFinalStates().contains(state))
-				return witness;
-
-			count++;
-		}
-
-		// Build one step relation
-		for (Integer state1 : states) {
-			int id1 = stateToId.get(state1);
-
-			// Epsilon Transition
-			for (SVPAEpsilon<P, S> t : getEpsilonsFrom(state1)) {
-				wmReachRel[id1][stateToId.get(t.to)] = true;
-				wmRelList.get(state1).add(t.to);
-
-				LinkedList<TaggedSymbol<S>> witness = new LinkedList<>();
-				witnesses.put(new Pair<Integer, Integer>(t.from, t.to), witness);
-				if (getInitialStates().contains(t.from) && getFinalStates().contains(t.to))
-					return witness;
-			}
-
-			// Internal Transition
-			for (Internal<P, S> t : getInternalsFrom(state1)) {
-				wmReachRel[id1][stateToId.get(t.to)] = true;
-				wmRelList.get(state1).add(t.to);
-
-				LinkedList<TaggedSymbol<S>> witness = new LinkedList<>();
-				witness.add(new TaggedSymbol<S>(ba.generateWitness(t.guard), SymbolTag.Internal));
-				witnesses.put(new Pair<Integer, Integer>(t.from, t.to), witness);
-
-				if (getInitialStates().contains(t.from) && getFinalStates().contains(t.to))
-					return witness;
-			}
-		}
-
-		//
-
-		// Compute fixpoint of reachability relation
-		boolean changed = true;
-		while (changed) {
-			changed = false;
-
-			for (Integer state1 : states) {
-				int id1 = stateToId.get(state1);
-
-				Collection<Integer> fromState1 = wmRelList.get(state1);
-				Collection<Integer> newStates = new HashSet<>();
-
-				// Calls and returns
-				for (Call<P, S> tCall : getCallsFrom(state1)) {
-					for (Integer toState : wmRelList.get(tCall.to))
-						for (Return<P, S> tReturn : getReturnsFrom(toState, tCall.stackState)) {
-							int stId = stateToId.get(tReturn.to);
-							if (!wmReachRel[id1][stId]) {
-								P conj = ba.MkAnd(ba.toBinaryPredicate(tCall.guard), tReturn.guard);
-								if (ba.IsSatisfiable(conj)) {
-									changed = true;
-									wmReachRel[id1][stId] = true;
-									newStates.add(tReturn.to);
-
-									LinkedList<TaggedSymbol<S>> witness = new LinkedList<>(
-											witnesses.get(new Pair<Integer, Integer>(tCall.to, tReturn.from)));
-									Pair<S, S> elements = ba.generateWitnesses(conj);
-									witness.addFirst(new TaggedSymbol<S>(elements.first, SymbolTag.Call));
-									witness.addLast(new TaggedSymbol<S>(elements.second, SymbolTag.Return));
-									witnesses.put(new Pair<Integer, Integer>(state1, tReturn.to), witness);
-
-									if (getInitialStates().contains(state1) && getFinalStates().contains(tReturn.to))
-										return witness;
-								}
-							}
-						}
-				}
-
-				// Closure
-				for (Integer state2 : fromState1) {
-					if (state1 != state2) {
-						Collection<Integer> fromState2 = wmRelList.get(state2);
-						for (int state3 : fromState2) {
-							if (state3 != state2 && state3 != state1) {
-								int id3 = stateToId.get(state3);
-								if (!wmReachRel[id1][id3]) {
-									changed = true;
-									newStates.add(state3);
-									wmReachRel[id1][id3] = true;
-
-									LinkedList<TaggedSymbol<S>> witness = new LinkedList<>(
-											witnesses.get(new Pair<Integer, Integer>(state1, state2)));
-									witness.addAll(witnesses.get(new Pair<Integer, Integer>(state2, state3)));
-									witnesses.put(new Pair<Integer, Integer>(state1, state3), witness);
-
-									if (getInitialStates().contains(state1) && getFinalStates().contains(state3))
-										return witness;
-								}
-							}
-						}
-					}
-				}
-
-				fromState1.addAll(newStates);
-			}
-		}
-
-		// Unmatched calls
-		boolean[][] unCallRel = copyBoolMatrix(wmReachRel);
-		Map<Integer, Collection<Integer>> uCallRelList = copyMap(wmRelList);
-		HashMap<Pair<Integer, Integer>, LinkedList<TaggedSymbol<S>>> ucWitnesses = new HashMap<>(witnesses);
-
-		// Calls
-		Collection<Call<P, S>> calls = getCallsFrom(getStates());
-		for (Call<P, S> tCall : calls) {
-			unCallRel[stateToId.get(tCall.from)][stateToId.get(tCall.to)] = true;
-			uCallRelList.get(tCall.from).add(tCall.to);
-
-			LinkedList<TaggedSymbol<S>> witness = new LinkedList<>();
-			witness.add(new TaggedSymbol<S>(ba.generateWitness(tCall.guard), SymbolTag.Call));
-			ucWitnesses.put(new Pair<Integer, Integer>(tCall.from, tCall.to), witness);
-
-			if (getInitialStates().contains(tCall.from) && getFinalStates().contains(tCall.to))
-				return witness;
-		}
-
-		if (!calls.isEmpty()) {
-			changed = true;
-			while (changed) {
-
-				changed = false;
-				for (Integer state1 : states) {
-					int id1 = stateToId.get(state1);
-
-					Collection<Integer> fromState1 = uCallRelList.get(state1);
-					Collection<Integer> newStates = new HashSet<>();
-					// Closure
-					for (Integer state2 : fromState1) {
-						Collection<Integer> fromState2 = uCallRelList.get(state2);
-						for (int state3 : fromState2) {
-							if (state3 != state2 && state3 != state1) {
-								int id3 = stateToId.get(state3);
-								if (!unCallRel[id1][id3]) {
-									changed = true;
-									newStates.add(state3);
-									unCallRel[id1][id3] = true;
-
-									LinkedList<TaggedSymbol<S>> witness = new LinkedList<>(
-											witnesses.get(new Pair<Integer, Integer>(state1, state2)));
-									witness.addAll(witnesses.get(new Pair<Integer, Integer>(state2, state3)));
-									ucWitnesses.put(new Pair<Integer, Integer>(state1, state3), witness);
-
-									if (getInitialStates().contains(state1) && getFinalStates().contains(state3))
-										return witness;
-								}
-							}
-						}
-					}
-
-					fromState1.addAll(newStates);
-				}
-			}
-		}
-
-		// Unmatched returns
-		boolean[][] unRetRel = copyBoolMatrix(wmReachRel);
-		Map<Integer, Collection<Integer>> uRetRelList = copyMap(wmRelList);
-		HashMap<Pair<Integer, Integer>, LinkedList<TaggedSymbol<S>>> urWitnesses = new HashMap<>(witnesses);
-
-		// Returns
-		Collection<ReturnBS<P, S>> returns = getReturnBSFrom(getStates());
-		for (ReturnBS<P, S> tRet : returns) {
-			int idFrom = stateToId.get(tRet.from);
-			int idTo = stateToId.get(tRet.to);
-			if (!unRetRel[idFrom][idTo]) {
-				unRetRel[idFrom][idTo] = true;
-				uRetRelList.get(tRet.from).add(tRet.to);
-
-				LinkedList<TaggedSymbol<S>> witness = new LinkedList<>();
-				witness.add(new TaggedSymbol<S>(ba.generateWitness(tRet.guard), SymbolTag.Return));
-				urWitnesses.put(new Pair<Integer, Integer>(tRet.from, tRet.to), witness);
-
-				if (getInitialStates().contains(tRet.from) && getFinalStates().contains(tRet.to))
-					return witness;
-			}
-		}
-
-		if (!returns.isEmpty()) {
-			changed = true;
-			while (changed) {
-
-				changed = false;
-				for (Integer state1 : states) {
-					int id1 = stateToId.get(state1);
-
-					Collection<Integer> fromState1 = uRetRelList.get(state1);
-					Collection<Integer> newStates = new HashSet<>();
-					// Closure
-					for (Integer state2 : fromState1) {
-						if (state2 != state1) {
-							Collection<Integer> fromState2 = uRetRelList.get(state2);
-							for (int state3 : fromState2) {
-								if (state3 != state2 && state3 != state1) {
-									int id3 = stateToId.get(state3);
-									if (!unRetRel[id1][id3]) {
-										changed = true;
-										newStates.add(state3);
-										unRetRel[id1][id3] = true;
-
-										LinkedList<TaggedSymbol<S>> witness = new LinkedList<>(
-												urWitnesses.get(new Pair<Integer, Integer>(state1, state2)));
-										witness.addAll(urWitnesses.get(new Pair<Integer, Integer>(state2, state3)));
-										urWitnesses.put(new Pair<Integer, Integer>(state1, state3), witness);
-
-										if (getInitialStates().contains(state1) && getFinalStates().contains(state3))
-											return witness;
-									}
-								}
-							}
-						}
-					}
-
-					fromState1.addAll(newStates);
-				}
-			}
-		}
-
-		// Full reachability relation
-		for (Integer state1 : states) {
-			for (Integer state2 : uRetRelList.get(state1)) {
-				if (state1 != state2) {
-					for (Integer state3 : uCallRelList.get(state2)) {
-						if (state3 != state2 && state3 != state1) {
-							if (getFinalStates().contains(state3)) {
-
-								LinkedList<TaggedSymbol<S>> witness = new LinkedList<>(
-										urWitnesses.get(new Pair<Integer, Integer>(state1, state2)));
-								witness.addAll(ucWitnesses.get(new Pair<Integer, Integer>(state2, state3)));
-
-								return witness;
-							}
-						}
-					}
-				}
-			}
-		}
-
-		throw new IllegalArgumentException("The automaton can't be empty");
-
-	}
-
-	private boolean[][] copyBoolMatrix(boolean[][] matrix) {
-		boolean[][] myMatrix = new boolean[matrix.length][];
-		for (int i = 0; i < matrix.length; i++) {
-			boolean[] aMatrix = matrix[i];
-			int aLength = aMatrix.length;
-			myMatrix[i] = new boolean[aLength];
-			System.arraycopy(aMatrix, 0, myMatrix[i], 0, aLength);
-		}
-		return myMatrix;
+		LinkedList<TaggedSymbol<S>> witness = new WellMatchedReachability<P, S>(this, ba).getWitness();
+		if (witness == null)
+			throw new IllegalArgumentException("The automaton can't be empty");
+		return witness;
 	}
 
-	private Map<Integer, Collection<Integer>> copyMap(Map<Integer, Collection<Integer>> matrix) {
-		HashMap<Integer, Collection<Integer>> myMatrix = new HashMap<>();
-		for (Integer i : matrix.keySet()) {
-			myMatrix.put(i, new HashSet<>(matrix.get(i)));
-		}
-		return myMatrix;
-	}
-
-	// Compute reachability relations between states (wm, ucall, uret, unm)
-	protected Quadruple<Map<Integer, Collection<Integer>>, Map<Integer, Collection<Integer>>, Map<Integer, Collection<Integer>>, Map<Integer, Collection<Integer>>> getReachRel(
-			BooleanAlgebra<P, S> ba) throws TimeoutException {
-
-		Collection<Integer> states = getStates();
-		Map<Integer, Integer> stateToId = new HashMap<Integer, Integer>();
-		Map<Integer, Integer> idToState = new HashMap<Integer, Integer>();
-
-		Map<Integer, Collection<Integer>> wmRelList = new HashMap<Integer, Collection<Integer>>();
-		boolean[][] wmReachRel = new boolean[states.size()][states.size()];
-
-		HashSet<Integer> relevantStates = new HashSet<>();
-		relevantStates.addAll(getInitialStates());
-		HashSet<Integer> callStates = new HashSet<>();
-
-		Integer count = 0;
-		for (Integer state : getStates()) {
-			stateToId.put(state, count);
-			idToState.put(count, state);
-			wmReachRel[count][count] = true;
-
-			Collection<Integer> reachableFromi = new HashSet<Integer>();
-			reachableFromi.add(state);
-			wmRelList.put(state, reachableFromi);
-
-			for (int j = 0; j < wmReachRel.length; j++)
-				if (count != j)
-					wmReachRel[count][j] = false;
-
-			if (!getCallsFrom(state).isEmpty()){
-				relevantStates.add(state);
-				callStates.add(state);
-			}else{
-				if (!getReturnBSFrom(state).isEmpty())
-					relevantStates.add(state);
-				else{
-					if (!getReturnsFrom(state).isEmpty())
-						relevantStates.add(state);
-					else{
-						if (!getCallsTo(state).isEmpty())
-							relevantStates.add(state);
-						else{
-							if (!getReturnBSTo(state).isEmpty())
-								relevantStates.add(state);
-							else
-								if (!getReturnsTo(state).isEmpty())
-									relevantStates.add(state);
-						}
-					}
-				}
-			}
-				
-			count++;
-		}
-
-		// Build relation for epsilon and internal transitions
-		for (Integer state1 : relevantStates)
-			dfsInternal(state1, stateToId, wmReachRel, wmRelList);
-
-		// Compute fixpoint of reachability relation
-		boolean changed = true;
-		while (changed) {
-			changed = false;
-
-			for (Integer state1 : callStates) {
-				int id1 = stateToId.get(state1);
-
-				Collection<Integer> fromState1 = wmRelList.get(state1);
-				Collection<Integer> newStates = new HashSet<>();
-
-				// Calls and returns
-				for (Call<P, S> tCall : getCallsFrom(state1)) {
-					for (Integer toState : wmRelList.get(tCall.to))
-						for (Return<P, S> tReturn : getReturnsFrom(toState, tCall.stackState)) {
-							int stId = stateToId.get(tReturn.to);
-							if (!wmReachRel[id1][stId])
-								if (ba.IsSatisfiable(ba.MkAnd(ba.toBinaryPredicate(tCall.guard), tReturn.guard))) {
-									changed = true;
-									wmReachRel[id1][stId] = true;
-									newStates.add(tReturn.to);
-								}
-						}
-				}
-				fromState1.addAll(newStates);
-			}
-
-			if (changed)
-				for (Integer state1 : relevantStates)
-					dfsReachRel(state1, stateToId, wmReachRel, wmRelList);
-		}
-
-		// Unmatched calls
-		boolean[][] unCallRel = copyBoolMatrix(wmReachRel);
-		Map<Integer, Collection<Integer>> uCallRelList = copyMap(wmRelList);
-
-		// Calls
-		Collection<Call<P, S>> calls = getCallsFrom(getStates());
-		for (Call<P, S> tCall : calls)
-		{
-			unCallRel[stateToId.get(tCall.from)][stateToId.get(tCall.to)] = true;
-			uCallRelList.get(tCall.from).add(tCall.to);
-		}
-
-		if (!calls.isEmpty())
-			for (Integer state1 : relevantStates)
-				dfsReachRel(state1, stateToId, unCallRel, uCallRelList);
-
-		// Unmatched returns
-		boolean[][] unRetRel = copyBoolMatrix(wmReachRel);
-		Map<Integer, Collection<Integer>> uRetRelList = copyMap(wmRelList);
-
-		// Returns
-		Collection<ReturnBS<P, S>> returns = getReturnBSFrom(getStates());
-		for (ReturnBS<P, S> tRet : returns) {
-			unRetRel[stateToId.get(tRet.from)][stateToId.get(tRet.to)] = true;
-			uRetRelList.get(tRet.from).add(tRet.to);
-		}
-
-		if (!returns.isEmpty())
-			for (Integer state1 : relevantStates)
-				dfsReachRel(state1, stateToId, unRetRel, uRetRelList);
-
-		// Full reachability relation
-		Map<Integer, Collection<Integer>> relList = copyMap(uRetRelList);
-
-		for (Integer state1 : states)
-
-		{
-			Collection<Integer> newStates = new HashSet<>();
-			for (Integer state2 : uRetRelList.get(state1)) {
-				newStates.addAll(uCallRelList.get(state2));
-			}
-			relList.put(state1, newStates);
-		}
-
-		return new Quadruple<Map<Integer, Collection<Integer>>, Map<Integer, Collection<Integer>>, Map<Integer, Collection<Integer>>, Map<Integer, Collection<Integer>>>(
-				wmRelList, uCallRelList, uRetRelList, relList);
-
-	}
-
-	private void dfsInternal(int stateFrom, Map<Integer, Integer> stateToId, boolean[][] reachRel,
-			Map<Integer, Collection<Integer>> wmRelList) {
-
-		HashSet<Integer> reached = new HashSet<>();
-		LinkedList<Integer> toVisit = new LinkedList<>();
-		toVisit.add(stateFrom);
-
-		int id = stateToId.get(stateFrom);
-
-		while (!toVisit.isEmpty()) {
-			int state = toVisit.removeFirst();
-
-			// Epsilon Transition
-			for (SVPAEpsilon<P, S> t : getEpsilonsFrom(state)) {
-				if (!reached.contains(t.to)) {
-					reachRel[id][stateToId.get(t.to)] = true;
-					wmRelList.get(stateFrom).add(t.to);
-					toVisit.add(t.to);
-					reached.add(t.to);
-				}
-			}
-
-			// Internal Transition
-			for (Internal<P, S> t : getInternalsFrom(state)) {
-				if (!reached.contains(t.to)) {
-					reachRel[id][stateToId.get(t.to)] = true;
-					wmRelList.get(stateFrom).add(t.to);
-					toVisit.add(t.to);
-					reached.add(t.to);
-				}
-			}
-		}
+	/**
+	 * Returns the states reachable from an initial state
+	 * @throws TimeoutException 
+	 */
+	protected Collection<Integer> getReachableStates(BooleanAlgebra<P, S> ba) throws TimeoutException {
+		WellMatchedReachability<P, S> wm = new WellMatchedReachability<P, S>(this, ba);
+		return toStates(wm.reachableFrom(getInitialStates()), wm);
 	}
 
-	private void dfsReachRel(int stateFrom, Map<Integer, Integer> stateToId, boolean[][] reachRel,
-			Map<Integer, Collection<Integer>> wmRelList) {
-
-		HashSet<Integer> reached = new HashSet<>();
-		LinkedList<Integer> toVisit = new LinkedList<>();
-		toVisit.add(stateFrom);
-
-		int id = stateToId.get(stateFrom);
-
-		while (!toVisit.isEmpty()) {
-			int state = toVisit.removeFirst();
-
-			// Epsilon Transition
-			for (Integer to : wmRelList.get(state)) {
-				if (!reached.contains(to)) {
-					reachRel[id][stateToId.get(to)] = true;
-					wmRelList.get(stateFrom).add(to);
-					toVisit.add(to);
-					reached.add(to);
-				}
-			}
-		}
+	private static Collection<Integer> toStates(long[] row, WellMatchedReachability<?, ?> wm) {
+		Collection<Integer> states = new HashSet<Integer>();
+		for (int k = 0; k < row.length; k++)
+			for (long bits = row[k]; bits != 0; bits &= bits - 1)
+				states.add(wm.idToState[(k << 6) + Long.numberOfTrailingZeros(bits)]);
+		return states;
 	}
 }
\ No newline at end of file
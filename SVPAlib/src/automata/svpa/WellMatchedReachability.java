@@ -0,0 +1,333 @@
+package automata.svpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.svpa.TaggedSymbol.SymbolTag;
+import theory.BooleanAlgebra;
+import utilities.Pair;
+
+/**
+ * Well-matched reachability relation of a VPA, computed by summary
+ * saturation. The relation is the reflexive and transitive closure of a
+ * graph whose edges are the epsilon and internal moves plus one summary edge
+ * <code>p -&gt; k</code> for every call from <code>p</code> and return to
+ * <code>k</code> that match on the stack and enclose a well-matched word.
+ * Rows of the relation are bitsets, and a worklist of newly reached pairs
+ * drives the discovery of summaries, so every pair of states is processed
+ * once. Witnesses are not stored but rebuilt from the edges on demand.
+ */
+class WellMatchedReachability<P, S> {
+
+	private final VPAutomaton<P, S> aut;
+	private final BooleanAlgebra<P, S> ba;
+
+	final int n;
+	final Integer[] idToState;
+	final Map<Integer, Integer> stateToId;
+
+	// reach[i] has bit j set iff j is reachable from i by a well-matched word
+	final long[][] reach;
+	// the transpose of reach: sources[j] has bit i set iff j is reachable
+	// from i, so that a new summary from j only visits those states
+	private final long[][] sources;
+
+	// edges of the summary graph by source
+	private final List<List<Edge<P, S>>> out;
+	// calls by target
+	private final List<List<Call<P, S>>> callsTo;
+	private int summaryCount;
+
+	// pending pairs (i, j) of the worklist
+	private int[] pending = new int[64];
+	private int pendingSize;
+
+	/**
+	 * Edge of the summary graph. Summary edges are numbered in order of
+	 * discovery starting from 1, the other edges have index 0.
+	 */
+	private static class Edge<P, S> {
+		final int to;
+		final SVPAMove<P, S> move;
+		final Return<P, S> ret;
+		final int index;
+
+		Edge(int to, SVPAMove<P, S> move, Return<P, S> ret, int index) {
+			this.to = to;
+			this.move = move;
+			this.ret = ret;
+			this.index = index;
+		}
+	}
+
+	WellMatchedReachability(VPAutomaton<P, S> aut, BooleanAlgebra<P, S> ba) throws TimeoutException {
+		this.aut = aut;
+		this.ba = ba;
+
+		Collection<Integer> states = aut.getStates();
+		n = states.size();
+		idToState = new Integer[n];
+		stateToId = new HashMap<Integer, Integer>();
+		for (Integer state : states) {
+			idToState[stateToId.size()] = state;
+			stateToId.put(state, stateToId.size());
+		}
+
+		reach = new long[n][(n + 63) >>> 6];
+		sources = new long[n][(n + 63) >>> 6];
+		out = new ArrayList<List<Edge<P, S>>>(n);
+		callsTo = new ArrayList<List<Call<P, S>>>(n);
+		for (int i = 0; i < n; i++) {
+			out.add(new ArrayList<Edge<P, S>>());
+			callsTo.add(new ArrayList<Call<P, S>>());
+		}
+
+		for (int i = 0; i < n; i++) {
+			Integer state = idToState[i];
+			for (SVPAEpsilon<P, S> t : aut.getEpsilonsFrom(state))
+				out.get(i).add(new Edge<P, S>(stateToId.get(t.to), t, null, 0));
+			for (Internal<P, S> t : aut.getInternalsFrom(state))
+				out.get(i).add(new Edge<P, S>(stateToId.get(t.to), t, null, 0));
+			for (Call<P, S> t : aut.getCallsFrom(state))
+				callsTo.get(stateToId.get(t.to)).add(t);
+		}
+
+		for (int i = 0; i < n; i++)
+			add(i, i);
+		saturate();
+	}
+
+	boolean isReachable(int i, int j) {
+		return (reach[i][j >>> 6] & (1L << j)) != 0;
+	}
+
+	private void add(int i, int j) {
+		long bit = 1L << j;
+		if ((reach[i][j >>> 6] & bit) != 0)
+			return;
+		reach[i][j >>> 6] |= bit;
+		sources[j][i >>> 6] |= 1L << i;
+		if (pendingSize == pending.length)
+			pending = Arrays.copyOf(pending, 2 * pending.length);
+		pending[pendingSize++] = i;
+		pending[pendingSize++] = j;
+	}
+
+	private void saturate() throws TimeoutException {
+		while (pendingSize > 0) {
+			int j = pending[--pendingSize];
+			int i = pending[--pendingSize];
+
+			for (Edge<P, S> e : out.get(j))
+				add(i, e.to);
+
+			// i is the target of a call and j the source of a return
+			for (Call<P, S> tCall : callsTo.get(i))
+				for (Return<P, S> tReturn : aut.getReturnsFrom(idToState[j], tCall.stackState)) {
+					int from = stateToId.get(tCall.from);
+					int to = stateToId.get(tReturn.to);
+					// an existing path already covers the summary
+					if (isReachable(from, to))
+						continue;
+					if (ba.IsSatisfiable(ba.MkAnd(ba.toBinaryPredicate(tCall.guard), tReturn.guard)))
+						addSummary(from, to, tCall, tReturn);
+				}
+		}
+	}
+
+	private void addSummary(int from, int to, Call<P, S> tCall, Return<P, S> tReturn) {
+		out.get(from).add(new Edge<P, S>(to, tCall, tReturn, ++summaryCount));
+		long[] column = sources[from];
+		for (int k = 0; k < column.length; k++)
+			for (long bits = column[k]; bits != 0; bits &= bits - 1)
+				add((k << 6) + Long.numberOfTrailingZeros(bits), to);
+	}
+
+	/**
+	 * @return the states reachable from <code>sources</code> by any word,
+	 *         that is by unmatched returns followed by unmatched calls
+	 *         interleaved with well-matched words
+	 */
+	long[] reachableFrom(Collection<Integer> sources) {
+		int[] prev = search(sources, null);
+		long[] ret = new long[(n + 63) >>> 6];
+		for (int v = 0; v < 2 * n; v++)
+			if (prev[v] != -1)
+				ret[(v % n) >>> 6] |= 1L << (v % n);
+		return ret;
+	}
+
+	/**
+	 * @return a word leading from an initial to a final state, null if there
+	 *         is none
+	 */
+	LinkedList<TaggedSymbol<S>> getWitness() throws TimeoutException {
+		Collection<Integer> finals = aut.getFinalStates();
+		boolean[] isFinal = new boolean[n];
+		for (Integer state : finals)
+			isFinal[stateToId.get(state)] = true;
+
+		int[] prev = search(aut.getInitialStates(), isFinal);
+		int target = -1;
+		for (int v = 0; v < 2 * n && target < 0; v++)
+			if (prev[v] != -1 && isFinal[v % n])
+				target = v;
+		if (target < 0)
+			return null;
+
+		// nodes of the path back to the initial state
+		LinkedList<Integer> path = new LinkedList<Integer>();
+		for (int v = target; v >= 0; v = prev[v] == v ? -1 : prev[v])
+			path.addFirst(v);
+
+		LinkedList<TaggedSymbol<S>> witness = new LinkedList<TaggedSymbol<S>>();
+		Integer last = null;
+		for (Integer v : path) {
+			if (last != null)
+				appendStep(last, v, witness);
+			last = v;
+		}
+		return witness;
+	}
+
+	/**
+	 * Breadth-first search from <code>sources</code> on the states paired
+	 * with a phase: 0 before the first unmatched call, when unmatched returns
+	 * are still possible, and 1 after it. Node <code>v</code> is state
+	 * <code>v % n</code> in phase <code>v / n</code>.
+	 * @return the predecessor of every node, the node itself for sources and
+	 *         -1 for unreached ones
+	 */
+	private int[] search(Collection<Integer> sources, boolean[] stopAt) {
+		int[] prev = new int[2 * n];
+		Arrays.fill(prev, -1);
+		int[] queue = new int[2 * n];
+		int head = 0, tail = 0;
+		for (Integer state : sources) {
+			int v = stateToId.get(state);
+			if (prev[v] == -1) {
+				prev[v] = v;
+				queue[tail++] = v;
+			}
+		}
+		while (head < tail) {
+			int v = queue[head++];
+			int state = v % n, phase = v / n;
+			if (stopAt != null && stopAt[state])
+				break;
+
+			// well-matched moves
+			long[] row = reach[state];
+			for (int k = 0; k < row.length; k++)
+				for (long bits = row[k]; bits != 0; bits &= bits - 1) {
+					int w = phase * n + (k << 6) + Long.numberOfTrailingZeros(bits);
+					if (prev[w] == -1) {
+						prev[w] = v;
+						queue[tail++] = w;
+					}
+				}
+			if (phase == 0)
+				for (ReturnBS<P, S> t : aut.getReturnBSFrom(idToState[state])) {
+					int w = stateToId.get(t.to);
+					if (prev[w] == -1) {
+						prev[w] = v;
+						queue[tail++] = w;
+					}
+				}
+			for (Call<P, S> t : aut.getCallsFrom(idToState[state])) {
+				int w = n + stateToId.get(t.to);
+				if (prev[w] == -1) {
+					prev[w] = v;
+					queue[tail++] = w;
+				}
+			}
+		}
+		return prev;
+	}
+
+	// appends a word leading from node v to node w of the search
+	private void appendStep(int v, int w, LinkedList<TaggedSymbol<S>> witness) throws TimeoutException {
+		int from = v % n, to = w % n;
+		if (v / n == 0 && w / n == 1) {
+			for (Call<P, S> t : aut.getCallsFrom(idToState[from]))
+				if (stateToId.get(t.to) == to) {
+					witness.add(new TaggedSymbol<S>(ba.generateWitness(t.guard), SymbolTag.Call));
+					return;
+				}
+		}
+		if (v / n == w / n && isReachable(from, to)) {
+			appendWellMatched(from, to, Integer.MAX_VALUE, witness);
+			return;
+		}
+		if (v / n == 1) {
+			for (Call<P, S> t : aut.getCallsFrom(idToState[from]))
+				if (stateToId.get(t.to) == to) {
+					witness.add(new TaggedSymbol<S>(ba.generateWitness(t.guard), SymbolTag.Call));
+					return;
+				}
+		}
+		for (ReturnBS<P, S> t : aut.getReturnBSFrom(idToState[from]))
+			if (stateToId.get(t.to) == to) {
+				witness.add(new TaggedSymbol<S>(ba.generateWitness(t.guard), SymbolTag.Return));
+				return;
+			}
+		throw new IllegalStateException("no move from " + idToState[from] + " to " + idToState[to]);
+	}
+
+	/**
+	 * Appends a well-matched word leading from <code>from</code> to
+	 * <code>to</code> that only uses summaries numbered below
+	 * <code>bound</code>. When a summary was discovered its inner pair was
+	 * already reachable through earlier summaries, so the recursion ends.
+	 */
+	private void appendWellMatched(int from, int to, int bound, LinkedList<TaggedSymbol<S>> witness)
+			throws TimeoutException {
+		if (from == to)
+			return;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Edge<P, S>[] prev = new Edge[n];
+		int[] prevState = new int[n];
+		Arrays.fill(prevState, -1);
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		queue[tail++] = from;
+		prevState[from] = from;
+		while (head < tail && prevState[to] == -1) {
+			int v = queue[head++];
+			for (Edge<P, S> e : out.get(v))
+				if (e.index < bound && prevState[e.to] == -1) {
+					prevState[e.to] = v;
+					prev[e.to] = e;
+					queue[tail++] = e.to;
+				}
+		}
+		if (prevState[to] == -1)
+			throw new IllegalStateException("no well-matched path from " + idToState[from] + " to " + idToState[to]);
+
+		LinkedList<Edge<P, S>> path = new LinkedList<Edge<P, S>>();
+		for (int v = to; v != from; v = prevState[v])
+			path.addFirst(prev[v]);
+
+		for (Edge<P, S> e : path) {
+			if (e.move instanceof Internal)
+				witness.add(new TaggedSymbol<S>(ba.generateWitness(((Internal<P, S>) e.move).guard),
+						SymbolTag.Internal));
+			else if (e.move instanceof Call) {
+				Call<P, S> tCall = (Call<P, S>) e.move;
+				Pair<S, S> elements = ba.generateWitnesses(
+						ba.MkAnd(ba.toBinaryPredicate(tCall.guard), e.ret.guard));
+				witness.add(new TaggedSymbol<S>(elements.first, SymbolTag.Call));
+				appendWellMatched(stateToId.get(tCall.to), stateToId.get(e.ret.from), e.index, witness);
+				witness.add(new TaggedSymbol<S>(elements.second, SymbolTag.Return));
+			}
+		}
+	}
+}
@@ -31,7 +31,7 @@ public class And<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	public int hashCode() {
+	protected int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((conjuncts == null) ? 0 : conjuncts.hashCode());
@@ -46,6 +46,8 @@ public class And<P, S> extends LTLFormula<P, S> {
 			return false;
 		if (!(obj instanceof And))
 			return false;
+		if (hashCode() != obj.hashCode())
+			return false;
 		And<?, ?> other = (And<?, ?>) obj;
 		if (conjuncts == null) {
 			if (other.conjuncts != null)
@@ -56,34 +58,46 @@ public class And<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
+	protected LTLFormula<P, S> internChildren(LTLInternTable<P, S> table) {
+		List<LTLFormula<P, S>> internedPhis = new ArrayList<>(conjuncts.size());
+		boolean isInterned = true;
+		for (LTLFormula<P, S> phi : conjuncts) {
+			LTLFormula<P, S> internedPhi = table.intern(phi);
+			internedPhis.add(internedPhi);
+			isInterned &= internedPhi == phi;
+		}
+		return isInterned ? this : new And<>(internedPhis);
+	}
+
+	@Override
+	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates, BooleanAlgebra<P, S> ba, HashSet<Integer> states) {
 		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
 		// If I already visited avoid recomputing
-		if (formulaToState.containsKey(this))
-			return formulaToState.get(this);
+		if (formulaToState.containsKey(table.getId(this)))
+			return formulaToState.get(table.getId(this));
 
 		PositiveBooleanExpression initialState = boolexpr.True();
 
 		// Compute transitions for children
 		for (LTLFormula<P, S> phi : conjuncts) {
-			PositiveBooleanExpression conjInit = phi.accumulateSAFAStatesTransitions(formulaToState, moves, finalStates,
+			PositiveBooleanExpression conjInit = phi.accumulateSAFAStatesTransitions(table, formulaToState, moves, finalStates,
 					ba, states);
 			initialState = boolexpr.MkAnd(initialState, conjInit);
 		}
 
 		// Update hash tables
-		formulaToState.put(this, initialState);
+		formulaToState.put(table.getId(this), initialState);
 
 		return initialState;
 	}
 
 	@Override
-	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba,
-			HashMap<String, LTLFormula<P, S>> posHash, HashMap<String, LTLFormula<P, S>> negHash) throws TimeoutException {
-		String key = this.toString();
+	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table,
+			HashMap<Integer, LTLFormula<P, S>> posHash, HashMap<Integer, LTLFormula<P, S>> negHash) throws TimeoutException {
+		int key = table.getId(this);
 
 		LTLFormula<P, S> out = new False<>();
 
@@ -93,7 +107,7 @@ public class And<P, S> extends LTLFormula<P, S> {
 			}
 			List<LTLFormula<P, S>> newPhis = new ArrayList<>();
 			for (LTLFormula<P, S> phi : conjuncts)
-				newPhis.add(phi.pushNegations(isPositive, ba, posHash, negHash));
+				newPhis.add(phi.pushNegations(isPositive, ba, table, posHash, negHash));
 			out = new And<>(newPhis);
 			posHash.put(key, out);
 			return out;
@@ -102,7 +116,7 @@ public class And<P, S> extends LTLFormula<P, S> {
 				return negHash.get(key);
 			List<LTLFormula<P, S>> newPhis = new ArrayList<>();
 			for (LTLFormula<P, S> phi : conjuncts)
-				newPhis.add(phi.pushNegations(isPositive, ba, posHash, negHash));
+				newPhis.add(phi.pushNegations(isPositive, ba, table, posHash, negHash));
 			out = new Or<>(newPhis);
 			negHash.put(key, out);
 			return out;
@@ -17,7 +17,7 @@ public class False<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	public int hashCode() {
+	protected int computeHashCode() {
 		return 11;
 	}
 
@@ -29,35 +29,42 @@ public class False<P, S> extends LTLFormula<P, S> {
 			return false;
 		if (!(obj instanceof False))
 			return false;
+		if (hashCode() != obj.hashCode())
+			return false;
 		return true;
 	}		
 	
 	@Override
-	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
+	protected LTLFormula<P, S> internChildren(LTLInternTable<P, S> table) {
+		return this;
+	}
+
+	@Override
+	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates, BooleanAlgebra<P, S> ba, HashSet<Integer> states) {
 		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
 		// If I already visited avoid recomputing
-		if (formulaToState.containsKey(this))
-			return formulaToState.get(this);
+		if (formulaToState.containsKey(table.getId(this)))
+			return formulaToState.get(table.getId(this));
 
 		// Update hash tables
 		int id =states.size();
 		states.add(id);
 		PositiveBooleanExpression initialState = boolexpr.MkState(id);
-		formulaToState.put(this, initialState);		
+		formulaToState.put(table.getId(this), initialState);		
 		
 		return initialState;
 	}
 	
 	@Override
-	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, HashMap<String, LTLFormula<P,S>> posHash, HashMap<String, LTLFormula<P,S>> negHash){
+	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table, HashMap<Integer, LTLFormula<P, S>> posHash, HashMap<Integer, LTLFormula<P, S>> negHash){
 		if(isPositive){
 			return this;
 		}
 		else{ 
-			String key = this.toString();
+			int key = table.getId(this);
 			if (negHash.containsKey(key)) {
 				return negHash.get(key);
 			} else {
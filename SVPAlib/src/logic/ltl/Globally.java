@@ -22,7 +22,7 @@ public class Globally<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	public int hashCode() {
+	protected int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((phi == null) ? 0 : phi.hashCode());
@@ -37,6 +37,8 @@ public class Globally<P, S> extends LTLFormula<P, S> {
 			return false;
 		if (!(obj instanceof Globally))
 			return false;
+		if (hashCode() != obj.hashCode())
+			return false;
 		@SuppressWarnings("unchecked")
 		Globally<P, S> other = (Globally<P, S>) obj;
 		if (phi == null) {
@@ -48,17 +50,23 @@ public class Globally<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
+	protected LTLFormula<P, S> internChildren(LTLInternTable<P, S> table) {
+		LTLFormula<P, S> internedPhi = table.intern(phi);
+		return internedPhi == phi ? this : new Globally<>(internedPhi);
+	}
+
+	@Override
+	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates, BooleanAlgebra<P, S> ba, HashSet<Integer> states) {
 		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
 		// If I already visited avoid recomputing
-		if (formulaToState.containsKey(this))
-			return formulaToState.get(this);
+		if (formulaToState.containsKey(table.getId(this)))
+			return formulaToState.get(table.getId(this));
 
 		// Compute transitions for children
-		PositiveBooleanExpression phiState = phi.accumulateSAFAStatesTransitions(formulaToState, moves, finalStates,
+		PositiveBooleanExpression phiState = phi.accumulateSAFAStatesTransitions(table, formulaToState, moves, finalStates,
 				ba, states);
 
 		// Update hash tables
@@ -67,7 +75,7 @@ public class Globally<P, S> extends LTLFormula<P, S> {
 		int idXGphi = states.size();
 		states.add(idXGphi);
 		PositiveBooleanExpression initialState = boolexpr.MkAnd(boolexpr.MkState(idXGphi), phiState);		
-		formulaToState.put(this, initialState);
+		formulaToState.put(table.getId(this), initialState);
 		
 		PositiveBooleanExpression nextState = boolexpr.MkOr( boolexpr.MkState(0), boolexpr.MkAnd(boolexpr.MkState(idXGphi),phiState));
 		finalStates.add(0);
@@ -79,9 +87,9 @@ public class Globally<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba,
-			HashMap<String, LTLFormula<P, S>> posHash, HashMap<String, LTLFormula<P, S>> negHash) throws TimeoutException {
-		String key = this.toString();
+	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table,
+			HashMap<Integer, LTLFormula<P, S>> posHash, HashMap<Integer, LTLFormula<P, S>> negHash) throws TimeoutException {
+		int key = table.getId(this);
 
 		LTLFormula<P, S> out = new False<>();
 
@@ -89,13 +97,13 @@ public class Globally<P, S> extends LTLFormula<P, S> {
 			if (posHash.containsKey(key)) {
 				return posHash.get(key);
 			}
-			out = new Globally<>(phi.pushNegations(isPositive, ba, posHash, negHash));
+			out = new Globally<>(phi.pushNegations(isPositive, ba, table, posHash, negHash));
 			posHash.put(key, out);
 			return out;
 		} else {
 			if (negHash.containsKey(key))
 				return negHash.get(key);
-			out = new Eventually<>(phi.pushNegations(isPositive, ba, posHash, negHash));
+			out = new Eventually<>(phi.pushNegations(isPositive, ba, table, posHash, negHash));
 			negHash.put(key, out);
 			return out;
 		}
@@ -14,10 +14,17 @@ import automata.safa.booleanexpression.PositiveBooleanExpression;
 import theory.BooleanAlgebra;
 
 public abstract class LTLFormula<P,S> {
+
+	// structural hash, 0 until computed; as in String, a racing thread at
+	// worst computes the same value again
+	private int hash;
+
+	// returns this formula if its subformulas are interned in table, and a copy with interned subformulas otherwise
+	protected abstract LTLFormula<P,S> internChildren(LTLInternTable<P, S> table);
 	
 	public <E extends BooleanExpression> SAFA<P,S> getSAFA(BooleanAlgebra<P, S> ba) throws TimeoutException{
 				
-		HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToStateId = new HashMap<>();
+		HashMap<Integer, PositiveBooleanExpression> formulaToStateId = new HashMap<>();
 		
 		Collection<Integer> finalStates = new HashSet<>();
 		Collection<SAFAInputMove<P, S>> moves = new LinkedList<>();
@@ -27,7 +34,8 @@ public abstract class LTLFormula<P,S> {
 		states.add(emptyId);
 		
 		//This is the state for the empty string		
-		PositiveBooleanExpression initialState = this.accumulateSAFAStatesTransitions(formulaToStateId, moves, finalStates, ba, states);
+		LTLInternTable<P, S> table = new LTLInternTable<>();
+		PositiveBooleanExpression initialState = table.intern(this).accumulateSAFAStatesTransitions(table, formulaToStateId, moves, finalStates, ba, states);
 		
 
 		return SAFA.MkSAFA(moves, initialState, finalStates, ba, false, true, false);
@@ -35,15 +43,17 @@ public abstract class LTLFormula<P,S> {
 	
 	// Checks whether a formula should be a final state in the automaton
 	public LTLFormula<P,S> pushNegations(BooleanAlgebra<P, S> ba) throws TimeoutException{
-		return pushNegations(true,ba, new HashMap<>(), new HashMap<>());
+		LTLInternTable<P, S> table = new LTLInternTable<>();
+		return table.intern(this).pushNegations(true,ba, table, new HashMap<>(), new HashMap<>());
 	}
 	
 	// Checks whether a formula should be a final state in the automaton
-	protected abstract LTLFormula<P,S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, HashMap<String, LTLFormula<P,S>> posHash, HashMap<String, LTLFormula<P,S>> negHash) throws TimeoutException;	
+	protected abstract LTLFormula<P,S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table, HashMap<Integer, LTLFormula<P,S>> posHash, HashMap<Integer, LTLFormula<P,S>> negHash) throws TimeoutException;	
 	
 	// returns set of disjoint predicates that are the triggers of transitions out of this state
 	protected abstract PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToInitState,
+			LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToInitState,
 			Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates,
 			BooleanAlgebra<P, S> ba, HashSet<Integer> states);
@@ -52,7 +62,16 @@ public abstract class LTLFormula<P,S> {
 	public abstract int getSize();	
 	
 	@Override
-	public abstract int hashCode();
+	public final int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			h = computeHashCode();
+			hash = h;
+		}
+		return h;
+	}
+
+	protected abstract int computeHashCode();
 
 	@Override
 	public abstract boolean equals(Object obj);
@@ -0,0 +1,59 @@
+package logic.ltl;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Hash-consing of LTL formulas: structurally equal formulas are interned to
+ * the same node, which has a unique id, and the subformulas of an interned
+ * node are interned. As the subformulas of interned nodes are shared,
+ * comparing two candidates only compares their subformulas by reference, and
+ * the translations can be memoized on the ids. A table is meant to live as
+ * long as one translation, so that predicates of different algebras are never
+ * compared.
+ * @param <P> set of predicates over the domain S
+ * @param <S> domain of the alphabet
+ */
+public class LTLInternTable<P, S> {
+
+	// interned node of every formula seen so far
+	private final Map<LTLFormula<P, S>, LTLFormula<P, S>> internedOf = new IdentityHashMap<>();
+	// interned nodes by structure
+	private final Map<LTLFormula<P, S>, LTLFormula<P, S>> nodes = new HashMap<>();
+	private final Map<LTLFormula<P, S>, Integer> ids = new IdentityHashMap<>();
+
+	/**
+	 * @return the interned node structurally equal to <code>phi</code>
+	 */
+	public LTLFormula<P, S> intern(LTLFormula<P, S> phi) {
+		LTLFormula<P, S> node = internedOf.get(phi);
+		if (node == null) {
+			LTLFormula<P, S> candidate = phi.internChildren(this);
+			node = nodes.get(candidate);
+			if (node == null) {
+				node = candidate;
+				nodes.put(node, node);
+				ids.put(node, ids.size());
+				internedOf.put(node, node);
+			}
+			internedOf.put(phi, node);
+		}
+		return node;
+	}
+
+	/**
+	 * @return the id of the interned node structurally equal to
+	 *         <code>phi</code>
+	 */
+	public int getId(LTLFormula<P, S> phi) {
+		return ids.get(intern(phi));
+	}
+
+	/**
+	 * @return the number of interned nodes
+	 */
+	public int size() {
+		return ids.size();
+	}
+}
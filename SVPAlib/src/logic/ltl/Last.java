@@ -19,7 +19,7 @@ public class Last<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	public int hashCode() {
+	protected int computeHashCode() {
 		final int prime = 31;
 		int result = prime *prime;
 		return result;
@@ -32,25 +32,32 @@ public class Last<P, S> extends LTLFormula<P, S> {
 		if (obj == null)
 			return false;
 		if (!(obj instanceof Last))
-			return false;		
+			return false;
+		if (hashCode() != obj.hashCode())
+			return false;
 		return true;
 	}
 
 	@Override
-	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
+	protected LTLFormula<P, S> internChildren(LTLInternTable<P, S> table) {
+		return this;
+	}
+
+	@Override
+	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates, BooleanAlgebra<P, S> ba, HashSet<Integer> states) {
 		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
 		// If I already visited avoid recomputing
-		if (formulaToState.containsKey(this))
-			return formulaToState.get(this);
+		if (formulaToState.containsKey(table.getId(this)))
+			return formulaToState.get(table.getId(this));
 
 		// Update hash tables
 		int id = states.size();
 		states.add(id);
 		PositiveBooleanExpression initialState = boolexpr.MkState(id);
-		formulaToState.put(this, initialState);
+		formulaToState.put(table.getId(this), initialState);
 
 		int id2 = states.size();
 		states.add(id2);
@@ -67,8 +74,8 @@ public class Last<P, S> extends LTLFormula<P, S> {
 
 
 	@Override
-	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba,
-			HashMap<String, LTLFormula<P, S>> posHash, HashMap<String, LTLFormula<P, S>> negHash)
+	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table,
+			HashMap<Integer, LTLFormula<P, S>> posHash, HashMap<Integer, LTLFormula<P, S>> negHash)
 					throws TimeoutException {
 		throw new IllegalArgumentException("This shouldn't happen");
 	}
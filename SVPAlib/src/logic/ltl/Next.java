@@ -22,7 +22,7 @@ public class Next<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	public int hashCode() {
+	protected int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((phi == null) ? 0 : phi.hashCode());
@@ -37,6 +37,8 @@ public class Next<P, S> extends LTLFormula<P, S> {
 			return false;
 		if (!(obj instanceof Next))
 			return false;
+		if (hashCode() != obj.hashCode())
+			return false;
 		@SuppressWarnings("unchecked")
 		Next<P, S> other = (Next<P, S>) obj;
 		if (phi == null) {
@@ -48,23 +50,29 @@ public class Next<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
+	protected LTLFormula<P, S> internChildren(LTLInternTable<P, S> table) {
+		LTLFormula<P, S> internedPhi = table.intern(phi);
+		return internedPhi == phi ? this : new Next<>(internedPhi);
+	}
+
+	@Override
+	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates, BooleanAlgebra<P, S> ba, HashSet<Integer> states) {
 		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
 		// If I already visited avoid recomputing
-		if (formulaToState.containsKey(this))
-			return formulaToState.get(this);
+		if (formulaToState.containsKey(table.getId(this)))
+			return formulaToState.get(table.getId(this));
 
 		// Update hash tables
 		int id = states.size();
 		states.add(id);
 		PositiveBooleanExpression initialState = boolexpr.MkState(id);
-		formulaToState.put(this, initialState);
+		formulaToState.put(table.getId(this), initialState);
 
 		// Compute transitions for children
-		PositiveBooleanExpression phiState = phi.accumulateSAFAStatesTransitions(formulaToState, moves, finalStates,
+		PositiveBooleanExpression phiState = phi.accumulateSAFAStatesTransitions(table, formulaToState, moves, finalStates,
 				ba, states);
 
 		// delta(X phi, true) = phi
@@ -74,9 +82,9 @@ public class Next<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba,
-			HashMap<String, LTLFormula<P, S>> posHash, HashMap<String, LTLFormula<P, S>> negHash) throws TimeoutException {
-		String key = this.toString();
+	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table,
+			HashMap<Integer, LTLFormula<P, S>> posHash, HashMap<Integer, LTLFormula<P, S>> negHash) throws TimeoutException {
+		int key = table.getId(this);
 
 		LTLFormula<P, S> out = new False<>();
 
@@ -84,13 +92,13 @@ public class Next<P, S> extends LTLFormula<P, S> {
 			if (posHash.containsKey(key)) {
 				return posHash.get(key);
 			}
-			out = new Next<>(phi.pushNegations(isPositive, ba, posHash, negHash));
+			out = new Next<>(phi.pushNegations(isPositive, ba, table, posHash, negHash));
 			posHash.put(key, out);
 			return out;
 		} else {
 			if (negHash.containsKey(key))
 				return negHash.get(key);
-			out = new Or<>(new Next<>(phi.pushNegations(isPositive, ba, posHash, negHash)), new Last<>());
+			out = new Or<>(new Next<>(phi.pushNegations(isPositive, ba, table, posHash, negHash)), new Last<>());
 			negHash.put(key, out);
 			return out;
 		}
@@ -23,7 +23,7 @@ public class Until<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	public int hashCode() {
+	protected int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((left == null) ? 0 : left.hashCode());
@@ -39,6 +39,8 @@ public class Until<P, S> extends LTLFormula<P, S> {
 			return false;
 		if (!(obj instanceof Until))
 			return false;
+		if (hashCode() != obj.hashCode())
+			return false;
 		@SuppressWarnings("unchecked")
 		Until<P, S> other = (Until<P, S>) obj;
 		if (left == null) {
@@ -55,24 +57,31 @@ public class Until<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(
-			HashMap<LTLFormula<P, S>, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
+	protected LTLFormula<P, S> internChildren(LTLInternTable<P, S> table) {
+		LTLFormula<P, S> internedLeft = table.intern(left);
+		LTLFormula<P, S> internedRight = table.intern(right);
+		return internedLeft == left && internedRight == right ? this : new Until<>(internedLeft, internedRight);
+	}
+
+	@Override
+	protected PositiveBooleanExpression accumulateSAFAStatesTransitions(LTLInternTable<P, S> table,
+			HashMap<Integer, PositiveBooleanExpression> formulaToState, Collection<SAFAInputMove<P, S>> moves,
 			Collection<Integer> finalStates, BooleanAlgebra<P, S> ba, HashSet<Integer> states) {
 		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
 		// If I already visited avoid recomputing
-		if (formulaToState.containsKey(this))
-			return formulaToState.get(this);
+		if (formulaToState.containsKey(table.getId(this)))
+			return formulaToState.get(table.getId(this));
 
 		// Compute transitions for children
-		PositiveBooleanExpression leftState = left.accumulateSAFAStatesTransitions(formulaToState, moves, finalStates, ba, states);
-		PositiveBooleanExpression rightState =right.accumulateSAFAStatesTransitions(formulaToState, moves, finalStates, ba, states);
+		PositiveBooleanExpression leftState = left.accumulateSAFAStatesTransitions(table, formulaToState, moves, finalStates, ba, states);
+		PositiveBooleanExpression rightState =right.accumulateSAFAStatesTransitions(table, formulaToState, moves, finalStates, ba, states);
 
 		// initialState (l /\ (l U r)) \/ r		
 		int id =states.size();
 		states.add(id);
 		PositiveBooleanExpression initialState = boolexpr.MkOr(boolexpr.MkAnd(leftState, boolexpr.MkState(id)), rightState);
-		formulaToState.put(this, initialState);
+		formulaToState.put(table.getId(this), initialState);
 
 		// delta(l U r, true) = (l /\ (l U r)) \/ r	
 		moves.add(new SAFAInputMove<P, S>(id, initialState, ba.True()));
@@ -81,9 +90,9 @@ public class Until<P, S> extends LTLFormula<P, S> {
 	}
 
 	@Override
-	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba,
-			HashMap<String, LTLFormula<P, S>> posHash, HashMap<String, LTLFormula<P, S>> negHash) throws TimeoutException {
-		String key = this.toString();
+	protected LTLFormula<P, S> pushNegations(boolean isPositive, BooleanAlgebra<P, S> ba, LTLInternTable<P, S> table,
+			HashMap<Integer, LTLFormula<P, S>> posHash, HashMap<Integer, LTLFormula<P, S>> negHash) throws TimeoutException {
+		int key = table.getId(this);
 
 		LTLFormula<P, S> out = new False<>();
 
@@ -91,8 +100,8 @@ public class Until<P, S> extends LTLFormula<P, S> {
 			if (posHash.containsKey(key)) {
 				return posHash.get(key);
 			}
-			out = new Until<>(left.pushNegations(isPositive, ba, posHash, negHash),
-					right.pushNegations(isPositive, ba, posHash, negHash));
+			out = new Until<>(left.pushNegations(isPositive, ba, table, posHash, negHash),
+					right.pushNegations(isPositive, ba, table, posHash, negHash));
 			posHash.put(key, out);
 			return out;
 		} else {
@@ -100,8 +109,8 @@ public class Until<P, S> extends LTLFormula<P, S> {
 				return negHash.get(key);
 			
 			// not (A U B) == (not B) W (not A /\ not B) 
-			LTLFormula<P, S> rightNeg = right.pushNegations(isPositive, ba, posHash, negHash);
-			out = new WeakUntil<>(rightNeg, new And<>(left.pushNegations(isPositive, ba, posHash, negHash), rightNeg));
+			LTLFormula<P, S> rightNeg = right.pushNegations(isPositive, ba, table, posHash, negHash);
+			out = new WeakUntil<>(rightNeg, new And<>(left.pushNegations(isPositive, ba, table, posHash, negHash), rightNeg));
 			negHash.put(key, out);
 			return out;
 		}
@@ -9,6 +9,8 @@ package theory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.sat4j.specs.TimeoutException;
 
@@ -130,32 +132,94 @@ public abstract class BooleanAlgebra<P, S> {
 
     /**
      * @return true iff there are at least <code>numOfWitnesses</code> many witnesses that satisfy <code>predicate</code>
+     * @throws UncheckedTimeoutException if the solver times out
      */
     public boolean hasNDistinctWitnesses(P predicate, Integer numOfWitnesses) {
+        long count;
+        try {
+            count = countModels(predicate);
+        } catch (TimeoutException e) {
+            throw new UncheckedTimeoutException(e);
+        }
+        if (count >= 0)
+            return count >= numOfWitnesses;
         // generate as many witnesses as requested
+        Iterator<S> witnesses = enumerateWitnesses(predicate);
         for (int witnessID = 0; witnessID < numOfWitnesses; witnessID++) {
-            try {
-                // generate a witness for the predicate
-                S witness = generateWitness(predicate);
-
-                // If it's satisfiable:
-                if (witness != null) {
-                    // Update the predicate to exclude the current witness.
-                    predicate = MkAnd(predicate, MkNot(MkAtom(witness)));
-                } else {
-                    // If it isn't then we don't have enough witnesses.
-                    return false;
-                }
-            } catch (TimeoutException e) {
-                e.printStackTrace();
-                System.out.println("Distinct witnesses check timeout.");
+            if (!witnesses.hasNext())
                 return false;
-            }
+            witnesses.next();
         }
         // If we get here then we have generated enough witnesses.
         return true;
     }
 
+	/**
+	 * @return the number of models of <code>p</code>, or -1 if it is infinite
+	 *         or this algebra cannot count it
+	 */
+	public long countModels(P p) throws TimeoutException {
+		return -1;
+	}
+
+	/**
+	 * @return the <code>index</code>-th model of <code>p</code> in the order of
+	 *         {@link #enumerateWitnesses(Object)}, null if <code>p</code> has
+	 *         fewer models
+	 */
+	public S witnessAt(P p, long index) throws TimeoutException {
+		if (index < 0)
+			return null;
+		try {
+			Iterator<S> witnesses = enumerateWitnesses(p);
+			for (long i = 0; i < index && witnesses.hasNext(); i++)
+				witnesses.next();
+			return witnesses.hasNext() ? witnesses.next() : null;
+		} catch (UncheckedTimeoutException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Lazily enumerates distinct models of <code>p</code>. The default
+	 * implementation excludes each witness from the predicate before asking for
+	 * the next one; algebras that can index their models directly should
+	 * override it. The iterator throws an {@link UncheckedTimeoutException}
+	 * if the solver times out.
+	 */
+	public Iterator<S> enumerateWitnesses(final P p) {
+		return new Iterator<S>() {
+			P rest = p;
+			S next = null;
+			boolean done = false;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null && !done) {
+					try {
+						next = generateWitness(rest);
+						if (next == null)
+							done = true;
+						else
+							rest = MkAnd(rest, MkNot(MkAtom(next)));
+					} catch (TimeoutException e) {
+						throw new UncheckedTimeoutException(e);
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public S next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				S ret = next;
+				next = null;
+				return ret;
+			}
+		};
+	}
+
 	/**
 	 * Given a set of <code>predicates</code>, returns all the satisfiable
 	 * Boolean combinations
@@ -30,15 +30,24 @@ public class ProductAlgebra<P1, S1, P2, S2> extends BooleanAlgebra<CartesianProd
 	}
 
 	@Override
-	public CartesianProduct<P1, P2> MkNot(CartesianProduct<P1, P2> p) throws TimeoutException {						
-		ArrayList<CartesianProduct<P1, P2>> conjuncts = new ArrayList<>();
+	public CartesianProduct<P1, P2> MkNot(CartesianProduct<P1, P2> p) throws TimeoutException {
+		// in disjoint form the complement is taken rectangle by rectangle
+		p = normalized(p);
+		ArrayList<Pair<P1, P2>> newProducts = new ArrayList<>();
+		List<P1> firsts = new ArrayList<>();
 		for (Pair<P1, P2> pair : p.getProducts()) {
-			List<Pair<P1, P2>> temp = new ArrayList<Pair<P1, P2>>();
-			temp.add(new Pair<P1, P2>(ba1.MkNot(pair.first), ba2.True()));
-			temp.add(new Pair<P1, P2>(ba1.True(), ba2.MkNot(pair.second)));
-			conjuncts.add(new CartesianProduct<P1, P2>(temp));
+			firsts.add(pair.first);
+			P2 notSecond = ba2.MkNot(pair.second);
+			if (ba2.IsSatisfiable(notSecond))
+				newProducts.add(new Pair<P1, P2>(pair.first, notSecond));
 		}
-		return MkAnd(conjuncts);
+		P1 uncovered = ba1.MkNot(ba1.MkOr(firsts));
+		if (ba1.IsSatisfiable(uncovered))
+			newProducts.add(new Pair<P1, P2>(uncovered, ba2.True()));
+
+		CartesianProduct<P1, P2> not = new CartesianProduct<>(newProducts);
+		not.setNormalized();
+		return not;
 	}
 
 	@Override
@@ -54,10 +63,10 @@ public class ProductAlgebra<P1, S1, P2, S2> extends BooleanAlgebra<CartesianProd
 	public CartesianProduct<P1, P2> MkOr(CartesianProduct<P1, P2> p1, CartesianProduct<P1, P2> p2)
 			throws TimeoutException {
 			
-		ArrayList<Pair<P1, P2>> newProducts = new ArrayList<>(p1.getProducts());
-		newProducts.addAll(p2.getProducts());
-		CartesianProduct<P1, P2> pp= new CartesianProduct<>(newProducts);
-		pp.normalize(ba1, ba2);
+		// p1 is copied, the operands are never modified
+		CartesianProduct<P1, P2> pp = normalized(p1).copy();
+		for (Pair<P1, P2> pair : p2.getProducts())
+			pp.add(pair.first, pair.second, ba1, ba2);
 		return pp;
 	}
 
@@ -74,6 +83,10 @@ public class ProductAlgebra<P1, S1, P2, S2> extends BooleanAlgebra<CartesianProd
 	public CartesianProduct<P1, P2> MkAnd(CartesianProduct<P1, P2> p1, CartesianProduct<P1, P2> p2)
 			throws TimeoutException {
 
+		// the pairwise intersections of two disjoint forms are again disjoint,
+		// only rectangles with the same second component need to be merged
+		p1 = normalized(p1);
+		p2 = normalized(p2);
 		ArrayList<Pair<P1, P2>> newProducts = new ArrayList<>();
 		for (Pair<P1, P2> pair1 : p1.getProducts()) 
 			for (Pair<P1, P2> pair2 : p2.getProducts()) {
@@ -85,12 +98,17 @@ public class ProductAlgebra<P1, S1, P2, S2> extends BooleanAlgebra<CartesianProd
 				}
 			}
 
-		return new CartesianProduct<>(newProducts);
+		CartesianProduct<P1, P2> and = new CartesianProduct<>();
+		for (Pair<P1, P2> pair : newProducts)
+			and.add(pair.first, pair.second, ba1, ba2);
+		return and;
 	}
 
 	@Override
 	public CartesianProduct<P1, P2> True() {
-		return new CartesianProduct<>(ba1.True(),ba2.True());
+		CartesianProduct<P1, P2> t = new CartesianProduct<>(ba1.True(),ba2.True());
+		t.setNormalized();
+		return t;
 	}
 
 	@Override
@@ -100,7 +118,7 @@ public class ProductAlgebra<P1, S1, P2, S2> extends BooleanAlgebra<CartesianProd
 
 	@Override
 	public boolean AreEquivalent(CartesianProduct<P1, P2> p1, CartesianProduct<P1, P2> p2) throws TimeoutException {
-		return IsSatisfiable(MkAnd(p1, MkNot(p2))) || IsSatisfiable(MkAnd(MkNot(p1), p2));
+		return p1.isEquivalent(p2, ba1, ba2);
 	}
 
 	@Override
@@ -231,4 +249,11 @@ public class ProductAlgebra<P1, S1, P2, S2> extends BooleanAlgebra<CartesianProd
 		return ret;
 	}
 
+	/**
+	 * @return p itself if it is already in disjoint form, a normalized copy otherwise
+	 */
+	private CartesianProduct<P1, P2> normalized(CartesianProduct<P1, P2> p) throws TimeoutException {
+		return p.normalized(ba1, ba2);
+	}
+
 }
@@ -0,0 +1,26 @@
+/**
+ * SVPAlib
+ * theory
+ */
+package theory;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Carries a solver {@link TimeoutException} out of code that cannot throw
+ * checked exceptions, such as the iterators of
+ * {@link BooleanAlgebra#enumerateWitnesses(Object)}
+ */
+public class UncheckedTimeoutException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedTimeoutException(TimeoutException cause) {
+		super(cause);
+	}
+
+	@Override
+	public synchronized TimeoutException getCause() {
+		return (TimeoutException) super.getCause();
+	}
+}
@@ -57,7 +57,8 @@ public abstract class BDDFactory {
     /**
      * <p>Initializes a BDD factory of the given type with the given initial
      * node table size and operation cache size.  The type is a string that
-     * can be "buddy", "cudd", "cal", "j", "java", "jdd", "test", "typed", or
+     * can be "buddy", "cudd", "cal", "j", "java", "joffheap", "jcomplement",
+     * "jconcurrent", "jdd", "test", "typed", or
      * a name of a class that has an init() method that returns a BDDFactory.
      * If it fails, it falls back to the "java" factory.</p>
      * 
@@ -70,6 +71,12 @@ public abstract class BDDFactory {
         try {
             if (bddpackage.equals("j") || bddpackage.equals("java"))
                 return JFactory.init(nodenum, cachesize);
+            if (bddpackage.equals("joffheap"))
+                return JFactory.initOffHeap(nodenum, cachesize);
+            if (bddpackage.equals("jcomplement"))
+                return JFactory.initComplementLinks(nodenum, cachesize);
+            if (bddpackage.equals("jconcurrent"))
+                return ConcurrentFactory.init(nodenum, cachesize);
             if (bddpackage.equals("u") || bddpackage.equals("micro"))
                 return MicroFactory.init(nodenum, cachesize);
             if (bddpackage.equals("jdd"))
@@ -260,6 +267,17 @@ public abstract class BDDFactory {
      */
     public abstract boolean isInitialized();
 
+    /**
+     * <p>Returns true if the operations of this factory and of its BDDs may
+     * be called from several threads at once, false if the callers must
+     * serialize them.</p>
+     * 
+     * @return  true if this BDD factory is thread safe
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * <p>Reset the BDD factory to its initial state.  Everything
      * is reallocated from scratch.  This is like calling done()
@@ -781,6 +799,20 @@ public abstract class BDDFactory {
      */
     public abstract void autoReorder(ReorderMethod method, int max);
 
+    /**
+     * <p>Makes automatic reordering happen whenever the number of nodes in
+     * use crosses a multiple of <code>nodes</code>, instead of when the node
+     * table fills up.  A threshold of 0 restores the default rule.</p>
+     * 
+     * @param nodes  number of nodes in use between two automatic reorderings
+     * @throws UnsupportedOperationException if <code>nodes</code> is not 0
+     *         and the factory only reorders when its node table fills up
+     */
+    public void setReorderThreshold(int nodes) {
+        if (nodes != 0)
+            throw new UnsupportedOperationException("The BDD package does not support reorder thresholds");
+    }
+
     /**
      * <p>Returns the current reorder method as defined by autoReorder.</p>
      * 
@@ -0,0 +1,1496 @@
+package theory.bdd;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>A BDD factory whose operations can run from several threads at once.
+ * Nodes are created without locking: a thread writes a new node to a slot
+ * of the node table it reserved, and then publishes it by CAS in an
+ * open-addressing unique table, so that threads building the same node
+ * agree on one index. Every thread has its own lossy operation cache.</p>
+ *
+ * <p>Garbage collection and resizing stop the world. Operations hold the
+ * read side of a lock, and a thread that finds the node table full leaves
+ * its operation, collects or grows the table under the write side and then
+ * restarts the operation, as JFactory does when it reorders. Like BuDDy,
+ * the nodes of the BDD objects are kept alive by reference counts, which
+ * {@link BDD#free()} releases.</p>
+ *
+ * <p>Variables cannot be reordered, so levels and variables coincide.
+ * Pairings, composition and the combined apply and quantify operations
+ * are not supported.</p>
+ */
+public class ConcurrentFactory extends BDDFactory {
+
+    /* Level of the two terminal nodes, below every variable */
+    static final int TERMINAL_LEVEL = Integer.MAX_VALUE;
+
+    /* Cache ids of the operations after the ones of BDDOp */
+    static final int OP_NOT = 10;
+    static final int OP_ITE = 11;
+    static final int OP_RESTRICT = 12;
+    static final int OP_EXIST = 13;
+    static final int OP_FORALL = 14;
+    static final int OP_SATONE = 15;
+
+    /* Operator results - entry = left<<1 | right  (left,right in {0,1}) */
+    static final int oprres[][] =
+        { { 0, 0, 0, 1 }, /* and                       ( & )         */ {
+            0, 1, 1, 0 }, /* xor                       ( ^ )         */ {
+            0, 1, 1, 1 }, /* or                        ( | )         */ {
+            1, 1, 1, 0 }, /* nand                                    */ {
+            1, 0, 0, 0 }, /* nor                                     */ {
+            1, 1, 0, 1 }, /* implication               ( >> )        */ {
+            1, 0, 0, 1 }, /* bi-implication                          */ {
+            0, 0, 1, 0 }, /* difference /greater than  ( - ) ( > )   */ {
+            0, 1, 0, 0 }, /* less than                 ( < )         */ {
+            1, 0, 1, 1 } /* inverse implication       ( << )        */
+    };
+
+    /* Thrown by makenode when no slot is left, the operation is restarted */
+    private static class TableFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TableFullException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final TableFullException TABLE_FULL = new TableFullException();
+
+    /* Direct-mapped cache of the results of one thread */
+    private static class OpCache {
+        final int[] op, a, b, c, res;
+        final int mask;
+        int epoch;
+
+        OpCache(int size, int epoch) {
+            int n = Integer.highestOneBit(Math.max(size, 16) - 1) << 1;
+            op = new int[n];
+            a = new int[n];
+            b = new int[n];
+            c = new int[n];
+            res = new int[n];
+            mask = n - 1;
+            this.epoch = epoch;
+            Arrays.fill(op, -1);
+        }
+
+        void clear(int epoch) {
+            Arrays.fill(op, -1);
+            this.epoch = epoch;
+        }
+
+        int slot(int o, int x, int y, int z) {
+            int h = o * 12582917 + x * 4256249 + y * 741457 + z;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        int lookup(int o, int x, int y, int z) {
+            int h = slot(o, x, y, z);
+            if (op[h] == o && a[h] == x && b[h] == y && c[h] == z)
+                return res[h];
+            return -1;
+        }
+
+        void store(int o, int x, int y, int z, int r) {
+            int h = slot(o, x, y, z);
+            op[h] = o;
+            a[h] = x;
+            b[h] = y;
+            c[h] = z;
+            res[h] = r;
+        }
+    }
+
+    /* An operation on the node table, run under the read lock */
+    private interface Operation {
+        int run(OpCache cache);
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /* The node table, only replaced under the write lock */
+    private int[] level;
+    private int[] low;
+    private int[] high;
+    private AtomicIntegerArray refcount;
+    /* Open-addressing table of the node indexes, 0 for an empty entry */
+    private AtomicIntegerArray unique;
+    /* Slots that can be given to new nodes, handed out by nextfree */
+    private int[] freenodes;
+    private AtomicInteger nextfree;
+
+    private volatile int varnum;
+    private volatile int cachesize;
+    private volatile int maxnodenum;
+    private volatile double minfreenodes = 0.20;
+    private volatile int maxnodeincrease = 50000;
+    private volatile double increasefactor = 1;
+    private volatile double cacheratio;
+
+    /* Incremented by each collection, the caches of the threads follow it */
+    private int epoch;
+    private int gbcollectnum;
+
+    private final ThreadLocal<OpCache> caches = new ThreadLocal<OpCache>() {
+        protected OpCache initialValue() {
+            return new OpCache(cachesize, epoch);
+        }
+    };
+
+    private ConcurrentFactory() {
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#init(int, int)
+     */
+    public static BDDFactory init(int nodenum, int cachesize) {
+        ConcurrentFactory f = new ConcurrentFactory();
+        f.initialize(nodenum, cachesize);
+        return f;
+    }
+
+    /**
+     * @return true: operations may run from several threads at once
+     */
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * Wrapper for the index of a node, which holds a reference on it
+     */
+    private class bdd extends BDD {
+        int _index;
+
+        static final int INVALID_BDD = -1;
+
+        /* The reference on index must already be taken */
+        bdd(int index) {
+            this._index = index;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#getFactory()
+         */
+        public BDDFactory getFactory() {
+            return ConcurrentFactory.this;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#isZero()
+         */
+        public boolean isZero() {
+            return _index == 0;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#isOne()
+         */
+        public boolean isOne() {
+            return _index == 1;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#var()
+         */
+        public int var() {
+            return level();
+        }
+
+        public int level() {
+            if (_index < 2)
+                throw new BDDException("Terminal node has no variable");
+            lock.readLock().lock();
+            try {
+                return level[_index];
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#high()
+         */
+        public BDD high() {
+            final int x = _index;
+            if (x < 2)
+                throw new BDDException("Terminal node has no children");
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return high[x];
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#low()
+         */
+        public BDD low() {
+            final int x = _index;
+            if (x < 2)
+                throw new BDDException("Terminal node has no children");
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return low[x];
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#id()
+         */
+        public BDD id() {
+            final int x = _index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return x;
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#not()
+         */
+        public BDD not() {
+            final int x = _index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return not_rec(cache, x);
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#ite(net.sf.javabdd.BDD, net.sf.javabdd.BDD)
+         */
+        public BDD ite(BDD thenBDD, BDD elseBDD) {
+            final int x = _index;
+            final int y = ((bdd) thenBDD)._index;
+            final int z = ((bdd) elseBDD)._index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return ite_rec(cache, x, y, z);
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#relprod(net.sf.javabdd.BDD, net.sf.javabdd.BDD)
+         */
+        public BDD relprod(BDD that, BDD var) {
+            throw unsupported("relprod");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#compose(net.sf.javabdd.BDD, int)
+         */
+        public BDD compose(BDD g, int var) {
+            throw unsupported("compose");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#veccompose(net.sf.javabdd.BDDPairing)
+         */
+        public BDD veccompose(BDDPairing pair) {
+            throw unsupported("veccompose");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#constrain(net.sf.javabdd.BDD)
+         */
+        public BDD constrain(BDD that) {
+            throw unsupported("constrain");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#exist(net.sf.javabdd.BDD)
+         */
+        public BDD exist(BDD var) {
+            return quant(var, OP_EXIST);
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#forAll(net.sf.javabdd.BDD)
+         */
+        public BDD forAll(BDD var) {
+            return quant(var, OP_FORALL);
+        }
+
+        private BDD quant(BDD var, final int op) {
+            final int x = _index;
+            final int y = ((bdd) var)._index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    int[] varset = new int[varnum];
+                    int last = cubeLevels(y, varset);
+                    return quant_rec(cache, op, x, y, varset, last);
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#unique(net.sf.javabdd.BDD)
+         */
+        public BDD unique(BDD var) {
+            throw unsupported("unique");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#restrict(net.sf.javabdd.BDD)
+         */
+        public BDD restrict(BDD var) {
+            final int x = _index;
+            final int y = ((bdd) var)._index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    int[] varset = new int[varnum];
+                    int last = cubeLevels(y, varset);
+                    return restrict_rec(cache, x, y, varset, last);
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#restrictWith(net.sf.javabdd.BDD)
+         */
+        public BDD restrictWith(BDD that) {
+            bdd res = (bdd) restrict(that);
+            delref(_index);
+            if (this != that)
+                that.free();
+            this._index = res._index;
+            return this;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#simplify(net.sf.javabdd.BDD)
+         */
+        public BDD simplify(BDD d) {
+            throw unsupported("simplify");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#support()
+         */
+        public BDD support() {
+            final int x = _index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    boolean[] used = new boolean[varnum];
+                    markLevels(x, used);
+                    int res = 1;
+                    for (int l = used.length - 1; l >= 0; l--)
+                        if (used[l])
+                            res = makenode(l, 0, res);
+                    return res;
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#apply(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp)
+         */
+        public BDD apply(BDD that, BDDOp opr) {
+            final int x = _index;
+            final int y = ((bdd) that)._index;
+            final int z = opr.id;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return apply_rec(cache, z, x, y);
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyWith(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp)
+         */
+        public BDD applyWith(BDD that, BDDOp opr) {
+            bdd res = (bdd) apply(that, opr);
+            delref(_index);
+            if (this != that)
+                that.free();
+            this._index = res._index;
+            return this;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyAll(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
+         */
+        public BDD applyAll(BDD that, BDDOp opr, BDD var) {
+            throw unsupported("applyAll");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyEx(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
+         */
+        public BDD applyEx(BDD that, BDDOp opr, BDD var) {
+            throw unsupported("applyEx");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#applyUni(net.sf.javabdd.BDD, net.sf.javabdd.BDDFactory.BDDOp, net.sf.javabdd.BDD)
+         */
+        public BDD applyUni(BDD that, BDDOp opr, BDD var) {
+            throw unsupported("applyUni");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#satOne()
+         */
+        public BDD satOne() {
+            final int x = _index;
+            return makeBDD(new Operation() {
+                public int run(OpCache cache) {
+                    return satone_rec(cache, x);
+                }
+            });
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#fullSatOne()
+         */
+        public BDD fullSatOne() {
+            throw unsupported("fullSatOne");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#satOne(net.sf.javabdd.BDD, boolean)
+         */
+        public BDD satOne(BDD var, boolean pol) {
+            throw unsupported("satOne");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#allsat()
+         */
+        @SuppressWarnings("rawtypes")
+        public List allsat() {
+            throw unsupported("allsat");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#replace(net.sf.javabdd.BDDPairing)
+         */
+        public BDD replace(BDDPairing pair) {
+            throw unsupported("replace");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#replaceWith(net.sf.javabdd.BDDPairing)
+         */
+        public BDD replaceWith(BDDPairing pair) {
+            throw unsupported("replaceWith");
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#nodeCount()
+         */
+        public int nodeCount() {
+            return ConcurrentFactory.this.nodeCount(java.util.Collections.singleton(this));
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#pathCount()
+         */
+        public double pathCount() {
+            lock.readLock().lock();
+            try {
+                return pathcount_rec(_index, new HashMap<Integer, Double>());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#satCount()
+         */
+        public double satCount() {
+            lock.readLock().lock();
+            try {
+                double size = Math.pow(2.0, countLevel(_index));
+                return size * satcount_rec(_index, new HashMap<Integer, Double>());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#varProfile()
+         */
+        public int[] varProfile() {
+            lock.readLock().lock();
+            try {
+                int[] profile = new int[varnum];
+                boolean[] visited = new boolean[level.length];
+                int[] stack = new int[64];
+                int sp = 0;
+                stack[sp++] = _index;
+                while (sp > 0) {
+                    int r = stack[--sp];
+                    if (r < 2 || visited[r])
+                        continue;
+                    visited[r] = true;
+                    profile[level[r]]++;
+                    if (sp + 2 > stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[sp++] = low[r];
+                    stack[sp++] = high[r];
+                }
+                return profile;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#equals(net.sf.javabdd.BDD)
+         */
+        public boolean equals(BDD that) {
+            return that instanceof bdd && ((bdd) that).getFactory() == ConcurrentFactory.this
+                && this._index == ((bdd) that)._index;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#hashCode()
+         */
+        public int hashCode() {
+            return _index;
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDD#free()
+         */
+        public void free() {
+            delref(_index);
+            _index = INVALID_BDD;
+        }
+    }
+
+    private static BDDException unsupported(String operation) {
+        return new BDDException(operation + " is not supported by ConcurrentFactory");
+    }
+
+    // ------------------------------------------------------
+    // Running operations
+    // ------------------------------------------------------
+
+    /* Runs op under the read lock and references its result */
+    private int run(Operation op) {
+        for (;;) {
+            int generation;
+            lock.readLock().lock();
+            try {
+                if (level == null)
+                    throw new BDDException("Factory is not initialized");
+                OpCache cache = caches.get();
+                if (cache.epoch != epoch)
+                    cache.clear(epoch);
+                int res = op.run(cache);
+                if (res >= 2)
+                    refcount.incrementAndGet(res);
+                return res;
+            } catch (TableFullException x) {
+                generation = gbcollectnum;
+            } finally {
+                lock.readLock().unlock();
+            }
+            collect(generation);
+        }
+    }
+
+    private BDD makeBDD(Operation op) {
+        return new bdd(run(op));
+    }
+
+    private void delref(int r) {
+        if (r < 2)
+            return;
+        lock.readLock().lock();
+        try {
+            refcount.decrementAndGet(r);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Collects and grows the node table, unless another thread did it
+       since generation was read */
+    private void collect(int generation) {
+        lock.writeLock().lock();
+        try {
+            if (gbcollectnum != generation)
+                return;
+            int free = gbc();
+            if (free < minfreenodes * level.length)
+                noderesize(level.length);
+            epoch++;
+            gbcollectnum++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Marks the nodes reachable from referenced ones, frees the others and
+       rebuilds the unique table; returns the number of free nodes */
+    private int gbc() {
+        int n = level.length;
+        boolean[] marked = new boolean[n];
+        marked[0] = marked[1] = true;
+        int[] stack = new int[64];
+        for (int i = 2; i < n; i++) {
+            if (marked[i] || refcount.get(i) <= 0)
+                continue;
+            int sp = 0;
+            stack[sp++] = i;
+            while (sp > 0) {
+                int r = stack[--sp];
+                if (marked[r])
+                    continue;
+                marked[r] = true;
+                if (sp + 2 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[sp++] = low[r];
+                stack[sp++] = high[r];
+            }
+        }
+        return rebuild(marked);
+    }
+
+    private int rebuild(boolean[] marked) {
+        int n = level.length;
+        int free = 0;
+        for (int i = 2; i < n; i++)
+            if (!marked[i])
+                free++;
+        freenodes = new int[free];
+        free = 0;
+        unique = new AtomicIntegerArray(uniqueSize(n));
+        int mask = unique.length() - 1;
+        for (int i = 2; i < n; i++) {
+            if (!marked[i]) {
+                freenodes[free++] = i;
+                continue;
+            }
+            int h = NODEHASH(level[i], low[i], high[i]) & mask;
+            while (unique.get(h) != 0)
+                h = (h + 1) & mask;
+            unique.set(h, i);
+        }
+        nextfree = new AtomicInteger(0);
+        return free;
+    }
+
+    private void noderesize(int oldsize) {
+        int increase = (int) Math.min((long) (oldsize * increasefactor),
+            maxnodeincrease > 0 ? maxnodeincrease : Integer.MAX_VALUE);
+        int newsize = oldsize + Math.max(increase, 1);
+        if (maxnodenum > 0)
+            newsize = Math.min(newsize, maxnodenum);
+        if (newsize <= oldsize) {
+            if (freenodes.length == 0)
+                throw new BDDException("Node table is full");
+            return;
+        }
+
+        level = Arrays.copyOf(level, newsize);
+        low = Arrays.copyOf(low, newsize);
+        high = Arrays.copyOf(high, newsize);
+        AtomicIntegerArray newrefcount = new AtomicIntegerArray(newsize);
+        for (int i = 0; i < oldsize; i++)
+            newrefcount.set(i, refcount.get(i));
+        refcount = newrefcount;
+
+        boolean[] marked = new boolean[newsize];
+        marked[0] = marked[1] = true;
+        int mask = unique.length() - 1;
+        for (int h = 0; h <= mask; h++)
+            if (unique.get(h) != 0)
+                marked[unique.get(h)] = true;
+        rebuild(marked);
+    }
+
+    private static int uniqueSize(int nodes) {
+        return Integer.highestOneBit(Math.max(nodes, 2) - 1) << 2;
+    }
+
+    private static int NODEHASH(int lvl, int l, int h) {
+        int x = lvl * 12582917 + l * 4256249 + h * 741457;
+        return x ^ (x >>> 16);
+    }
+
+    // ------------------------------------------------------
+    // Node table, called under the read lock
+    // ------------------------------------------------------
+
+    int makenode(int lvl, int l, int h) {
+        if (l == h)
+            return l;
+
+        AtomicIntegerArray unique = this.unique;
+        int mask = unique.length() - 1;
+        int fresh = -1;
+        for (int i = NODEHASH(lvl, l, h) & mask;; i = (i + 1) & mask) {
+            int r = unique.get(i);
+            if (r == 0) {
+                if (fresh < 0) {
+                    int k = nextfree.getAndIncrement();
+                    if (k >= freenodes.length)
+                        throw TABLE_FULL;
+                    fresh = freenodes[k];
+                    level[fresh] = lvl;
+                    low[fresh] = l;
+                    high[fresh] = h;
+                }
+                // publishes the fields of fresh along with its index
+                if (unique.compareAndSet(i, 0, fresh))
+                    return fresh;
+                r = unique.get(i);
+            }
+            // fresh, if any, stays unused until the next collection
+            if (level[r] == lvl && low[r] == l && high[r] == h)
+                return r;
+        }
+    }
+
+    private int LEVEL(int r) {
+        return r < 2 ? TERMINAL_LEVEL : level[r];
+    }
+
+    /* The level of r counting the terminals below the last variable */
+    private int countLevel(int r) {
+        return r < 2 ? varnum : level[r];
+    }
+
+    int not_rec(OpCache cache, int r) {
+        if (r < 2)
+            return 1 - r;
+        int res = cache.lookup(OP_NOT, r, 0, 0);
+        if (res >= 0)
+            return res;
+        int l = not_rec(cache, low[r]);
+        int h = not_rec(cache, high[r]);
+        res = makenode(level[r], l, h);
+        cache.store(OP_NOT, r, 0, 0, res);
+        return res;
+    }
+
+    int apply_rec(OpCache cache, int op, int l, int r) {
+        switch (op) {
+            case 0: /* and */
+                if (l == r || r == 1)
+                    return l;
+                if (l == 0 || r == 0)
+                    return 0;
+                if (l == 1)
+                    return r;
+                break;
+            case 2: /* or */
+                if (l == r || r == 0)
+                    return l;
+                if (l == 1 || r == 1)
+                    return 1;
+                if (l == 0)
+                    return r;
+                break;
+            case 1: /* xor */
+                if (l == r)
+                    return 0;
+                if (l == 0)
+                    return r;
+                if (r == 0)
+                    return l;
+                break;
+            default:
+                break;
+        }
+        if (l < 2 && r < 2)
+            return oprres[op][l << 1 | r];
+
+        int res = cache.lookup(op, l, r, 0);
+        if (res >= 0)
+            return res;
+        int ll = LEVEL(l);
+        int rl = LEVEL(r);
+        int lvl = Math.min(ll, rl);
+        int lo = apply_rec(cache, op, ll == lvl ? low[l] : l, rl == lvl ? low[r] : r);
+        int hi = apply_rec(cache, op, ll == lvl ? high[l] : l, rl == lvl ? high[r] : r);
+        res = makenode(lvl, lo, hi);
+        cache.store(op, l, r, 0, res);
+        return res;
+    }
+
+    int ite_rec(OpCache cache, int f, int g, int h) {
+        if (f == 1)
+            return g;
+        if (f == 0)
+            return h;
+        if (g == h)
+            return g;
+        if (g == 1 && h == 0)
+            return f;
+        if (g == 0 && h == 1)
+            return not_rec(cache, f);
+
+        int res = cache.lookup(OP_ITE, f, g, h);
+        if (res >= 0)
+            return res;
+        int fl = LEVEL(f);
+        int gl = LEVEL(g);
+        int hl = LEVEL(h);
+        int lvl = Math.min(fl, Math.min(gl, hl));
+        int lo = ite_rec(cache, fl == lvl ? low[f] : f, gl == lvl ? low[g] : g, hl == lvl ? low[h] : h);
+        int hi = ite_rec(cache, fl == lvl ? high[f] : f, gl == lvl ? high[g] : g, hl == lvl ? high[h] : h);
+        res = makenode(lvl, lo, hi);
+        cache.store(OP_ITE, f, g, h, res);
+        return res;
+    }
+
+    /* Records the literals of cube in varset: 1 positive, -1 negative;
+       returns the deepest level */
+    private int cubeLevels(int cube, int[] varset) {
+        int last = -1;
+        for (int r = cube; r >= 2;) {
+            int lvl = level[r];
+            if (low[r] == 0) {
+                varset[lvl] = 1;
+                r = high[r];
+            } else if (high[r] == 0) {
+                varset[lvl] = -1;
+                r = low[r];
+            } else {
+                throw new BDDException("Not a conjunction of literals");
+            }
+            last = lvl;
+        }
+        return last;
+    }
+
+    int restrict_rec(OpCache cache, int r, int cube, int[] varset, int last) {
+        if (r < 2 || level[r] > last)
+            return r;
+        int res = cache.lookup(OP_RESTRICT, r, cube, 0);
+        if (res >= 0)
+            return res;
+        int lvl = level[r];
+        if (varset[lvl] > 0) {
+            res = restrict_rec(cache, high[r], cube, varset, last);
+        } else if (varset[lvl] < 0) {
+            res = restrict_rec(cache, low[r], cube, varset, last);
+        } else {
+            int lo = restrict_rec(cache, low[r], cube, varset, last);
+            int hi = restrict_rec(cache, high[r], cube, varset, last);
+            res = makenode(lvl, lo, hi);
+        }
+        cache.store(OP_RESTRICT, r, cube, 0, res);
+        return res;
+    }
+
+    int quant_rec(OpCache cache, int op, int r, int cube, int[] varset, int last) {
+        if (r < 2 || level[r] > last)
+            return r;
+        int res = cache.lookup(op, r, cube, 0);
+        if (res >= 0)
+            return res;
+        int lvl = level[r];
+        int lo = quant_rec(cache, op, low[r], cube, varset, last);
+        int hi = quant_rec(cache, op, high[r], cube, varset, last);
+        if (varset[lvl] != 0)
+            res = apply_rec(cache, op == OP_EXIST ? 2 : 0, lo, hi);
+        else
+            res = makenode(lvl, lo, hi);
+        cache.store(op, r, cube, 0, res);
+        return res;
+    }
+
+    int satone_rec(OpCache cache, int r) {
+        if (r < 2)
+            return r;
+        int res = cache.lookup(OP_SATONE, r, 0, 0);
+        if (res >= 0)
+            return res;
+        if (low[r] == 0)
+            res = makenode(level[r], 0, satone_rec(cache, high[r]));
+        else
+            res = makenode(level[r], satone_rec(cache, low[r]), 0);
+        cache.store(OP_SATONE, r, 0, 0, res);
+        return res;
+    }
+
+    private void markLevels(int root, boolean[] used) {
+        boolean[] visited = new boolean[level.length];
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = root;
+        while (sp > 0) {
+            int r = stack[--sp];
+            if (r < 2 || visited[r])
+                continue;
+            visited[r] = true;
+            used[level[r]] = true;
+            if (sp + 2 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            stack[sp++] = low[r];
+            stack[sp++] = high[r];
+        }
+    }
+
+    double satcount_rec(int r, Map<Integer, Double> memo) {
+        if (r < 2)
+            return r;
+        Double cached = memo.get(r);
+        if (cached != null)
+            return cached;
+        double size = 0;
+        int l = low[r];
+        int h = high[r];
+        size += Math.pow(2.0, countLevel(l) - level[r] - 1) * satcount_rec(l, memo);
+        size += Math.pow(2.0, countLevel(h) - level[r] - 1) * satcount_rec(h, memo);
+        memo.put(r, size);
+        return size;
+    }
+
+    double pathcount_rec(int r, Map<Integer, Double> memo) {
+        if (r < 2)
+            return r;
+        Double cached = memo.get(r);
+        if (cached != null)
+            return cached;
+        double size = pathcount_rec(low[r], memo) + pathcount_rec(high[r], memo);
+        memo.put(r, size);
+        return size;
+    }
+
+    // ------------------------------------------------------
+    // BDDFactory
+    // ------------------------------------------------------
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#zero()
+     */
+    public BDD zero() {
+        return new bdd(0);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#one()
+     */
+    public BDD one() {
+        return new bdd(1);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#initialize(int, int)
+     */
+    protected void initialize(int nodenum, int cachesize) {
+        lock.writeLock().lock();
+        try {
+            int n = Math.max(nodenum, 16);
+            level = new int[n];
+            low = new int[n];
+            high = new int[n];
+            refcount = new AtomicIntegerArray(n);
+            level[0] = level[1] = TERMINAL_LEVEL;
+            low[1] = high[1] = 1;
+            this.cachesize = cachesize;
+            boolean[] marked = new boolean[n];
+            marked[0] = marked[1] = true;
+            rebuild(marked);
+            epoch++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#isInitialized()
+     */
+    public boolean isInitialized() {
+        lock.readLock().lock();
+        try {
+            return level != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#done()
+     */
+    public void done() {
+        lock.writeLock().lock();
+        try {
+            level = low = high = null;
+            refcount = unique = null;
+            freenodes = null;
+            epoch++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setError(int)
+     */
+    public void setError(int code) {
+        throw unsupported("setError");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#clearError()
+     */
+    public void clearError() {
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setMaxNodeNum(int)
+     */
+    public int setMaxNodeNum(int size) {
+        int old = maxnodenum;
+        maxnodenum = size;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setMinFreeNodes(double)
+     */
+    public double setMinFreeNodes(double x) {
+        double old = minfreenodes;
+        minfreenodes = x;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setMaxIncrease(int)
+     */
+    public int setMaxIncrease(int x) {
+        int old = maxnodeincrease;
+        maxnodeincrease = x;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setIncreaseFactor(double)
+     */
+    public double setIncreaseFactor(double x) {
+        double old = increasefactor;
+        increasefactor = x;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setCacheRatio(double)
+     */
+    public double setCacheRatio(double x) {
+        double old = cacheratio;
+        cacheratio = x;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setNodeTableSize(int)
+     */
+    public int setNodeTableSize(int n) {
+        lock.writeLock().lock();
+        try {
+            int old = level.length;
+            if (n > old) {
+                int inc = maxnodeincrease;
+                maxnodeincrease = 0;
+                double factor = increasefactor;
+                increasefactor = (double) (n - old) / old;
+                try {
+                    noderesize(old);
+                } finally {
+                    maxnodeincrease = inc;
+                    increasefactor = factor;
+                }
+                epoch++;
+            }
+            return old;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setCacheSize(int)
+     */
+    public int setCacheSize(int n) {
+        int old = cachesize;
+        cachesize = n;
+        return old;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#varNum()
+     */
+    public int varNum() {
+        return varnum;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setVarNum(int)
+     */
+    public int setVarNum(int num) {
+        lock.writeLock().lock();
+        try {
+            int old = varnum;
+            if (num < old)
+                throw new BDDException("Trying to decrease the number of variables");
+            varnum = num;
+            return old;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#ithVar(int)
+     */
+    public BDD ithVar(final int var) {
+        if (var < 0 || var >= varnum)
+            throw new BDDException("Unknown variable " + var);
+        return makeBDD(new Operation() {
+            public int run(OpCache cache) {
+                return makenode(var, 0, 1);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nithVar(int)
+     */
+    public BDD nithVar(final int var) {
+        if (var < 0 || var >= varnum)
+            throw new BDDException("Unknown variable " + var);
+        return makeBDD(new Operation() {
+            public int run(OpCache cache) {
+                return makenode(var, 1, 0);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#printAll()
+     */
+    public void printAll() {
+        lock.readLock().lock();
+        try {
+            for (int i = 2; i < level.length; i++)
+                if (refcount.get(i) > 0)
+                    System.out.println("[" + i + "] " + level[i] + ": " + low[i] + " " + high[i]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#printTable(net.sf.javabdd.BDD)
+     */
+    public void printTable(BDD b) {
+        lock.readLock().lock();
+        try {
+            boolean[] visited = new boolean[level.length];
+            int[] stack = new int[64];
+            int sp = 0;
+            stack[sp++] = ((bdd) b)._index;
+            while (sp > 0) {
+                int r = stack[--sp];
+                if (r < 2 || visited[r])
+                    continue;
+                visited[r] = true;
+                System.out.println("[" + r + "] " + level[r] + ": " + low[r] + " " + high[r]);
+                if (sp + 2 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[sp++] = low[r];
+                stack[sp++] = high[r];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#level2Var(int)
+     */
+    public int level2Var(int level) {
+        return level;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#var2Level(int)
+     */
+    public int var2Level(int var) {
+        return var;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#reorder(net.sf.javabdd.BDDFactory.ReorderMethod)
+     */
+    public void reorder(ReorderMethod m) {
+        throw unsupported("reorder");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#autoReorder(net.sf.javabdd.BDDFactory.ReorderMethod)
+     */
+    public void autoReorder(ReorderMethod method) {
+        if (method != REORDER_NONE)
+            throw unsupported("autoReorder");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#autoReorder(net.sf.javabdd.BDDFactory.ReorderMethod, int)
+     */
+    public void autoReorder(ReorderMethod method, int max) {
+        autoReorder(method);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#getReorderMethod()
+     */
+    public ReorderMethod getReorderMethod() {
+        return REORDER_NONE;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#getReorderTimes()
+     */
+    public int getReorderTimes() {
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#disableReorder()
+     */
+    public void disableReorder() {
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#enableReorder()
+     */
+    public void enableReorder() {
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#reorderVerbose(int)
+     */
+    public int reorderVerbose(int v) {
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setVarOrder(int[])
+     */
+    public void setVarOrder(int[] neworder) {
+        for (int i = 0; i < neworder.length; i++)
+            if (neworder[i] != i)
+                throw unsupported("setVarOrder");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#makePair()
+     */
+    public BDDPairing makePair() {
+        throw unsupported("makePair");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#swapVar(int, int)
+     */
+    public void swapVar(int v1, int v2) {
+        throw unsupported("swapVar");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#duplicateVar(int)
+     */
+    public int duplicateVar(int var) {
+        throw unsupported("duplicateVar");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#addVarBlock(net.sf.javabdd.BDD, boolean)
+     */
+    public void addVarBlock(BDD var, boolean fixed) {
+        throw unsupported("addVarBlock");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#addVarBlock(int, int, boolean)
+     */
+    public void addVarBlock(int first, int last, boolean fixed) {
+        throw unsupported("addVarBlock");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#varBlockAll()
+     */
+    public void varBlockAll() {
+        throw unsupported("varBlockAll");
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#clearVarBlocks()
+     */
+    public void clearVarBlocks() {
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#printOrder()
+     */
+    public void printOrder() {
+        for (int i = 0; i < varnum; i++)
+            System.out.print(i + " ");
+        System.out.println();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#getVersion()
+     */
+    public String getVersion() {
+        return "ConcurrentFactory 1.0";
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#nodeCount(java.util.Collection)
+     */
+    @SuppressWarnings("rawtypes")
+    public int nodeCount(Collection r) {
+        lock.readLock().lock();
+        try {
+            boolean[] visited = new boolean[level.length];
+            int[] stack = new int[64];
+            int count = 0;
+            for (Iterator<?> i = r.iterator(); i.hasNext();) {
+                int sp = 0;
+                stack[sp++] = ((bdd) i.next())._index;
+                while (sp > 0) {
+                    int x = stack[--sp];
+                    if (x < 2 || visited[x])
+                        continue;
+                    visited[x] = true;
+                    count++;
+                    if (sp + 2 > stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[sp++] = low[x];
+                    stack[sp++] = high[x];
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#getNodeTableSize()
+     */
+    public int getNodeTableSize() {
+        lock.readLock().lock();
+        try {
+            return level.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#getNodeNum()
+     */
+    public int getNodeNum() {
+        lock.readLock().lock();
+        try {
+            int left = freenodes.length - Math.min(nextfree.get(), freenodes.length);
+            return level.length - 2 - left;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#getCacheSize()
+     */
+    public int getCacheSize() {
+        return cachesize;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#reorderGain()
+     */
+    public int reorderGain() {
+        return 0;
+    }
+
+    /**
+     * @return the number of garbage collections so far
+     */
+    public int getGbcCount() {
+        lock.readLock().lock();
+        try {
+            return gbcollectnum;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#printStat()
+     */
+    public void printStat() {
+        System.out.println("Node table size: " + getNodeTableSize());
+        System.out.println("Nodes in use:    " + getNodeNum());
+        System.out.println("Collections:     " + getGbcCount());
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#createDomain(int, BigInteger)
+     */
+    protected BDDDomain createDomain(int a, BigInteger b) {
+        return new bddDomain(a, b);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#createBitVector(int)
+     */
+    protected BDDBitVector createBitVector(int a) {
+        return new bddBitVector(a);
+    }
+
+    private class bddDomain extends BDDDomain {
+
+        private bddDomain(int a, BigInteger b) {
+            super(a, b);
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDBitVector#getFactory()
+         */
+        public BDDFactory getFactory() { return ConcurrentFactory.this; }
+
+    }
+
+    private class bddBitVector extends BDDBitVector {
+
+        private bddBitVector(int a) {
+            super(a);
+        }
+
+        /* (non-Javadoc)
+         * @see net.sf.javabdd.BDDBitVector#getFactory()
+         */
+        public BDDFactory getFactory() { return ConcurrentFactory.this; }
+
+    }
+}
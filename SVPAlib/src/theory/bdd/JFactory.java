@@ -8,6 +8,9 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
@@ -38,7 +41,13 @@ public class JFactory extends BDDFactory {
         return "JFactory "+REVISION.substring(11, REVISION.length()-2);
     }
     
-    private JFactory() { }
+    private JFactory() {
+        this(null);
+    }
+
+    private JFactory(OffHeapNodes offheap) {
+        bddoffheap = offheap;
+    }
     
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#init(int, int)
@@ -49,6 +58,44 @@ public class JFactory extends BDDFactory {
         return f;
     }
 
+    /**
+     * <p>Initializes a JFactory that keeps its node table (including the
+     * unique table chains) in off-heap memory.  The table grows by adding
+     * chunks, so resizing never copies nodes and large tables do not
+     * weigh on the garbage collector.  The operation caches are bounded
+     * by the cache ratio and stay on the heap.</p>
+     * 
+     * @param nodenum initial node table size
+     * @param cachesize operation cache size
+     * @return BDD factory object
+     */
+    public static BDDFactory initOffHeap(int nodenum, int cachesize) {
+        JFactory f = new JFactory(new OffHeapNodes());
+        f.initialize(nodenum, cachesize);
+        return f;
+    }
+
+    /**
+     * <p>Initializes a JFactory that memoizes negation by linking every node
+     * to its complement once the complement has been computed.  The first
+     * negation of a BDD still walks it and builds the complement nodes, in
+     * time linear in its size; negating a node whose complement is still
+     * alive is then a lookup, and so is the double negation of any node.
+     * Edges carry no complement tag, so every function keeps a single node.
+     * The links survive garbage collections and cache flushes, unlike the
+     * entries of the operation cache.</p>
+     * 
+     * @param nodenum initial node table size
+     * @param cachesize operation cache size
+     * @return BDD factory object
+     */
+    public static BDDFactory initComplementLinks(int nodenum, int cachesize) {
+        JFactory f = new JFactory();
+        f.bddcomplement = new int[0];
+        f.initialize(nodenum, cachesize);
+        return f;
+    }
+
     static final boolean USE_FINALIZER = false;
     public static boolean FLUSH_CACHE_ON_GC = true;
     
@@ -504,96 +551,109 @@ public class JFactory extends BDDFactory {
     static final int offset__next = 4;
     static final int __node_size = 5;
     
+    private final int NODE(long i) {
+        if (bddoffheap == null)
+            return bddnodes[(int) i];
+        return bddoffheap.get(i);
+    }
+
+    private final void SETNODE(long i, int v) {
+        if (bddoffheap == null)
+            bddnodes[(int) i] = v;
+        else
+            bddoffheap.set(i, v);
+    }
+
     private final boolean HASREF(int node) {
-        boolean r = (bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK) != 0;
+        boolean r = (NODE((long) node*__node_size + offset__refcou_and_level) & REF_MASK) != 0;
         return r;
     }
 
     private final void SETMAXREF(int node) {
-        bddnodes[node*__node_size + offset__refcou_and_level] |= REF_MASK;
+        SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) | REF_MASK);
     }
 
     private final void CLEARREF(int node) {
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~REF_MASK;
+        SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) & ~REF_MASK);
     }
 
     private final void INCREF(int node) {
-        if ((bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK) != REF_MASK)
-            bddnodes[node*__node_size + offset__refcou_and_level] += REF_INC;
+        if ((NODE((long) node*__node_size + offset__refcou_and_level) & REF_MASK) != REF_MASK)
+            SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) + REF_INC);
     }
 
     private final void DECREF(int node) {
-        int rc = bddnodes[node*__node_size + offset__refcou_and_level] & REF_MASK;
+        int rc = NODE((long) node*__node_size + offset__refcou_and_level) & REF_MASK;
         if (rc != REF_MASK && rc != 0)
-            bddnodes[node*__node_size + offset__refcou_and_level] -= REF_INC;
+            SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) - REF_INC);
     }
 
     private final int GETREF(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] >>> 22;
+        return NODE((long) node*__node_size + offset__refcou_and_level) >>> 22;
     }
 
     private final int LEVEL(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] & LEV_MASK;
+        return NODE((long) node*__node_size + offset__refcou_and_level) & LEV_MASK;
     }
 
     private final int LEVELANDMARK(int node) {
-        return bddnodes[node*__node_size + offset__refcou_and_level] & (LEV_MASK | MARK_MASK);
+        return NODE((long) node*__node_size + offset__refcou_and_level) & (LEV_MASK | MARK_MASK);
     }
 
     private final void SETLEVEL(int node, int val) {
         if (VERIFY_ASSERTIONS) _assert(val == (val & LEV_MASK));
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~LEV_MASK;
-        bddnodes[node*__node_size + offset__refcou_and_level] |= val;
+        SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) & ~LEV_MASK);
+        SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) | val);
     }
 
     private final void SETLEVELANDMARK(int node, int val) {
         if (VERIFY_ASSERTIONS) _assert(val == (val & (LEV_MASK | MARK_MASK)));
-        bddnodes[node*__node_size + offset__refcou_and_level] &= ~(LEV_MASK | MARK_MASK);
-        bddnodes[node*__node_size + offset__refcou_and_level] |= val;
+        SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) & ~(LEV_MASK | MARK_MASK));
+        SETNODE((long) node*__node_size + offset__refcou_and_level, NODE((long) node*__node_size + offset__refcou_and_level) | val);
     }
 
     private final void SETMARK(int n) {
-        bddnodes[n*__node_size + offset__refcou_and_level] |= MARK_MASK;
+        SETNODE((long) n*__node_size + offset__refcou_and_level, NODE((long) n*__node_size + offset__refcou_and_level) | MARK_MASK);
     }
     
     private final void UNMARK(int n) {
-        bddnodes[n*__node_size + offset__refcou_and_level] &= ~MARK_MASK;
+        SETNODE((long) n*__node_size + offset__refcou_and_level, NODE((long) n*__node_size + offset__refcou_and_level) & ~MARK_MASK);
     }
     
     private final boolean MARKED(int n) {
-        return (bddnodes[n*__node_size + offset__refcou_and_level] & MARK_MASK) != 0;
+        return (NODE((long) n*__node_size + offset__refcou_and_level) & MARK_MASK) != 0;
     }
 
     private final int LOW(int r) {
-        return bddnodes[r*__node_size + offset__low];
+        return NODE((long) r*__node_size + offset__low);
     }
 
     private final void SETLOW(int r, int v) {
-        bddnodes[r*__node_size + offset__low] = v;
+        SETNODE((long) r*__node_size + offset__low, v);
     }
     
     private final int HIGH(int r) {
-        return bddnodes[r*__node_size + offset__high];
+        return NODE((long) r*__node_size + offset__high);
     }
 
     private final void SETHIGH(int r, int v) {
-        bddnodes[r*__node_size + offset__high] = v;
+        SETNODE((long) r*__node_size + offset__high, v);
     }
     
     private final int HASH(int r) {
-        return bddnodes[r*__node_size + offset__hash];
+        return NODE((long) r*__node_size + offset__hash);
     }
     
     private final void SETHASH(int r, int v) {
-        bddnodes[r*__node_size + offset__hash] = v;
+        SETNODE((long) r*__node_size + offset__hash, v);
     }
     
     private final int NEXT(int r) {
-        return bddnodes[r*__node_size + offset__next];
+        return NODE((long) r*__node_size + offset__next);
     }
     
     private final void SETNEXT(int r, int v) {
-        bddnodes[r*__node_size + offset__next] = v;
+        SETNODE((long) r*__node_size + offset__next, v);
     }
     
     private final int VARr(int n) {
@@ -609,6 +669,68 @@ public class JFactory extends BDDFactory {
             throw new InternalError();
     }
 
+    private static int heapNodeTableSize(long size) {
+        if (size > Integer.MAX_VALUE - 8)
+            throw new BDDException("Node table too large for the heap, use the off-heap factory");
+        return (int) size;
+    }
+
+    /**
+     * Node storage in chunks of direct memory.  Growing the table allocates
+     * new chunks and leaves the existing ones in place.  Offsets are longs
+     * so that a table may hold more than Integer.MAX_VALUE ints.
+     */
+    private static final class OffHeapNodes {
+        static final int CHUNK_BITS = 20;
+        static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+        static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        IntBuffer[] chunks = new IntBuffer[0];
+
+        int get(long i) {
+            return chunks[(int) (i >>> CHUNK_BITS)].get((int) i & CHUNK_MASK);
+        }
+
+        void set(long i, int v) {
+            chunks[(int) (i >>> CHUNK_BITS)].put((int) i & CHUNK_MASK, v);
+        }
+
+        /* Replaces the contents by size zeroed ints */
+        void allocate(long size) {
+            chunks = new IntBuffer[0];
+            grow(size);
+        }
+
+        /* Makes room for at least size ints, keeping the contents; new
+           memory is zeroed */
+        void grow(long size) {
+            int needed = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+            if (needed <= chunks.length)
+                return;
+            IntBuffer[] newchunks = Arrays.copyOf(chunks, needed);
+            for (int c = chunks.length; c < needed; c++)
+                newchunks[c] = ByteBuffer.allocateDirect(CHUNK_SIZE * 4)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            chunks = newchunks;
+        }
+
+        void release() {
+            chunks = new IntBuffer[0];
+        }
+
+        OffHeapNodes copy() {
+            OffHeapNodes that = new OffHeapNodes();
+            that.grow((long) chunks.length << CHUNK_BITS);
+            for (int c = 0; c < chunks.length; c++) {
+                IntBuffer src = chunks[c].duplicate();
+                src.clear();
+                that.chunks[c].put(src);
+                that.chunks[c].clear();
+            }
+            return that;
+        }
+    }
+
     private abstract static class BddCacheData {
         int a, b, c;
         abstract BddCacheData copy();
@@ -687,7 +809,9 @@ public class JFactory extends BDDFactory {
     int bddnodesize; /* Number of allocated nodes */
     int bddmaxnodesize; /* Maximum allowed number of nodes */
     int bddmaxnodeincrease; /* Max. # of nodes used to inc. table */
-    int[] bddnodes; /* All of the bdd nodes */
+    int[] bddnodes; /* All of the bdd nodes, unless they are off-heap */
+    final OffHeapNodes bddoffheap; /* Off-heap node table, or null */
+    int[] bddcomplement; /* Node -> complement node, if complement links are on */
     int bddfreepos; /* First free node */
     int bddfreenum; /* Number of free nodes */
     int bddproduced; /* Number of new nodes ever produced */
@@ -707,6 +831,7 @@ public class JFactory extends BDDFactory {
     int cachesize; /* Size of the operator caches */
     long gbcclock; /* Clock ticks used in GBC */
     int usednodes_nextreorder; /* When to do reorder next time */
+    int reorderthreshold; /* Nodes in use between reorders, 0 to wait for a full table */
 
     static final int BDD_MEMORY = (-1); /* Out of memory */
     static final int BDD_VAR = (-2); /* Unknown variable */
@@ -954,6 +1079,12 @@ public class JFactory extends BDDFactory {
         firstReorder = 1;
         CHECKa(r, bddfalse);
 
+        if (bddcomplement != null) {
+            res = complement_lookup(r);
+            if (res != INVALID_BDD)
+                return res;
+        }
+
         if (applycache == null) applycache = BddCacheI_init(cachesize);
         again : for (;;) {
             try {
@@ -975,9 +1106,25 @@ public class JFactory extends BDDFactory {
         }
 
         checkresize();
+        if (bddcomplement != null && r >= 2 && res >= 2) {
+            bddcomplement[r] = res;
+            bddcomplement[res] = r;
+        }
         return res;
     }
 
+    /* A link is valid only if it is mutual: links are reset when a node is
+     * (re)allocated, so a node that was freed and reused cannot be mistaken
+     * for the complement of its old partner. */
+    int complement_lookup(int r) {
+        if (r < 2)
+            return r == bddfalse ? bddtrue : bddfalse;
+        int c = bddcomplement[r];
+        if (c >= 2 && bddcomplement[c] == r && LOW(c) != INVALID_BDD)
+            return c;
+        return INVALID_BDD;
+    }
+
     int not_rec(int r) throws TimeoutException {
     	 if(Timers.fullTO())
          	throw new TimeoutException("timeout");
@@ -3117,6 +3264,14 @@ public class JFactory extends BDDFactory {
         if (CACHESTATS)
             cachestats.uniqueMiss++;
 
+        /* Reorder once the nodes in use cross the threshold */
+        if (reorderthreshold > 0 &&
+            (bddnodesize-bddfreenum) >= usednodes_nextreorder &&
+            bdd_reorder_ready())
+        {
+            throw new ReorderException();
+        }
+
         /* Any free nodes to use ? */
         if (bddfreepos == 0) {
             if (bdderrorcond != 0)
@@ -3149,6 +3304,8 @@ public class JFactory extends BDDFactory {
         bddfreepos = NEXT(bddfreepos);
         bddfreenum--;
         bddproduced++;
+        if (bddcomplement != null)
+            bddcomplement[res] = INVALID_BDD;
 
         SETLEVELANDMARK(res, level);
         SETLOW(res, low);
@@ -3206,11 +3363,15 @@ public class JFactory extends BDDFactory {
         
         resize_handler(oldsize, newsize);
         
-        int[] newnodes;
         int n;
-        newnodes = new int[newsize*__node_size];
-        System.arraycopy(bddnodes, 0, newnodes, 0, bddnodes.length);
-        bddnodes = newnodes;
+        if (bddoffheap == null)
+            bddnodes = Arrays.copyOf(bddnodes, heapNodeTableSize((long) newsize*__node_size));
+        else
+            bddoffheap.grow((long) newsize*__node_size);
+        if (bddcomplement != null) {
+            bddcomplement = Arrays.copyOf(bddcomplement, newsize);
+            Arrays.fill(bddcomplement, oldsize, newsize, INVALID_BDD);
+        }
         bddnodesize = newsize;
 
         if (doRehash)
@@ -3247,7 +3408,14 @@ public class JFactory extends BDDFactory {
 
         bddnodesize = bdd_prime_gte(initnodesize);
 
-        bddnodes = new int[bddnodesize*__node_size];
+        if (bddoffheap == null)
+            bddnodes = new int[heapNodeTableSize((long) bddnodesize*__node_size)];
+        else
+            bddoffheap.allocate((long) bddnodesize*__node_size);
+        if (bddcomplement != null) {
+            bddcomplement = new int[bddnodesize];
+            Arrays.fill(bddcomplement, INVALID_BDD);
+        }
 
         bddresized = false;
 
@@ -3777,6 +3945,13 @@ public class JFactory extends BDDFactory {
     void bdd_checkreorder() {
         bdd_reorder_auto();
 
+        /* With a threshold, wait until the next multiple of it is crossed */
+        if (reorderthreshold > 0) {
+            long next = ((long) (bddnodesize - bddfreenum) / reorderthreshold + 1) * reorderthreshold;
+            usednodes_nextreorder = (int) Math.min(next, Integer.MAX_VALUE);
+            return;
+        }
+
         /* Do not reorder before twice as many nodes have been used */
         usednodes_nextreorder = 2 * (bddnodesize - bddfreenum);
 
@@ -4353,6 +4528,7 @@ public class JFactory extends BDDFactory {
             int v;
 
             /* Accumulate number of nodes for each block */
+            p[n] = new sizePair();
             p[n].val = 0;
             for (v = dis.first; v <= dis.last; v++)
                 p[n].val -= levels[v].nodenum;
@@ -4529,13 +4705,16 @@ public class JFactory extends BDDFactory {
         //bdd_reorder_done();
         bdd_pairs_done();
 
-        free(bddnodes);
         free(bddrefstack);
         free(bddvarset);
         free(bddvar2level);
         free(bddlevel2var);
 
         bddnodes = null;
+        if (bddoffheap != null)
+            bddoffheap.release();
+        if (bddcomplement != null)
+            bddcomplement = new int[0];
         bddrefstack = null;
         bddvarset = null;
         bddvar2level = null;
@@ -4884,6 +5063,16 @@ public class JFactory extends BDDFactory {
         bdd_autoreorder_times(x, max);
     }
 
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setReorderThreshold(int)
+     */
+    public void setReorderThreshold(int nodes) {
+        if (nodes < 0)
+            throw new BDDException("Negative reorder threshold " + nodes);
+        reorderthreshold = nodes;
+        usednodes_nextreorder = nodes > 0 ? nodes : bddnodesize;
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#getReorderMethod()
      */
@@ -5183,7 +5372,7 @@ public class JFactory extends BDDFactory {
                 int hash2;
 
                 hash2 = NODEHASH2(VARr(n), LOW(n), HIGH(n));
-                SETNEXT(n, hash2);
+                SETNEXT(n, HASH(hash2));
                 SETHASH(hash2, n);
             } else {
                 SETNEXT(n, bddfreepos);
@@ -5495,6 +5684,8 @@ public class JFactory extends BDDFactory {
         levels[var].nodenum++;
         bddproduced++;
         bddfreenum--;
+        if (bddcomplement != null)
+            bddcomplement[res] = INVALID_BDD;
 
         SETVARr(res, var);
         SETLOW(res, low);
@@ -6565,7 +6756,9 @@ public class JFactory extends BDDFactory {
     }
 
     public JFactory cloneFactory() {
-        JFactory INSTANCE = new JFactory();
+        JFactory INSTANCE = new JFactory(this.bddoffheap == null ? null : this.bddoffheap.copy());
+        if (this.bddnodes != null)
+            INSTANCE.bddnodes = this.bddnodes.clone();
         if (applycache != null)
             INSTANCE.applycache = this.applycache.copy();
         if (itecache != null)
@@ -6598,12 +6791,13 @@ public class JFactory extends BDDFactory {
         INSTANCE.cachesize = this.cachesize;
         INSTANCE.gbcclock = this.gbcclock;
         INSTANCE.usednodes_nextreorder = this.usednodes_nextreorder;
+        INSTANCE.reorderthreshold = this.reorderthreshold;
         
         INSTANCE.bddrefstacktop = this.bddrefstacktop;
         INSTANCE.bddresized = this.bddresized;
         INSTANCE.minfreenodes = this.minfreenodes;
-        INSTANCE.bddnodes = new int[this.bddnodes.length];
-        System.arraycopy(this.bddnodes, 0, INSTANCE.bddnodes, 0, this.bddnodes.length);
+        if (this.bddcomplement != null)
+            INSTANCE.bddcomplement = this.bddcomplement.clone();
         INSTANCE.bddrefstack = new int[this.bddrefstack.length];
         System.arraycopy(this.bddrefstack, 0, INSTANCE.bddrefstack, 0, this.bddrefstack.length);
         INSTANCE.bddvar2level = new int[this.bddvar2level.length];
@@ -739,6 +739,14 @@ public class TestBDDFactory extends BDDFactory {
         f2.autoReorder(method, max);
     }
 
+    /* (non-Javadoc)
+     * @see net.sf.javabdd.BDDFactory#setReorderThreshold(int)
+     */
+    public void setReorderThreshold(int nodes) {
+        f1.setReorderThreshold(nodes);
+        f2.setReorderThreshold(nodes);
+    }
+
     /* (non-Javadoc)
      * @see net.sf.javabdd.BDDFactory#getReorderMethod()
      */
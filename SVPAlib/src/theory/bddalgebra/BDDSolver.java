@@ -7,72 +7,349 @@
  */
 package theory.bddalgebra;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.StringTokenizer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.sat4j.specs.TimeoutException;
 
 import java.lang.UnsupportedOperationException;
 import theory.BooleanAlgebra;
 import theory.bdd.BDD;
 import theory.bdd.BDDFactory;
+import theory.bdd.ConcurrentFactory;
+import theory.bdd.JDDFactory;
 import utilities.Pair;
 
 /**
- * CharSolver: an interval based solver for the theory of characters
+ * BDDSolver: a solver for Boolean formulas represented as BDDs. The node
+ * tables of most BDD factories are not thread-safe, so every operation that
+ * builds BDDs holds the factory lock: a single solver can be shared by
+ * worker threads as long as they only go through its methods. With the
+ * "jconcurrent" package the operations run in parallel without the lock.
  */
 public class BDDSolver extends BooleanAlgebra<BDD, BDD> {
 
 	public BDDFactory factory;
+
+	// variables registered as reorderable blocks
+	private int blockedVars;
+
+	// Reordering statistics
+	private int reorderings;
+	private long reorderTime;
+	private long reorderNodesBefore;
+	private long reorderNodesAfter;
 	
+	/**
+	 * Creates a solver backed by the default BDD package, set by the "bdd"
+	 * system property and jdd if unset, which does not support reordering
+	 */
 	public BDDSolver(int numVars) {
 		super();		
 		factory = BDDFactory.init(500000 , 125000);
 		factory.setVarNum(numVars);
+		registerReorderCallback();
 	}
 	
 	public BDDSolver(int numVars, int numNodes, int chaceSize) {
 		super();
 		factory = BDDFactory.init(numNodes, chaceSize);
 		factory.setVarNum(numVars);
+		registerReorderCallback();
+	}
+
+	/**
+	 * Creates a solver backed by the given BDD package (see
+	 * {@link BDDFactory#init(String, int, int)}). Reordering requires a
+	 * package that supports it, such as "java".
+	 */
+	public BDDSolver(int numVars, String bddpackage, int numNodes, int chaceSize) {
+		super();
+		factory = BDDFactory.init(bddpackage, numNodes, chaceSize);
+		factory.setVarNum(numVars);
+		registerReorderCallback();
+	}
+
+	private void registerReorderCallback() {
+		try {
+			Method callback = BDDSolver.class.getMethod("reorderCallback", Integer.class,
+					BDDFactory.ReorderStats.class);
+			factory.registerReorderCallback(this, callback);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return true iff the BDD package of this solver can reorder variables.
+	 *         The default package, jdd, and "jconcurrent" cannot: use
+	 *         {@link #BDDSolver(int, String, int, int)} with "java" instead.
+	 */
+	public boolean supportsReordering() {
+		return !(factory instanceof JDDFactory || factory instanceof ConcurrentFactory);
+	}
+
+	// runs op holding the factory lock, unless the factory is thread-safe
+	private <T> T locked(Supplier<T> op) {
+		if (factory.isThreadSafe())
+			return op.get();
+		synchronized (factory) {
+			return op.get();
+		}
+	}
+
+	/**
+	 * Enables automatic variable reordering with the given method (e.g.
+	 * <code>BDDFactory.REORDER_SIFT</code>), or disables it for
+	 * <code>BDDFactory.REORDER_NONE</code>. The factory reorders when its node
+	 * table fills up and then waits until twice as many nodes are in use, as
+	 * in BuDDy.
+	 * @throws UnsupportedOperationException if the BDD package cannot reorder
+	 */
+	public void enableAutoReorder(BDDFactory.ReorderMethod method) {
+		enableAutoReorder(method, -1);
+	}
+
+	/**
+	 * Like {@link #enableAutoReorder(BDDFactory.ReorderMethod)}, but reorders
+	 * at most <code>max</code> times, or without limit if <code>max</code>
+	 * is negative
+	 */
+	public void enableAutoReorder(BDDFactory.ReorderMethod method, int max) {
+		enableAutoReorder(method, max, 0);
+	}
+
+	/**
+	 * Like {@link #enableAutoReorder(BDDFactory.ReorderMethod, int)}, but if
+	 * <code>threshold</code> is positive the factory reorders whenever the
+	 * number of nodes in use crosses a multiple of <code>threshold</code>,
+	 * whether or not its node table is full
+	 * @throws UnsupportedOperationException if the BDD package cannot reorder
+	 *         at a threshold
+	 */
+	public void enableAutoReorder(BDDFactory.ReorderMethod method, int max, int threshold) {
+		if (!supportsReordering())
+			throw new UnsupportedOperationException("The BDD package does not support reordering");
+		if (threshold < 0)
+			throw new IllegalArgumentException("Negative reorder threshold " + threshold);
+		synchronized (factory) {
+			if (method != BDDFactory.REORDER_NONE)
+				blockVars();
+			factory.setReorderThreshold(threshold);
+			if (max < 0)
+				factory.autoReorder(method);
+			else
+				factory.autoReorder(method, max);
+		}
+	}
+
+	/**
+	 * Disables automatic variable reordering
+	 */
+	public void disableAutoReorder() {
+		if (supportsReordering())
+			synchronized (factory) {
+				factory.autoReorder(BDDFactory.REORDER_NONE);
+			}
+	}
+
+	/**
+	 * Reorders the variables now using the given method
+	 * @throws UnsupportedOperationException if the BDD package cannot reorder
+	 */
+	public void reorder(BDDFactory.ReorderMethod method) {
+		if (!supportsReordering())
+			throw new UnsupportedOperationException("The BDD package does not support reordering");
+		synchronized (factory) {
+			blockVars();
+			factory.reorder(method);
+		}
+	}
+
+	// every variable is a block that can be moved by the reordering
+	private void blockVars() {
+		if (blockedVars == 0)
+			factory.varBlockAll();
+		else
+			for (int v = blockedVars; v < factory.varNum(); v++)
+				factory.addVarBlock(v, v, true);
+		blockedVars = factory.varNum();
+	}
+
+	/**
+	 * Collects the reordering statistics, called by the factory before and
+	 * after each reordering.
+	 */
+	public void reorderCallback(Integer pre, BDDFactory.ReorderStats stats) {
+		if (pre == 0) {
+			reorderings++;
+			reorderTime += stats.time;
+			reorderNodesBefore += stats.usednum_before;
+			reorderNodesAfter += stats.usednum_after;
+		}
+	}
+
+	/**
+	 * @return the number of reorderings performed so far
+	 */
+	public int getReorderings() {
+		return reorderings;
+	}
+
+	/**
+	 * @return the total time spent reordering, in milliseconds
+	 */
+	public long getReorderTime() {
+		return reorderTime;
+	}
+
+	/**
+	 * @return the percentage of nodes removed by all the reorderings so far
+	 */
+	public int getReorderGain() {
+		if (reorderNodesBefore == 0)
+			return 0;
+		return (int) ((100 * (reorderNodesBefore - reorderNodesAfter)) / reorderNodesBefore);
+	}
+
+	/**
+	 * @return the current variable order, from the top level to the bottom one
+	 */
+	public int[] getVarOrder() {
+		synchronized (factory) {
+			int[] order = new int[factory.varNum()];
+			for (int level = 0; level < order.length; level++)
+				order[level] = factory.level2Var(level);
+			return order;
+		}
+	}
+
+	/**
+	 * Sets the variable order, from the top level to the bottom one
+	 */
+	public void setVarOrder(int[] order) {
+		if (order.length != factory.varNum())
+			throw new IllegalArgumentException("Variable order of size " + order.length + " for "
+					+ factory.varNum() + " variables");
+		synchronized (factory) {
+			// the factory refuses explicit orders while variable blocks exist
+			if (blockedVars > 0) {
+				factory.clearVarBlocks();
+				blockedVars = 0;
+			}
+			factory.setVarOrder(order);
+		}
+	}
+
+	/**
+	 * Writes the current variable order to <code>fileName</code>
+	 */
+	public void saveVarOrder(String fileName) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+		try {
+			for (int v : getVarOrder())
+				out.write(v + " ");
+			out.newLine();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Sets the variable order to the one stored in <code>fileName</code> by
+	 * {@link #saveVarOrder(String)}
+	 */
+	public void loadVarOrder(String fileName) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		try {
+			String line = in.readLine();
+			StringTokenizer st = new StringTokenizer(line == null ? "" : line);
+			int[] order = new int[st.countTokens()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = Integer.parseInt(st.nextToken());
+			setVarOrder(order);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Runs <code>workload</code> on a fresh solver with automatic reordering
+	 * enabled and returns the variable order found at the end, which can be
+	 * stored with {@link #saveVarOrder(String)} and reused at startup.
+	 */
+	public static int[] trainVarOrder(int numVars, Consumer<BDDSolver> workload, BDDFactory.ReorderMethod method) {
+		BDDSolver solver = new BDDSolver(numVars, "java", 500000, 125000);
+		solver.enableAutoReorder(method);
+		workload.accept(solver);
+		solver.reorder(method);
+		int[] order = solver.getVarOrder();
+		solver.factory.done();
+		return order;
+	}
+
+	/**
+	 * @return the predicate true iff variable <code>var</code> is true
+	 */
+	public BDD MkVar(int var) {
+		return locked(() -> factory.ithVar(var));
 	}
 
 	@Override
 	public BDD MkNot(BDD p) {
-		return p.not();
+		return locked(() -> p.not());
 	}
 
 	@Override
 	public BDD MkOr(Collection<BDD> pset) {
-		BDD acc = factory.zero();
-		for(BDD bdd:pset)
-			acc=acc.or(bdd);
-		return acc;
+		return locked(() -> {
+			BDD acc = factory.zero();
+			for(BDD bdd:pset)
+				acc=acc.or(bdd);
+			return acc;
+		});
 	}
 
 	@Override
 	public BDD MkOr(BDD p1, BDD p2) {
-		return p1.or(p2);
+		return locked(() -> p1.or(p2));
 	}
 
 	@Override
 	public BDD MkAnd(Collection<BDD> pset) {
-		BDD acc = factory.one();
-		for(BDD bdd:pset)
-			acc=acc.and(bdd);
-		return acc;
+		return locked(() -> {
+			BDD acc = factory.one();
+			for(BDD bdd:pset)
+				acc=acc.and(bdd);
+			return acc;
+		});
 	}
 
 	@Override
 	public BDD MkAnd(BDD p1, BDD p2) {
-		return p1.and(p2);
+		return locked(() -> p1.and(p2));
 	}
 
 	@Override
-	public BDD True() {		
-		return factory.one();
+	public BDD True() {
+		return locked(() -> factory.one());
 	}
 
 	@Override
 	public BDD False() {
-		return factory.zero();
+		return locked(() -> factory.zero());
 	}
 
 	@Override
@@ -87,7 +364,7 @@ public class BDDSolver extends BooleanAlgebra<BDD, BDD> {
 
 	@Override
 	public boolean HasModel(BDD p1, BDD el) {
-		return IsSatisfiable(p1.and(el));
+		return locked(() -> IsSatisfiable(p1.and(el)));
 	}
 
 	@Override
@@ -120,7 +397,7 @@ public class BDDSolver extends BooleanAlgebra<BDD, BDD> {
 	
 	@Override
 	public BDD generateWitness(BDD p1) {
-		BDD sat = extractWitness(p1);//p1.satOne();
+		BDD sat = locked(() -> extractWitness(p1));//p1.satOne();
 		/*
 		sat.not().printDot();
 		if (!sat.not().and(p1).equals(factory.zero())) {
@@ -132,6 +409,172 @@ public class BDDSolver extends BooleanAlgebra<BDD, BDD> {
 		return sat;
 	}
 
+	/**
+	 * @return the number of assignments to the solver variables satisfying
+	 *         <code>p1</code>, -1 if it does not fit in a long
+	 */
+	@Override
+	public long countModels(BDD p1) {
+		return locked(() -> shift(countPaths(p1, new HashMap<BDD, Long>()), level(p1)));
+	}
+
+	// the number of assignments to the variables at the level of node and
+	// below that satisfy node, counted exactly; -1 if it does not fit in a
+	// long
+	private long countPaths(BDD node, Map<BDD, Long> counts) {
+		if (node.isZero())
+			return 0;
+		if (node.isOne())
+			return 1;
+		Long count = counts.get(node);
+		if (count != null)
+			return count;
+		int level = node.level();
+		BDD low = node.low();
+		BDD high = node.high();
+		long lowCount = shift(countPaths(low, counts), level(low) - level - 1);
+		long highCount = shift(countPaths(high, counts), level(high) - level - 1);
+		long sum = lowCount < 0 || highCount < 0 || lowCount > Long.MAX_VALUE - highCount
+				? -1 : lowCount + highCount;
+		counts.put(node, sum);
+		return sum;
+	}
+
+	// the level of node, the number of variables for the constants
+	private int level(BDD node) {
+		return node.isZero() || node.isOne() ? factory.varNum() : node.level();
+	}
+
+	// count times 2^skipped, -1 if it does not fit in a long
+	private static long shift(long count, int skipped) {
+		if (count <= 0)
+			return count;
+		if (skipped >= Long.SIZE - 1 || count > Long.MAX_VALUE >>> skipped)
+			return -1;
+		return count << skipped;
+	}
+
+	/**
+	 * Models are ordered lexicographically on variables 0..n-1, trying
+	 * each variable true before false as in {@link #generateWitness(BDD)}
+	 */
+	@Override
+	public BDD witnessAt(BDD p1, long index) throws TimeoutException {
+		if (index < 0)
+			return null;
+		// too many models to pick one by counting, walk the enumeration
+		if (countModels(p1) < 0)
+			return super.witnessAt(p1, index);
+		return locked(() -> {
+			long count = countModels(p1);
+			if (index >= count)
+				return null;
+			long rest = index;
+			BDD res = factory.one();
+			BDD copy = p1;
+			for (int i = 0; i < factory.varNum(); i++) {
+				BDD pos = copy.and(factory.ithVar(i));
+				long posCount = countModels(pos);
+				if (rest < posCount) {
+					res = res.and(factory.ithVar(i));
+					copy = pos;
+				} else {
+					rest -= posCount;
+					res = res.and(factory.nithVar(i));
+					copy = copy.and(factory.nithVar(i));
+				}
+			}
+			return res;
+		});
+	}
+
+	/**
+	 * Enumerates the models of <code>p1</code> in the order of
+	 * {@link #witnessAt(BDD, long)} by a depth-first visit of its paths that
+	 * expands don't-care variables on the fly, so each model costs a number
+	 * of steps linear in the number of variables
+	 */
+	@Override
+	public Iterator<BDD> enumerateWitnesses(final BDD p1) {
+		return new Iterator<BDD>() {
+			final int numVars = factory.varNum();
+			// nodes[i] is p1 restricted to the values of variables 0..i-1
+			final BDD[] nodes = new BDD[numVars + 1];
+			final boolean[] values = new boolean[numVars];
+			boolean ready;
+			boolean done;
+
+			{
+				locked(() -> {
+					nodes[0] = p1;
+					done = p1.isZero();
+					if (!done)
+						descend(0);
+					ready = !done;
+					return null;
+				});
+			}
+
+			// cofactor of node with respect to variable var
+			private BDD cofactor(BDD node, int var, boolean value) {
+				if (node.isZero() || node.isOne())
+					return node;
+				int varLevel = factory.var2Level(var);
+				int nodeLevel = node.level();
+				if (varLevel < nodeLevel)
+					return node;
+				if (varLevel == nodeLevel)
+					return value ? node.high() : node.low();
+				return node.restrict(value ? factory.ithVar(var) : factory.nithVar(var));
+			}
+
+			private void descend(int i) {
+				for (; i < numVars; i++) {
+					BDD child = cofactor(nodes[i], i, true);
+					values[i] = !child.isZero();
+					nodes[i + 1] = values[i] ? child : cofactor(nodes[i], i, false);
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				if (ready || done)
+					return ready;
+				return locked(() -> {
+					int i = numVars - 1;
+					while (i >= 0) {
+						if (values[i]) {
+							BDD child = cofactor(nodes[i], i, false);
+							if (!child.isZero()) {
+								values[i] = false;
+								nodes[i + 1] = child;
+								descend(i + 1);
+								ready = true;
+								return true;
+							}
+						}
+						i--;
+					}
+					done = true;
+					return false;
+				});
+			}
+
+			@Override
+			public BDD next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				ready = false;
+				return locked(() -> {
+					BDD res = factory.one();
+					for (int i = 0; i < numVars; i++)
+						res = res.and(values[i] ? factory.ithVar(i) : factory.nithVar(i));
+					return res;
+				});
+			}
+		};
+	}
+
 	@Override
 	public Pair<BDD, BDD> generateWitnesses(BDD p1) {
 		// TODO Auto-generated method stub
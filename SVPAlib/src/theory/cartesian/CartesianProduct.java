@@ -1,7 +1,6 @@
 package theory.cartesian;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 import org.sat4j.specs.TimeoutException;
@@ -12,9 +11,11 @@ import utilities.Pair;
 public class CartesianProduct<P1,P2> {
 	
 	List<Pair<P1,P2>> products;
+	boolean normalized;
 	
 	public CartesianProduct(){
 		products = new ArrayList<>();
+		normalized = true;
 	}
 	
 	/**
@@ -22,41 +23,162 @@ public class CartesianProduct<P1,P2> {
 	 */
 	public CartesianProduct(P1 p1, P2 p2) {
 		this();
-		products = new ArrayList<>();
+		normalized = false;
 		products.add(new Pair<>(p1,p2));
 	}	
 	
 	public CartesianProduct(List<Pair<P1,P2>> products) {
 		this.products = products;
+		normalized = products.isEmpty();
 	}
 	
+	/**
+	 * Rewrites this predicate in canonical disjoint form: the first components
+	 * are satisfiable and pairwise disjoint, the second components are
+	 * satisfiable and pairwise inequivalent. Every point x of the first sort is
+	 * then covered by at most one rectangle, whose second component is exactly
+	 * the set of y with (x,y) in the predicate, so two predicates in this form
+	 * are equivalent iff their rectangles match up to component equivalence.
+	 */
 	public <S1,S2> void normalize(BooleanAlgebra<P1,S1> ba1,BooleanAlgebra<P2,S2> ba2) throws TimeoutException{
+		List<Pair<P1,P2>> rectangles = products;
+		products = new ArrayList<Pair<P1,P2>>();
+		normalized = true;
+		for (Pair<P1,P2> pair: rectangles)
+			add(pair.first, pair.second, ba1, ba2);
+	}
+
+	/**
+	 * Adds the rectangle <code>a x b</code> to this predicate, which must be in
+	 * disjoint form, refining the existing rectangles so that the result is
+	 * again in disjoint form. Costs one pass over the current rectangles
+	 * instead of computing the minterms of all first components.
+	 */
+	public <S1,S2> void add(P1 a, P2 b, BooleanAlgebra<P1,S1> ba1, BooleanAlgebra<P2,S2> ba2) throws TimeoutException{
+		if (!normalized)
+			normalize(ba1, ba2);
+		if (!ba1.IsSatisfiable(a) || !ba2.IsSatisfiable(b))
+			return;
+
 		ArrayList<Pair<P1,P2>> newProducts = new ArrayList<Pair<P1,P2>>();
-		
-		ArrayList<P1> firstProj = new ArrayList<>();
-		for(Pair<P1,P2> pair: products)
-			firstProj.add(pair.first);
-		
-		Collection<Pair<P1, ArrayList<Integer>>> minterms = ba1.GetMinterms(firstProj);		
-		for(Pair<P1, ArrayList<Integer>> minterm:minterms){
-			P1 currA = minterm.first;
-			P2 currB = ba2.False();
-			boolean addflag = false;
-			for (int bit = 0; bit < products.size(); bit++) {
-				if (minterm.second.get(bit) == 1) {
-					addflag = true;
-					currB = ba2.MkOr(currB, products.get(bit).second);
-				}
+		P1 rest = a;
+		boolean changed = false;
+		for (Pair<P1,P2> pair: products) {
+			P1 both = ba1.MkAnd(pair.first, a);
+			if (!ba1.IsSatisfiable(both)) {
+				newProducts.add(pair);
+				continue;
 			}
+			rest = ba1.MkAnd(rest, ba1.MkNot(pair.first));
+			//b is already covered over this rectangle
+			if (!ba2.IsSatisfiable(ba2.MkAnd(b, ba2.MkNot(pair.second)))) {
+				newProducts.add(pair);
+				continue;
+			}
+			P1 only = ba1.MkAnd(pair.first, ba1.MkNot(a));
+			if (ba1.IsSatisfiable(only))
+				newProducts.add(new Pair<>(only, pair.second));
+			newProducts.add(new Pair<>(both, ba2.MkOr(pair.second, b)));
+			changed = true;
+		}
+		if (ba1.IsSatisfiable(rest)) {
+			newProducts.add(new Pair<>(rest, b));
+			changed = true;
+		}
+		products = newProducts;
+		if (changed)
+			merge(ba1, ba2);
+	}
 
-			if (addflag) //avoid adding unsat regions
-				newProducts.add(new Pair<>(currA, currB));
+	/**
+	 * Unions the first components of rectangles with equivalent second components
+	 */
+	private <S1,S2> void merge(BooleanAlgebra<P1, S1> ba1, BooleanAlgebra<P2, S2> ba2) throws TimeoutException {
+		List<Pair<P1,P2>> newProducts = new ArrayList<Pair<P1, P2>>();
+		for (Pair<P1,P2> pair: products) {
+			boolean merged = false;
+			for (int i = 0; i < newProducts.size() && !merged; i++) {
+				Pair<P1,P2> curr = newProducts.get(i);
+				if (sameComponent(curr.second, pair.second, ba2)) {
+					newProducts.set(i, new Pair<>(ba1.MkOr(curr.first, pair.first), curr.second));
+					merged = true;
+				}
+			}
+			if (!merged)
+				newProducts.add(pair);
 		}
-		
 		products = newProducts;
-		reduce(ba1, ba2);
 	}
-	
+
+	/**
+	 * Checks whether this predicate and <code>other</code>, both in disjoint
+	 * form, denote the same set. Only compares components pairwise and never
+	 * builds complements of the products.
+	 */
+	public <S1,S2> boolean isEquivalent(CartesianProduct<P1,P2> other, BooleanAlgebra<P1,S1> ba1, BooleanAlgebra<P2,S2> ba2) throws TimeoutException {
+		CartesianProduct<P1,P2> left = normalized(ba1, ba2);
+		CartesianProduct<P1,P2> right = other.normalized(ba1, ba2);
+		if (left.products.size() != right.products.size())
+			return false;
+		for (Pair<P1,P2> pair: left.products) {
+			boolean found = false;
+			for (Pair<P1,P2> otherPair: right.products)
+				if (sameComponent(pair.second, otherPair.second, ba2)) {
+					if (!sameComponent(pair.first, otherPair.first, ba1))
+						return false;
+					found = true;
+					break;
+				}
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	private static <P,S> boolean sameComponent(P p1, P p2, BooleanAlgebra<P,S> ba) throws TimeoutException {
+		return p1 == p2 || p1.equals(p2) || ba.AreEquivalent(p1, p2);
+	}
+
+	/**
+	 * @return this predicate if it is already in disjoint form, a normalized
+	 *         copy otherwise; this predicate is left unchanged
+	 */
+	public <S1,S2> CartesianProduct<P1,P2> normalized(BooleanAlgebra<P1,S1> ba1, BooleanAlgebra<P2,S2> ba2) throws TimeoutException {
+		if (normalized)
+			return this;
+		CartesianProduct<P1,P2> copy = copy();
+		copy.normalize(ba1, ba2);
+		return copy;
+	}
+
+	/**
+	 * @return a copy of this predicate with its own rectangles, which can be
+	 *         modified without affecting this one
+	 */
+	public CartesianProduct<P1,P2> copy() {
+		List<Pair<P1,P2>> rectangles = new ArrayList<Pair<P1,P2>>();
+		for (Pair<P1,P2> pair: products)
+			rectangles.add(new Pair<>(pair.first, pair.second));
+		CartesianProduct<P1,P2> copy = new CartesianProduct<>(rectangles);
+		copy.normalized = normalized;
+		return copy;
+	}
+
+	/**
+	 * @return true if this predicate is known to be in disjoint form
+	 */
+	public boolean isNormalized() {
+		return normalized;
+	}
+
+	/**
+	 * Marks this predicate as being in disjoint form, to be used when the
+	 * rectangles were built so that the invariant holds by construction
+	 */
+	public void setNormalized() {
+		normalized = true;
+	}
+
 	public <S1,S2> void reduce(BooleanAlgebra<P1, S1> ba1, BooleanAlgebra<P2, S2> ba2) throws TimeoutException {
 		List<Pair<P1,P2>> newProducts = new ArrayList<Pair<P1, P2>>();
 
@@ -84,6 +206,7 @@ public class CartesianProduct<P1,P2> {
 			newProducts.add(curr);
 		}
 		products = newProducts;
+		normalized = false;
 	}
 
 	public List<Pair<P1,P2>> getProducts(){
@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 
 import org.sat4j.specs.TimeoutException;
 
@@ -88,6 +89,21 @@ public class BoundedIntegerSolver extends BooleanAlgebra<IntPred, Integer> {
 		return ba.generateWitness(p1); //assumes p1 is contained in the domain
 	}
 
+	@Override
+	public long countModels(IntPred p1) throws TimeoutException {
+		return ba.countModels(ba.MkAnd(domain, p1));
+	}
+
+	@Override
+	public Integer witnessAt(IntPred p1, long index) throws TimeoutException {
+		return ba.witnessAt(ba.MkAnd(domain, p1), index);
+	}
+
+	@Override
+	public Iterator<Integer> enumerateWitnesses(IntPred p1) {
+		return ba.enumerateWitnesses(ba.MkAnd(domain, p1));
+	}
+
 	@Override
 	public Pair<Integer, Integer> generateWitnesses(IntPred p1)
 			throws TimeoutException {
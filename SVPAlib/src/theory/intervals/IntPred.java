@@ -6,24 +6,38 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
 public class IntPred {
-	
-	public final ImmutableList<ImmutablePair<Integer, Integer>> intervals;
-	
+
+	/**
+	 * Lower bound used for intervals that are unbounded below
+	 */
+	static final long NEG_INF = Long.MIN_VALUE;
+
+	/**
+	 * Upper bound used for intervals that are unbounded above
+	 */
+	static final long POS_INF = Long.MAX_VALUE;
+
+	/**
+	 * The closed intervals <code>[bounds[2i],bounds[2i+1]]</code>, sorted,
+	 * disjoint and not adjacent. Unbounded extremes are stored as
+	 * <code>NEG_INF</code> and <code>POS_INF</code>; finite bounds always fit
+	 * in an int.
+	 */
+	final long[] bounds;
+
 	/**
 	 * The set containing only the integer <code>n</code>
 	 */
 	public IntPred(int n) {
 		this(n, n);
 	}
-	
+
 	/**
 	 * The set containing only the interval <code>[bot,top]</code> (extremes
 	 * included)
@@ -31,129 +45,215 @@ public class IntPred {
 	 * indicates the interval is unbounded for that value
 	 */
 	public IntPred(Integer bot, Integer top) {
-		this(ImmutableList.of(ImmutablePair.of(bot, top)));
+		checkArgument(bot == null || top == null || bot <= top);
+		this.bounds = new long[] { bot == null ? NEG_INF : bot, top == null ? POS_INF : top };
 	}
-	
+
 	public IntPred(ImmutableList<ImmutablePair<Integer, Integer>> intervals) {
-		for (ImmutablePair<Integer, Integer> interval : checkNotNull(intervals)) {
+		long[][] sorted = new long[checkNotNull(intervals).size()][];
+		int n = 0;
+		for (ImmutablePair<Integer, Integer> interval : intervals) {
 			checkArgument(interval.left == null || interval.right == null ||
 					interval.left <= interval.right);
+			sorted[n++] = new long[] { interval.left == null ? NEG_INF : interval.left,
+					interval.right == null ? POS_INF : interval.right };
 		}
+		// sort once by lower bound, then merge overlapping and adjacent
+		// intervals in a single pass
+		Arrays.sort(sorted, (i1, i2) -> Long.compare(i1[0], i2[0]));
+		long[] b = new long[2 * n];
+		int k = 0;
+		for (long[] interval : sorted) {
+			if (k > 0 && (b[k - 1] == POS_INF || interval[0] <= b[k - 1] + 1)) {
+				b[k - 1] = Math.max(b[k - 1], interval[1]);
+				continue;
+			}
+			b[k++] = interval[0];
+			b[k++] = interval[1];
+		}
+		this.bounds = k == b.length ? b : Arrays.copyOf(b, k);
+	}
 
-		this.intervals = sortIntervals(checkNotNull(intervals));
+	/**
+	 * Wraps bounds that are already sorted, disjoint and not adjacent
+	 */
+	IntPred(long[] bounds) {
+		this.bounds = bounds;
+	}
+
+	/**
+	 * @return the intervals of this predicate, <code>null</code> standing for
+	 *         an unbounded extreme
+	 */
+	public ImmutableList<ImmutablePair<Integer, Integer>> getIntervals() {
+		ImmutableList.Builder<ImmutablePair<Integer, Integer>> ansBuilder = ImmutableList.builder();
+		for (int i = 0; i < bounds.length; i += 2)
+			ansBuilder.add(ImmutablePair.of(
+					bounds[i] == NEG_INF ? null : (int) bounds[i],
+					bounds[i + 1] == POS_INF ? null : (int) bounds[i + 1]));
+		return ansBuilder.build();
 	}
-	
-	private static ImmutableList<ImmutablePair<Integer, Integer>> sortIntervals(
+
+	/**
+	 * @deprecated the intervals are no longer stored as a list; use
+	 *             {@link #getIntervals()} on the predicate built by
+	 *             {@link IntegerSolver#MkNot(IntPred)}
+	 */
+	@Deprecated
+	public static ImmutableList<ImmutablePair<Integer, Integer>> invertIntervals(
 			ImmutableList<ImmutablePair<Integer, Integer>> intervals) {
-		
-		for (ImmutablePair<Integer, Integer> interval : checkNotNull(intervals)) {
-			checkArgument(interval.left == null || interval.right == null ||
-					interval.left <= interval.right);
+		return new IntPred(not(new IntPred(intervals).bounds)).getIntervals();
+	}
+
+	/**
+	 * @return the number of disjoint intervals in this predicate
+	 */
+	public int size() {
+		return bounds.length / 2;
+	}
+
+	public boolean isSatisfiedBy(int n) {
+		// last interval whose lower bound is at most n
+		int lo = 0, hi = bounds.length / 2 - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (bounds[2 * mid] <= n) {
+				found = mid;
+				lo = mid + 1;
+			} else
+				hi = mid - 1;
 		}
-		
-		List<ImmutablePair<Integer, Integer>> sortLeft = new ArrayList<ImmutablePair<Integer, Integer>>(intervals);
-		Collections.sort(sortLeft, new Comparator<ImmutablePair<Integer, Integer>>() {
-			public int compare(ImmutablePair<Integer, Integer> o1,
-					ImmutablePair<Integer, Integer> o2) {
-				if (checkNotNull(o1).left == null)
-					return -1;
-				if (checkNotNull(o2).left == null)
-					return 1;
-				return o1.left - o2.left;
-			}
-		});
-		
-		ImmutableList.Builder<ImmutablePair<Integer, Integer>> ansBuilder = ImmutableList.builder();
-		for (int i = 0; i < sortLeft.size(); i++) {
-			Integer left = sortLeft.get(i).left;
-			Integer right = sortLeft.get(i).right;
-			for (int j = i + 1; j < sortLeft.size() && 
-					(right == null || sortLeft.get(j).left == null || sortLeft.get(j).left <= right + 1)
-					; j++) {
-				if (right != null) {
-					if (sortLeft.get(j).right == null)
-						right = null;
-					else
-						right = Math.max(right,  sortLeft.get(j).right);
+		return found >= 0 && n <= bounds[2 * found + 1];
+	}
+
+	/**
+	 * Intersection of two bound arrays, by a linear merge
+	 */
+	static long[] and(long[] b1, long[] b2) {
+		int count = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			long[] ret = pass == 0 ? null : new long[2 * count];
+			int k = 0;
+			for (int i = 0, j = 0; i < b1.length && j < b2.length; ) {
+				long lo = Math.max(b1[i], b2[j]);
+				long hi = Math.min(b1[i + 1], b2[j + 1]);
+				if (lo <= hi) {
+					if (ret != null) {
+						ret[k] = lo;
+						ret[k + 1] = hi;
+					}
+					k += 2;
 				}
-				i++;
+				if (b1[i + 1] == hi)
+					i += 2;
+				else
+					j += 2;
 			}
-			ansBuilder.add(ImmutablePair.of(left,  right));
+			if (ret != null)
+				return ret;
+			count = k / 2;
 		}
-		
-		ImmutableList<ImmutablePair<Integer, Integer>> ans = ansBuilder.build();
-		for (int i = 1; i < ans.size(); i++) { 
-			ImmutablePair<Integer, Integer> curr = ans.get(i);
-			ImmutablePair<Integer, Integer> prev = ans.get(i - 1);
-			checkArgument(checkNotNull(prev.right) < checkNotNull(curr.left));
-			checkArgument(prev.right + 1 < curr.left);
-		}
-		
-		return ans;
+		throw new IllegalStateException();
 	}
-	
-	public static ImmutableList<ImmutablePair<Integer, Integer>> invertIntervals(
-			ImmutableList<ImmutablePair<Integer, Integer>> intervals) {
-		
-		List<ImmutablePair<Integer, Integer>> ret = 
-			new ArrayList<ImmutablePair<Integer, Integer>>();
-		
-		intervals = sortIntervals(intervals);
-		if (intervals.isEmpty())
-			return ImmutableList.copyOf(StdIntPred.TRUE.intervals);
-		
-		Integer end_point = null;
-		for (int i = 0; i < intervals.size(); i++) {
-			ImmutablePair<Integer, Integer> interval = intervals.get(i);
-			if (interval.left != null) {
-				ret.add(ImmutablePair.of(end_point,  interval.left - 1));
-				if (interval.right == null)
-					break;
-			}
-			if (interval.right != null) {
-				end_point = interval.right + 1;
+
+	/**
+	 * Union of two bound arrays, by a linear merge
+	 */
+	static long[] or(long[] b1, long[] b2) {
+		if (b1.length == 0)
+			return b2;
+		if (b2.length == 0)
+			return b1;
+		int count = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			long[] ret = pass == 0 ? null : new long[2 * count];
+			int k = 0;
+			int i = 0, j = 0;
+			long curLo = 0, curHi = 0;
+			boolean open = false;
+			while (i < b1.length || j < b2.length) {
+				long lo, hi;
+				if (j >= b2.length || (i < b1.length && b1[i] <= b2[j])) {
+					lo = b1[i];
+					hi = b1[i + 1];
+					i += 2;
+				} else {
+					lo = b2[j];
+					hi = b2[j + 1];
+					j += 2;
+				}
+				if (open && (curHi == POS_INF || lo <= curHi + 1)) {
+					curHi = Math.max(curHi, hi);
+					continue;
+				}
+				if (open) {
+					if (ret != null) {
+						ret[k] = curLo;
+						ret[k + 1] = curHi;
+					}
+					k += 2;
+				}
+				curLo = lo;
+				curHi = hi;
+				open = true;
 			}
-			if (i == intervals.size() - 1 && interval.right != null) { 
-				ret.add(ImmutablePair.of(interval.right + 1,  null));
+			if (ret != null) {
+				ret[k] = curLo;
+				ret[k + 1] = curHi;
+				return ret;
 			}
+			count = k / 2 + 1;
 		}
-		return ImmutableList.copyOf(ret);
+		throw new IllegalStateException();
 	}
-	
-	public boolean isSatisfiedBy(int n) {
-		for (ImmutablePair<Integer, Integer> interval : intervals) {
-			if (inInterval(interval, n)) 
-				return true;
+
+	/**
+	 * Complement of a bound array
+	 */
+	static long[] not(long[] b) {
+		if (b.length == 0)
+			return new long[] { NEG_INF, POS_INF };
+		// no int lies below Integer.MIN_VALUE or above Integer.MAX_VALUE, so
+		// the gaps there are empty and the bounds never leave the int range
+		int count = b.length / 2 + 1;
+		if (b[0] == NEG_INF || b[0] == Integer.MIN_VALUE)
+			count--;
+		if (b[b.length - 1] == POS_INF || b[b.length - 1] == Integer.MAX_VALUE)
+			count--;
+		long[] ret = new long[2 * count];
+		int k = 0;
+		long prev = NEG_INF;
+		for (int i = 0; i < b.length; i += 2) {
+			if (b[i] != NEG_INF && b[i] != Integer.MIN_VALUE) {
+				ret[k++] = prev;
+				ret[k++] = b[i] - 1;
+			}
+			prev = b[i + 1] == POS_INF || b[i + 1] == Integer.MAX_VALUE ? POS_INF : b[i + 1] + 1;
 		}
-		return false;
-	}
-	
-	private static boolean inInterval(ImmutablePair<Integer, Integer> interval, int n) {
-		if (interval.left == null && interval.right == null)
-			return true;
-		if (interval.left == null)
-			return n <= interval.right;
-		if (interval.right == null)
-			return n >= interval.left;
-		return interval.left <= n && n <= interval.right;
+		if (prev != POS_INF) {
+			ret[k++] = prev;
+			ret[k++] = POS_INF;
+		}
+		return ret;
 	}
-	
+
 	@Override
 	public String toString() {
-		if (intervals.isEmpty())
+		if (bounds.length == 0)
 			return "empty";
 		List<String> retArr = new ArrayList<String>();
-		for (ImmutablePair<Integer, Integer> pair : intervals) { 
+		for (int i = 0; i < bounds.length; i += 2) {
 			String temp = "[";
-			if (pair.left == null)
+			if (bounds[i] == NEG_INF)
 				temp += "-inf";
-			else 
-				temp += pair.left.toString();
+			else
+				temp += bounds[i];
 			temp += ",";
-			if (pair.right == null) 
+			if (bounds[i + 1] == POS_INF)
 				temp += "inf";
 			else
-				temp += pair.right.toString();
+				temp += bounds[i + 1];
 			temp += "]";
 			retArr.add(temp);
 		}
@@ -162,17 +262,17 @@ public class IntPred {
 			ret += "U" + retArr.get(i);
 		return ret;
 	}
-	
+
 	@Override
-	public boolean equals(Object obj) { 
-		if (obj instanceof IntPred) 
-			return Objects.equals(intervals, ((IntPred)obj).intervals);
+	public boolean equals(Object obj) {
+		if (obj instanceof IntPred)
+			return Arrays.equals(bounds, ((IntPred)obj).bounds);
 		return false;
 	}
-	
+
 	@Override
 	public int hashCode() {
-		return Objects.hash(IntPred.class, intervals);
+		return 31 * IntPred.class.hashCode() + Arrays.hashCode(bounds);
 	}
 
 }
@@ -2,16 +2,16 @@ package theory.intervals;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.sat4j.specs.TimeoutException;
 
-import com.google.common.collect.ImmutableList;
-
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.ArrayList;
 
 import theory.BooleanAlgebra;
@@ -26,7 +26,7 @@ public class IntegerSolver extends BooleanAlgebra<IntPred, Integer> {
 
 	@Override
 	public IntPred MkNot(IntPred p) {
-		return new IntPred(IntPred.invertIntervals(p.intervals));
+		return new IntPred(IntPred.not(checkNotNull(p).bounds));
 	}
 
 	@Override
@@ -40,7 +40,7 @@ public class IntegerSolver extends BooleanAlgebra<IntPred, Integer> {
 
 	@Override
 	public IntPred MkOr(IntPred p1, IntPred p2) {
-		return MkNot(MkAnd(MkNot(p1), MkNot(p2)));
+		return new IntPred(IntPred.or(checkNotNull(p1).bounds, checkNotNull(p2).bounds));
 	}
 
 	@Override
@@ -54,50 +54,7 @@ public class IntegerSolver extends BooleanAlgebra<IntPred, Integer> {
 
 	@Override
 	public IntPred MkAnd(IntPred p1, IntPred p2) {
-		if(checkNotNull(p1).intervals.isEmpty() || checkNotNull(p2).intervals.isEmpty())
-			return False();
-		
-		List<ImmutablePair<Integer, Integer>> newIntervals = 
-				new ArrayList<ImmutablePair<Integer, Integer>>();
-		
-		for (int i = 0, j = 0; i < p1.intervals.size() && j < p2.intervals.size(); ) {
-			ImmutablePair<Integer, Integer> cur1, cur2;
-			cur1 = p1.intervals.get(i);
-			cur2 = p2.intervals.get(j);
-			
-			Integer lo = null;
-			if (cur1.left != null) { 
-				if (cur2.left != null) 
-					lo = Math.max(cur1.left, cur2.left);
-				else
-					lo = cur1.left;
-			}
-			else
-				lo = cur2.left;
-			Integer hi = null;
-			if (cur1.right != null) { 
-				if (cur2.right != null)
-					hi = Math.min(cur1.right, cur2.right);
-				else
-					hi = cur1.right;
-			}
-			else
-				hi = cur2.right;
-			
-			if (lo == null || hi == null || lo <= hi)
-				newIntervals.add(ImmutablePair.of(lo,  hi));
-			
-			if (hi == null && cur1.right == null)
-				i++;
-			else if (hi == null)
-				j++;
-			else if (hi.equals(cur1.right))
-				i++;
-			else
-				j++;
-		}
-		
-		return new IntPred(ImmutableList.copyOf(newIntervals));
+		return new IntPred(IntPred.and(checkNotNull(p1).bounds, checkNotNull(p2).bounds));
 	}
 
 	@Override
@@ -115,13 +72,13 @@ public class IntegerSolver extends BooleanAlgebra<IntPred, Integer> {
 		checkNotNull(p1);
 		checkNotNull(p2);
 
-		boolean nonEquivalent = IsSatisfiable(MkAnd(p1, MkNot(p2))) || IsSatisfiable(MkAnd(MkNot(p1), p2));
-		return !nonEquivalent;
+		// bounds are kept in canonical form
+		return p1.equals(p2);
 	}
 
 	@Override
 	public boolean IsSatisfiable(IntPred p) {
-		return !checkNotNull(p).intervals.isEmpty();
+		return checkNotNull(p).bounds.length > 0;
 	}
 
 	@Override
@@ -136,17 +93,132 @@ public class IntegerSolver extends BooleanAlgebra<IntPred, Integer> {
 
 	@Override
 	public Integer generateWitness(IntPred p) {
-		if (checkNotNull(p).intervals.isEmpty()) {
+		long[] bounds = checkNotNull(p).bounds;
+		if (bounds.length == 0) {
 			return null;
 		} else {
-			if (p.intervals.get(0).left != null)
-				return p.intervals.get(0).left;
-			if (p.intervals.get(0).right != null)
-				return p.intervals.get(0).right;
+			if (bounds[0] != IntPred.NEG_INF)
+				return (int) bounds[0];
+			if (bounds[1] != IntPred.POS_INF)
+				return (int) bounds[1];
 			return 0;
 		}
 	}
 
+	@Override
+	public long countModels(IntPred p) {
+		long[] bounds = checkNotNull(p).bounds;
+		long count = 0;
+		for (int i = 0; i < bounds.length; i += 2) {
+			if (bounds[i] == IntPred.NEG_INF || bounds[i + 1] == IntPred.POS_INF)
+				return -1;
+			count += bounds[i + 1] - bounds[i] + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Models are ordered by first listing the bounded intervals from left to
+	 * right, and then alternating between the unbounded ones, moving away from
+	 * their finite extreme (from 0 for the whole line)
+	 */
+	@Override
+	public Integer witnessAt(IntPred p, long index) {
+		long[] bounds = checkNotNull(p).bounds;
+		if (index < 0 || bounds.length == 0)
+			return null;
+		for (int i = 0; i < bounds.length; i += 2) {
+			if (bounds[i] == IntPred.NEG_INF || bounds[i + 1] == IntPred.POS_INF)
+				continue;
+			long size = bounds[i + 1] - bounds[i] + 1;
+			if (index < size)
+				return (int) (bounds[i] + index);
+			index -= size;
+		}
+		return rayValue(rays(bounds), index);
+	}
+
+	/**
+	 * Enumerates the models in the order of {@link #witnessAt(IntPred, long)},
+	 * walking the bounded intervals and then the rays without indexing each
+	 * model from the start
+	 */
+	@Override
+	public Iterator<Integer> enumerateWitnesses(IntPred p) {
+		final long[] bounds = checkNotNull(p).bounds;
+		final long[] rays = rays(bounds);
+		return new Iterator<Integer>() {
+			// the current bounded interval and the next value in it
+			int i = nextBounded(bounds, 0);
+			long value = i < bounds.length ? bounds[i] : 0;
+			// the index of the next model along the rays
+			long rayIndex = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < bounds.length || rayValue(rays, rayIndex) != null;
+			}
+
+			@Override
+			public Integer next() {
+				if (i < bounds.length) {
+					int ret = (int) value;
+					if (value == bounds[i + 1]) {
+						i = nextBounded(bounds, i + 2);
+						if (i < bounds.length)
+							value = bounds[i];
+					} else
+						value++;
+					return ret;
+				}
+				Integer ret = rayValue(rays, rayIndex);
+				if (ret == null)
+					throw new NoSuchElementException();
+				rayIndex++;
+				return ret;
+			}
+		};
+	}
+
+	// the first bounded interval at or after position i of bounds
+	private static int nextBounded(long[] bounds, int i) {
+		while (i < bounds.length && (bounds[i] == IntPred.NEG_INF || bounds[i + 1] == IntPred.POS_INF))
+			i += 2;
+		return i;
+	}
+
+	// the unbounded rays of bounds as pairs of start and step, in the order
+	// in which their models alternate
+	private static long[] rays(long[] bounds) {
+		if (bounds.length == 0)
+			return new long[0];
+		if (bounds[0] == IntPred.NEG_INF && bounds[1] == IntPred.POS_INF)
+			return new long[] { 0, 1, -1, -1 };
+		long[] rays = new long[4];
+		int k = 0;
+		if (bounds[0] == IntPred.NEG_INF) {
+			rays[k++] = bounds[1];
+			rays[k++] = -1;
+		}
+		if (bounds[bounds.length - 1] == IntPred.POS_INF) {
+			rays[k++] = bounds[bounds.length - 2];
+			rays[k++] = 1;
+		}
+		return Arrays.copyOf(rays, k);
+	}
+
+	// the index-th model along the rays, null past the int range
+	private static Integer rayValue(long[] rays, long index) {
+		int count = rays.length / 2;
+		if (count == 0)
+			return null;
+		int ray = (int) (index % count);
+		long value = rays[2 * ray] + rays[2 * ray + 1] * (index / count);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			return null;
+		return (int) value;
+	}
+
 	@Override
 	public Pair<Integer, Integer> generateWitnesses(IntPred p1) {
 		throw new UnsupportedOperationException("Not supported yet.");
@@ -6,25 +6,32 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 import utilities.Quadruple;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
-
 public class RealPred {
-	
-	public final ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> intervals;
-	
+
+	/**
+	 * The intervals with extremes <code>bounds[2i]</code> and
+	 * <code>bounds[2i+1]</code>, sorted, disjoint and not touching. Unbounded
+	 * extremes are stored as infinities.
+	 */
+	final double[] bounds;
+
+	/**
+	 * <code>open[k]</code> is true iff the extreme <code>bounds[k]</code> is
+	 * excluded from its interval; infinite extremes are always open
+	 */
+	final boolean[] open;
+
 	/**
 	 * The set containing only the integer <code>n</code>
 	 */
 	public RealPred(Double n) {
 		this(n,false, n, false);
 	}
-	
+
 	/**
 	 * The set containing only the interval <code>[bot,top]</code> (extremes
 	 * included)
@@ -32,166 +39,287 @@ public class RealPred {
 	 * indicates the interval is unbounded for that value
 	 */
 	public RealPred(Double bot, Boolean open1, Double top, Boolean open2) {
-		this(ImmutableList.of(new Quadruple(bot,open1,top,open2)));
+		checkArgument(bot == null || top == null || bot <= top);
+		double lo = bot == null ? Double.NEGATIVE_INFINITY : bot + 0.0;
+		double hi = top == null ? Double.POSITIVE_INFINITY : top + 0.0;
+		boolean loOpen = bot == null || checkNotNull(open1);
+		boolean hiOpen = top == null || checkNotNull(open2);
+		if (isEmpty(lo, loOpen, hi, hiOpen)) {
+			this.bounds = new double[0];
+			this.open = new boolean[0];
+		} else {
+			this.bounds = new double[] { lo, hi };
+			this.open = new boolean[] { loOpen, hiOpen };
+		}
 	}
-	
+
 	public RealPred(ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> intervals) {
-		for (Quadruple<Double,Boolean,Double,Boolean> interval : checkNotNull(intervals)) {
-			checkArgument(interval.first == null || interval.second == null || interval.third == null || interval.fourth == null ||
-					interval.first <= interval.third);
+		RealPred[] sorted = new RealPred[checkNotNull(intervals).size()];
+		int n = 0;
+		for (Quadruple<Double,Boolean,Double,Boolean> interval : intervals) {
+			RealPred single = new RealPred(interval.first, interval.second, interval.third, interval.fourth);
+			if (single.bounds.length > 0)
+				sorted[n++] = single;
+		}
+		// sort once by lower extreme, a closed one coming before an open one
+		// with the same value, then merge overlapping and touching intervals
+		// in a single pass
+		Arrays.sort(sorted, 0, n, (p1, p2) -> p1.bounds[0] != p2.bounds[0]
+				? Double.compare(p1.bounds[0], p2.bounds[0]) : Boolean.compare(p1.open[0], p2.open[0]));
+		double[] b = new double[2 * n];
+		boolean[] o = new boolean[2 * n];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			double lo = sorted[i].bounds[0], hi = sorted[i].bounds[1];
+			boolean loOpen = sorted[i].open[0], hiOpen = sorted[i].open[1];
+			if (k > 0 && (lo < b[k - 1] || (lo == b[k - 1] && (!loOpen || !o[k - 1])))) {
+				if (compareTop(hi, hiOpen, b[k - 1], o[k - 1]) > 0) {
+					b[k - 1] = hi;
+					o[k - 1] = hiOpen;
+				}
+				continue;
+			}
+			b[k] = lo;
+			o[k++] = loOpen;
+			b[k] = hi;
+			o[k++] = hiOpen;
 		}
+		this.bounds = k == b.length ? b : Arrays.copyOf(b, k);
+		this.open = k == o.length ? o : Arrays.copyOf(o, k);
+	}
 
-		this.intervals = sortIntervals(checkNotNull(intervals));
+	/**
+	 * Wraps bounds that are already sorted, disjoint and not touching
+	 */
+	RealPred(double[] bounds, boolean[] open) {
+		this.bounds = bounds;
+		this.open = open;
 	}
-	
-	private static ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> sortIntervals(
-			ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> intervals) {
-		
-		for (Quadruple<Double,Boolean,Double,Boolean>  interval : checkNotNull(intervals)) {
-			checkArgument(interval.first == null || interval.third == null ||
-					interval.first <= interval.third);
-		}
-		
-		List<Quadruple<Double,Boolean,Double,Boolean>>  sortLeft = new ArrayList<Quadruple<Double,Boolean,Double,Boolean>>(intervals);
-		Collections.sort(sortLeft, new Comparator<Quadruple<Double,Boolean,Double,Boolean>>() {
-			public int compare(Quadruple<Double,Boolean,Double,Boolean> o1,
-					Quadruple<Double,Boolean,Double,Boolean> o2) {
-				if (checkNotNull(o1).first == null)
-					return -1;
-				if (checkNotNull(o2).first == null)
-					return 1;
-				if(o1.first.equals(o2.first) && (!o1.second) && o2.second)
-					return -1;
-				if(o1.first.equals(o2.first) && o1.second && !o2.second)
-					return 1;
-				if(o1.first > o2.first)
-					return 1;
-				if(o1.first < o2.first)
-					return -1;
-				if(o1.first == o2.first)
-					return 0;
-				assert false;
-				return 0;
-			}
-		});
-		
+
+	private static boolean isEmpty(double lo, boolean loOpen, double hi, boolean hiOpen) {
+		return lo > hi || (lo == hi && (loOpen || hiOpen));
+	}
+
+	/**
+	 * @return the intervals of this predicate as (bot, bot open, top, top
+	 *         open), <code>null</code> standing for an unbounded extreme
+	 */
+	public ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> getIntervals() {
 		ImmutableList.Builder<Quadruple<Double,Boolean,Double,Boolean>> ansBuilder = ImmutableList.builder();
-		for (int i = 0; i < sortLeft.size(); i++) {
-			Double left = sortLeft.get(i).first;
-			Boolean leftOpen = sortLeft.get(i).second;
-			Double right = sortLeft.get(i).third;
-			Boolean rightOpen = sortLeft.get(i).fourth;
-			for (int j = i + 1; j < sortLeft.size(); j++){
-				//checks if sortLeft.get(j) overlaps (or touches) with sortLeft.get(i) at all
-				if (!(right == null ||
-					sortLeft.get(j).first == null || 
-					sortLeft.get(j).first < right ||
-					sortLeft.get(j).first.equals(right) && 
-						(!sortLeft.get(j).second || !rightOpen)))
-						break;
-				if (right != null) {
-					if (sortLeft.get(j).third == null)
-						right = null;
-					else if(right < sortLeft.get(j).third) {
-						right = sortLeft.get(j).third;
-						rightOpen = sortLeft.get(j).fourth;
+		for (int i = 0; i < bounds.length; i += 2)
+			ansBuilder.add(new Quadruple<Double,Boolean,Double,Boolean>(
+					bounds[i] == Double.NEGATIVE_INFINITY ? null : bounds[i], open[i],
+					bounds[i + 1] == Double.POSITIVE_INFINITY ? null : bounds[i + 1], open[i + 1]));
+		return ansBuilder.build();
+	}
+
+	/**
+	 * @return the number of disjoint intervals in this predicate
+	 */
+	public int size() {
+		return bounds.length / 2;
+	}
+
+	public boolean isSatisfiedBy(double n) {
+		// last interval whose lower extreme is at most n
+		int lo = 0, hi = bounds.length / 2 - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (bounds[2 * mid] <= n) {
+				found = mid;
+				lo = mid + 1;
+			} else
+				hi = mid - 1;
+		}
+		if (found < 0)
+			return false;
+		int k = 2 * found;
+		return (n > bounds[k] || !open[k]) && (n < bounds[k + 1] || (n == bounds[k + 1] && !open[k + 1]));
+	}
+
+	/**
+	 * Compares two upper extremes, an open extreme coming before a closed one
+	 * with the same value
+	 */
+	private static int compareTop(double v1, boolean open1, double v2, boolean open2) {
+		if (v1 != v2)
+			return v1 < v2 ? -1 : 1;
+		if (open1 == open2)
+			return 0;
+		return open1 ? -1 : 1;
+	}
+
+	/**
+	 * Intersection of two predicates, by a linear merge
+	 */
+	static RealPred and(RealPred p1, RealPred p2) {
+		double[] b1 = p1.bounds, b2 = p2.bounds;
+		boolean[] o1 = p1.open, o2 = p2.open;
+		int count = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			double[] ret = pass == 0 ? null : new double[2 * count];
+			boolean[] retOpen = pass == 0 ? null : new boolean[2 * count];
+			int k = 0;
+			for (int i = 0, j = 0; i < b1.length && j < b2.length; ) {
+				double lo;
+				boolean loOpen;
+				if (b1[i] != b2[j]) {
+					boolean first = b1[i] > b2[j];
+					lo = first ? b1[i] : b2[j];
+					loOpen = first ? o1[i] : o2[j];
+				} else {
+					lo = b1[i];
+					loOpen = o1[i] || o2[j];
+				}
+				int cmp = compareTop(b1[i + 1], o1[i + 1], b2[j + 1], o2[j + 1]);
+				double hi = cmp <= 0 ? b1[i + 1] : b2[j + 1];
+				boolean hiOpen = cmp <= 0 ? o1[i + 1] : o2[j + 1];
+
+				if (!isEmpty(lo, loOpen, hi, hiOpen)) {
+					if (ret != null) {
+						ret[k] = lo;
+						retOpen[k] = loOpen;
+						ret[k + 1] = hi;
+						retOpen[k + 1] = hiOpen;
 					}
-					else if(right.equals(sortLeft.get(j).third)) //if either is closed, right interval is closed
-						rightOpen = sortLeft.get(j).fourth && rightOpen;
+					k += 2;
 				}
-				i++;
+				if (cmp <= 0)
+					i += 2;
+				if (cmp >= 0)
+					j += 2;
 			}
-			Quadruple<Double,Boolean,Double,Boolean> newInterval = new Quadruple<Double,Boolean,Double,Boolean>(left, leftOpen, right, rightOpen);
-			ansBuilder.add(newInterval);
-		}
-		
-		ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> ans = ansBuilder.build();
-		for (int i = 1; i < ans.size(); i++) { 
-			Quadruple<Double,Boolean,Double,Boolean> curr = ans.get(i);
-			Quadruple<Double,Boolean,Double,Boolean> prev = ans.get(i - 1);
-			checkArgument(checkNotNull(prev.third) < checkNotNull(curr.first) ||
-						(prev.third.equals(curr.first) && prev.fourth && curr.second));
+			if (ret != null)
+				return new RealPred(ret, retOpen);
+			count = k / 2;
 		}
-		
-		return ans;
+		throw new IllegalStateException();
 	}
-	
-	
-	public static ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> invertIntervals(
-			ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> intervals) {
-		
-		List<Quadruple<Double,Boolean,Double,Boolean>> ret = 
-			new ArrayList<Quadruple<Double,Boolean,Double,Boolean>>();
-		
-		intervals = sortIntervals(intervals);
-		if (intervals.isEmpty())
-			return ImmutableList.copyOf(StdRealPred.TRUE.intervals);
-		
-		Double end_point = null;
-		Boolean end_open = true;
-		for (int i = 0; i < intervals.size(); i++) {
-			Quadruple<Double,Boolean,Double,Boolean> interval = intervals.get(i);
-			
-			if (interval.first != null) {
-				ret.add(new Quadruple<Double,Boolean,Double,Boolean>(end_point, end_open, interval.first, !interval.second));
-				if (interval.third == null)
-					break;
-			}
-			
-			if(interval.third != null) {
-				end_point = interval.third;
-				end_open = ! interval.fourth;
+
+	/**
+	 * Union of two predicates, by a linear merge
+	 */
+	static RealPred or(RealPred p1, RealPred p2) {
+		if (p1.bounds.length == 0)
+			return p2;
+		if (p2.bounds.length == 0)
+			return p1;
+		double[] b1 = p1.bounds, b2 = p2.bounds;
+		boolean[] o1 = p1.open, o2 = p2.open;
+		int count = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			double[] ret = pass == 0 ? null : new double[2 * count];
+			boolean[] retOpen = pass == 0 ? null : new boolean[2 * count];
+			int k = 0;
+			int i = 0, j = 0;
+			double curLo = 0, curHi = 0;
+			boolean curLoOpen = false, curHiOpen = false, started = false;
+			while (i < b1.length || j < b2.length) {
+				double lo, hi;
+				boolean loOpen, hiOpen;
+				// a closed lower extreme comes before an open one with the same value
+				if (j >= b2.length || (i < b1.length &&
+						(b1[i] < b2[j] || (b1[i] == b2[j] && (!o1[i] || o2[j]))))) {
+					lo = b1[i]; loOpen = o1[i]; hi = b1[i + 1]; hiOpen = o1[i + 1];
+					i += 2;
+				} else {
+					lo = b2[j]; loOpen = o2[j]; hi = b2[j + 1]; hiOpen = o2[j + 1];
+					j += 2;
+				}
+				if (started && (lo < curHi || (lo == curHi && (!loOpen || !curHiOpen)))) {
+					if (compareTop(hi, hiOpen, curHi, curHiOpen) > 0) {
+						curHi = hi;
+						curHiOpen = hiOpen;
+					}
+					continue;
+				}
+				if (started) {
+					if (ret != null) {
+						ret[k] = curLo;
+						retOpen[k] = curLoOpen;
+						ret[k + 1] = curHi;
+						retOpen[k + 1] = curHiOpen;
+					}
+					k += 2;
+				}
+				curLo = lo;
+				curLoOpen = loOpen;
+				curHi = hi;
+				curHiOpen = hiOpen;
+				started = true;
 			}
-			
-			if(i == intervals.size() - 1 && interval.third != null) {
-				ret.add(new Quadruple<Double,Boolean,Double,Boolean>(end_point, end_open, null, true));
+			if (ret != null) {
+				ret[k] = curLo;
+				retOpen[k] = curLoOpen;
+				ret[k + 1] = curHi;
+				retOpen[k + 1] = curHiOpen;
+				return new RealPred(ret, retOpen);
 			}
+			count = k / 2 + 1;
 		}
-		return ImmutableList.copyOf(ret);
+		throw new IllegalStateException();
 	}
-	
-	public boolean isSatisfiedBy(double n) {
-		for (Quadruple<Double,Boolean,Double,Boolean> interval : intervals) {
-			if (inInterval(interval, n)) 
-				return true;
+
+	/**
+	 * Complement of a predicate
+	 */
+	static RealPred not(RealPred p) {
+		double[] b = p.bounds;
+		boolean[] o = p.open;
+		if (b.length == 0)
+			return new RealPred(new double[] { Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY },
+					new boolean[] { true, true });
+		int count = b.length / 2 + 1;
+		if (b[0] == Double.NEGATIVE_INFINITY)
+			count--;
+		if (b[b.length - 1] == Double.POSITIVE_INFINITY)
+			count--;
+		double[] ret = new double[2 * count];
+		boolean[] retOpen = new boolean[2 * count];
+		int k = 0;
+		double prev = Double.NEGATIVE_INFINITY;
+		boolean prevOpen = true;
+		for (int i = 0; i < b.length; i += 2) {
+			if (b[i] != Double.NEGATIVE_INFINITY) {
+				ret[k] = prev;
+				retOpen[k++] = prevOpen;
+				ret[k] = b[i];
+				retOpen[k++] = !o[i];
+			}
+			prev = b[i + 1];
+			prevOpen = !o[i + 1];
 		}
-		return false;
-	}
-	
-	private static boolean inInterval(Quadruple<Double,Boolean,Double,Boolean> interval, double n) {
-		if (interval.first == null && interval.third == null)
-			return true;
-		if( (interval.first != null && interval.first.equals(n) && !interval.second) || 
-				(interval.third != null && interval.third.equals(n) && !interval.fourth)) //
-			return true;
-		if (interval.first == null)
-			return n < interval.third;
-		if (interval.third == null)
-			return n > interval.first;
-		return interval.first < n && n < interval.third;
+		if (b[b.length - 1] != Double.POSITIVE_INFINITY) {
+			ret[k] = prev;
+			retOpen[k++] = prevOpen;
+			ret[k] = Double.POSITIVE_INFINITY;
+			retOpen[k++] = true;
+		}
+		return new RealPred(ret, retOpen);
 	}
-	
+
 	@Override
 	public String toString() {
-		if (intervals.isEmpty())
+		if (bounds.length == 0)
 			return "empty";
 		List<String> retArr = new ArrayList<String>();
-		for (Quadruple<Double,Boolean,Double,Boolean> interval : intervals) { 
+		for (int i = 0; i < bounds.length; i += 2) {
 			String temp = "";
-			if(interval.second || interval.first == null)
+			if(open[i])
 				temp += "(";
 			else
 				temp += "[";
-			if (interval.first == null)
+			if (bounds[i] == Double.NEGATIVE_INFINITY)
 				temp += "-inf";
-			else 
-				temp += interval.first.toString();
+			else
+				temp += Double.toString(bounds[i]);
 			temp += ",";
-			if (interval.third == null) 
+			if (bounds[i + 1] == Double.POSITIVE_INFINITY)
 				temp += "inf";
 			else
-				temp += interval.third.toString();
-			if(interval.fourth || interval.third == null)
+				temp += Double.toString(bounds[i + 1]);
+			if(open[i + 1])
 				temp += ")";
 			else
 				temp += "]";
@@ -202,17 +330,17 @@ public class RealPred {
 			ret += "U" + retArr.get(i);
 		return ret;
 	}
-	
+
 	@Override
-	public boolean equals(Object obj) { 
-		if (obj instanceof RealPred) 
-			return Objects.equals(intervals, ((RealPred)obj).intervals);
+	public boolean equals(Object obj) {
+		if (obj instanceof RealPred)
+			return Arrays.equals(bounds, ((RealPred)obj).bounds) && Arrays.equals(open, ((RealPred)obj).open);
 		return false;
 	}
-	
+
 	@Override
 	public int hashCode() {
-		return Objects.hash(RealPred.class, intervals);
+		return 31 * (31 * RealPred.class.hashCode() + Arrays.hashCode(bounds)) + Arrays.hashCode(open);
 	}
 
 }
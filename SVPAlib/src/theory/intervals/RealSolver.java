@@ -2,11 +2,8 @@ package theory.intervals;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.sat4j.specs.TimeoutException;
 
-import com.google.common.collect.ImmutableList;
-
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -16,7 +13,6 @@ import java.util.ArrayList;
 
 import theory.BooleanAlgebra;
 import utilities.Pair;
-import utilities.Quadruple;
 
 public class RealSolver extends BooleanAlgebra<RealPred, Double> {
 
@@ -27,9 +23,7 @@ public class RealSolver extends BooleanAlgebra<RealPred, Double> {
 
 	@Override
 	public RealPred MkNot(RealPred p) {
-		ImmutableList<Quadruple<Double,Boolean,Double,Boolean>> l = RealPred.invertIntervals(p.intervals);
-		RealPred r = new RealPred(l);
-		return r;
+		return RealPred.not(checkNotNull(p));
 	}
 
 	@Override
@@ -43,7 +37,7 @@ public class RealSolver extends BooleanAlgebra<RealPred, Double> {
 
 	@Override
 	public RealPred MkOr(RealPred p1, RealPred p2) {
-		return MkNot(MkAnd(MkNot(p1), MkNot(p2)));
+		return RealPred.or(checkNotNull(p1), checkNotNull(p2));
 	}
 
 	@Override
@@ -57,81 +51,7 @@ public class RealSolver extends BooleanAlgebra<RealPred, Double> {
 
 	@Override
 	public RealPred MkAnd(RealPred p1, RealPred p2) {
-		if(checkNotNull(p1).intervals.isEmpty() || checkNotNull(p2).intervals.isEmpty())
-			return False();
-		
-		List<Quadruple<Double,Boolean,Double,Boolean>> newIntervals = 
-				new ArrayList<Quadruple<Double,Boolean,Double,Boolean>>();
-		
-		for (int i = 0, j = 0; i < p1.intervals.size() && j < p2.intervals.size(); ) {
-			Quadruple<Double,Boolean,Double,Boolean> cur1, cur2;
-			cur1 = p1.intervals.get(i);
-			cur2 = p2.intervals.get(j);
-			
-			
-			
-			Double lo = null;
-			Boolean lo_open = false; 
-			if (cur1.first != null) { 
-				if (cur2.first != null) { 
-					if(cur1.first > cur2.first) {
-						lo = cur1.first;
-						lo_open = cur1.second; 
-					} else if (cur1.first < cur2.first) {
-						lo = cur2.first;
-						lo_open = cur2.second; 
-					} else {
-						lo = cur1.first;
-						lo_open = cur1.second || cur2.second;
-					}
-				}
-				else {
-					lo = cur1.first;
-					lo_open = cur1.second;
-				}
-			}
-			else {
-				lo = cur2.first;
-				lo_open = cur2.second;
-			}
-				
-			Double hi = null;
-			Boolean hi_open = false;
-			if (cur1.third != null) { 
-				if (cur2.third != null) {
-					if(cur1.third < cur2.third) {
-						hi = cur1.third;
-						hi_open = cur1.fourth; 
-					} else if (cur1.third > cur2.third) {
-						hi = cur2.third;
-						hi_open = cur2.fourth; 
-					} else {
-						hi = cur1.third;
-						hi_open = cur1.fourth || cur2.fourth;
-					}
-				}
-				else {
-					hi = cur1.third;
-					hi_open = cur1.fourth;
-				}
-			}
-			else {
-				hi = cur2.third;
-				hi_open = cur2.fourth;
-			}
-			
-			if (lo == null || hi == null || lo < hi || (lo.equals(hi) && !lo_open && !hi_open)) {
-				newIntervals.add(new Quadruple<Double,Boolean,Double,Boolean>(lo, lo_open, hi, hi_open));
-			}
-			
-			if (cur1.third == hi)
-				i++;
-			else {
-				j++;
-			}
-		}
-		
-		return new RealPred(ImmutableList.copyOf(newIntervals));
+		return RealPred.and(checkNotNull(p1), checkNotNull(p2));
 	}
 
 	@Override
@@ -148,17 +68,14 @@ public class RealSolver extends BooleanAlgebra<RealPred, Double> {
 	public boolean AreEquivalent(RealPred p1, RealPred p2) {
 		checkNotNull(p1);
 		checkNotNull(p2);
-		
-		boolean b1 = IsSatisfiable(MkAnd(p1,MkNot(p2)));
-		boolean b2 = IsSatisfiable(MkAnd(p2,MkNot(p1)));
-		
-		boolean nonEquivalent =  b1 || b2 ;
-		return !nonEquivalent;
+
+		// bounds are kept in canonical form
+		return p1.equals(p2);
 	}
 
 	@Override
 	public boolean IsSatisfiable(RealPred p) {
-		return !checkNotNull(p).intervals.isEmpty();
+		return checkNotNull(p).bounds.length > 0;
 	}
 
 	@Override
@@ -173,19 +90,21 @@ public class RealSolver extends BooleanAlgebra<RealPred, Double> {
 
 	@Override
 	public Double generateWitness(RealPred p) {
-		if (checkNotNull(p).intervals.isEmpty()) {
+		double[] bounds = checkNotNull(p).bounds;
+		if (bounds.length == 0) {
 			return null;
 		} else {
-			if(p.intervals.get(0).first == null && p.intervals.get(0).third == null) {
+			double lo = bounds[0], hi = bounds[1];
+			if(lo == Double.NEGATIVE_INFINITY && hi == Double.POSITIVE_INFINITY) {
 				return 0.0;
 			}
-			if(p.intervals.get(0).first == null && p.intervals.get(0).third != null) {
-				return p.intervals.get(0).third - 1.0;
+			if(lo == Double.NEGATIVE_INFINITY) {
+				return hi - 1.0;
 			}
-			if(p.intervals.get(0).first != null && p.intervals.get(0).third == null) {
-				return p.intervals.get(0).first + 1.0;
+			if(hi == Double.POSITIVE_INFINITY) {
+				return lo + 1.0;
 			}
-			return p.intervals.get(0).first + ((p.intervals.get(0).third - p.intervals.get(0).first) / 2.0);
+			return lo + ((hi - lo) / 2.0);
 		}
 	}
 
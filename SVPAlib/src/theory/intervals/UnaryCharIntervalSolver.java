@@ -11,7 +11,9 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -27,6 +29,8 @@ import utilities.Pair;
  */
 public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharFunc, Character> {
 
+	private final Random random = new Random();
+
 	@Override
 	public CharPred MkNot(CharPred u) {
 		List<ImmutablePair<Character,Character>> newIntervals =
@@ -153,15 +157,66 @@ public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharF
 		if (checkNotNull(u).intervals.isEmpty()) {
 			return null;
 		} else {
-			Random r = new Random();
-			int whichInterval = r.nextInt(u.intervals.size());
+			int whichInterval = random.nextInt(u.intervals.size());
 			ImmutablePair<Character, Character> interval = u.intervals.get(whichInterval);
 			int diff = interval.right-interval.left;
-			Character c= (char)(Character.valueOf(interval.left) + (diff==0?0:r.nextInt(diff+1)));
+			Character c= (char)(Character.valueOf(interval.left) + (diff==0?0:random.nextInt(diff+1)));
 			return c;
 		}
 	}
 
+	@Override
+	public long countModels(CharPred u) {
+		long count = 0;
+		for (ImmutablePair<Character, Character> interval : checkNotNull(u).intervals)
+			count += interval.right - interval.left + 1;
+		return count;
+	}
+
+	@Override
+	public Character witnessAt(CharPred u, long index) {
+		if (index < 0)
+			return null;
+		for (ImmutablePair<Character, Character> interval : checkNotNull(u).intervals) {
+			long size = interval.right - interval.left + 1;
+			if (index < size)
+				return (char) (interval.left + index);
+			index -= size;
+		}
+		return null;
+	}
+
+	/**
+	 * Enumerates the characters of <code>u</code> in increasing order
+	 */
+	@Override
+	public Iterator<Character> enumerateWitnesses(final CharPred u) {
+		checkNotNull(u);
+		return new Iterator<Character>() {
+			int interval = 0;
+			int next = u.intervals.isEmpty() ? -1 : u.intervals.get(0).left;
+
+			@Override
+			public boolean hasNext() {
+				return interval < u.intervals.size();
+			}
+
+			@Override
+			public Character next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				char ret = (char) next;
+				if (next == u.intervals.get(interval).right) {
+					interval++;
+					if (interval < u.intervals.size())
+						next = u.intervals.get(interval).left;
+				} else
+					next++;
+				return ret;
+			}
+		};
+	}
+
 	@Override
 	public Pair<Character, Character> generateWitnesses(CharPred u) {
 		throw new UnsupportedOperationException("Not supported yet.");
@@ -2,6 +2,10 @@ package theory.sat;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -26,6 +30,12 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 	private HashMap<Set<Integer>, Integer> orCache;
 	private HashMap<Integer, Pair<Boolean, TreeSet<Integer>>> reverseCache;
 
+	// Statistics
+	private long clauses; // clauses currently held by the solver
+	private long solverCalls;
+	private long solverTime; // nanoseconds spent inside the solver
+	private int compactions;
+
 	public SATBooleanAlgebra(ISolver s, int universeSize) {
 		if (universeSize < 0) {
 			throw new IllegalArgumentException("Universe size must be >= 0");
@@ -36,10 +46,8 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 		orCache = new HashMap<>();
 		reverseCache = new HashMap<>();
 		maxid = universeSize + 2;
-		VecInt trueClause = new VecInt();
-		trueClause.push(universe + 1);
 		reverseCache.put(universe + 1, new Pair<>(true, new TreeSet<Integer>()));
-		unsafeAddClause(trueClause);
+		addTrueClause();
 	}
 
 	public SATBooleanAlgebra(int universeSize) {
@@ -108,25 +116,67 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 	private void unsafeAddClause(VecInt clause) {
 		try {
 			solver.addClause(clause);
+			clauses++;
 			// System.out.println("Add clause: " + clause.toString());
 		} catch (ContradictionException ex) {
-			// should never happen
-			ex.printStackTrace();
-			System.err.println("Contradiction when adding clause: " + clause.toString());
-			System.exit(-1);
+			// should never happen: definitions are always satisfiable
+			throw new IllegalStateException("Contradiction when adding clause: " + clause.toString(), ex);
 		}
 	}
 
 	private boolean unsafeIsSatisfiable(VecInt assumptions) {
+		long start = System.nanoTime();
 		try {
 			return solver.isSatisfiable(assumptions, false);
 		} catch (TimeoutException ex) {
-			ex.printStackTrace();
-			System.exit(-1);
-			return false;
+			throw new IllegalStateException("SAT solver timeout", ex);
+		} finally {
+			solverCalls++;
+			solverTime += System.nanoTime() - start;
 		}
 	}
 
+	private void addTrueClause() {
+		VecInt trueClause = new VecInt();
+		trueClause.push(universe + 1);
+		unsafeAddClause(trueClause);
+	}
+
+	// name <=> And cube
+	private void addAndDefinition(int cubeName, Set<Integer> cube) {
+		VecInt cubeImpliesCubeName = new VecInt();
+
+		cubeImpliesCubeName.push(cubeName);
+		for (Integer literal : cube) {
+			// cubeName => literal
+			VecInt cubeNameImpliesLit = new VecInt();
+			cubeNameImpliesLit.push(-cubeName);
+			cubeNameImpliesLit.push(literal);
+			unsafeAddClause(cubeNameImpliesLit);
+
+			cubeImpliesCubeName.push(-literal);
+		}
+		// cube => cubeName
+		unsafeAddClause(cubeImpliesCubeName);
+	}
+
+	// name <=> Or clause
+	private void addOrDefinition(int clauseName, Set<Integer> clause) {
+		// clauseName => clause
+		VecInt clauseNameImpliesClause = new VecInt();
+		clauseNameImpliesClause.push(-clauseName);
+		for (Integer literal : clause) {
+			// literal => cubeName
+			VecInt litImpliesClauseName = new VecInt();
+
+			clauseNameImpliesClause.push(literal);
+			litImpliesClauseName.push(clauseName);
+			litImpliesClauseName.push(-literal);
+			unsafeAddClause(litImpliesClauseName);
+		}
+		unsafeAddClause(clauseNameImpliesClause);
+	}
+
 	public Integer MkAnd(Collection<Integer> subnormalCube) {
 		TreeSet<Integer> cube = new TreeSet<>();
 		for (Integer p : subnormalCube) {
@@ -148,20 +198,7 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 		} else {
 			int cubeName = fresh();
 			// System.out.println(cubeName + " = And " + cube.toString());
-			VecInt cubeImpliesCubeName = new VecInt();
-
-			cubeImpliesCubeName.push(cubeName);
-			for (Integer literal : cube) {
-				// cubeName => literal
-				VecInt cubeNameImpliesLit = new VecInt();
-				cubeNameImpliesLit.push(-cubeName);
-				cubeNameImpliesLit.push(literal);
-				unsafeAddClause(cubeNameImpliesLit);
-
-				cubeImpliesCubeName.push(-literal);
-			}
-			// cube => cubeName
-			unsafeAddClause(cubeImpliesCubeName);
+			addAndDefinition(cubeName, cube);
 			andCache.put(cube, cubeName);
 			reverseCache.put(cubeName, new Pair<>(true, cube));
 			return cubeName;
@@ -196,19 +233,7 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 		} else {
 			int clauseName = fresh();
 			// System.out.println(clauseName + " = Or " + clause.toString());
-			// clauseName => clause
-			VecInt clauseNameImpliesClause = new VecInt();
-			clauseNameImpliesClause.push(-clauseName);
-			for (Integer literal : clause) {
-				// literal => cubeName
-				VecInt litImpliesClauseName = new VecInt();
-
-				clauseNameImpliesClause.push(literal);
-				litImpliesClauseName.push(clauseName);
-				litImpliesClauseName.push(-literal);
-				unsafeAddClause(litImpliesClauseName);
-			}
-			unsafeAddClause(clauseNameImpliesClause);
+			addOrDefinition(clauseName, clause);
 			orCache.put(clause, clauseName);
 			reverseCache.put(clauseName, new Pair<>(false, clause));
 			return clauseName;
@@ -240,9 +265,19 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 
 	@Override
 	public boolean AreEquivalent(Integer p, Integer q) {
-		VecInt equiv = new VecInt();
-		equiv.push(-MkOr(MkAnd(p, q), MkAnd(-p, -q)));
-		return !unsafeIsSatisfiable(equiv);
+		// p and q differ iff p & !q or !p & q is satisfiable. Checking the two
+		// cases under assumptions avoids defining the (throw-away) formula
+		// p <=> q in the solver.
+		VecInt pNotQ = new VecInt();
+		pNotQ.push(p);
+		pNotQ.push(-q);
+		if (unsafeIsSatisfiable(pNotQ)) {
+			return false;
+		}
+		VecInt qNotP = new VecInt();
+		qNotP.push(-p);
+		qNotP.push(q);
+		return !unsafeIsSatisfiable(qNotP);
 	}
 
 	@Override
@@ -298,4 +333,106 @@ public class SATBooleanAlgebra extends BooleanAlgebra<Integer, boolean[]> {
 			phi = MkAnd(phi, i + 1);
 		return phi;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Discards every definition that is not needed by the predicates in
+	 * <code>live</code> and rebuilds the solver so that it only contains the
+	 * definitions of the remaining ones. Predicates that are not (sub-formulas
+	 * of) members of <code>live</code> must not be used after compaction.
+	 * 
+	 * @return the number of definitions that were discarded
+	 */
+	public int compact(Collection<Integer> live) {
+		// Collect the names reachable from the live predicates
+		Set<Integer> reached = new HashSet<>();
+		LinkedList<Integer> toVisit = new LinkedList<>();
+		for (Integer p : live) {
+			toVisit.add(Math.abs(p));
+		}
+		while (!toVisit.isEmpty()) {
+			Integer name = toVisit.removeFirst();
+			if (!reached.add(name)) {
+				continue;
+			}
+			Pair<Boolean, TreeSet<Integer>> def = reverseCache.get(name);
+			if (def != null) {
+				for (Integer literal : def.getSecond()) {
+					toVisit.add(Math.abs(literal));
+				}
+			}
+		}
+
+		// Drop the definitions that are not reachable
+		int discarded = 0;
+		Iterator<Map.Entry<Integer, Pair<Boolean, TreeSet<Integer>>>> it = reverseCache.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, Pair<Boolean, TreeSet<Integer>>> entry = it.next();
+			Integer name = entry.getKey();
+			if (name != universe + 1 && !reached.contains(name)) {
+				Pair<Boolean, TreeSet<Integer>> def = entry.getValue();
+				if (def.getFirst()) {
+					andCache.remove(def.getSecond());
+				} else {
+					orCache.remove(def.getSecond());
+				}
+				it.remove();
+				discarded++;
+			}
+		}
+
+		// Rebuild the solver with the needed definitions only. Names are never
+		// reused, so the surviving predicates keep their identity.
+		solver.reset();
+		clauses = 0;
+		addTrueClause();
+		for (Map.Entry<Integer, Pair<Boolean, TreeSet<Integer>>> entry : reverseCache.entrySet()) {
+			Integer name = entry.getKey();
+			if (name == universe + 1) {
+				continue;
+			}
+			solver.registerLiteral(name);
+			if (entry.getValue().getFirst()) {
+				addAndDefinition(name, entry.getValue().getSecond());
+			} else {
+				addOrDefinition(name, entry.getValue().getSecond());
+			}
+		}
+		compactions++;
+		return discarded;
+	}
+
+	/**
+	 * @return the number of And/Or definitions currently held by the solver
+	 */
+	public int getDefinitionCount() {
+		return reverseCache.size() - 1;
+	}
+
+	/**
+	 * @return the number of clauses currently held by the solver
+	 */
+	public long getClauseCount() {
+		return clauses;
+	}
+
+	/**
+	 * @return the number of calls to the SAT solver
+	 */
+	public long getSolverCalls() {
+		return solverCalls;
+	}
+
+	/**
+	 * @return the total time spent in the SAT solver, in milliseconds
+	 */
+	public long getSolverTime() {
+		return solverTime / 1000000;
+	}
+
+	/**
+	 * @return the number of times the solver has been compacted
+	 */
+	public int getCompactions() {
+		return compactions;
+	}
+}
@@ -0,0 +1,124 @@
+package test.SAFA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import automata.safa.CompiledSAFA;
+import automata.safa.CompiledSAFARun;
+import automata.safa.SAFA;
+import logic.ltl.And;
+import logic.ltl.Eventually;
+import logic.ltl.Globally;
+import logic.ltl.LTLFormula;
+import logic.ltl.Next;
+import logic.ltl.Not;
+import logic.ltl.Or;
+import logic.ltl.Predicate;
+import logic.ltl.Until;
+import theory.characters.CharPred;
+import theory.characters.StdCharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+
+public class CompiledSAFATest {
+
+	@Test
+	public void testEventuallyAndOr() throws TimeoutException {
+		CompiledSAFA<CharPred, Character> conj = compile(new And<>(eva, evn));
+		CompiledSAFA<CharPred, Character> union = compile(new Or<>(eva, evn));
+
+		assertFalse(conj.accepts(lOfS("a#a")));
+		assertFalse(conj.accepts(lOfS("3#")));
+		assertTrue(conj.accepts(lOfS("a3")));
+		assertFalse(conj.accepts(lOfS("##")));
+
+		assertTrue(union.accepts(lOfS("a#a")));
+		assertTrue(union.accepts(lOfS("3#")));
+		assertTrue(union.accepts(lOfS("a3")));
+		assertFalse(union.accepts(lOfS("##")));
+	}
+
+	@Test
+	public void testStepping() throws TimeoutException {
+		// globally, a digit is eventually followed by a letter
+		LTLFormula<CharPred, Character> phi = new Globally<>(
+				new Or<>(new Not<>(new Predicate<>(num)), new Next<>(eva)));
+		CompiledSAFA<CharPred, Character> compiled = compile(phi);
+		CompiledSAFARun<CharPred, Character> run = compiled.newRun();
+
+		assertTrue(run.feed(lOfS("#1")));
+		assertFalse(run.isAccepting());
+		assertTrue(run.feed('a'));
+		assertTrue(run.isAccepting());
+		assertFalse(run.getConfiguration().isEmpty());
+
+		run.reset();
+		assertTrue(run.feed(lOfS("1a2b")));
+		assertTrue(run.isAccepting());
+	}
+
+	@Test
+	public void testDead() throws TimeoutException {
+		// a letter until a digit
+		CompiledSAFA<CharPred, Character> compiled = compile(
+				new Until<>(new Predicate<>(alpha), new Predicate<>(num)));
+		CompiledSAFARun<CharPred, Character> run = compiled.newRun();
+
+		assertTrue(run.feed(lOfS("ab")));
+		assertFalse(run.feed('#'));
+		assertTrue(run.isDead());
+		assertFalse(run.feed('1'));
+	}
+
+	@Test
+	public void testAgreesWithAccepts() throws TimeoutException {
+		List<LTLFormula<CharPred, Character>> formulas = Arrays.asList(
+				new And<>(eva, evn),
+				new Globally<>(new Or<>(new Not<>(new Predicate<>(num)), new Next<>(eva))),
+				new Until<>(new Predicate<>(alpha), new And<>(new Predicate<>(num), new Next<>(evn))),
+				new Or<>(new Globally<>(new Predicate<>(alpha)), new Eventually<>(new And<>(
+						new Predicate<>(num), new Next<>(new Predicate<>(num))))));
+		char[] letters = { 'a', 'b', '1', '2', '#' };
+		Random random = new Random(0);
+
+		for (LTLFormula<CharPred, Character> phi : formulas) {
+			SAFA<CharPred, Character> safa = phi.pushNegations(ba).getSAFA(ba);
+			CompiledSAFA<CharPred, Character> compiled = new CompiledSAFA<>(safa, ba);
+			for (int n = 0; n < 200; n++) {
+				List<Character> word = new ArrayList<>();
+				for (int i = random.nextInt(7); i > 0; i--)
+					word.add(letters[random.nextInt(letters.length)]);
+				assertEquals(word.toString(), safa.accepts(word, ba), compiled.accepts(word));
+			}
+		}
+	}
+
+	private CompiledSAFA<CharPred, Character> compile(LTLFormula<CharPred, Character> phi) throws TimeoutException {
+		return new CompiledSAFA<>(phi.pushNegations(ba).getSAFA(ba), ba);
+	}
+
+	UnaryCharIntervalSolver ba = new UnaryCharIntervalSolver();
+	CharPred alpha = StdCharPred.LOWER_ALPHA;
+	CharPred num = StdCharPred.NUM;
+
+	LTLFormula<CharPred, Character> eva = new Eventually<>(new Predicate<>(alpha));
+	LTLFormula<CharPred, Character> evn = new Eventually<>(new Predicate<>(num));
+
+	// -------------------------
+	// Auxiliary methods
+	// -------------------------
+	private List<Character> lOfS(String s) {
+		List<Character> l = new ArrayList<Character>();
+		for (char c : s.toCharArray())
+			l.add(c);
+		return l;
+	}
+}
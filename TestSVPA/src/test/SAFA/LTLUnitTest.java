@@ -1,5 +1,6 @@
 package test.SAFA;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -17,6 +18,7 @@ import logic.ltl.And;
 import logic.ltl.Eventually;
 import logic.ltl.Globally;
 import logic.ltl.LTLFormula;
+import logic.ltl.LTLInternTable;
 import logic.ltl.Next;
 import logic.ltl.Not;
 import logic.ltl.Or;
@@ -299,6 +301,28 @@ public class LTLUnitTest {
 		assertTrue(models("ba", notA));
 	}
 
+	@Test
+	public void testInterning() throws TimeoutException {
+		LTLFormula<CharPred, Character> untilA = new Until<>(new Predicate<>(alpha), new Next<>(ev(ba, num)));
+		LTLFormula<CharPred, Character> untilB = new Until<>(new Predicate<>(alpha), new Next<>(ev(ba, num)));
+		LTLFormula<CharPred, Character> other = new Until<>(new Predicate<>(num), new Next<>(ev(ba, num)));
+
+		LTLInternTable<CharPred, Character> table = new LTLInternTable<>();
+
+		assertTrue(untilA != untilB);
+		assertTrue(table.intern(untilA) == table.intern(untilB));
+		assertEquals(table.getId(untilA), table.getId(untilB));
+		assertFalse(table.getId(untilA) == table.getId(other));
+		// the subformulas X F num of the three formulas are shared
+		assertEquals(6, table.size());
+
+		// structurally equal subformulas are translated once
+		SAFA<CharPred, Character> shared = new And<>(untilA, untilA).getSAFA(ba);
+		SAFA<CharPred, Character> copies = new And<>(untilA, untilB).getSAFA(ba);
+		assertEquals(shared.stateCount(), copies.stateCount());
+		assertEquals(untilA.getSAFA(ba).stateCount(), copies.stateCount());
+	}
+
 	// ---------------------------------------
 	// Predicates
 	// ---------------------------------------
@@ -1,22 +1,28 @@
 package test.SAFA;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 import org.sat4j.specs.TimeoutException;
 
 import automata.safa.BooleanExpressionFactory;
 import automata.safa.SAFA;
+import automata.safa.SAFA.DecisionEngine;
 import automata.safa.SAFAInputMove;
 import automata.safa.SATRelation;
 import automata.safa.booleanexpression.PositiveBooleanExpression;
+import automata.safa.booleanexpression.PositiveBooleanExpressionFactory;
+import automata.safa.booleanexpression.PositiveExpressionStore;
 import automata.safa.booleanexpression.SumOfProducts;
 import automata.safa.booleanexpression.SumOfProductsFactory;
 import theory.BooleanAlgebra;
@@ -24,6 +30,7 @@ import theory.characters.CharPred;
 import theory.characters.StdCharPred;
 import theory.intervals.UnaryCharIntervalSolver;
 import theory.safa.SAFABooleanAlgebra;
+import utilities.Pair;
 
 public class SAFAUnitTest {
 	@Test
@@ -112,6 +119,8 @@ public class SAFAUnitTest {
 	// Boolean expression factory
 	BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = SAFA.getBooleanExpressionFactory();
 
+	long timeout = 10000;
+
 	SAFA<CharPred, Character> atLeastOneAlpha = getSAFAatLeastOne(ba,alpha);
 	SAFA<CharPred, Character> atLeastOneNum = getSAFAatLeastOne(ba,num);
 
@@ -180,6 +189,24 @@ public class SAFAUnitTest {
 //        assertTrue(rel.isMember(boolexpr.MkOr(sp0, sp1), sp1));
 //    }
 
+	@Test
+	public void testSATRelationCompact() throws TimeoutException {
+		SATRelation rel = new SATRelation();
+		PositiveBooleanExpression sp0 = boolexpr.MkState(0);
+		PositiveBooleanExpression sp1 = boolexpr.MkState(1);
+		PositiveBooleanExpression sp2 = boolexpr.MkState(2);
+		assertTrue(rel.add(boolexpr.MkOr(sp0, sp1), sp1));
+		assertFalse(rel.isMember(boolexpr.MkAnd(sp0, sp2), boolexpr.MkOr(sp1, sp2)));
+		int before = rel.getDefinitionCount();
+
+		rel.compact();
+		assertEquals(1, rel.getCompactions());
+		assertTrue(rel.getDefinitionCount() < before);
+		assertTrue(rel.isMember(boolexpr.MkOr(sp0, sp1), sp1));
+		assertTrue(rel.isMember(boolexpr.MkAnd(sp0, sp1), sp0));
+		assertFalse(rel.isMember(boolexpr.MkAnd(sp0, sp2), boolexpr.MkOr(sp1, sp2)));
+	}
+
 	@Test
 	public void testForwardEquivalence() throws TimeoutException {
 		BooleanExpressionFactory<SumOfProducts> pos = SumOfProductsFactory.getInstance();
@@ -212,4 +239,159 @@ public class SAFAUnitTest {
 		assertTrue(SAFA.isEquivalent(a, notA.negate(ba), ba, boolexpr).first);
 		assertTrue(SAFA.isEquivalent(a, notB.negate(ba), ba, boolexpr).first);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testAntichainEmptiness() throws TimeoutException {
+		SAFA<CharPred, Character> intersection = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+		SAFA<CharPred, Character> contradiction = atLeastOneAlpha.intersectionWith(atLeastOneAlpha.negate(ba), ba);
+
+		for (DecisionEngine engine : DecisionEngine.values()) {
+			Pair<Boolean, List<Character>> result = SAFA.isEmpty(intersection, ba, engine, timeout);
+			assertFalse(result.first);
+			if (engine != DecisionEngine.Reverse)
+				assertTrue(intersection.accepts(result.second, ba));
+
+			assertTrue(SAFA.isEmpty(contradiction, ba, engine, timeout).first);
+		}
+
+		// shortest counterexamples
+		assertEquals(2, SAFA.isEmpty(intersection, ba, DecisionEngine.Antichain, timeout).second.size());
+		assertEquals(0, SAFA.isEmpty(SAFA.getFullSAFA(ba), ba, DecisionEngine.Antichain, timeout).second.size());
+	}
+
+	@Test
+	public void testAntichainInclusion() throws TimeoutException {
+		SAFA<CharPred, Character> intersection = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+		SAFA<CharPred, Character> union = atLeastOneAlpha.unionWith(atLeastOneNum, ba);
+
+		for (DecisionEngine engine : DecisionEngine.values()) {
+			assertTrue(SAFA.isIncluded(intersection, atLeastOneAlpha, ba, engine, timeout).first);
+			assertTrue(SAFA.isIncluded(atLeastOneNum, union, ba, engine, timeout).first);
+			assertTrue(SAFA.isIncluded(union, union, ba, engine, timeout).first);
+
+			Pair<Boolean, List<Character>> result = SAFA.isIncluded(atLeastOneAlpha, intersection, ba, engine,
+					timeout);
+			assertFalse(result.first);
+			if (engine != DecisionEngine.Reverse) {
+				assertTrue(atLeastOneAlpha.accepts(result.second, ba));
+				assertFalse(intersection.accepts(result.second, ba));
+			}
+
+			result = SAFA.isIncluded(union, atLeastOneNum, ba, engine, timeout);
+			assertFalse(result.first);
+			if (engine != DecisionEngine.Reverse) {
+				assertTrue(union.accepts(result.second, ba));
+				assertFalse(atLeastOneNum.accepts(result.second, ba));
+			}
+		}
+	}
+
+	@Test
+	public void testAntichainDisjunctiveMoves() throws TimeoutException {
+		// overlapping moves out of 0: a word with a letter followed by a digit
+		Collection<SAFAInputMove<CharPred, Character>> transitions = new LinkedList<>();
+		transitions.add(new SAFAInputMove<CharPred, Character>(0, boolexpr.MkState(0), ba.True()));
+		transitions.add(new SAFAInputMove<CharPred, Character>(0, boolexpr.MkState(1), alpha));
+		transitions.add(new SAFAInputMove<CharPred, Character>(1, boolexpr.MkState(2), num));
+		transitions.add(new SAFAInputMove<CharPred, Character>(2, boolexpr.MkState(2), ba.True()));
+		SAFA<CharPred, Character> letterThenDigit = SAFA.MkSAFA(transitions, boolexpr.MkState(0), Arrays.asList(2),
+				ba, false, false, false);
+		SAFA<CharPred, Character> intersection = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+
+		assertTrue(SAFA.isIncluded(letterThenDigit, intersection, ba, DecisionEngine.Antichain, timeout).first);
+		Pair<Boolean, List<Character>> result = SAFA.isIncluded(intersection, letterThenDigit, ba,
+				DecisionEngine.Antichain, timeout);
+		assertFalse(result.first);
+		assertFalse(letterThenDigit.accepts(result.second, ba));
+	}
+
+	@Test
+	public void testParallelEquivalence() throws TimeoutException {
+		SAFA<CharPred, Character> intersection = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+		SAFA<CharPred, Character> union = atLeastOneAlpha.unionWith(atLeastOneNum, ba);
+		List<SAFA<CharPred, Character>> auts = Arrays.asList(atLeastOneAlpha, atLeastOneNum, intersection, union,
+				atLeastOneAlpha.negate(ba));
+		List<UnaryCharIntervalSolver> algebras = Arrays.asList(new UnaryCharIntervalSolver(),
+				new UnaryCharIntervalSolver(), new UnaryCharIntervalSolver());
+		ForkJoinPool pool = new ForkJoinPool(3);
+
+		try {
+			for (SAFA<CharPred, Character> left : auts)
+				for (SAFA<CharPred, Character> right : auts) {
+					Pair<Boolean, List<Character>> sequential = SAFA.isEquivalent(left, right, ba, boolexpr);
+					Pair<Boolean, List<Character>> parallel = SAFA.isEquivalent(left, right, ba, boolexpr, timeout,
+							pool, algebras);
+					assertEquals(sequential.first, parallel.first);
+					// the solver picks random models, so witnesses can only be compared by meaning
+					if (!parallel.first)
+						assertTrue(left.accepts(parallel.second, ba) != right.accepts(parallel.second, ba));
+				}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testExpressionStore() {
+		PositiveBooleanExpressionFactory pos = new PositiveBooleanExpressionFactory();
+		PositiveExpressionStore store = pos.getStore();
+
+		assertTrue(pos.MkAnd(pos.MkState(0), pos.MkState(1)) == pos.MkAnd(pos.MkState(0), pos.MkState(1)));
+
+		// deep enough to overflow the stack if evaluated recursively
+		PositiveBooleanExpression phi = pos.MkState(0);
+		for (int i = 1; i < 100000; i++)
+			phi = i % 2 == 0 ? pos.MkAnd(pos.MkState(i), phi) : pos.MkOr(pos.MkState(i), phi);
+		assertEquals(199999, phi.getSize());
+		assertEquals(100000, phi.getStates().size());
+		assertTrue(phi.hasModel(Arrays.asList(99999)));
+		assertFalse(phi.hasModel(Arrays.asList(99998)));
+
+		PositiveBooleanExpression shifted = pos.offset(1).apply(phi);
+		assertTrue(shifted.hasModel(Arrays.asList(100000)));
+		assertFalse(shifted.hasModel(Arrays.asList(99999)));
+
+		int live = store.getLiveNodeCount();
+		long reclaimedBefore = store.getReclaimedNodeCount();
+		assertTrue(live >= 299999);
+
+		// fill the heap until the dropped expression is collected, which
+		// happens at the latest before the heap runs out; then wait for its
+		// store reference to be enqueued too
+		WeakReference<PositiveBooleanExpression> probe = new WeakReference<PositiveBooleanExpression>(phi);
+		phi = null;
+		shifted = null;
+		List<byte[]> ballast = new ArrayList<byte[]>();
+		while (probe.get() != null) {
+			try {
+				ballast.add(new byte[1 << 20]);
+			} catch (OutOfMemoryError e) {
+				ballast.clear();
+			}
+		}
+		ballast = null;
+		long deadline = System.currentTimeMillis() + 10000;
+		while (store.getReclaimedNodeCount() == reclaimedBefore) {
+			assertTrue("no node was freed", System.currentTimeMillis() < deadline);
+			Thread.yield();
+		}
+
+		// no node comes back and every node is either live or freed; the
+		// counts are read again until no node is freed in between
+		long reclaimed;
+		int liveNow;
+		do {
+			reclaimed = store.getReclaimedNodeCount();
+			liveNow = store.getLiveNodeCount();
+		} while (reclaimed != store.getReclaimedNodeCount());
+		assertTrue(liveNow < live);
+		assertEquals(store.getCreatedNodeCount(), liveNow + reclaimed);
+
+		// a new node takes a freed slot
+		int capacity = store.getCapacity();
+		PositiveBooleanExpression fresh = pos.MkState(200000);
+		assertEquals(capacity, store.getCapacity());
+		assertEquals(store.getCreatedNodeCount(), store.getLiveNodeCount() + store.getReclaimedNodeCount());
+		assertTrue(fresh.hasModel(Arrays.asList(200000)));
+	}
+}
@@ -0,0 +1,125 @@
+package test.SRA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+
+import automata.sra.*;
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import theory.characters.CharPred;
+import theory.characters.StdCharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+
+public class SRARunTest {
+
+    @Test
+    public void testFeed() throws TimeoutException {
+        SRA<CharPred, Character> aut = getRepeatedFirst();
+        SRARun<CharPred, Character> run = new SRARun<CharPred, Character>(aut, ba);
+
+        assertFalse(run.isAccepting());
+        assertTrue(run.feed(toList("abc")));
+        assertFalse(run.isAccepting());
+        // the fresh and the store move reach the same configuration
+        assertEquals(1, run.getConfigurations().size());
+
+        assertTrue(run.feed('a'));
+        assertTrue(run.isAccepting());
+        assertEquals(2, run.getConfigurations().size());
+        for (SRAConfiguration<Character> conf : run.getConfigurations())
+            if (aut.isFinalState(conf.state)) {
+                assertEquals(Character.valueOf('a'), conf.getRegister(0));
+                assertEquals(Character.valueOf('c'), conf.getRegister(1));
+            }
+
+        assertTrue(run.feed('b'));
+        assertFalse(run.isAccepting());
+
+        run.reset();
+        assertTrue(run.feed(toList("aba")));
+        assertTrue(run.isAccepting());
+    }
+
+    @Test
+    public void testDeadEarly() throws TimeoutException {
+        SRA<CharPred, Character> aut = getRepeatedFirst();
+        SRARun<CharPred, Character> run = new SRARun<CharPred, Character>(aut, ba);
+
+        // the move on z leads to a state that cannot reach a final state
+        assertTrue(run.feed('a'));
+        assertFalse(run.feed('z'));
+        assertTrue(run.isDead());
+        assertFalse(run.feed('a'));
+    }
+
+    @Test
+    public void testAgreesWithAccepts() throws TimeoutException {
+        SRA<CharPred, Character> aut = getRepeatedFirst();
+        SRARun<CharPred, Character> run = new SRARun<CharPred, Character>(aut, ba);
+        for (String word : Arrays.asList("", "a", "aa", "aba", "abca", "abcb", "azba", "abab", "bcdefb")) {
+            run.reset();
+            run.feed(toList(word));
+            assertEquals(word, aut.accepts(toList(word), ba), run.isAccepting());
+        }
+    }
+
+    @Test
+    public void testConfigurationSharing() {
+        LinkedList<Character> registers = new LinkedList<Character>();
+        registers.add('a');
+        registers.add(null);
+        SRAConfiguration<Character> conf = SRAConfiguration.of(0, registers);
+
+        SRAConfiguration<Character> same = conf.next(0, Collections.singleton(0), 'a');
+        assertEquals(conf, same);
+        assertEquals(conf.hashCode(), same.hashCode());
+
+        SRAConfiguration<Character> stored = conf.next(1, Collections.singleton(1), 'b');
+        assertEquals(Character.valueOf('b'), stored.getRegister(1));
+        assertEquals(Arrays.asList('a', null), conf.getRegisters());
+        assertFalse(conf.equals(stored.next(0, Collections.<Integer>emptySet(), 'c')));
+
+        // registers spanning several chunks, changed and restored one by one
+        LinkedList<Character> many = new LinkedList<Character>();
+        for (int i = 0; i < 20; i++)
+            many.add((char) ('a' + i));
+        SRAConfiguration<Character> wide = SRAConfiguration.of(0, many);
+        SRAConfiguration<Character> changed = wide.next(0, new HashSet<Integer>(Arrays.asList(3, 17)), 'z');
+        assertEquals(Character.valueOf('z'), changed.getRegister(17));
+        assertEquals(Character.valueOf('d'), wide.getRegister(3));
+        assertFalse(wide.equals(changed));
+        SRAConfiguration<Character> restored = changed.next(0, Collections.singleton(3), 'd')
+                .next(0, Collections.singleton(17), 'r');
+        assertEquals(wide, restored);
+        assertEquals(wide.hashCode(), restored.hashCode());
+        assertEquals(many, restored.getRegisters());
+    }
+
+    // words ending with a repetition of their first symbol
+    private SRA<CharPred, Character> getRepeatedFirst() throws TimeoutException {
+        LinkedList<Character> registers = new LinkedList<Character>();
+        registers.add(null);
+        registers.add(null);
+        Collection<SRAMove<CharPred, Character>> transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRAFreshMove<CharPred, Character>(0, 1, StdCharPred.LOWER_ALPHA, 0, registers.size()));
+        transitions.add(new SRAFreshMove<CharPred, Character>(1, 1, new CharPred('a', 'y'), 1, registers.size()));
+        transitions.add(new SRAStoreMove<CharPred, Character>(1, 1, new CharPred('a', 'y'), 1));
+        transitions.add(new SRACheckMove<CharPred, Character>(1, 2, StdCharPred.LOWER_ALPHA, 0));
+        transitions.add(new SRAStoreMove<CharPred, Character>(1, 3, new CharPred('z'), 1));
+        transitions.add(new SRAStoreMove<CharPred, Character>(3, 3, StdCharPred.TRUE, 1));
+        return SRA.MkSRA(transitions, 0, Collections.singleton(2), registers, ba);
+    }
+
+    private static List<Character> toList(String s) {
+        List<Character> list = new LinkedList<Character>();
+        for (char c : s.toCharArray())
+            list.add(c);
+        return list;
+    }
+
+    UnaryCharIntervalSolver ba = new UnaryCharIntervalSolver();
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import automata.sra.*;
 import logic.ltl.Predicate;
@@ -62,8 +63,46 @@ public class SRAUnitTest {
 
         assertFalse(intersection.accepts(la, ba));
         assertFalse(intersection.accepts(lb, ba));
-        assertFalse(intersection.accepts(lab, ba));
+        assertTrue(intersection.accepts(lab, ba));
         assertFalse(intersection.accepts(lnot, ba));
+
+        for (String word : Arrays.asList("", "a", "b", "aa", "ab", "a3", "a33", "3", "44"))
+            assertTrue(word, intersection.accepts(lOfS(word), ba) ==
+                    (autA.accepts(lOfS(word), ba) && autB.accepts(lOfS(word), ba)));
+    }
+
+    @Test
+    public void testIntersectionWithEmpty() throws TimeoutException {
+        // the single word a, with a second register that is never used
+        LinkedList<Character> registers = new LinkedList<Character>();
+        registers.add(null);
+        registers.add(null);
+        Collection<SRAMove<CharPred, Character>> transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRAFreshMove<CharPred, Character>(0, 1, new CharPred('a'), 0, registers.size()));
+        SRA<CharPred, Character> onlyA = SRA.MkSRA(transitions, 0, Collections.singleton(1), registers, ba);
+
+        // a fresh a or b, while the registers already hold both
+        registers = new LinkedList<Character>();
+        registers.add('a');
+        registers.add('b');
+        transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRAFreshMove<CharPred, Character>(0, 1, ba.MkOr(new CharPred('a'), new CharPred('b')), 0, registers.size()));
+        SRA<CharPred, Character> none = SRA.MkSRA(transitions, 0, Collections.singleton(1), registers, ba);
+        assertTrue(SRA.isLanguageEmpty(none, ba, Long.MAX_VALUE));
+
+        assertTrue(SRA.isIntersectionEmpty(onlyA, none, ba, Long.MAX_VALUE));
+        assertTrue(SRA.isIntersectionEmpty(none, onlyA, ba, Long.MAX_VALUE));
+        assertFalse(onlyA.intersectionWith(none, ba).accepts(lOfS("a"), ba));
+        assertTrue(SRA.isLanguageEmpty(onlyA.intersectionWith(none, ba), ba, Long.MAX_VALUE));
+
+        // the registers of the second automaton follow the ones of the first
+        registers = new LinkedList<Character>();
+        registers.add('a');
+        transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRACheckMove<CharPred, Character>(0, 1, alpha, 0));
+        SRA<CharPred, Character> storedA = SRA.MkSRA(transitions, 0, Collections.singleton(1), registers, ba);
+        assertFalse(SRA.isIntersectionEmpty(onlyA, storedA, ba, Long.MAX_VALUE));
+        assertTrue(onlyA.intersectionWith(storedA, ba).accepts(lOfS("a"), ba));
     }
 
     @Test
@@ -113,6 +152,26 @@ public class SRAUnitTest {
         assertFalse(SRA.isLanguageEmpty(testSRA, ba, Long.MAX_VALUE));
     }
 
+    @Test
+    public void testEmptinessMultipleAssignment() throws TimeoutException {
+        // the lazy translation agrees with the full one
+        SRA<CharPred, Character> msra = getMSRA(ba);
+        assertFalse(SRA.isLanguageEmpty(msra, ba, Long.MAX_VALUE));
+        assertFalse(SRA.isLanguageEmpty(msra.toSingleValuedSRA(ba, Long.MAX_VALUE), ba, Long.MAX_VALUE));
+        assertFalse(SRA.isLanguageEmpty(msra, ba, Long.MAX_VALUE));
+
+        // both registers hold a, so the input cannot be equal to them and be a b
+        LinkedList<Character> registers = new LinkedList<Character>();
+        registers.add('a');
+        registers.add('a');
+        Collection<SRAMove<CharPred, Character>> transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRAMove<CharPred, Character>(0, 1, new CharPred('b'),
+                new HashSet<>(Arrays.asList(0, 1)), Collections.emptySet(), Collections.emptySet()));
+        SRA<CharPred, Character> testSRA = SRA.MkSRA(transitions, 0, Collections.singleton(1), registers, ba);
+        assertTrue(SRA.isLanguageEmpty(testSRA, ba, Long.MAX_VALUE));
+        assertTrue(SRA.isLanguageEmpty(testSRA.toSingleValuedSRA(ba, Long.MAX_VALUE), ba, Long.MAX_VALUE));
+    }
+
     @Test
     public void testAcceptance() throws TimeoutException {
         assertTrue(autA.accepts(la, ba));
@@ -267,6 +326,48 @@ public class SRAUnitTest {
         assertTrue(getSRAb(ba).languageIncludes(intSRA, ba, Long.MAX_VALUE));
     }
 
+    @Test
+    public void testRegisterMinimization() throws TimeoutException {
+        // the two registers of msraAut always hold the same value once read
+        SRA<CharPred, Character> minimized = msraAut.minimizeRegisters(ba);
+        assertTrue(minimized.getRegisters().size() == 1);
+        for (String word : Arrays.asList("aaa", "abb", "bbb", "aab", "aa", "aaaa"))
+            assertTrue(word, msraAut.accepts(lOfS(word), ba) == minimized.accepts(lOfS(word), ba));
+        assertFalse(SRA.isLanguageEmpty(minimized, ba, Long.MAX_VALUE));
+
+        // the register holding a is never read, its content does not matter
+        LinkedList<Character> registers = new LinkedList<Character>();
+        registers.add('a');
+        registers.add('b');
+        Collection<SRAMove<CharPred, Character>> transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRACheckMove<CharPred, Character>(0, 1, alpha, 1));
+        SRA<CharPred, Character> testSRA = SRA.getRegisterMinimized(
+                SRA.MkSRA(transitions, 0, Collections.singleton(1), registers, ba), ba);
+        assertTrue(testSRA.getRegisters().size() == 1);
+        assertTrue(testSRA.accepts(lOfS("b"), ba));
+        assertFalse(testSRA.accepts(lOfS("a"), ba));
+    }
+
+    @Test
+    public void testLazyIntersectionEmptiness() throws TimeoutException {
+        // a single digit
+        LinkedList<Character> registers = new LinkedList<Character>();
+        registers.add(null);
+        Collection<SRAMove<CharPred, Character>> transitions = new LinkedList<SRAMove<CharPred, Character>>();
+        transitions.add(new SRAFreshMove<CharPred, Character>(0, 1, num, 0, registers.size()));
+        SRA<CharPred, Character> digit = SRA.MkSRA(transitions, 0, Collections.singleton(1), registers, ba);
+
+        assertFalse(SRA.isIntersectionEmpty(autA, autA, ba, Long.MAX_VALUE));
+        assertFalse(SRA.isIntersectionEmpty(digit, digit, ba, Long.MAX_VALUE));
+        assertTrue(SRA.isIntersectionEmpty(autA, digit, ba, Long.MAX_VALUE));
+        assertTrue(SRA.isIntersectionEmpty(digit, autA, ba, Long.MAX_VALUE));
+        assertTrue(SRA.isLanguageEmpty(autA.intersectionWith(digit, ba), ba, Long.MAX_VALUE));
+
+        assertTrue(SRA.isIntersectionEmpty(autA, SRA.getEmptySRA(ba), ba, Long.MAX_VALUE));
+        assertTrue(SRA.isIntersectionEmpty(autIntOne, autIntTwo, intBa, Long.MAX_VALUE) ==
+                SRA.isLanguageEmpty(autIntOne.intersectionWith(autIntTwo, intBa), intBa, Long.MAX_VALUE));
+    }
+
     @Test
     public void testSRACompilationAndEmptiness() throws TimeoutException {
         SRA<CharPred, Character> toSRA = msraAut.toSingleValuedSRA(ba, Long.MAX_VALUE);
@@ -342,6 +443,28 @@ public class SRAUnitTest {
         assertFalse(SRA.canSimulate(sra1, sra2, ba, true, Long.MAX_VALUE));
     }
 
+    @Test
+    public void testParallelSimulation() throws TimeoutException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SRA<CharPred, Character> sraA = getSRAa(ba);
+            SRA<CharPred, Character> sraB = getSRAb(ba);
+            List<SRA<CharPred, Character>> auts = Arrays.asList(sraA, sraB,
+                    sraA.intersectionWith(sraB, ba, Long.MAX_VALUE), getMSRA(ba));
+
+            for (SRA<CharPred, Character> aut1 : auts)
+                for (SRA<CharPred, Character> aut2 : auts)
+                    for (boolean bisimulation : new boolean[] {false, true})
+                        assertTrue(SRA.canSimulate(aut1, aut2, ba, bisimulation, Long.MAX_VALUE) ==
+                                SRA.canSimulate(aut1, aut2, ba, bisimulation, Long.MAX_VALUE, pool));
+
+            assertTrue(SRA.canSimulate(sraA, sraA, ba, true, Long.MAX_VALUE, pool));
+            assertFalse(SRA.canSimulate(sraA, sraB, ba, false, Long.MAX_VALUE, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 //    @Test
 //    public void testSimilarButNotBisimilarBecauseFinalStates() throws TimeoutException {
 //        CharPred abcPred = ba.MkOr(Arrays.asList(new CharPred('a'), new CharPred('b'), new CharPred('c')));
@@ -428,6 +551,30 @@ public class SRAUnitTest {
         assertFalse(sra2.isLanguageEquivalent(sra1, ba, Long.MAX_VALUE));
     }
 
+    @Test
+    public void testRepeatedQueries() throws TimeoutException {
+        SRA<CharPred, Character> sraA = getSRAa(ba);
+        SRA<CharPred, Character> sraB = getSRAb(ba);
+        SRA<CharPred, Character> intSRA = sraA.intersectionWith(sraB, ba, Long.MAX_VALUE);
+        Integer transitionCount = sraA.getTransitionCount();
+
+        // the second round reuses the minterms and single-valued forms of the first
+        for (int i = 0; i < 2; i++) {
+            assertTrue(sraA.languageIncludes(intSRA, ba, Long.MAX_VALUE));
+            assertTrue(sraB.languageIncludes(intSRA, ba, Long.MAX_VALUE));
+            assertFalse(sraA.isLanguageEquivalent(sraB, ba, Long.MAX_VALUE));
+            assertFalse(SRA.canSimulate(sraA, sraB, ba, false, Long.MAX_VALUE));
+            assertFalse(SRA.isLanguageEmpty(sraA, ba, Long.MAX_VALUE));
+        }
+        // the queries do not change the automata they are asked on
+        assertTrue(transitionCount.equals(sraA.getTransitionCount()));
+
+        // completing sraA adds moves and invalidates what was computed for it
+        sraA.complete(ba);
+        assertFalse(SRA.isLanguageEmpty(sraA, ba, Long.MAX_VALUE));
+        assertTrue(sraA.languageIncludes(intSRA, ba, Long.MAX_VALUE));
+    }
+
     @Test
     public void testMkComplete() throws TimeoutException {
         CharPred abcPred = ba.MkOr(Arrays.asList(new CharPred('a'), new CharPred('b'), new CharPred('c')));
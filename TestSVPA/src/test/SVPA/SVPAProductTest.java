@@ -0,0 +1,125 @@
+package test.SVPA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import automata.AutomataException;
+import automata.svpa.Call;
+import automata.svpa.Internal;
+import automata.svpa.Return;
+import automata.svpa.SVPA;
+import automata.svpa.SVPAMove;
+import automata.svpa.TaggedSymbol;
+import test.SVPA.SVPAWitnessTest.BinaryEqualitySolver;
+import theory.characters.BinaryCharPred;
+import theory.characters.CharPred;
+import theory.characters.ICharPred;
+import theory.characters.StdCharPred;
+
+public class SVPAProductTest {
+
+	BinaryEqualitySolver ba = new BinaryEqualitySolver();
+	ICharPred open = new CharPred('(');
+	ICharPred close = new BinaryCharPred(new CharPred(')'), false);
+
+	@Test
+	public void testLazyEmptiness() throws AutomataException, TimeoutException {
+		SVPA<ICharPred, Character> nested = getNested();
+		SVPA<ICharPred, Character> xInside = getXInside();
+		SVPA<ICharPred, Character> flat = getFlat();
+		SVPA<ICharPred, Character> onlyY = getOnlyY();
+
+		assertFalse(SVPA.isIntersectionEmpty(nested, xInside, ba));
+		assertFalse(SVPA.isIntersectionEmpty(nested, nested, ba));
+		assertTrue(SVPA.isIntersectionEmpty(xInside, flat, ba));
+		assertTrue(SVPA.isIntersectionEmpty(xInside, onlyY, ba));
+		assertFalse(nested.hasEmptyIntersectionWith(onlyY, ba));
+
+		List<SVPA<ICharPred, Character>> auts = Arrays.asList(nested, xInside, flat, onlyY);
+		for (SVPA<ICharPred, Character> aut1 : auts)
+			for (SVPA<ICharPred, Character> aut2 : auts)
+				assertEquals(SVPA.intersection(aut1, aut2, ba).isEmpty,
+						SVPA.isIntersectionEmpty(aut1, aut2, ba));
+	}
+
+	@Test
+	public void testParallelIntersection() throws AutomataException, TimeoutException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<SVPA<ICharPred, Character>> auts = Arrays.asList(getNested(), getXInside(), getFlat(),
+					getOnlyY());
+			for (SVPA<ICharPred, Character> aut1 : auts)
+				for (SVPA<ICharPred, Character> aut2 : auts) {
+					SVPA<ICharPred, Character> seq = SVPA.intersection(aut1, aut2, ba);
+					SVPA<ICharPred, Character> par = SVPA.intersection(aut1, aut2, ba, pool);
+					assertEquals(seq.isEmpty, par.isEmpty);
+					assertEquals(seq.getStates(), par.getStates());
+					assertEquals(seq.getFinalStates(), par.getFinalStates());
+					assertEquals(seq.transitionCount, par.transitionCount);
+					if (!seq.isEmpty) {
+						List<TaggedSymbol<Character>> witness = seq.getWitness(ba);
+						assertTrue(par.accepts(witness, ba));
+					}
+				}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// well-matched parentheses over lowercase letters
+	private SVPA<ICharPred, Character> getNested() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(1, 1, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, open));
+		transitions.add(new Call<ICharPred, Character>(1, 1, 1, open));
+		transitions.add(new Return<ICharPred, Character>(1, 0, 0, close));
+		transitions.add(new Return<ICharPred, Character>(1, 1, 1, close));
+		return SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0), ba);
+	}
+
+	// well-matched parentheses with an x inside some parentheses
+	private SVPA<ICharPred, Character> getXInside() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		for (int i = 0; i < 4; i++)
+			transitions.add(new Internal<ICharPred, Character>(i, i, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(1, 2, new CharPred('x')));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, open));
+		transitions.add(new Call<ICharPred, Character>(1, 1, 1, open));
+		transitions.add(new Call<ICharPred, Character>(2, 2, 2, open));
+		transitions.add(new Call<ICharPred, Character>(3, 3, 3, open));
+		transitions.add(new Return<ICharPred, Character>(1, 0, 0, close));
+		transitions.add(new Return<ICharPred, Character>(1, 1, 1, close));
+		transitions.add(new Return<ICharPred, Character>(2, 3, 0, close));
+		transitions.add(new Return<ICharPred, Character>(2, 2, 1, close));
+		transitions.add(new Return<ICharPred, Character>(2, 2, 2, close));
+		transitions.add(new Return<ICharPred, Character>(3, 3, 3, close));
+		return SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(3), ba);
+	}
+
+	// lowercase letters without parentheses
+	private SVPA<ICharPred, Character> getFlat() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.LOWER_ALPHA));
+		return SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0), ba);
+	}
+
+	// well-matched parentheses over y
+	private SVPA<ICharPred, Character> getOnlyY() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, new CharPred('y')));
+		transitions.add(new Call<ICharPred, Character>(0, 0, 0, open));
+		transitions.add(new Return<ICharPred, Character>(0, 0, 0, close));
+		return SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0), ba);
+	}
+}
@@ -0,0 +1,173 @@
+package test.SVPA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import automata.AutomataException;
+import automata.svpa.Call;
+import automata.svpa.Internal;
+import automata.svpa.Return;
+import automata.svpa.SVPA;
+import automata.svpa.SVPAMove;
+import automata.svpa.TaggedSymbol;
+import automata.svpa.TaggedSymbol.SymbolTag;
+import test.SVPA.SVPAWitnessTest.BinaryEqualitySolver;
+import theory.characters.BinaryCharPred;
+import theory.characters.CharPred;
+import theory.characters.ICharPred;
+import theory.characters.StdCharPred;
+
+public class SVPAReduceTest {
+
+	BinaryEqualitySolver ba = new BinaryEqualitySolver();
+	ICharPred open = new CharPred('(');
+	ICharPred close = new BinaryCharPred(new CharPred(')'), false);
+
+	@Test
+	public void testReduceCopies() throws AutomataException, TimeoutException {
+		// copies of well-matched parentheses over lowercase letters sharing
+		// their stack states, with a call from every copy into the next one
+		int copies = 3;
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		for (int k = 0; k < copies; k++) {
+			int top = 2 * k, in = 2 * k + 1;
+			transitions.add(new Internal<ICharPred, Character>(top, top, StdCharPred.LOWER_ALPHA));
+			transitions.add(new Internal<ICharPred, Character>(in, in, StdCharPred.LOWER_ALPHA));
+			transitions.add(new Call<ICharPred, Character>(top, in, 0, open));
+			transitions.add(new Call<ICharPred, Character>(in, in, 1, open));
+			transitions.add(new Return<ICharPred, Character>(in, top, 0, close));
+			transitions.add(new Return<ICharPred, Character>(in, in, 1, close));
+			if (k > 0)
+				transitions.add(new Call<ICharPred, Character>(top - 2, in, 0, open));
+		}
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0, 2, 4), ba);
+		assertEquals(2 * copies, aut.getStates().size());
+
+		SVPA<ICharPred, Character> reduced = aut.reduce(ba);
+		assertEquals(2, reduced.getStates().size());
+		assertEquals(6, reduced.transitionCount.intValue());
+		assertSameLanguage(aut, reduced, 6);
+
+		List<TaggedSymbol<Character>> word = Arrays.asList(new TaggedSymbol<Character>('(', SymbolTag.Call),
+				new TaggedSymbol<Character>('a', SymbolTag.Internal),
+				new TaggedSymbol<Character>('(', SymbolTag.Call),
+				new TaggedSymbol<Character>(')', SymbolTag.Return),
+				new TaggedSymbol<Character>(')', SymbolTag.Return));
+		assertTrue(reduced.accepts(word, ba));
+		assertFalse(reduced.accepts(word.subList(0, 4), ba));
+	}
+
+	@Test
+	public void testReduceKeepsFinality() throws AutomataException, TimeoutException {
+		// the same moves out of a final and a non-final state
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 1, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(1, 2, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(2, 2, StdCharPred.LOWER_ALPHA));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(1, 2), ba);
+
+		SVPA<ICharPred, Character> reduced = aut.reduce(ba);
+		assertEquals(2, reduced.getStates().size());
+		assertSameLanguage(aut, reduced, 6);
+	}
+
+	@Test
+	public void testReduceStackStates() throws AutomataException, TimeoutException {
+		// two stack states with equivalent returns and one that differs
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, new CharPred('a')));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 1, new CharPred('b')));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 2, new CharPred('c')));
+		transitions.add(new Return<ICharPred, Character>(1, 2, 0, close));
+		transitions.add(new Return<ICharPred, Character>(1, 2, 1, close));
+		transitions.add(new Return<ICharPred, Character>(1, 3, 2, close));
+		transitions.add(new Internal<ICharPred, Character>(3, 2, StdCharPred.LOWER_ALPHA));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(2), ba);
+
+		SVPA<ICharPred, Character> reduced = aut.reduce(ba);
+		assertEquals(4, reduced.getStates().size());
+		// calls on a and b are merged into a single move
+		assertEquals(2, reduced.getCallsFrom(reduced.getInitialStates()).size());
+		assertSameLanguage(aut, reduced, 6);
+	}
+
+	@Test
+	public void testDeterminize() throws AutomataException, TimeoutException {
+		// well-matched parentheses with an x inside some parentheses, guessing
+		// the position of the x
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		for (int i = 0; i < 4; i++)
+			transitions.add(new Internal<ICharPred, Character>(i, i, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(1, 2, new CharPred('x')));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, open));
+		transitions.add(new Call<ICharPred, Character>(1, 1, 1, open));
+		transitions.add(new Call<ICharPred, Character>(2, 2, 2, open));
+		transitions.add(new Call<ICharPred, Character>(3, 3, 3, open));
+		transitions.add(new Return<ICharPred, Character>(1, 0, 0, close));
+		transitions.add(new Return<ICharPred, Character>(1, 1, 1, close));
+		transitions.add(new Return<ICharPred, Character>(2, 3, 0, close));
+		transitions.add(new Return<ICharPred, Character>(2, 2, 1, close));
+		transitions.add(new Return<ICharPred, Character>(2, 2, 2, close));
+		transitions.add(new Return<ICharPred, Character>(3, 3, 3, close));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(3), ba);
+		assertFalse(aut.isDeterministic(ba));
+
+		SVPA<ICharPred, Character> deter = aut.determinize(ba);
+		assertTrue(deter.isDeterministic(ba));
+		assertSameLanguage(aut, deter, 5);
+		assertSameLanguage(aut, deter.reduce(ba), 5);
+	}
+
+	@Test
+	public void testDeterminizeChain() throws AutomataException, TimeoutException {
+		// a chain of states reading a letter inside parentheses or skipping
+		// to the next one on a call
+		int n = 8;
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		for (int i = 0; i < n; i++) {
+			transitions.add(new Internal<ICharPred, Character>(i, i + 1, StdCharPred.LOWER_ALPHA));
+			transitions.add(new Internal<ICharPred, Character>(i, i, new CharPred('a')));
+			transitions.add(new Call<ICharPred, Character>(i, i + 1, i, open));
+			transitions.add(new Return<ICharPred, Character>(i + 1, i + 1, i, close));
+		}
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(n), ba);
+
+		SVPA<ICharPred, Character> deter = aut.determinize(ba);
+		assertTrue(deter.isDeterministic(ba));
+		assertSameLanguage(aut, deter, 4);
+	}
+
+	// compares the two automata on every nested word up to maxLength over
+	// the characters of the tests
+	private void assertSameLanguage(SVPA<ICharPred, Character> aut1, SVPA<ICharPred, Character> aut2,
+			int maxLength) throws TimeoutException {
+		List<TaggedSymbol<Character>> symbols = Arrays.asList(new TaggedSymbol<Character>('a', SymbolTag.Call),
+				new TaggedSymbol<Character>('b', SymbolTag.Call), new TaggedSymbol<Character>('(', SymbolTag.Call),
+				new TaggedSymbol<Character>(')', SymbolTag.Return),
+				new TaggedSymbol<Character>('a', SymbolTag.Internal),
+				new TaggedSymbol<Character>('x', SymbolTag.Internal));
+		List<List<TaggedSymbol<Character>>> words = new LinkedList<List<TaggedSymbol<Character>>>();
+		words.add(new LinkedList<TaggedSymbol<Character>>());
+		for (int length = 0; length <= maxLength; length++) {
+			List<List<TaggedSymbol<Character>>> longer = new LinkedList<List<TaggedSymbol<Character>>>();
+			for (List<TaggedSymbol<Character>> word : words) {
+				assertEquals(word.toString(), aut1.accepts(word, ba), aut2.accepts(word, ba));
+				for (TaggedSymbol<Character> symbol : symbols) {
+					List<TaggedSymbol<Character>> next = new LinkedList<TaggedSymbol<Character>>(word);
+					next.add(symbol);
+					longer.add(next);
+				}
+			}
+			words = longer;
+		}
+	}
+}
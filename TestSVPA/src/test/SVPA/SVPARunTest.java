@@ -0,0 +1,209 @@
+package test.SVPA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import automata.AutomataException;
+import automata.svpa.Call;
+import automata.svpa.CompiledSVPA;
+import automata.svpa.CompiledSVPARun;
+import automata.svpa.Internal;
+import automata.svpa.NestedWordReader;
+import automata.svpa.Return;
+import automata.svpa.SVPA;
+import automata.svpa.SVPAMove;
+import automata.svpa.SVPARun;
+import automata.svpa.TaggedSymbol.SymbolTag;
+import theory.characters.BinaryCharPred;
+import theory.characters.CharPred;
+import theory.characters.ICharPred;
+import theory.characters.StdCharPred;
+import theory.intervals.EqualitySolver;
+import utilities.Pair;
+
+public class SVPARunTest {
+
+	EqualitySolver ba = new EqualitySolver();
+
+	@Test
+	public void testRun() throws AutomataException, TimeoutException {
+		// internal lower case letters, then calls on '('
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, new CharPred('(')));
+		transitions.add(new Call<ICharPred, Character>(1, 1, 0, new CharPred('(')));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0), ba);
+
+		SVPARun<ICharPred, Character> run = new SVPARun<ICharPred, Character>(aut, ba);
+		assertTrue(run.isAccepting());
+		assertTrue(run.internal('a'));
+		assertTrue(run.isAccepting());
+		assertTrue(run.call('('));
+		assertTrue(run.call('('));
+		assertEquals(2, run.getDepth());
+		assertFalse(run.isAccepting());
+		assertFalse(run.internal('a'));
+		assertTrue(run.isDead());
+		assertFalse(run.internal('a'));
+
+		run.reset();
+		assertFalse(run.internal('A'));
+		assertTrue(run.isDead());
+
+		// a bounded run rejects deeper inputs
+		SVPARun<ICharPred, Character> bounded = new SVPARun<ICharPred, Character>(aut, ba, 3);
+		for (int i = 0; i < 3; i++)
+			assertTrue(bounded.call('('));
+		assertFalse(bounded.call('('));
+		assertTrue(bounded.isDead());
+	}
+
+	@Test
+	public void testCompiledRun() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(0, 2, StdCharPred.NUM));
+		transitions.add(new Internal<ICharPred, Character>(2, 0, new CharPred('a', 'm')));
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, new CharPred('(')));
+		transitions.add(new Call<ICharPred, Character>(1, 1, 1, new CharPred('(')));
+		transitions.add(new Call<ICharPred, Character>(2, 1, 0, new CharPred('[')));
+		transitions.add(new Internal<ICharPred, Character>(1, 1, StdCharPred.NUM));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0, 1), ba);
+
+		CompiledSVPA compiled = new CompiledSVPA(aut, ba);
+		// ( digits [ a-m n-z and the five gaps between them
+		assertEquals(10, compiled.getClassCount());
+
+		// the compiled and the interpreted run agree on random inputs
+		char[] alphabet = { 'a', 'n', 'z', 'A', '0', '9', '(', '[' };
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			SVPARun<ICharPred, Character> run = new SVPARun<ICharPred, Character>(aut, ba);
+			CompiledSVPARun compiledRun = compiled.newRun();
+			for (int j = 0; j < 8; j++) {
+				char c = alphabet[random.nextInt(alphabet.length)];
+				boolean isCall = random.nextBoolean();
+				boolean alive = isCall ? run.call(c) : run.internal(c);
+				assertEquals(alive, isCall ? compiledRun.call(c) : compiledRun.internal(c));
+				assertEquals(run.isDead(), compiledRun.isDead());
+				assertEquals(run.isAccepting(), compiledRun.isAccepting());
+			}
+		}
+	}
+
+	@Test
+	public void testCompiledReturns() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Call<ICharPred, Character>(0, 0, 0, new CharPred('(')));
+		transitions.add(new Call<ICharPred, Character>(0, 0, 1, new CharPred('[', '\\')));
+		transitions.add(new Internal<ICharPred, Character>(1, 0, new CharPred('a')));
+		// ( closes with ), [ with ] and \ with itself or |
+		ArrayList<Pair<CharPred, CharPred>> parens = new ArrayList<Pair<CharPred, CharPred>>();
+		parens.add(new Pair<CharPred, CharPred>(new CharPred('('), new CharPred(')')));
+		transitions.add(new Return<ICharPred, Character>(0, 0, 0, new BinaryCharPred(StdCharPred.FALSE, parens)));
+		ArrayList<Pair<CharPred, CharPred>> brackets = new ArrayList<Pair<CharPred, CharPred>>();
+		brackets.add(new Pair<CharPred, CharPred>(new CharPred('['), new CharPred(']')));
+		brackets.add(new Pair<CharPred, CharPred>(new CharPred('\\'), new CharPred('|')));
+		transitions.add(new Return<ICharPred, Character>(0, 1, 1, new BinaryCharPred(new CharPred('\\'), brackets)));
+		// the reachability analysis needs call guards as binary predicates
+		EqualitySolver ba = new EqualitySolver() {
+			@Override
+			public ICharPred toBinaryPredicate(ICharPred p) {
+				ArrayList<Pair<CharPred, CharPred>> any = new ArrayList<Pair<CharPred, CharPred>>();
+				any.add(new Pair<CharPred, CharPred>((CharPred) p, StdCharPred.TRUE));
+				return new BinaryCharPred((CharPred) p, any);
+			}
+		};
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0), ba);
+		CompiledSVPA compiled = new CompiledSVPA(aut, ba);
+
+		char[] alphabet = { 'a', 'z', '(', ')', '[', ']', '\\', '|', '}' };
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			SVPARun<ICharPred, Character> run = new SVPARun<ICharPred, Character>(aut, ba);
+			CompiledSVPARun compiledRun = compiled.newRun();
+			for (int j = 0; j < 10; j++) {
+				char c = alphabet[random.nextInt(alphabet.length)];
+				SymbolTag tag = SymbolTag.values()[random.nextInt(3)];
+				if (tag == SymbolTag.Call)
+					assertEquals(run.call(c), compiledRun.call(c));
+				else if (tag == SymbolTag.Return)
+					assertEquals(run.ret(c), compiledRun.ret(c));
+				else
+					assertEquals(run.internal(c), compiledRun.internal(c));
+				assertEquals(run.isAccepting(), compiledRun.isAccepting());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompileNonDeterministic() throws AutomataException, TimeoutException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Internal<ICharPred, Character>(0, 1, new CharPred('a')));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(1), ba);
+		new CompiledSVPA(aut, ba);
+	}
+
+	@Test
+	public void testFeed() throws AutomataException, TimeoutException, IOException {
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Internal<ICharPred, Character>(0, 0, StdCharPred.NUM));
+		transitions.add(new Call<ICharPred, Character>(0, 0, 0, new CharPred('[')));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(0), ba);
+		CompiledSVPA compiled = new CompiledSVPA(aut, ba);
+
+		assertTrue(NestedWordReader.json(new StringReader("42")).feed(new SVPARun<ICharPred, Character>(aut, ba)));
+		assertTrue(NestedWordReader.json(new StringReader("42")).feed(compiled.newRun()));
+		assertFalse(NestedWordReader.json(new StringReader("[4")).feed(new SVPARun<ICharPred, Character>(aut, ba)));
+		assertFalse(NestedWordReader.json(new StringReader("[4")).feed(compiled.newRun()));
+		assertFalse(NestedWordReader.json(new StringReader("4a2")).feed(compiled.newRun()));
+	}
+
+	private String tags(NestedWordReader reader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		while (reader.next())
+			sb.append(reader.getTag() == SymbolTag.Call ? 'C' : reader.getTag() == SymbolTag.Return ? 'R' : '.');
+		return sb.toString();
+	}
+
+	@Test
+	public void testXml() throws IOException {
+		String doc = "<a x='>'><b/><?p?><!--<c>--><![CDATA[<d>]]></a>";
+		String expected = "C........" + "C..R" + "....." + ".........." + "..............." + "...R";
+		assertEquals(expected, tags(NestedWordReader.xml(new StringReader(doc))));
+	}
+
+	@Test
+	public void testHtml() throws IOException {
+		String doc = "<p>a<br>b<script>x<y</script></p>";
+		String expected = "C.." + "." + "C..R" + "." + "C......." + "..." + "........R" + "...R";
+		assertEquals(expected, tags(NestedWordReader.html(new StringReader(doc))));
+
+		// inside raw text only the end tag of the element closes it, whatever
+		// its case
+		doc = "<script>a</b>c</scriptx></Script >d<style></</style>";
+		expected = "C......." + "." + "...." + "." + ".........." + ".........R" + "." + "C......" + ".." + ".......R";
+		assertEquals(expected, tags(NestedWordReader.html(new StringReader(doc))));
+	}
+
+	@Test
+	public void testJson() throws IOException {
+		String doc = "{\"a\":[1,\"]\\\"}\"],\"b\":{}}";
+		String expected = "C" + "...." + "C" + ".." + "......" + "R" + "....." + "CR" + "R";
+		assertEquals(expected, tags(NestedWordReader.json(new StringReader(doc))));
+	}
+}
@@ -0,0 +1,57 @@
+package test.SVPA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import automata.svpa.SVPAStack;
+
+public class SVPAStackTest {
+
+	@Test
+	public void testPushPop() {
+		SVPAStack<Character> empty = new SVPAStack<Character>();
+		assertTrue(empty.isEmpty());
+
+		SVPAStack<Character> s = empty.push(1, 'a').push(2, 'b');
+		assertEquals(2, s.size());
+		assertEquals(Integer.valueOf(2), s.peekState());
+		assertEquals(Character.valueOf('b'), s.peekSymbol());
+		assertSame(empty, s.pop().pop());
+		assertEquals("[(1, a), (2, b)]", s.toString());
+	}
+
+	@Test
+	public void testSharing() {
+		SVPAStack<Character> empty = new SVPAStack<Character>();
+		SVPAStack<Character> s1 = empty.push(1, 'a').push(2, 'b');
+		SVPAStack<Character> s2 = empty.push(1, 'a').push(2, 'b');
+		SVPAStack<Character> s3 = empty.push(1, 'a').push(2, 'c');
+
+		assertSame(s1, s2);
+		assertNotSame(s1, s3);
+		assertSame(s1.pop(), s3.pop());
+	}
+
+	@Test
+	public void testDeepNesting() {
+		SVPAStack<Character> empty = new SVPAStack<Character>();
+		SVPAStack<Character> s = empty;
+		for (int i = 0; i < 100000; i++)
+			s = s.push(i % 3, '(');
+		assertEquals(100000, s.size());
+		for (int i = 100000 - 1; i >= 0; i--) {
+			assertEquals(Integer.valueOf(i % 3), s.peekState());
+			s = s.pop();
+		}
+		assertSame(empty, s);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPopEmpty() {
+		new SVPAStack<Character>().pop();
+	}
+}
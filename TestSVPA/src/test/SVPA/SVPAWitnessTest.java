@@ -0,0 +1,96 @@
+package test.SVPA;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import automata.AutomataException;
+import automata.svpa.Call;
+import automata.svpa.Internal;
+import automata.svpa.Return;
+import automata.svpa.SVPA;
+import automata.svpa.SVPAMove;
+import automata.svpa.TaggedSymbol;
+import automata.svpa.TaggedSymbol.SymbolTag;
+import theory.characters.BinaryCharPred;
+import theory.characters.CharPred;
+import theory.characters.ICharPred;
+import theory.characters.StdCharPred;
+import theory.intervals.EqualitySolver;
+
+public class SVPAWitnessTest {
+
+	// the call guard is already a valid left component of a binary predicate
+	static class BinaryEqualitySolver extends EqualitySolver {
+		@Override
+		public ICharPred toBinaryPredicate(ICharPred predicate) {
+			return predicate;
+		}
+	}
+
+	BinaryEqualitySolver ba = new BinaryEqualitySolver();
+	ICharPred open = new CharPred('(');
+	ICharPred close = new BinaryCharPred(new CharPred(')'), false);
+
+	@Test
+	public void testNestedWitness() throws AutomataException, TimeoutException {
+		// depth nested parentheses, with internal letters at the bottom
+		int depth = 50;
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		for (int i = 0; i < depth; i++) {
+			transitions.add(new Call<ICharPred, Character>(i, i + 1, i, open));
+			transitions.add(new Return<ICharPred, Character>(depth + i + 1, depth + i + 2, depth - 1 - i, close));
+		}
+		transitions.add(new Internal<ICharPred, Character>(depth, depth + 1, StdCharPred.LOWER_ALPHA));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0),
+				Arrays.asList(2 * depth + 1), ba);
+		assertFalse(aut.isEmpty);
+		assertEquals(2 * depth + 2, aut.getStates().size());
+
+		List<TaggedSymbol<Character>> witness = aut.getWitness(ba);
+		assertEquals(2 * depth + 1, witness.size());
+		for (int i = 0; i < depth; i++) {
+			assertEquals(SymbolTag.Call, witness.get(i).tag);
+			assertEquals(SymbolTag.Return, witness.get(depth + 1 + i).tag);
+		}
+		assertEquals(SymbolTag.Internal, witness.get(depth).tag);
+		assertTrue(aut.accepts(witness, ba));
+	}
+
+	@Test
+	public void testUnmatchedStack() throws AutomataException, TimeoutException {
+		// the return expects a stack state no call pushes
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, open));
+		transitions.add(new Internal<ICharPred, Character>(1, 1, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Return<ICharPred, Character>(1, 2, 1, close));
+		transitions.add(new Internal<ICharPred, Character>(2, 3, StdCharPred.LOWER_ALPHA));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(3), ba);
+		assertTrue(aut.isEmpty);
+	}
+
+	@Test
+	public void testLargeChain() throws AutomataException, TimeoutException {
+		// a call and its return around a long internal chain
+		int n = 10000;
+		Collection<SVPAMove<ICharPred, Character>> transitions = new LinkedList<SVPAMove<ICharPred, Character>>();
+		transitions.add(new Call<ICharPred, Character>(0, 1, 0, open));
+		for (int i = 1; i < n - 2; i++)
+			transitions.add(new Internal<ICharPred, Character>(i, i + 1, StdCharPred.LOWER_ALPHA));
+		transitions.add(new Return<ICharPred, Character>(n - 2, n - 1, 0, close));
+		SVPA<ICharPred, Character> aut = SVPA.MkSVPA(transitions, Arrays.asList(0), Arrays.asList(n - 1), ba);
+		assertEquals(n, aut.getStates().size());
+
+		List<TaggedSymbol<Character>> witness = aut.getWitness(ba);
+		assertEquals(n - 1, witness.size());
+		assertTrue(aut.accepts(witness, ba));
+	}
+}
@@ -0,0 +1,98 @@
+package test.Theory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import theory.bdd.BDD;
+import theory.bdd.BDDFactory;
+import theory.bdd.JFactory;
+import theory.bdd.MicroFactory;
+import theory.bdd.TestBDDFactory;
+
+public class BDDFactoryUnitTest {
+
+	// Random Boolean combinations of the variables; TestBDDFactory throws if
+	// the two factories disagree on any of the results
+	private static void randomWorkload(BDDFactory f, int vars, int steps, long seed) {
+		f.setVarNum(vars);
+		Random r = new Random(seed);
+		List<BDD> pool = new ArrayList<>();
+		for (int i = 0; i < vars; i++)
+			pool.add(f.ithVar(i));
+		for (int i = 0; i < steps; i++) {
+			BDD a = pool.get(r.nextInt(pool.size()));
+			BDD b = pool.get(r.nextInt(pool.size()));
+			BDD c;
+			switch (r.nextInt(5)) {
+			case 0:
+				c = a.and(b);
+				break;
+			case 1:
+				c = a.or(b);
+				break;
+			case 2:
+				c = a.xor(b);
+				break;
+			case 3:
+				c = a.not();
+				break;
+			default:
+				c = a.ite(b, pool.get(r.nextInt(pool.size())));
+			}
+			assertEquals(c.satCount(), c.id().satCount(), 0);
+			pool.add(c);
+			if (pool.size() > 200)
+				pool.remove(vars + r.nextInt(pool.size() - vars)).free();
+		}
+	}
+
+	@Test
+	public void testOffHeapNodeTable() {
+		// a tiny initial table forces resizing and garbage collection
+		BDDFactory f = new TestBDDFactory(JFactory.init(50, 10), JFactory.initOffHeap(50, 10));
+		randomWorkload(f, 10, 1000, 1);
+
+		BDDFactory offheap = BDDFactory.init("joffheap", 50, 10);
+		offheap.setVarNum(20);
+		BDD all = offheap.one();
+		for (int i = 0; i < 20; i += 2)
+			all = all.and(offheap.ithVar(i).biimp(offheap.ithVar(i + 1)));
+		assertEquals(Math.pow(2, 10), all.satCount(), 0);
+		assertTrue(offheap.getNodeTableSize() > 50);
+	}
+
+	@Test
+	public void testComplementLinks() {
+		BDDFactory f = new TestBDDFactory(BDDFactory.init("jcomplement", 50, 10), MicroFactory.init(50, 10));
+		randomWorkload(f, 10, 1000, 2);
+		f = new TestBDDFactory(JFactory.initComplementLinks(50, 10), JFactory.init(50, 10));
+		randomWorkload(f, 10, 1000, 3);
+
+		// links must stay consistent across garbage collections and reordering
+		BDDFactory jc = JFactory.initComplementLinks(50, 10);
+		jc.setVarNum(8);
+		List<BDD> pool = new ArrayList<>();
+		BDD acc = jc.zero();
+		for (int i = 0; i < 8; i += 2) {
+			acc = acc.or(jc.ithVar(i).and(jc.ithVar(i + 1).not()));
+			pool.add(acc);
+			pool.add(acc.not());
+		}
+		jc.varBlockAll();
+		jc.reorder(BDDFactory.REORDER_SIFT);
+		jc.clearVarBlocks();
+		jc.setVarOrder(new int[] { 7, 6, 5, 4, 3, 2, 1, 0 });
+		for (BDD b : pool) {
+			BDD n = b.not();
+			assertTrue(n.and(b).isZero());
+			assertTrue(n.or(b).isOne());
+			assertTrue(n.not().equals(b));
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package test.Theory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import theory.bdd.BDD;
+import theory.bdd.BDDFactory;
+import theory.bdd.ConcurrentFactory;
+import theory.bddalgebra.BDDSolver;
+
+public class BDDSolverUnitTest {
+
+	// x0 <=> xn & x1 <=> xn+1 & ...: linear with an interleaved order,
+	// exponential with the natural one
+	private static BDD pairs(BDDSolver ba, int n) {
+		BDD acc = ba.True();
+		for (int i = 0; i < n; i++) {
+			BDD x = ba.MkVar(i);
+			BDD y = ba.MkVar(i + n);
+			BDD eq = ba.MkOr(ba.MkAnd(x, y), ba.MkAnd(ba.MkNot(x), ba.MkNot(y)));
+			acc = ba.MkAnd(acc, eq);
+		}
+		return acc;
+	}
+
+	@Test
+	public void testAutoReorder() {
+		int n = 10;
+		BDDSolver natural = new BDDSolver(2 * n, "java", 10000, 1000);
+		int before = pairs(natural, n).nodeCount();
+
+		// a small node table makes the factory reorder while building
+		BDDSolver ba = new BDDSolver(2 * n, "java", 100, 100);
+		ba.enableAutoReorder(BDDFactory.REORDER_SIFT);
+		BDD reordered = pairs(ba, n);
+		assertTrue(ba.getReorderings() > 0);
+		assertTrue(reordered.nodeCount() < before);
+		assertEquals(natural.countModels(pairs(natural, n)), ba.countModels(reordered));
+
+		// explicit orders are still accepted once reordering has run
+		int[] order = ba.getVarOrder();
+		ba.setVarOrder(order);
+		assertEquals(order[0], ba.getVarOrder()[0]);
+	}
+
+	@Test
+	public void testReorderThreshold() {
+		int n = 10;
+		// the node table never fills up, so only the threshold triggers reordering
+		BDDSolver full = new BDDSolver(2 * n, "java", 100000, 1000);
+		full.enableAutoReorder(BDDFactory.REORDER_SIFT);
+		pairs(full, n);
+		assertEquals(0, full.getReorderings());
+
+		BDDSolver ba = new BDDSolver(2 * n, "java", 100000, 1000);
+		ba.enableAutoReorder(BDDFactory.REORDER_SIFT, -1, 200);
+		BDD reordered = pairs(ba, n);
+		assertTrue(ba.getReorderings() > 0);
+		assertEquals(full.countModels(pairs(full, n)), ba.countModels(reordered));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testAutoReorderJdd() {
+		BDDSolver ba = new BDDSolver(4, "jdd", 1000, 100);
+		assertFalse(ba.supportsReordering());
+		ba.enableAutoReorder(BDDFactory.REORDER_SIFT);
+	}
+
+	@Test
+	public void testWitnessEnumeration() throws TimeoutException {
+		for (String pkg : new String[] { "jdd", "java", "jconcurrent" }) {
+			int n = 4;
+			BDDSolver ba = new BDDSolver(2 * n, pkg, 10000, 1000);
+			// 2^n models of the pairs, plus the ones with x0 & !x4
+			BDD p = ba.MkOr(pairs(ba, n), ba.MkAnd(ba.MkVar(0), ba.MkNot(ba.MkVar(n))));
+			long count = ba.countModels(p);
+			assertEquals(16 + 64, count);
+			if (pkg.equals("java"))
+				ba.reorder(BDDFactory.REORDER_SIFT);
+
+			Set<BDD> seen = new HashSet<>();
+			Iterator<BDD> witnesses = ba.enumerateWitnesses(p);
+			for (long i = 0; i < count; i++) {
+				assertTrue(witnesses.hasNext());
+				BDD w = witnesses.next();
+				assertTrue(ba.HasModel(p, w));
+				assertEquals(w, ba.witnessAt(p, i));
+				assertTrue(seen.add(w));
+			}
+			assertFalse(witnesses.hasNext());
+			assertEquals(null, ba.witnessAt(p, count));
+			assertEquals(ba.generateWitness(p), ba.witnessAt(p, 0));
+			assertTrue(ba.hasNDistinctWitnesses(p, (int) count));
+			assertFalse(ba.hasNDistinctWitnesses(p, (int) count + 1));
+		}
+	}
+
+	@Test
+	public void testCountModelsExactly() throws TimeoutException {
+		int n = 62;
+		BDDSolver ba = new BDDSolver(n, "java", 10000, 1000);
+		BDD others = ba.True();
+		for (int i = 0; i < n - 1; i++)
+			others = ba.MkAnd(others, ba.MkNot(ba.MkVar(i)));
+		BDD last = ba.MkAnd(others, ba.MkVar(n - 1));
+		// every assignment but all false, a double rounds this count up to 2^62
+		BDD p = ba.MkNot(ba.MkAnd(others, ba.MkNot(ba.MkVar(n - 1))));
+		long count = ba.countModels(p);
+		assertEquals((1L << n) - 1, count);
+		// variables are tried true first, so the last model sets only x61
+		assertEquals(last, ba.witnessAt(p, count - 1));
+		assertEquals(null, ba.witnessAt(p, count));
+
+		// 2^63 models do not fit in a long, but can still be enumerated
+		BDDSolver wide = new BDDSolver(n + 1, "java", 10000, 1000);
+		assertEquals(-1, wide.countModels(wide.True()));
+		assertEquals(wide.generateWitness(wide.True()), wide.witnessAt(wide.True(), 0));
+	}
+
+	@Test
+	public void testSaveLoadVarOrder() throws IOException {
+		int n = 8;
+		int[] order = BDDSolver.trainVarOrder(2 * n, (ba) -> pairs(ba, n), BDDFactory.REORDER_SIFT);
+		assertEquals(2 * n, order.length);
+
+		BDDSolver ba = new BDDSolver(2 * n, "java", 10000, 1000);
+		ba.setVarOrder(order);
+		File f = File.createTempFile("order", ".txt");
+		f.deleteOnExit();
+		ba.saveVarOrder(f.getAbsolutePath());
+
+		BDDSolver other = new BDDSolver(2 * n, "java", 10000, 1000);
+		other.loadVarOrder(f.getAbsolutePath());
+		int[] loaded = other.getVarOrder();
+		for (int i = 0; i < order.length; i++)
+			assertEquals(order[i], loaded[i]);
+		assertTrue(pairs(other, n).nodeCount() < 3 * 2 * n);
+	}
+
+	@Test
+	public void testSharedSolver() throws Exception {
+		int n = 12;
+		BDDSolver ba = new BDDSolver(2 * n, "java", 1000, 100);
+		BDD expected = pairs(ba, n);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<BDD>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			results.add(pool.submit(() -> ba.MkNot(ba.MkNot(pairs(ba, n)))));
+		for (Future<BDD> result : results)
+			assertTrue(ba.AreEquivalent(expected, result.get()));
+		pool.shutdown();
+	}
+
+	@Test
+	public void testConcurrentFactory() throws Exception {
+		int n = 12;
+		// a small node table makes the factory collect and grow while the
+		// threads build
+		BDDSolver ba = new BDDSolver(2 * n, "jconcurrent", 100, 100);
+		assertTrue(ba.factory.isThreadSafe());
+		assertFalse(ba.supportsReordering());
+		BDD expected = pairs(ba, n);
+		assertEquals(1L << n, ba.countModels(expected));
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<BDD>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			results.add(pool.submit(() -> {
+				BDDFactory f = ba.factory;
+				BDD acc = f.one();
+				for (int j = n - 1; j >= 0; j--) {
+					BDD x = f.ithVar(j);
+					BDD eq = x.biimp(f.ithVar(j + n));
+					x.free();
+					acc.andWith(eq);
+				}
+				return acc;
+			}));
+		for (Future<BDD> result : results)
+			assertTrue(ba.AreEquivalent(expected, result.get()));
+		pool.shutdown();
+		assertTrue(((ConcurrentFactory) ba.factory).getGbcCount() > 0);
+	}
+}
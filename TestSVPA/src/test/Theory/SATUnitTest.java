@@ -1,8 +1,11 @@
 package test.Theory;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
 import theory.sat.SATBooleanAlgebra;
@@ -60,4 +63,24 @@ public class SATUnitTest {
 		boolean[] m2 = ba.generateWitness(p2);
 		assertTrue(ba.HasModel(p2, m2));
 	}
+
+	@Test
+	public void testCompact() {
+		SATBooleanAlgebra ba = new SATBooleanAlgebra(universe);
+		Integer p = ba.MkAnd(1, ba.MkOr(2, 3));
+		Integer dead = ba.MkOr(ba.MkAnd(-1, 2), ba.MkAnd(-2, 3));
+		assertTrue(ba.IsSatisfiable(dead));
+		int before = ba.getDefinitionCount();
+
+		assertEquals(3, ba.compact(Arrays.asList(p)));
+		assertEquals(before - 3, ba.getDefinitionCount());
+		assertEquals(1, ba.getCompactions());
+
+		boolean[] m1 = { true, false, true };
+		boolean[] m2 = { false, true, true };
+		assertTrue(ba.HasModel(p, m1));
+		assertFalse(ba.HasModel(p, m2));
+		assertTrue(ba.AreEquivalent(p, ba.MkOr(ba.MkAnd(1, 2), ba.MkAnd(1, 3))));
+		assertTrue(ba.getSolverCalls() > 0);
+	}
 }
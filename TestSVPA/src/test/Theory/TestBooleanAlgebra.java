@@ -1,12 +1,18 @@
 package test.Theory;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Iterator;
+
 import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
 
 import theory.BooleanAlgebra;
 import theory.characters.CharPred;
+import theory.characters.StdCharPred;
 import theory.intervals.UnaryCharIntervalSolver;
 
 public class TestBooleanAlgebra {
@@ -25,4 +31,21 @@ public class TestBooleanAlgebra {
         assertTrue(ba.hasNDistinctWitnesses(integers, 10));
         assertFalse(ba.hasNDistinctWitnesses(integers, 11));
     }
+
+    @Test
+    public void testEnumerateWitnesses() throws TimeoutException {
+        CharPred p = ba.MkOr(new CharPred('0', '9'), new CharPred('a', 'c'));
+        assertEquals(13, ba.countModels(p));
+        assertEquals(Character.valueOf('1'), ba.witnessAt(p, 1));
+        assertEquals(Character.valueOf('a'), ba.witnessAt(p, 10));
+        assertNull(ba.witnessAt(p, 13));
+        assertNull(ba.witnessAt(p, -1));
+
+        StringBuilder sb = new StringBuilder();
+        Iterator<Character> witnesses = ba.enumerateWitnesses(p);
+        while (witnesses.hasNext())
+            sb.append(witnesses.next());
+        assertEquals("0123456789abc", sb.toString());
+        assertFalse(ba.enumerateWitnesses(StdCharPred.FALSE).hasNext());
+    }
 }	
@@ -0,0 +1,109 @@
+package test.Theory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import com.google.common.collect.ImmutableList;
+
+import theory.intervals.BoundedIntegerSolver;
+import theory.intervals.IntPred;
+import theory.intervals.IntegerSolver;
+import theory.intervals.StdIntPred;
+
+public class TestIntPred {
+	IntegerSolver ba = new IntegerSolver();
+
+	@Test
+	public void testNormalForm() {
+		IntPred p = new IntPred(ImmutableList.of(
+				ImmutablePair.of(5, 9), ImmutablePair.of((Integer) null, 2), ImmutablePair.of(3, 4), ImmutablePair.of(20, (Integer) null)));
+		// (-inf,2], [3,4] and [5,9] are adjacent
+		assertEquals(2, p.size());
+		assertEquals("[-inf,9]U[20,inf]", p.toString());
+		assertEquals(ImmutablePair.of((Integer) null, 9), p.getIntervals().get(0));
+		assertTrue(p.isSatisfiedBy(Integer.MIN_VALUE));
+		assertFalse(p.isSatisfiedBy(10));
+		assertTrue(p.isSatisfiedBy(Integer.MAX_VALUE));
+		assertEquals(new IntPred(10, 19), ba.MkNot(p));
+		assertEquals(StdIntPred.TRUE, ba.MkNot(StdIntPred.FALSE));
+
+		// no int lies outside the extremes, so their complements are empty
+		IntPred top = ba.MkNot(new IntPred(null, Integer.MAX_VALUE - 1));
+		assertEquals(ImmutableList.of(ImmutablePair.of(Integer.MAX_VALUE, (Integer) null)), top.getIntervals());
+		assertEquals(new IntPred(null, Integer.MAX_VALUE - 1), ba.MkNot(top));
+		assertFalse(ba.IsSatisfiable(ba.MkNot(new IntPred(Integer.MIN_VALUE, Integer.MAX_VALUE))));
+		assertEquals(ImmutableList.of(ImmutablePair.of((Integer) null, Integer.MAX_VALUE - 1)),
+				IntPred.invertIntervals(ImmutableList.of(ImmutablePair.of(Integer.MAX_VALUE, (Integer) null))));
+	}
+
+	@Test
+	public void testBooleanOperators() {
+		Random r = new Random(7);
+		for (int round = 0; round < 200; round++) {
+			IntPred p1 = random(r);
+			IntPred p2 = random(r);
+			IntPred and = ba.MkAnd(p1, p2);
+			IntPred or = ba.MkOr(p1, p2);
+			IntPred not = ba.MkNot(p1);
+			for (int n = -5; n <= 45; n++) {
+				assertEquals(p1.isSatisfiedBy(n) && p2.isSatisfiedBy(n), and.isSatisfiedBy(n));
+				assertEquals(p1.isSatisfiedBy(n) || p2.isSatisfiedBy(n), or.isSatisfiedBy(n));
+				assertEquals(!p1.isSatisfiedBy(n), not.isSatisfiedBy(n));
+			}
+			assertTrue(ba.AreEquivalent(p1, ba.MkNot(not)));
+			assertTrue(ba.AreEquivalent(or, ba.MkNot(ba.MkAnd(not, ba.MkNot(p2)))));
+		}
+	}
+
+	@Test
+	public void testWitnesses() throws TimeoutException {
+		IntPred finite = ba.MkOr(new IntPred(0, 2), new IntPred(10, 11));
+		assertEquals(5, ba.countModels(finite));
+		assertEquals(Integer.valueOf(10), ba.witnessAt(finite, 3));
+		assertEquals(null, ba.witnessAt(finite, 5));
+
+		// bounded part first, then alternating between the two rays
+		IntPred infinite = ba.MkNot(new IntPred(0, 9));
+		assertEquals(-1, ba.countModels(infinite));
+		Iterator<Integer> witnesses = ba.enumerateWitnesses(infinite);
+		assertEquals(Integer.valueOf(-1), witnesses.next());
+		assertEquals(Integer.valueOf(10), witnesses.next());
+		assertEquals(Integer.valueOf(-2), witnesses.next());
+		assertTrue(ba.hasNDistinctWitnesses(infinite, 1000));
+		assertEquals(null, ba.witnessAt(infinite, -1));
+
+		// the iterator agrees with witnessAt, also past the bounded part
+		IntPred mixed = ba.MkOr(ba.MkOr(new IntPred(null, -5), new IntPred(0, 3)), new IntPred(7, null));
+		witnesses = ba.enumerateWitnesses(mixed);
+		for (long i = 0; i < 50; i++)
+			assertEquals(ba.witnessAt(mixed, i), witnesses.next());
+		witnesses = ba.enumerateWitnesses(finite);
+		for (long i = 0; i < 5; i++)
+			assertEquals(ba.witnessAt(finite, i), witnesses.next());
+		assertFalse(witnesses.hasNext());
+
+		BoundedIntegerSolver bounded = new BoundedIntegerSolver(0, 100);
+		assertEquals(91, bounded.countModels(infinite));
+		assertEquals(Integer.valueOf(100), bounded.witnessAt(infinite, 90));
+		assertFalse(bounded.hasNDistinctWitnesses(infinite, 92));
+	}
+
+	private IntPred random(Random r) {
+		IntPred p = StdIntPred.FALSE;
+		for (int i = r.nextInt(4); i > 0; i--) {
+			int lo = r.nextInt(40);
+			Integer bot = r.nextInt(8) == 0 ? null : lo;
+			Integer top = r.nextInt(8) == 0 ? null : lo + r.nextInt(6);
+			p = ba.MkOr(p, new IntPred(bot, top));
+		}
+		return p;
+	}
+}
@@ -0,0 +1,87 @@
+package test.Theory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import theory.ProductAlgebra;
+import theory.cartesian.CartesianProduct;
+import theory.intervals.BoundedIntegerSolver;
+import theory.intervals.IntPred;
+import utilities.Pair;
+
+public class TestProductAlgebra {
+	BoundedIntegerSolver ba = new BoundedIntegerSolver(0, 100);
+	ProductAlgebra<IntPred, Integer, IntPred, Integer> prod = new ProductAlgebra<>(ba, ba);
+
+	@Test
+	public void testNormalize() throws TimeoutException {
+		CartesianProduct<IntPred, IntPred> p = new CartesianProduct<>(Arrays.asList(
+				new Pair<>(new IntPred(null, 45), new IntPred(null, 70)),
+				new Pair<>(new IntPred(null, 60), new IntPred(null, 50))));
+		p.normalize(ba, ba);
+		assertTrue(p.isNormalized());
+
+		// [0,45]x[0,70] U [46,60]x[0,50]
+		assertEquals(2, p.getProducts().size());
+		for (int i = 0; i < p.getProducts().size(); i++)
+			for (int j = i + 1; j < p.getProducts().size(); j++)
+				assertFalse(ba.IsSatisfiable(ba.MkAnd(p.getProducts().get(i).first, p.getProducts().get(j).first)));
+		assertTrue(prod.HasModel(p, new Pair<>(45, 70)));
+		assertTrue(prod.HasModel(p, new Pair<>(60, 50)));
+		assertFalse(prod.HasModel(p, new Pair<>(60, 51)));
+		assertFalse(prod.HasModel(p, new Pair<>(61, 0)));
+	}
+
+	@Test
+	public void testBooleanOperators() throws TimeoutException {
+		CartesianProduct<IntPred, IntPred> a = new CartesianProduct<>(new IntPred(10, 50), new IntPred(20, 60));
+		CartesianProduct<IntPred, IntPred> b = new CartesianProduct<>(new IntPred(30, 80), new IntPred(0, 40));
+
+		CartesianProduct<IntPred, IntPred> or = prod.MkOr(a, b);
+		CartesianProduct<IntPred, IntPred> and = prod.MkAnd(a, b);
+		CartesianProduct<IntPred, IntPred> notA = prod.MkNot(a);
+
+		for (int x = 0; x <= 100; x += 5)
+			for (int y = 0; y <= 100; y += 5) {
+				Pair<Integer, Integer> el = new Pair<>(x, y);
+				boolean inA = prod.HasModel(a, el);
+				boolean inB = prod.HasModel(b, el);
+				assertEquals(inA || inB, prod.HasModel(or, el));
+				assertEquals(inA && inB, prod.HasModel(and, el));
+				assertEquals(!inA, prod.HasModel(notA, el));
+			}
+
+		assertFalse(prod.IsSatisfiable(prod.MkAnd(a, notA)));
+		assertTrue(prod.AreEquivalent(prod.True(), prod.MkOr(a, notA)));
+		assertTrue(prod.AreEquivalent(a, prod.MkNot(notA)));
+		assertTrue(prod.AreEquivalent(prod.MkOr(a, b), prod.MkOr(b, a)));
+		assertFalse(prod.AreEquivalent(a, b));
+		assertFalse(prod.AreEquivalent(or, and));
+	}
+
+	@Test
+	public void testOperandsUnchanged() throws TimeoutException {
+		CartesianProduct<IntPred, IntPred> p = new CartesianProduct<>(Arrays.asList(
+				new Pair<>(new IntPred(null, 45), new IntPred(null, 70)),
+				new Pair<>(new IntPred(null, 60), new IntPred(null, 50))));
+		CartesianProduct<IntPred, IntPred> q = new CartesianProduct<>(new IntPred(null, 60), new IntPred(null, 70));
+
+		assertFalse(prod.AreEquivalent(p, q));
+		assertTrue(prod.AreEquivalent(p, prod.MkOr(p, p)));
+		prod.MkAnd(p, q);
+		prod.MkNot(p);
+
+		// the operands keep their rectangles
+		assertFalse(p.isNormalized());
+		assertEquals(2, p.getProducts().size());
+		assertEquals(new IntPred(null, 60), p.getProducts().get(1).first);
+		assertFalse(q.isNormalized());
+		assertEquals(1, q.getProducts().size());
+	}
+}
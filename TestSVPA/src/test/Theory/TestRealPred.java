@@ -7,6 +7,7 @@ import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -52,10 +53,56 @@ public class TestRealPred {
 		assertTrue(ba.AreEquivalent(p7, p8));
 	}
 	
+	@Test
+	public void testEndpoints() {
+		// (0,1) U [1,2) is (0,2)
+		RealPred p1 = new RealPred(0.0, true, 1.0, true);
+		RealPred p2 = new RealPred(1.0, false, 2.0, true);
+		RealPred p3 = ba.MkOr(p1, p2);
+		assertTrue(p3.size() == 1);
+		assertTrue(ba.AreEquivalent(p3, new RealPred(0.0, true, 2.0, true)));
+
+		// (0,1) U (1,2) keeps the gap at 1
+		RealPred p4 = ba.MkOr(p1, new RealPred(1.0, true, 2.0, true));
+		assertTrue(p4.size() == 2);
+		assertFalse(p4.isSatisfiedBy(1.0));
+		assertTrue(ba.MkNot(p4).isSatisfiedBy(1.0));
+		assertTrue(ba.AreEquivalent(ba.MkNot(ba.MkNot(p4)), p4));
+
+		// [1,1] is the only point shared by [0,1] and [1,2]
+		RealPred p5 = ba.MkAnd(new RealPred(0.0, false, 1.0, false), new RealPred(1.0, false, 2.0, false));
+		assertTrue(ba.AreEquivalent(p5, new RealPred(1.0)));
+		assertFalse(ba.IsSatisfiable(ba.MkAnd(p1, p2)));
+		assertTrue(ba.AreEquivalent(StdRealPred.TRUE, ba.MkOr(p4, ba.MkNot(p4))));
+	}
+
 	/*
 	@Test
 	public void testGetSep() {
 		ArrayList<List<Double>> data = new ArrayList<List<Double>>(Arrays.asList(Arrays.asList(0.0, 1.0, 3.0), Arrays.asList(0.0, 1.0, 2.0, 3.0)));
 		ba.GetSeparatingPredicates(data, Long.MAX_VALUE);
 	}*/
+
+	@Test
+	public void testIntervalList() {
+		// unsorted, with touching extremes that merge only when one is closed
+		RealPred p = new RealPred(ImmutableList.of(
+				new Quadruple<Double,Boolean,Double,Boolean>(2.0, false, 3.0, true),
+				new Quadruple<Double,Boolean,Double,Boolean>(6.0, false, 6.0, false),
+				new Quadruple<Double,Boolean,Double,Boolean>(0.0, false, 1.0, true),
+				new Quadruple<Double,Boolean,Double,Boolean>(5.0, true, 6.0, true),
+				new Quadruple<Double,Boolean,Double,Boolean>(1.0, false, 2.0, true),
+				new Quadruple<Double,Boolean,Double,Boolean>(7.0, true, 8.0, true),
+				new Quadruple<Double,Boolean,Double,Boolean>(8.0, true, 9.0, false)));
+		// [0,3) U (5,6] U (7,8) U (8,9]
+		assertEquals(4, p.size());
+		assertTrue(p.isSatisfiedBy(1.0));
+		assertTrue(p.isSatisfiedBy(2.0));
+		assertFalse(p.isSatisfiedBy(3.0));
+		assertTrue(p.isSatisfiedBy(6.0));
+		assertFalse(p.isSatisfiedBy(8.0));
+		assertTrue(ba.AreEquivalent(p, ba.MkOr(Arrays.asList(
+				new RealPred(0.0, false, 3.0, true), new RealPred(5.0, true, 6.0, false),
+				new RealPred(7.0, true, 8.0, true), new RealPred(8.0, true, 9.0, false)))));
+	}
 }